@@ -0,0 +1,72 @@
+package dynks;
+
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Helpers for character encodings of cached content. Redis stores payloads encoded in UTF-8 so that content
+ * in any other encoding has to be transcoded while being stored or read.
+ */
+public class Encodings {
+
+  /**
+   * Maximum number of charsets cached by name (other than UTF-8 which is never looked up).
+   */
+  public static final int MAX_CACHED_CHARSETS = 32;
+
+  private static final Map<String, Charset> CHARSETS = new ConcurrentHashMap<>();
+
+  private Encodings() {
+    //  no instances allowed
+  }
+
+  public static boolean isUtf8(String encoding) {
+    return "UTF-8".equalsIgnoreCase(encoding) || "UTF8".equalsIgnoreCase(encoding);
+  }
+
+  /**
+   * Charsets are cached by name as Charset.forName keeps only last two of them.
+   */
+  public static Charset charsetOf(String encoding) {
+
+    if (isUtf8(encoding)) {
+      return UTF_8;
+    }
+
+    Charset charset = encoding == null ? null : CHARSETS.get(encoding);
+
+    if (charset == null) {
+      charset = Charset.forName(encoding);
+      if (CHARSETS.size() < MAX_CACHED_CHARSETS) {
+        CHARSETS.put(encoding, charset);
+      }
+    }
+
+    return charset;
+  }
+
+  /**
+   * Converts content encoded with given encoding into UTF-8. Content already in UTF-8 is returned without copying.
+   */
+  public static byte[] toUtf8(byte[] content, String encoding) {
+    return isUtf8(encoding) ? content : new String(content, charsetOf(encoding)).getBytes(UTF_8);
+  }
+
+  public static byte[] toUtf8(byte[] content, Charset charset) {
+    return UTF_8.equals(charset) ? content : new String(content, charset).getBytes(UTF_8);
+  }
+
+  /**
+   * Converts content encoded with UTF-8 into given encoding. Content is returned without copying if encoding is UTF-8.
+   */
+  public static byte[] fromUtf8(byte[] content, String encoding) {
+    return isUtf8(encoding) ? content : new String(content, UTF_8).getBytes(charsetOf(encoding));
+  }
+
+  public static byte[] fromUtf8(byte[] content, Charset charset) {
+    return UTF_8.equals(charset) ? content : new String(content, UTF_8).getBytes(charset);
+  }
+}
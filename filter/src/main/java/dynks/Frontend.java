@@ -4,8 +4,13 @@ import dynks.cache.CacheRegion;
 import dynks.cache.CacheRegionRepository;
 import dynks.cache.CacheRepository;
 import dynks.cache.CacheRepositoryException;
+import dynks.http.Prewarm;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Client used to communicate from withing same classloader (application) with dynks web cache.
@@ -29,6 +34,8 @@ public class Frontend {
   private static Frontend instance;
   private final CacheRepository repository;
   private final CacheRegionRepository regionRepository;
+  private final Executor background;
+  private final Prewarm prewarm;
 
   /**
    * Internal constructor do not access from application code.
@@ -36,9 +43,11 @@ public class Frontend {
    * @param repository
    * @param regionRepository
    */
-  private Frontend(CacheRepository repository, CacheRegionRepository regionRepository) {
+  private Frontend(CacheRepository repository, CacheRegionRepository regionRepository, Executor background, Prewarm prewarm) {
     this.repository = repository;
     this.regionRepository = regionRepository;
+    this.background = background;
+    this.prewarm = prewarm;
   }
 
   /**
@@ -49,6 +58,32 @@ public class Frontend {
    * @param regionRepository
    */
   public static void initialize(CacheRepository repository, CacheRegionRepository regionRepository) {
+    initialize(repository, regionRepository, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Initializes frontend as singleton using given executor for background operations (i.e. {@link #evictRegionAsync(String)}).
+   * Do not access from application code.
+   *
+   * @param repository
+   * @param regionRepository
+   * @param background
+   */
+  public static void initialize(CacheRepository repository, CacheRegionRepository regionRepository, Executor background) {
+    initialize(repository, regionRepository, background, null);
+  }
+
+  /**
+   * Initializes frontend as singleton, see {@link #initialize(CacheRepository, CacheRegionRepository, Executor)}.
+   * Do not access from application code.
+   *
+   * @param prewarm replaying of prewarm sources or null when prewarm is disabled
+   */
+  public static void initialize(CacheRepository repository, CacheRegionRepository regionRepository, Executor background, Prewarm prewarm) {
+
+    if (background == null) {
+      throw new NullPointerException("Executor for background operations should not be null");
+    }
 
     if (repository == null) {
       throw new NullPointerException("CacheRepository to register should not be null");
@@ -64,7 +99,7 @@ public class Frontend {
         throw new IllegalStateException("Frontend already initialized");
       }
 
-      instance = new Frontend(repository, regionRepository);
+      instance = new Frontend(repository, regionRepository, background, prewarm);
     }
   }
 
@@ -150,6 +185,41 @@ public class Frontend {
     return repository.evictRegion(resolveRegion(id));
   }
 
+  /**
+   * Evicts region the same way as {@link #evictRegion(String)} but in background so that calling thread is not blocked
+   * for time of eviction. Region is resolved before returning so invalid id is reported immediately.
+   *
+   * @param id
+   * @return number of removed entries or CacheRepositoryException (wrapped in CompletionException) on failure
+   */
+  public CompletableFuture<Long> evictRegionAsync(String id) {
+
+    final CacheRegion region = resolveRegion(id);
+
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return repository.evictRegion(region);
+      } catch (CacheRepositoryException e) {
+        throw new CompletionException(e);
+      }
+    }, background);
+  }
+
+  /**
+   * Replays URIs of configured prewarm sources again in background, i.e. after redis failover or flush so that backend
+   * does not receive all requests of emptied cache at once. Throws IllegalStateException if prewarm is not enabled.
+   *
+   * @return false if replaying is already in progress
+   */
+  public boolean prewarm() {
+
+    if (prewarm == null) {
+      throw new IllegalStateException("Prewarm is not enabled, please set dynks.prewarm.enabled");
+    }
+
+    return prewarm.start();
+  }
+
   public int getDefaultMaxEntriesDeletedInOneBatch() {
     return repository.getMaxEntriesDeletedInOneBatch();
   }
@@ -0,0 +1,215 @@
+package dynks;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Objects;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Pair of content type and encoding of cached content. Instances are interned in bounded table so that entries read
+ * from the repository share canonical strings (and their encoded form used when writing entries) instead of creating
+ * new ones on every hit, as sites usually serve only a few combinations. Lookup by encoded form compares bytes so
+ * that nothing is allocated for pairs already interned.
+ * <p>
+ * Table is copied on every insert, once {@link #CAPACITY} pairs are interned new pairs are returned without being
+ * interned.
+ */
+@ThreadSafe
+public final class MediaType {
+
+  public static final int CAPACITY = 64;
+
+  private static final Object LOCK = new Object();
+  private static volatile MediaType[] interned = new MediaType[0];
+
+  private final String contentType;
+  private final String encoding;
+  private final byte[] rawContentType;
+  private final byte[] rawEncoding;
+  private Charset charset;
+
+  private MediaType(String contentType, String encoding, byte[] rawContentType, byte[] rawEncoding) {
+    this.contentType = contentType;
+    this.encoding = encoding;
+    this.rawContentType = rawContentType;
+    this.rawEncoding = rawEncoding;
+  }
+
+  /**
+   * @param contentType might be null
+   * @param encoding    might be null
+   */
+  public static MediaType of(String contentType, String encoding) {
+
+    for (MediaType type : interned) {
+      if (Objects.equals(type.contentType, contentType) && Objects.equals(type.encoding, encoding)) {
+        return type;
+      }
+    }
+
+    return intern(new MediaType(contentType, encoding, bytesOf(contentType), bytesOf(encoding)));
+  }
+
+  /**
+   * @param rawContentType content type encoded in UTF-8, might be null
+   * @param rawEncoding    encoding encoded in UTF-8, might be null
+   */
+  public static MediaType of(byte[] rawContentType, byte[] rawEncoding) {
+    return of(rawContentType, 0, lengthOf(rawContentType), rawEncoding, 0, lengthOf(rawEncoding));
+  }
+
+  /**
+   * Looks up pair encoded in UTF-8 in parts of given buffers so that it does not have to be copied out, i.e. from
+   * entry stored as single value. Null buffer stands for null value.
+   */
+  public static MediaType of(byte[] contentTypeBuffer, int contentTypeOffset, int contentTypeLength,
+                             byte[] encodingBuffer, int encodingOffset, int encodingLength) {
+
+    for (MediaType type : interned) {
+      if (matches(type.rawContentType, contentTypeBuffer, contentTypeOffset, contentTypeLength)
+              && matches(type.rawEncoding, encodingBuffer, encodingOffset, encodingLength)) {
+        return type;
+      }
+    }
+
+    final byte[] rawContentType = copyOf(contentTypeBuffer, contentTypeOffset, contentTypeLength);
+    final byte[] rawEncoding = copyOf(encodingBuffer, encodingOffset, encodingLength);
+
+    return intern(new MediaType(stringOf(rawContentType), stringOf(rawEncoding), rawContentType, rawEncoding));
+  }
+
+  /**
+   * @return number of interned pairs
+   */
+  public static int size() {
+    return interned.length;
+  }
+
+  /**
+   * Removes all interned pairs, instances already returned stay valid.
+   */
+  static void clear() {
+    synchronized (LOCK) {
+      interned = new MediaType[0];
+    }
+  }
+
+  private static MediaType intern(MediaType type) {
+
+    //  checked before locking so that sites with more pairs than capacity do not contend for the lock
+    if (interned.length >= CAPACITY) {
+      return type;
+    }
+
+    synchronized (LOCK) {
+
+      final MediaType[] current = interned;
+
+      for (MediaType existing : current) {
+        if (existing.equals(type)) {
+          return existing;
+        }
+      }
+
+      if (current.length >= CAPACITY) {
+        return type;
+      }
+
+      final MediaType[] next = Arrays.copyOf(current, current.length + 1);
+      next[current.length] = type;
+      interned = next;
+      return type;
+    }
+  }
+
+  private static boolean matches(byte[] raw, byte[] buffer, int offset, int length) {
+
+    if (raw == null || buffer == null) {
+      return raw == buffer;
+    }
+
+    if (raw.length != length) {
+      return false;
+    }
+
+    for (int i = 0; i < length; i++) {
+      if (raw[i] != buffer[offset + i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private static byte[] bytesOf(String value) {
+    return value == null ? null : value.getBytes(UTF_8);
+  }
+
+  private static String stringOf(byte[] raw) {
+    return raw == null ? null : new String(raw, UTF_8);
+  }
+
+  private static byte[] copyOf(byte[] buffer, int offset, int length) {
+    return buffer == null ? null : Arrays.copyOfRange(buffer, offset, offset + length);
+  }
+
+  private static int lengthOf(byte[] raw) {
+    return raw == null ? 0 : raw.length;
+  }
+
+  public String getContentType() {
+    return contentType;
+  }
+
+  public String getEncoding() {
+    return encoding;
+  }
+
+  /**
+   * Content type encoded in UTF-8, shared so it should not be modified.
+   */
+  public byte[] getRawContentType() {
+    return rawContentType;
+  }
+
+  /**
+   * Encoding encoded in UTF-8, shared so it should not be modified.
+   */
+  public byte[] getRawEncoding() {
+    return rawEncoding;
+  }
+
+  /**
+   * @throws java.nio.charset.UnsupportedCharsetException if encoding is not supported
+   */
+  public Charset getCharset() {
+    //  racy but Charset is immutable, at worst it is looked up more than once
+    Charset result = charset;
+    if (result == null) {
+      result = Encodings.charsetOf(encoding);
+      charset = result;
+    }
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    MediaType that = (MediaType) o;
+    return Objects.equals(contentType, that.contentType) && Objects.equals(encoding, that.encoding);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(contentType, encoding);
+  }
+
+  @Override
+  public String toString() {
+    return contentType + "; " + encoding;
+  }
+}
@@ -0,0 +1,113 @@
+package dynks;
+
+/**
+ * MurmurHash3 (x64, 128 bit variant) working directly on characters of given string so that no intermediate byte array
+ * is allocated. Every character is treated as two bytes in little endian order, so result is stable across JVMs
+ * but differs from hashing UTF-8 representation of the same string.
+ */
+public class Murmur3 {
+
+  public static final int HASH_SIZE_IN_BYTES = 16;
+
+  private static final long C1 = 0x87c37b91114253d5L;
+  private static final long C2 = 0x4cf5ad432745937fL;
+
+  private Murmur3() {
+    //  no instances allowed
+  }
+
+  /**
+   * Calculates 128 bit hash of characters from given offset till the end of value.
+   *
+   * @param value  to be hashed
+   * @param offset of first character to be hashed
+   * @param out    array of at least {@link #HASH_SIZE_IN_BYTES} where hash will be written (little endian)
+   */
+  public static void hash128(CharSequence value, int offset, byte[] out) {
+
+    final int length = value.length() - offset;
+    final int blocks = length / 8;
+    long h1 = 0;
+    long h2 = 0;
+
+    for (int i = 0; i < blocks; i++) {
+      final int base = offset + i * 8;
+      long k1 = chars(value, base, 4);
+      long k2 = chars(value, base + 4, 4);
+
+      h1 ^= mixK1(k1);
+      h1 = Long.rotateLeft(h1, 27);
+      h1 += h2;
+      h1 = h1 * 5 + 0x52dce729;
+
+      h2 ^= mixK2(k2);
+      h2 = Long.rotateLeft(h2, 31);
+      h2 += h1;
+      h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    final int tail = offset + blocks * 8;
+    final int remaining = length - blocks * 8;
+
+    if (remaining > 4) {
+      h2 ^= mixK2(chars(value, tail + 4, remaining - 4));
+    }
+
+    if (remaining > 0) {
+      h1 ^= mixK1(chars(value, tail, Math.min(remaining, 4)));
+    }
+
+    //  length in bytes
+    h1 ^= length * 2L;
+    h2 ^= length * 2L;
+
+    h1 += h2;
+    h2 += h1;
+
+    h1 = fmix(h1);
+    h2 = fmix(h2);
+
+    h1 += h2;
+    h2 += h1;
+
+    write(h1, out, 0);
+    write(h2, out, 8);
+  }
+
+  private static long chars(CharSequence value, int from, int count) {
+    long k = 0;
+    for (int i = 0; i < count; i++) {
+      k |= ((long) value.charAt(from + i)) << (16 * i);
+    }
+    return k;
+  }
+
+  private static long mixK1(long k1) {
+    k1 *= C1;
+    k1 = Long.rotateLeft(k1, 31);
+    k1 *= C2;
+    return k1;
+  }
+
+  private static long mixK2(long k2) {
+    k2 *= C2;
+    k2 = Long.rotateLeft(k2, 33);
+    k2 *= C1;
+    return k2;
+  }
+
+  private static long fmix(long k) {
+    k ^= k >>> 33;
+    k *= 0xff51afd7ed558ccdL;
+    k ^= k >>> 33;
+    k *= 0xc4ceb9fe1a85ec53L;
+    k ^= k >>> 33;
+    return k;
+  }
+
+  private static void write(long value, byte[] out, int offset) {
+    for (int i = 0; i < 8; i++) {
+      out[offset + i] = (byte) (value >>> (8 * i));
+    }
+  }
+}
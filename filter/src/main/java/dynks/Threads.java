@@ -0,0 +1,99 @@
+package dynks;
+
+import org.slf4j.Logger;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Creates threads used internally by dynks for background work. When virtual threads are requested and available
+ * (JDK 21+) they are created using reflection so that library still runs on Java 8, otherwise daemon platform threads
+ * are used.
+ * <p>
+ * Code executed on these threads should not block inside <pre>synchronized</pre> sections as that pins virtual thread
+ * to its carrier, locks from <pre>java.util.concurrent</pre> should be used instead.
+ */
+public final class Threads {
+
+  private static final Logger LOG = getLogger(Threads.class);
+
+  private static final Method OF_VIRTUAL;
+  private static final Method NAME;
+  private static final Method FACTORY;
+
+  static {
+    Method ofVirtual = null;
+    Method name = null;
+    Method factory = null;
+
+    try {
+      ofVirtual = Thread.class.getMethod("ofVirtual");
+      final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+      name = builder.getMethod("name", String.class, long.class);
+      factory = builder.getMethod("factory");
+    } catch (ReflectiveOperationException e) {
+      //  running on JDK without virtual threads
+      ofVirtual = null;
+    }
+
+    OF_VIRTUAL = ofVirtual;
+    NAME = name;
+    FACTORY = factory;
+  }
+
+  private Threads() {
+    //  no instances allowed
+  }
+
+  public static boolean isVirtualThreadsSupported() {
+    return OF_VIRTUAL != null;
+  }
+
+  /**
+   * @param name    prefix of thread names, threads are numbered starting from 0
+   * @param virtual if true virtual threads will be created when supported by JVM
+   */
+  public static ThreadFactory threadFactory(String name, boolean virtual) {
+
+    if (name == null) {
+      throw new NullPointerException("Name of threads should not be null");
+    }
+
+    if (virtual) {
+      if (isVirtualThreadsSupported()) {
+        try {
+          return (ThreadFactory) FACTORY.invoke(NAME.invoke(OF_VIRTUAL.invoke(null), name + '-', 0L));
+        } catch (ReflectiveOperationException e) {
+          LOG.warn("Unable to create virtual threads for '{}', platform threads will be used: {}", name, e.getMessage());
+        }
+      } else {
+        LOG.warn("Virtual threads not supported by JVM, platform threads will be used for '{}'", name);
+      }
+    }
+
+    final AtomicInteger counter = new AtomicInteger();
+    return task -> {
+      final Thread thread = new Thread(task, name + '-' + counter.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  /**
+   * Executor with fixed number of threads, so that concurrency of background work stays bounded also for virtual
+   * threads.
+   */
+  public static ExecutorService newExecutor(String name, int threads, boolean virtual) {
+
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads should be >=1 but is '" + threads + "'");
+    }
+
+    return Executors.newFixedThreadPool(threads, threadFactory(name, virtual));
+  }
+}
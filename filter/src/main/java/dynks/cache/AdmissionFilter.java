@@ -0,0 +1,101 @@
+package dynks.cache;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static dynks.cache.CacheRegion.ALWAYS_ADMITTED;
+
+/**
+ * Decides whether response for key not found in cache should be stored, so that keys requested only once do not
+ * push out of redis entries that are really read. Requests of keys are counted by {@link CountMinSketch} shared by all
+ * regions (keys are prefixed with region) and key is admitted once it was requested {@link CacheRegion#getAdmitAfter()}
+ * times. Counts are halved every 10 * width requests so that only recent requests are taken into account, halving runs
+ * on executor so that request crossing the window does not pay for it.
+ */
+@ThreadSafe
+public class AdmissionFilter {
+
+  private final CountMinSketch sketch;
+  private final long window;
+  private final AtomicLong counted = new AtomicLong();
+  private final LongAdder rejected = new LongAdder();
+  private final Executor decay;
+  private final AtomicBoolean halving = new AtomicBoolean();
+
+  /**
+   * @param width of count-min sketch, should be a few times larger than number of keys requested within window
+   * @param decay executor halving counts outside of request threads
+   */
+  public AdmissionFilter(int width, Executor decay) {
+
+    if (decay == null) {
+      throw new NullPointerException("Executor of halving should not be null");
+    }
+
+    this.decay = decay;
+    this.sketch = new CountMinSketch(width);
+    this.window = 10L * sketch.getWidth();
+  }
+
+  /**
+   * Counts request of key not found in cache.
+   *
+   * @return true if response should be cached
+   */
+  public boolean admit(CacheRegion region, String key) {
+
+    if (region.getAdmitAfter() <= ALWAYS_ADMITTED) {
+      return true;
+    }
+
+    final int estimate = sketch.increment(key);
+
+    if (counted.incrementAndGet() % window == 0 && halving.compareAndSet(false, true)) {
+      try {
+        decay.execute(this::halve);
+      } catch (RejectedExecutionException e) {
+        //  shutting down
+        halving.set(false);
+      }
+    }
+
+    if (estimate >= region.getAdmitAfter()) {
+      return true;
+    }
+
+    rejected.increment();
+    return false;
+  }
+
+  private void halve() {
+    try {
+      sketch.halve();
+    } finally {
+      halving.set(false);
+    }
+  }
+
+  /**
+   * @return number of responses not cached since start
+   */
+  public long getRejected() {
+    return rejected.sum();
+  }
+
+  /**
+   * @return true if any of regions caches responses only after more than one request
+   */
+  public static boolean isRequiredFor(Iterable<CacheRegion> regions) {
+    for (CacheRegion region : regions) {
+      if (region.getAdmitAfter() > ALWAYS_ADMITTED) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,21 @@
+package dynks.cache;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Repository that does not block calling thread while waiting for the persistence layer. Returned futures complete
+ * exceptionally with {@link CacheRepositoryException} in case of any underlying problems, the same way as blocking
+ * methods would throw it.
+ */
+public interface AsyncCacheRepository extends CacheRepository {
+
+  /**
+   * Non-blocking counterpart of {@link #fetchIfChanged(String, String)}.
+   */
+  CompletableFuture<CacheQueryResult> fetchIfChangedAsync(String key, String etag);
+
+  /**
+   * Non-blocking counterpart of {@link #upsert(String, byte[], String, String, String, CacheRegion, String)}.
+   */
+  CompletableFuture<Void> upsertAsync(String key, byte[] content, String etag, String contentType, String encoding, CacheRegion region, String source);
+}
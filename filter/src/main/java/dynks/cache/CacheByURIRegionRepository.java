@@ -56,8 +56,15 @@ public class CacheByURIRegionRepository implements CacheRegionRepository {
 
   @Override
   public CacheRegion getfor(final HttpServletRequest request) {
+    return getForURI(request.getRequestURI());
+  }
 
-    final String requestURI = request.getRequestURI();
+  /**
+   * Retrieve region corresponding to given request URI (without query string).
+   *
+   * @return matching region or {@link #PASSTHROUGH} if none matches
+   */
+  public CacheRegion getForURI(final String requestURI) {
 
     for (URIMatcher matcher : uris) {
       if (matcher.matches(requestURI)) {
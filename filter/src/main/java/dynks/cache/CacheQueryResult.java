@@ -13,6 +13,11 @@ public class CacheQueryResult extends CachedContent {
         this.upsertNeeded = upsertNeeded;
     }
 
+    public CacheQueryResult(boolean upsertNeeded, byte[] payload, String storedEtag, String contentType, String encoding) {
+        super(storedEtag, payload, contentType, encoding);
+        this.upsertNeeded = upsertNeeded;
+    }
+
     public boolean isUpsertNeeded() {
         return upsertNeeded;
     }
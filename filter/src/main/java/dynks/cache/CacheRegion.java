@@ -19,6 +19,16 @@ public class CacheRegion {
     PASSTHROUGH
   }
 
+  /**
+   * Indicates that size of entries in region is not limited.
+   */
+  public static final long UNLIMITED_ENTRY_SIZE = 0;
+
+  /**
+   * Indicates that every response is cached on first request.
+   */
+  public static final int ALWAYS_ADMITTED = 1;
+
   private final long ttl;
   private final int ttlInSeconds;
   private final TimeUnit ttlUnit;
@@ -26,9 +36,15 @@ public class CacheRegion {
   private final int hashCode;
   private final KeyStrategy keyStrategy;
   private final String id;
+  private final long maxEntrySize;
+  private final int admitAfter;
+  private final RegionQuota quota;
 
   public CacheRegion(String id, long ttl, TimeUnit ttlUnit, Cacheability cacheability, KeyStrategy keyStrategy) {
     this.id = id;
+    this.maxEntrySize = UNLIMITED_ENTRY_SIZE;
+    this.admitAfter = ALWAYS_ADMITTED;
+    this.quota = RegionQuota.UNLIMITED;
     this.ttl = ttl;
     this.ttlUnit = ttlUnit;
     this.ttlInSeconds = (ttl > 0 ? ((int) ttlUnit.toSeconds(ttl)) : 0);
@@ -39,6 +55,41 @@ public class CacheRegion {
   }
 
   public CacheRegion(String id, long ttl, TimeUnit ttlUnit, KeyStrategy keyStrategy) {
+    this(id, ttl, ttlUnit, keyStrategy, UNLIMITED_ENTRY_SIZE);
+  }
+
+  /**
+   * @param maxEntrySize maximum size in bytes of response that will be cached, larger responses are sent to the client
+   *                     without being cached. {@link #UNLIMITED_ENTRY_SIZE} if size should not be limited.
+   */
+  public CacheRegion(String id, long ttl, TimeUnit ttlUnit, KeyStrategy keyStrategy, long maxEntrySize) {
+    this(id, ttl, ttlUnit, keyStrategy, maxEntrySize, ALWAYS_ADMITTED);
+  }
+
+  /**
+   * @param admitAfter number of requests of the same key (within admission window, see {@link AdmissionFilter}) after
+   *                   which response is cached, {@link #ALWAYS_ADMITTED} caches response on first request
+   */
+  public CacheRegion(String id, long ttl, TimeUnit ttlUnit, KeyStrategy keyStrategy, long maxEntrySize, int admitAfter) {
+    this(id, ttl, ttlUnit, keyStrategy, maxEntrySize, admitAfter, RegionQuota.UNLIMITED);
+  }
+
+  /**
+   * @param quota limit of memory used by entries of region in redis, {@link RegionQuota#UNLIMITED} if not limited
+   */
+  public CacheRegion(String id, long ttl, TimeUnit ttlUnit, KeyStrategy keyStrategy, long maxEntrySize, int admitAfter, RegionQuota quota) {
+
+    if (maxEntrySize < 0) {
+      throw new IllegalArgumentException("maxEntrySize should be >=0 but is '" + maxEntrySize + "'");
+    }
+
+    if (admitAfter < ALWAYS_ADMITTED) {
+      throw new IllegalArgumentException("admitAfter should be >=1 but is '" + admitAfter + "'");
+    }
+
+    if (quota == null) {
+      throw new NullPointerException("Quota should not be null");
+    }
 
     this.id = id;
     this.ttl = ttl;
@@ -46,7 +97,10 @@ public class CacheRegion {
     this.ttlInSeconds = (ttl > 0 ? ((int) ttlUnit.toSeconds(ttl)) : 0);
     this.keyStrategy = keyStrategy;
     this.cacheability = CACHED;
-    this.hashCode = hash(id, ttl, ttlUnit, cacheability);
+    this.maxEntrySize = maxEntrySize;
+    this.admitAfter = admitAfter;
+    this.quota = quota;
+    this.hashCode = hash(id, ttl, ttlUnit, cacheability, maxEntrySize, admitAfter, quota);
   }
 
   public long getTtl() {
@@ -73,6 +127,18 @@ public class CacheRegion {
     return id;
   }
 
+  public long getMaxEntrySize() {
+    return maxEntrySize;
+  }
+
+  public int getAdmitAfter() {
+    return admitAfter;
+  }
+
+  public RegionQuota getQuota() {
+    return quota;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
@@ -83,6 +149,9 @@ public class CacheRegion {
                     Objects.equals(ttl, that.ttl) &&
                     Objects.equals(ttlUnit, that.ttlUnit) &&
                     Objects.equals(cacheability, that.cacheability) &&
+                    maxEntrySize == that.maxEntrySize &&
+                    admitAfter == that.admitAfter &&
+                    quota.equals(that.quota) &&
                     Objects.equals(keyStrategy, this.keyStrategy);
 
   }
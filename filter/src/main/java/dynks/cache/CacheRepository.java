@@ -1,5 +1,12 @@
 package dynks.cache;
 
+import dynks.jmx.JmxServer;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static dynks.Encodings.charsetOf;
+
 /**
  * Repository for accessing caching layer. It is critical to properly implement all methods that may potentially fail
  * due to persistence layer to throw CacheRepositoryException in case of any underlying problems so that Hardened mode
@@ -39,7 +46,72 @@ public interface CacheRepository {
    * @param contentType contentType
    * @param encoding    encoding of content
    */
-  void upsert(String key, String content, String etag, String contentType, String encoding, CacheRegion region) throws CacheRepositoryException;
+  default void upsert(String key, String content, String etag, String contentType, String encoding, CacheRegion region) throws CacheRepositoryException {
+    upsert(key, content, etag, contentType, encoding, region, null);
+  }
+
+  /**
+   * Insert or update value identified by key the same way as {@link #upsert(String, String, String, String, String, CacheRegion)}
+   * storing additionally original URI of the request.
+   *
+   * @param source original URI of request that is not readable from the key (i.e. for compacted keys), used only
+   *               for debugging purposes. Might be null.
+   */
+  default void upsert(String key, String content, String etag, String contentType, String encoding, CacheRegion region, String source) throws CacheRepositoryException {
+
+    if (content == null) {
+      throw new CacheRepositoryException(new NullPointerException("Content to put into cache should not be null"));
+    }
+
+    final byte[] encoded;
+    try {
+      encoded = content.getBytes(charsetOf(encoding));
+    } catch (RuntimeException e) {
+      throw new CacheRepositoryException(e);
+    }
+
+    upsert(key, encoded, etag, contentType, encoding, region, source);
+  }
+
+  /**
+   * Insert or update value identified by key using content already encoded with given encoding. Caller should not
+   * modify content after passing it to repository.
+   *
+   * @param key         value identifier (not null)
+   * @param content     value encoded with encoding
+   * @param etag        etag value used as hash for version (not null)
+   * @param contentType contentType
+   * @param encoding    encoding of content
+   * @param source      original URI of request that is not readable from the key, might be null
+   */
+  void upsert(String key, byte[] content, String etag, String contentType, String encoding, CacheRegion region, String source) throws CacheRepositoryException;
+
+  /**
+   * Insert or update value given in consecutive segments (i.e. captured response) the same way as
+   * {@link #upsert(String, byte[], String, String, String, CacheRegion, String)}. Implementations able to write
+   * segments as they are (i.e. in chunks) should override it so that large content is never copied into single array,
+   * default implementation joins segments. Segments are read only during the call and are not modified.
+   *
+   * @param segments content, bytes of every segment are between its position and limit
+   * @param size     total number of bytes in segments
+   */
+  default void upsert(String key, List<ByteBuffer> segments, int size, String etag, String contentType, String encoding,
+                      CacheRegion region, String source) throws CacheRepositoryException {
+    upsert(key, Segments.join(segments, size), etag, contentType, encoding, region, source);
+  }
+
+  /**
+   * Insert or update multiple values. Implementations may write them in one round trip, default implementation writes
+   * them one by one.
+   *
+   * @param upserts values to write, in order of writing
+   */
+  default void upsert(List<Upsert> upserts) throws CacheRepositoryException {
+    for (Upsert upsert : upserts) {
+      upsert(upsert.getKey(), upsert.getContent(), upsert.getEtag(), upsert.getContentType(), upsert.getEncoding(),
+              upsert.getRegion(), upsert.getSource());
+    }
+  }
 
   /**
    * Remove single value identified by key. WARNING: current implementation does NOT remove any tracking of this
@@ -73,6 +145,22 @@ public interface CacheRepository {
    */
   long evictRegion(CacheRegion region, int maxEntriesDeletedInOneBatch) throws CacheRepositoryException;
 
+  /**
+   * Prepares repository for serving requests so that first requests do not pay for it (i.e. opens connections and
+   * loads scripts). Invoked once at startup, default implementation does nothing.
+   *
+   * @throws CacheRepositoryException if storage is not reachable
+   */
+  default void warmUp() throws CacheRepositoryException {
+  }
+
+  /**
+   * Registers mbeans exposing state of the repository (i.e. pools of connections), invoked once when filter starts
+   * after {@link #warmUp()}. Default implementation registers nothing.
+   */
+  default void registerMBeans(JmxServer jmx) {
+  }
+
   /**
    * Clean up resources.
    */
@@ -1,28 +1,89 @@
 package dynks.cache;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import static dynks.Encodings.charsetOf;
+
 /**
- * Content cached in repository.
+ * Content cached in repository. Payload is kept as bytes encoded with given encoding so that it can be written
+ * to the client without conversion.
  *
  * @author jszczepankiewicz
  * @since 2015-06-14
  */
 public class CachedContent {
-  protected final String payload;
+  protected final byte[] payload;
   protected final String storedEtag;
   protected final String contentType;
   protected final String encoding;
 
   public CachedContent(String storedEtag, String payload, String contentType, String encoding) {
+    this(storedEtag, payload == null ? null : payload.getBytes(charsetOf(encoding)), contentType, encoding);
+  }
+
+  public CachedContent(String storedEtag, byte[] payload, String contentType, String encoding) {
     this.storedEtag = storedEtag;
     this.payload = payload;
     this.contentType = contentType;
     this.encoding = encoding;
   }
 
+  /**
+   * Payload decoded using encoding. Prefer {@link #getPayloadBytes()} when writing payload to the client.
+   */
   public String getPayload() {
+    final byte[] bytes = getPayloadBytes();
+    return bytes == null ? null : new String(bytes, charsetOf(encoding));
+  }
+
+  /**
+   * Payload encoded with {@link #getEncoding()}, returned without copying so it should not be modified.
+   */
+  public byte[] getPayloadBytes() {
     return payload;
   }
 
+  /**
+   * @return number of bytes of payload without reading it into separate array
+   */
+  public int getPayloadSize() {
+    return payload.length;
+  }
+
+  /**
+   * @return number of bytes of payload if it is known before payload is read, -1 otherwise
+   */
+  public int getKnownPayloadSize() {
+    return getPayloadSize();
+  }
+
+  /**
+   * @return true if payload is read from the repository while being written, false if it is already in memory
+   */
+  public boolean isStreamed() {
+    return false;
+  }
+
+  /**
+   * Writes payload to given stream. Implementations may read payload lazily while writing it so that large entries
+   * do not have to be kept in memory as a whole.
+   *
+   * @throws IOException if writing or reading rest of the payload failed
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    out.write(payload);
+  }
+
+  /**
+   * Payload in parts for writing it without blocking. Payload kept in memory is not copied, implementations reading it
+   * lazily read next part only after previous one was written.
+   */
+  public PayloadParts openParts() {
+    return PayloadParts.of(payload, 0, payload.length);
+  }
+
   public String getStoredEtag() {
     return storedEtag;
   }
@@ -42,7 +103,7 @@ public class CachedContent {
 
     CachedContent that = (CachedContent) o;
 
-    if (payload != null ? !payload.equals(that.payload) : that.payload != null) return false;
+    if (!Arrays.equals(payload, that.payload)) return false;
     if (storedEtag != null ? !storedEtag.equals(that.storedEtag) : that.storedEtag != null) return false;
     if (encoding != null ? !encoding.equals(that.encoding) : that.encoding != null) return false;
     return !(contentType != null ? !contentType.equals(that.contentType) : that.contentType != null);
@@ -51,7 +112,7 @@ public class CachedContent {
 
   @Override
   public int hashCode() {
-    int result = payload != null ? payload.hashCode() : 0;
+    int result = Arrays.hashCode(payload);
     result = 31 * result + (storedEtag != null ? storedEtag.hashCode() : 0);
     result = 31 * result + (contentType != null ? contentType.hashCode() : 0);
     result = 31 * result + (encoding != null ? encoding.hashCode() : 0);
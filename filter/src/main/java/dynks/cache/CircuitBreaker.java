@@ -0,0 +1,299 @@
+package dynks.cache;
+
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static dynks.cache.CircuitBreaker.State.*;
+import static java.lang.System.nanoTime;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Circuit breaker based on outcomes of last calls (count based sliding window). Call is failed when it threw exception
+ * and slow when it took longer than slow call duration. When rate of failed or slow calls in the window reaches
+ * threshold circuit is opened and all calls are rejected for open duration. Then limited number of probing calls is
+ * permitted (half open), circuit is closed when all of them succeed and opened again otherwise.
+ * <p>
+ * Permission to call and outcome of the call in closed state are recorded without locking, lock is taken only when
+ * threshold is reached and in other states. Counts of the window are updated by many threads at once so they might be
+ * off by calls in progress.
+ */
+@ThreadSafe
+public class CircuitBreaker {
+
+  private static final Logger LOG = getLogger(CircuitBreaker.class);
+
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private static final int NONE = 0;
+  private static final int SUCCESS = 1;
+  private static final int FAILURE = 2;
+  private static final int SLOW = 3;
+
+  private final int windowSize;
+  private final int minimumCalls;
+  private final int failureRateThreshold;
+  private final int slowCallRateThreshold;
+  private final long slowCallNanos;
+  private final long openNanos;
+  private final int halfOpenCalls;
+
+  private final Lock lock = new ReentrantLock();
+  private volatile State state = CLOSED;
+
+  /**
+   * Replaced with empty one whenever state changes, outcomes recorded to previous one in the meantime are lost.
+   */
+  private volatile Window window;
+
+  //  guarded by lock
+  private long openedAt;
+  private int halfOpenPermits;
+  private int halfOpenSucceeded;
+
+  private final LongAdder rejected = new LongAdder();
+  private final AtomicLong opened = new AtomicLong();
+
+  /**
+   * @param windowSize            number of last calls taken into account
+   * @param minimumCalls          minimum number of calls in the window before circuit may be opened
+   * @param failureRateThreshold  percentage of failed calls opening circuit
+   * @param slowCallNanos         duration after which call is considered slow
+   * @param slowCallRateThreshold percentage of slow calls opening circuit
+   * @param openNanos             time for which calls are rejected before probing
+   * @param halfOpenCalls         number of probing calls that have to succeed to close circuit
+   */
+  public CircuitBreaker(int windowSize, int minimumCalls, int failureRateThreshold, long slowCallNanos,
+                        int slowCallRateThreshold, long openNanos, int halfOpenCalls) {
+
+    if (windowSize < 1) {
+      throw new IllegalArgumentException("windowSize should be >=1 but is '" + windowSize + "'");
+    }
+
+    if (minimumCalls < 1 || minimumCalls > windowSize) {
+      throw new IllegalArgumentException("minimumCalls should be between 1 and windowSize but is '" + minimumCalls + "'");
+    }
+
+    if (failureRateThreshold < 1 || failureRateThreshold > 100) {
+      throw new IllegalArgumentException("failureRateThreshold should be between 1 and 100 but is '" + failureRateThreshold + "'");
+    }
+
+    if (slowCallRateThreshold < 1 || slowCallRateThreshold > 100) {
+      throw new IllegalArgumentException("slowCallRateThreshold should be between 1 and 100 but is '" + slowCallRateThreshold + "'");
+    }
+
+    if (halfOpenCalls < 1) {
+      throw new IllegalArgumentException("halfOpenCalls should be >=1 but is '" + halfOpenCalls + "'");
+    }
+
+    this.windowSize = windowSize;
+    this.window = new Window(windowSize);
+    this.minimumCalls = minimumCalls;
+    this.failureRateThreshold = failureRateThreshold;
+    this.slowCallNanos = slowCallNanos;
+    this.slowCallRateThreshold = slowCallRateThreshold;
+    this.openNanos = openNanos;
+    this.halfOpenCalls = halfOpenCalls;
+  }
+
+  /**
+   * @return true if call is permitted, every permitted call has to be followed by {@link #onSuccess(long)} or
+   * {@link #onError()}
+   */
+  public boolean tryAcquire() {
+
+    if (state == CLOSED) {
+      return true;
+    }
+
+    lock.lock();
+    try {
+      if (state == OPEN) {
+        if (nanoTime() - openedAt < openNanos) {
+          rejected.increment();
+          return false;
+        }
+        state = HALF_OPEN;
+        halfOpenPermits = halfOpenCalls;
+        halfOpenSucceeded = 0;
+        LOG.info("Circuit half open, probing with {} calls", halfOpenCalls);
+      }
+
+      if (state == HALF_OPEN) {
+        if (halfOpenPermits > 0) {
+          halfOpenPermits--;
+          return true;
+        }
+        rejected.increment();
+        return false;
+      }
+
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void onSuccess(long nanos) {
+    record(nanos >= slowCallNanos ? SLOW : SUCCESS);
+  }
+
+  public void onError() {
+    record(FAILURE);
+  }
+
+  private void record(int outcome) {
+
+    if (state == CLOSED) {
+      final Window current = window;
+      if (current.record(outcome)) {
+        lock.lock();
+        try {
+          //  other thread might have opened circuit already
+          if (state == CLOSED && window == current) {
+            LOG.warn("Opening circuit, {} failed and {} slow of last {} calls", current.failures.get(), current.slow.get(),
+                    current.recorded.get());
+            open();
+          }
+        } finally {
+          lock.unlock();
+        }
+      }
+      return;
+    }
+
+    lock.lock();
+    try {
+      if (state == HALF_OPEN) {
+        if (outcome != SUCCESS) {
+          open();
+        } else if (++halfOpenSucceeded == halfOpenCalls) {
+          close();
+        }
+        return;
+      }
+
+      //  call started before circuit was opened, closed state is recorded without lock
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void open() {
+    state = OPEN;
+    openedAt = nanoTime();
+    opened.incrementAndGet();
+    clearWindow();
+  }
+
+  /**
+   * Closes circuit regardless of its state.
+   */
+  public void close() {
+    lock.lock();
+    try {
+      if (state != CLOSED) {
+        LOG.info("Closing circuit");
+      }
+      state = CLOSED;
+      clearWindow();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void clearWindow() {
+    window = new Window(windowSize);
+  }
+
+  public State getState() {
+    return state;
+  }
+
+  /**
+   * @return number of calls rejected since start
+   */
+  public long getRejected() {
+    return rejected.sum();
+  }
+
+  /**
+   * @return number of times circuit was opened since start
+   */
+  public long getOpened() {
+    return opened.get();
+  }
+
+  /**
+   * @return percentage of failed calls in current window
+   */
+  public int getFailureRate() {
+    final Window current = window;
+    return current.rateOf(current.failures);
+  }
+
+  /**
+   * @return percentage of slow calls in current window
+   */
+  public int getSlowCallRate() {
+    final Window current = window;
+    return current.rateOf(current.slow);
+  }
+
+  /**
+   * Outcomes of last calls in ring written without locking, every call takes next position of the ring.
+   */
+  private final class Window {
+
+    private final AtomicIntegerArray outcomes;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicInteger recorded = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicInteger slow = new AtomicInteger();
+
+    Window(int size) {
+      this.outcomes = new AtomicIntegerArray(size);
+    }
+
+    /**
+     * @return true if threshold of failed or slow calls is reached
+     */
+    boolean record(int outcome) {
+
+      final int position = (int) (calls.getAndIncrement() % outcomes.length());
+      final int previous = outcomes.getAndSet(position, outcome);
+
+      if (previous == NONE) {
+        recorded.incrementAndGet();
+      } else {
+        count(previous, -1);
+      }
+      count(outcome, 1);
+
+      final int calls = recorded.get();
+      return calls >= minimumCalls && (failures.get() * 100 >= failureRateThreshold * calls
+              || slow.get() * 100 >= slowCallRateThreshold * calls);
+    }
+
+    private void count(int outcome, int delta) {
+      if (outcome == FAILURE) {
+        failures.addAndGet(delta);
+      } else if (outcome == SLOW) {
+        slow.addAndGet(delta);
+      }
+    }
+
+    int rateOf(AtomicInteger outcomes) {
+      final int calls = recorded.get();
+      return calls == 0 ? 0 : outcomes.get() * 100 / calls;
+    }
+  }
+}
@@ -0,0 +1,155 @@
+package dynks.cache;
+
+import dynks.jmx.CircuitBreakerMBean;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static java.lang.System.nanoTime;
+
+/**
+ * Repository decorator rejecting calls immediately while circuit is open so that in hardened mode requests are passed
+ * through without waiting for timeouts of slow or failing repository. Eviction is never rejected nor recorded.
+ */
+public class CircuitBreakerCacheRepository implements CacheRepository, CircuitBreakerMBean {
+
+  private final CacheRepository delegate;
+  private final CircuitBreaker breaker;
+
+  public CircuitBreakerCacheRepository(CacheRepository delegate, CircuitBreaker breaker) {
+
+    if (delegate == null) {
+      throw new NullPointerException("Repository to guard should not be null");
+    }
+
+    if (breaker == null) {
+      throw new NullPointerException("Circuit breaker should not be null");
+    }
+
+    this.delegate = delegate;
+    this.breaker = breaker;
+  }
+
+  @FunctionalInterface
+  private interface Call<T> {
+    T call() throws CacheRepositoryException;
+  }
+
+  private <T> T guarded(Call<T> call) throws CacheRepositoryException {
+
+    if (!breaker.tryAcquire()) {
+      throw new CacheRepositoryException(CircuitOpenException.INSTANCE);
+    }
+
+    final long start = nanoTime();
+    try {
+      final T result = call.call();
+      breaker.onSuccess(nanoTime() - start);
+      return result;
+    } catch (CacheRepositoryException | RuntimeException e) {
+      breaker.onError();
+      throw e;
+    }
+  }
+
+  @Override
+  public CacheQueryResult fetchIfChanged(String key, String etag) throws CacheRepositoryException {
+    return guarded(() -> delegate.fetchIfChanged(key, etag));
+  }
+
+  @Override
+  public void upsert(String key, byte[] content, String etag, String contentType, String encoding, CacheRegion region, String source) throws CacheRepositoryException {
+    guarded(() -> {
+      delegate.upsert(key, content, etag, contentType, encoding, region, source);
+      return null;
+    });
+  }
+
+  @Override
+  public void upsert(String key, List<ByteBuffer> segments, int size, String etag, String contentType, String encoding,
+                     CacheRegion region, String source) throws CacheRepositoryException {
+    guarded(() -> {
+      delegate.upsert(key, segments, size, etag, contentType, encoding, region, source);
+      return null;
+    });
+  }
+
+  @Override
+  public void upsert(List<Upsert> upserts) throws CacheRepositoryException {
+    guarded(() -> {
+      delegate.upsert(upserts);
+      return null;
+    });
+  }
+
+  @Override
+  public void remove(String key) throws CacheRepositoryException {
+    guarded(() -> {
+      delegate.remove(key);
+      return null;
+    });
+  }
+
+  @Override
+  public void warmUp() throws CacheRepositoryException {
+    delegate.warmUp();
+  }
+
+  @Override
+  public long evictRegion(CacheRegion region) throws CacheRepositoryException {
+    return delegate.evictRegion(region);
+  }
+
+  @Override
+  public long evictRegion(CacheRegion region, int maxEntriesDeletedInOneBatch) throws CacheRepositoryException {
+    return delegate.evictRegion(region, maxEntriesDeletedInOneBatch);
+  }
+
+  @Override
+  public void dispose() {
+    delegate.dispose();
+  }
+
+  @Override
+  public int getMaxEntriesDeletedInOneBatch() {
+    return delegate.getMaxEntriesDeletedInOneBatch();
+  }
+
+  public CacheRepository getDelegate() {
+    return delegate;
+  }
+
+  public CircuitBreaker getBreaker() {
+    return breaker;
+  }
+
+  @Override
+  public String getState() {
+    return breaker.getState().name();
+  }
+
+  @Override
+  public int getFailureRate() {
+    return breaker.getFailureRate();
+  }
+
+  @Override
+  public int getSlowCallRate() {
+    return breaker.getSlowCallRate();
+  }
+
+  @Override
+  public long getRejected() {
+    return breaker.getRejected();
+  }
+
+  @Override
+  public long getOpened() {
+    return breaker.getOpened();
+  }
+
+  @Override
+  public void reset() {
+    breaker.close();
+  }
+}
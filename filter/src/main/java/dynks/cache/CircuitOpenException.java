@@ -0,0 +1,16 @@
+package dynks.cache;
+
+/**
+ * Thrown (as cause of {@link CacheRepositoryException}) when call to repository was rejected by open circuit.
+ * Single instance without stack trace is used as it is thrown for every request while circuit is open.
+ */
+public class CircuitOpenException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  static final CircuitOpenException INSTANCE = new CircuitOpenException();
+
+  private CircuitOpenException() {
+    super("Circuit open, repository not called", null, false, false);
+  }
+}
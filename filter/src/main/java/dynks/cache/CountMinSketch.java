@@ -0,0 +1,97 @@
+package dynks.cache;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Count-min sketch estimating how many times given key was seen using fixed memory (4 rows of width 32 bit counters).
+ * Estimate is never lower than real count (until counters are halved), it may be higher due to collisions. Counters
+ * are updated with atomic increments so that sketch can be updated from request threads without locking.
+ */
+@ThreadSafe
+public class CountMinSketch {
+
+  private static final int DEPTH = 4;
+  private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+  private final AtomicIntegerArray counters;
+  private final int width;
+  private final int mask;
+
+  /**
+   * @param width number of counters in every row, rounded up to power of two
+   */
+  public CountMinSketch(int width) {
+
+    if (width < 1) {
+      throw new IllegalArgumentException("width should be >=1 but is '" + width + "'");
+    }
+
+    this.width = width == 1 ? 1 : Integer.highestOneBit(width - 1) << 1;
+    this.mask = this.width - 1;
+    this.counters = new AtomicIntegerArray(DEPTH * this.width);
+  }
+
+  /**
+   * @return estimated count of key including this occurrence
+   */
+  public int increment(CharSequence key) {
+
+    final int hash = hash(key);
+    int estimate = Integer.MAX_VALUE;
+
+    for (int row = 0; row < DEPTH; row++) {
+      final int index = indexOf(hash, row);
+      //  saturating, counter that reached maximum stays there until halved
+      int count = counters.get(index);
+      if (count != Integer.MAX_VALUE) {
+        count = counters.incrementAndGet(index);
+      }
+      estimate = Math.min(estimate, count);
+    }
+
+    return estimate;
+  }
+
+  /**
+   * @return estimated count of key
+   */
+  public int estimate(CharSequence key) {
+
+    final int hash = hash(key);
+    int estimate = Integer.MAX_VALUE;
+
+    for (int row = 0; row < DEPTH; row++) {
+      estimate = Math.min(estimate, counters.get(indexOf(hash, row)));
+    }
+
+    return estimate;
+  }
+
+  /**
+   * Halves all counters so that estimates reflect recent traffic rather than all traffic since start. Concurrent
+   * increments may be lost while halving.
+   */
+  public void halve() {
+    for (int i = 0; i < counters.length(); i++) {
+      counters.set(i, counters.get(i) >>> 1);
+    }
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  private int indexOf(int hash, int row) {
+    long h = (hash ^ SEEDS[row]) * 0x9e3779b97f4a7c15L;
+    h ^= h >>> 29;
+    return row * width + ((int) (h >>> 32) & mask);
+  }
+
+  private static int hash(CharSequence key) {
+    //  String caches its hash code so that it is not recalculated for every row
+    int h = key.hashCode();
+    return h ^ (h >>> 16);
+  }
+}
@@ -11,11 +11,24 @@ public class Entry extends HashMap<String, String> {
     public static final String ETAG = "e";
     public static final String CONTENT_TYPE = "c";
     public static final String ENCODING = "d";
+    public static final String SOURCE = "u";
+    /**
+     * Number of chunks for entries stored in chunks (without {@link #PAYLOAD} field).
+     */
+    public static final String CHUNKS = "n";
 
 
     public Entry(String content, String etag, String contentType, String encoding) {
+        this(content, etag, contentType, encoding, null);
+    }
+
+    /**
+     * @param source original URI of request, stored only for debugging purposes when key does not contain it
+     *               (might be null)
+     */
+    public Entry(String content, String etag, String contentType, String encoding, String source) {
 
-        super(3);
+        super(source == null ? 6 : 7);
 
         if (content == null) {
             throw new NullPointerException("Content to put into cache should not be null");
@@ -37,6 +50,10 @@ public class Entry extends HashMap<String, String> {
         this.put(PAYLOAD, content);
         this.put(CONTENT_TYPE, contentType);
         this.put(ENCODING, encoding);
+
+        if (source != null) {
+            this.put(SOURCE, source);
+        }
     }
 
     public String getContent() {
@@ -54,4 +71,8 @@ public class Entry extends HashMap<String, String> {
     public String getEncoding() {
         return get(ENCODING);
     }
+
+    public String getSource() {
+        return get(SOURCE);
+    }
 }
@@ -0,0 +1,95 @@
+package dynks.cache;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static dynks.Strings.recycle;
+
+/**
+ * Key strategy embedding region id of keys built by other strategy in redis cluster hash tag:
+ * <pre>namespace:{regionId}:uri</pre>
+ * so that all entries of region (together with its chunks and usage) are kept in one slot of the cluster. Region can
+ * be then evicted and accounted by single master, at the cost of load of the region not being spread across masters.
+ * Hash tags have no effect on standalone redis.
+ */
+public class HashTaggedKeyStrategy implements KeyStrategy {
+
+  private static final ThreadLocal<StringBuilder> KEY_BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(64));
+
+  private final KeyStrategy delegate;
+  /**
+   * Prefixes of decorated keys (namespace:regionId:) and of tagged ones (namespace:{regionId}:) by region id.
+   */
+  private final Map<String, String[]> prefixes = new ConcurrentHashMap<>();
+
+  public HashTaggedKeyStrategy(KeyStrategy delegate) {
+
+    if (delegate == null) {
+      throw new NullPointerException("Key strategy to tag should not be null");
+    }
+
+    this.delegate = delegate;
+  }
+
+  @Override
+  public String keyFor(HttpServletRequest request, CacheRegion region) {
+
+    final String[] prefix = prefixesFor(region);
+    final String key = delegate.keyFor(request, region);
+
+    final StringBuilder builder = KEY_BUFFER.get();
+    recycle(builder);
+    builder.append(prefix[1]);
+    builder.append(key, prefix[0].length(), key.length());
+    return builder.toString();
+  }
+
+  @Override
+  public String wildcardKeyFor(CacheRegion region) {
+    return prefixesFor(region)[1] + '*';
+  }
+
+  @Override
+  public boolean isCompact() {
+    return delegate.isCompact();
+  }
+
+  public KeyStrategy getDelegate() {
+    return delegate;
+  }
+
+  private String[] prefixesFor(CacheRegion region) {
+
+    String[] prefix = prefixes.get(region.getId());
+
+    if (prefix == null) {
+      final String id = region.getId();
+
+      if (id.indexOf('{') >= 0 || id.indexOf('}') >= 0) {
+        throw new IllegalArgumentException("Region id '" + id + "' should not contain braces to be used as hash tag");
+      }
+
+      final String wildcard = delegate.wildcardKeyFor(region);
+      //  wildcard is in form namespace:regionId:*
+      final String plain = wildcard.substring(0, wildcard.length() - 1);
+      final String namespace = plain.substring(0, plain.length() - id.length() - 1);
+      prefix = new String[]{plain, namespace + '{' + id + "}:"};
+      prefixes.put(id, prefix);
+    }
+
+    return prefix;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    return delegate.equals(((HashTaggedKeyStrategy) o).delegate);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * getClass().toGenericString().hashCode() + delegate.hashCode();
+  }
+}
@@ -0,0 +1,112 @@
+package dynks.cache;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static dynks.Murmur3.HASH_SIZE_IN_BYTES;
+import static dynks.Murmur3.hash128;
+import static dynks.Strings.recycle;
+
+/**
+ * Key strategy compacting keys built by other strategy. Part of the key after <pre>namespace:regionId:</pre> is replaced
+ * with 128 bit MurmurHash3 encoded in url safe base64 (22 characters) so that long URIs (i.e. faceted search with many
+ * query parameters) will not be repeated in every redis command and key space. Prefix is kept untouched so that region
+ * eviction works the same way as for decorated strategy.
+ * <p>
+ * As original URI can not be read from the key anymore it is stored inside the entry (see {@link Entry#SOURCE}).
+ */
+public class HashedKeyStrategy implements KeyStrategy {
+
+  public static final int SIZEOF_HASH = 22;
+
+  private static final char[] BASE64_URL = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+  private static final ThreadLocal<byte[]> HASH_BUFFER = ThreadLocal.withInitial(() -> new byte[HASH_SIZE_IN_BYTES]);
+  private static final ThreadLocal<StringBuilder> KEY_BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(64));
+
+  private final KeyStrategy delegate;
+  private final Map<String, String> prefixes = new ConcurrentHashMap<>();
+
+  public HashedKeyStrategy(KeyStrategy delegate) {
+
+    if (delegate == null) {
+      throw new NullPointerException("Key strategy to compact should not be null");
+    }
+
+    this.delegate = delegate;
+  }
+
+  @Override
+  public String keyFor(HttpServletRequest request, CacheRegion region) {
+
+    final String prefix = prefixFor(region);
+    final String full = delegate.keyFor(request, region);
+    final byte[] hash = HASH_BUFFER.get();
+    hash128(full, prefix.length(), hash);
+
+    final StringBuilder builder = KEY_BUFFER.get();
+    recycle(builder);
+    builder.append(prefix);
+    appendBase64(builder, hash);
+    return builder.toString();
+  }
+
+  @Override
+  public String wildcardKeyFor(CacheRegion region) {
+    return delegate.wildcardKeyFor(region);
+  }
+
+  @Override
+  public boolean isCompact() {
+    return true;
+  }
+
+  public KeyStrategy getDelegate() {
+    return delegate;
+  }
+
+  private String prefixFor(CacheRegion region) {
+
+    String prefix = prefixes.get(region.getId());
+
+    if (prefix == null) {
+      final String wildcard = delegate.wildcardKeyFor(region);
+      //  wildcard is in form namespace:regionId:*
+      prefix = wildcard.substring(0, wildcard.length() - 1);
+      prefixes.put(region.getId(), prefix);
+    }
+
+    return prefix;
+  }
+
+  private static void appendBase64(StringBuilder builder, byte[] hash) {
+
+    int i = 0;
+    //  5 groups of 3 bytes
+    for (; i + 3 <= hash.length; i += 3) {
+      final int chunk = ((hash[i] & 0xff) << 16) | ((hash[i + 1] & 0xff) << 8) | (hash[i + 2] & 0xff);
+      builder.append(BASE64_URL[(chunk >>> 18) & 0x3f]);
+      builder.append(BASE64_URL[(chunk >>> 12) & 0x3f]);
+      builder.append(BASE64_URL[(chunk >>> 6) & 0x3f]);
+      builder.append(BASE64_URL[chunk & 0x3f]);
+    }
+
+    //  last byte without padding
+    final int last = hash[i] & 0xff;
+    builder.append(BASE64_URL[last >>> 2]);
+    builder.append(BASE64_URL[(last << 4) & 0x3f]);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    return delegate.equals(((HashedKeyStrategy) o).delegate);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * getClass().toGenericString().hashCode() + delegate.hashCode();
+  }
+}
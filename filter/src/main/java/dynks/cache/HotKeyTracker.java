@@ -0,0 +1,121 @@
+package dynks.cache;
+
+import dynks.jmx.HotKeysMBean;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import static java.util.Map.Entry.comparingByValue;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Tracks {@link HotKeys} of every cache region, memory used is fixed per region.
+ */
+@ThreadSafe
+public class HotKeyTracker implements HotKeysMBean {
+
+  private static final String[] NONE = new String[0];
+
+  private final int width;
+  private final int k;
+  private final long sampleSize;
+  private final Executor decay;
+  private final Map<String, HotKeys> regions = new ConcurrentHashMap<>();
+
+  /**
+   * @param width of count-min sketch of every region, frequencies are halved every 10 * width recorded keys
+   * @param k     number of top keys tracked in every region
+   * @param decay executor halving frequencies outside of request threads
+   */
+  public HotKeyTracker(int width, int k, Executor decay) {
+
+    if (width < 1) {
+      throw new IllegalArgumentException("width should be >=1 but is '" + width + "'");
+    }
+
+    if (k < 1) {
+      throw new IllegalArgumentException("k should be >=1 but is '" + k + "'");
+    }
+
+    if (decay == null) {
+      throw new NullPointerException("Executor of halving should not be null");
+    }
+
+    this.decay = decay;
+    this.width = width;
+    this.k = k;
+    this.sampleSize = 10L * width;
+  }
+
+  /**
+   * @return estimated frequency of key in region including this occurrence
+   */
+  public int record(CacheRegion region, String key) {
+    return forRegion(region.getId()).record(key);
+  }
+
+  /**
+   * @return estimated frequency of key in region
+   */
+  public int estimate(CacheRegion region, String key) {
+    final HotKeys hotKeys = regions.get(region.getId());
+    return hotKeys == null ? 0 : hotKeys.estimate(key);
+  }
+
+  /**
+   * @return hot keys of region, created on first use
+   */
+  public HotKeys forRegion(String regionId) {
+
+    HotKeys hotKeys = regions.get(regionId);
+
+    if (hotKeys == null) {
+      hotKeys = regions.computeIfAbsent(regionId, id -> new HotKeys(width, k, sampleSize, decay));
+    }
+
+    return hotKeys;
+  }
+
+  /**
+   * @return at most limit keys of all regions ordered from the most frequent one
+   */
+  public List<String> hottest(int limit) {
+
+    final List<Map.Entry<String, Long>> all = new ArrayList<>();
+    regions.values().forEach(hotKeys -> all.addAll(hotKeys.top()));
+
+    return all.stream()
+            .sorted(comparingByValue((a, b) -> Long.compare(b, a)))
+            .limit(limit)
+            .map(Map.Entry::getKey)
+            .collect(toList());
+  }
+
+  @Override
+  public String[] getRegions() {
+    return regions.keySet().toArray(NONE);
+  }
+
+  @Override
+  public String[] topKeys(String regionId) {
+
+    final HotKeys hotKeys = regions.get(regionId);
+
+    if (hotKeys == null) {
+      return NONE;
+    }
+
+    final List<Map.Entry<String, Long>> top = hotKeys.top();
+    final String[] keys = new String[top.size()];
+
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = top.get(i).getValue() + " " + top.get(i).getKey();
+    }
+
+    return keys;
+  }
+}
@@ -0,0 +1,184 @@
+package dynks.cache;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.util.Map.Entry.comparingByValue;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Most frequent keys of single region. Frequencies are estimated by {@link CountMinSketch}, keys are kept only when
+ * they are among top k estimates so memory stays fixed regardless of number of distinct keys. Every sampleSize
+ * recorded keys all frequencies are halved by task submitted to executor so that keys that stopped being requested
+ * leave the top.
+ * <p>
+ * Recording never waits: when other thread is replacing one of top keys the candidate is skipped, as it will be
+ * offered again on its next occurrence if it is really hot. Halving is skipped when previous one has not finished
+ * yet.
+ */
+@ThreadSafe
+public class HotKeys {
+
+  private final CountMinSketch sketch;
+  private final int k;
+  private final long sampleSize;
+  private final AtomicLong recorded = new AtomicLong();
+  private final Map<String, Long> top = new ConcurrentHashMap<>();
+  private final ReentrantLock replacing = new ReentrantLock();
+  private final Executor decay;
+  private final AtomicBoolean halving = new AtomicBoolean();
+  private volatile long threshold;
+
+  /**
+   * @param width      of count-min sketch
+   * @param k          number of top keys
+   * @param sampleSize number of recorded keys after which frequencies are halved
+   * @param decay      executor halving frequencies outside of recording threads
+   */
+  public HotKeys(int width, int k, long sampleSize, Executor decay) {
+
+    if (k < 1) {
+      throw new IllegalArgumentException("k should be >=1 but is '" + k + "'");
+    }
+
+    if (sampleSize < 1) {
+      throw new IllegalArgumentException("sampleSize should be >=1 but is '" + sampleSize + "'");
+    }
+
+    if (decay == null) {
+      throw new NullPointerException("Executor of halving should not be null");
+    }
+
+    this.decay = decay;
+    this.sketch = new CountMinSketch(width);
+    this.k = k;
+    this.sampleSize = sampleSize;
+  }
+
+  /**
+   * @return estimated frequency of key including this occurrence
+   */
+  public int record(String key) {
+
+    final int estimate = sketch.increment(key);
+    offer(key, estimate);
+
+    if (recorded.incrementAndGet() % sampleSize == 0 && halving.compareAndSet(false, true)) {
+      try {
+        decay.execute(this::halve);
+      } catch (RejectedExecutionException e) {
+        //  shutting down
+        halving.set(false);
+      }
+    }
+
+    return estimate;
+  }
+
+  /**
+   * @return estimated frequency of key
+   */
+  public int estimate(String key) {
+    return sketch.estimate(key);
+  }
+
+  /**
+   * @return top keys with their estimated frequencies, the most frequent first
+   */
+  public List<Map.Entry<String, Long>> top() {
+    final List<Map.Entry<String, Long>> snapshot = new ArrayList<>(k);
+    top.forEach((key, estimate) -> snapshot.add(new SimpleImmutableEntry<>(key, estimate)));
+    return snapshot.stream().sorted(comparingByValue((a, b) -> Long.compare(b, a))).collect(toList());
+  }
+
+  private void offer(String key, long estimate) {
+
+    final Long current = top.get(key);
+
+    if (current != null) {
+      if (estimate > current) {
+        top.replace(key, current, estimate);
+      }
+      return;
+    }
+
+    if (estimate <= threshold || !replacing.tryLock()) {
+      return;
+    }
+
+    try {
+      if (top.size() >= k && !removeLessFrequentThan(estimate)) {
+        //  threshold might be stale as estimates of top keys grow without lock
+        updateThreshold();
+        return;
+      }
+      top.put(key, estimate);
+      updateThreshold();
+    } finally {
+      replacing.unlock();
+    }
+  }
+
+  /**
+   * @return true if least frequent of top keys was less frequent than estimate and was removed
+   */
+  private boolean removeLessFrequentThan(long estimate) {
+
+    String least = null;
+    long min = Long.MAX_VALUE;
+
+    for (Map.Entry<String, Long> entry : top.entrySet()) {
+      if (entry.getValue() < min) {
+        min = entry.getValue();
+        least = entry.getKey();
+      }
+    }
+
+    if (least == null || min >= estimate) {
+      return false;
+    }
+
+    top.remove(least);
+    return true;
+  }
+
+  private void updateThreshold() {
+
+    if (top.size() < k) {
+      threshold = 0;
+      return;
+    }
+
+    long min = Long.MAX_VALUE;
+    for (Long estimate : top.values()) {
+      min = Math.min(min, estimate);
+    }
+    threshold = min;
+  }
+
+  private void halve() {
+    try {
+      sketch.halve();
+      //  recording threads only try to take the lock so they skip offering instead of waiting for halving
+      replacing.lock();
+      try {
+        top.replaceAll((key, estimate) -> estimate >>> 1);
+        updateThreshold();
+      } finally {
+        replacing.unlock();
+      }
+    } finally {
+      halving.set(false);
+    }
+  }
+}
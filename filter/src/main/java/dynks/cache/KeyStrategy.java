@@ -26,4 +26,13 @@ public interface KeyStrategy {
    * @return
    */
   String wildcardKeyFor(CacheRegion region);
+
+  /**
+   * Indicates whether keys built by this strategy are compacted so that original URI can not be read from them.
+   *
+   * @return true if original URI should be stored together with cached entry
+   */
+  default boolean isCompact() {
+    return false;
+  }
 }
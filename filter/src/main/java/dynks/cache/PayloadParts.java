@@ -0,0 +1,42 @@
+package dynks.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Payload of cached content read part by part, so that it can be written without blocking the request thread (see
+ * {@link dynks.http.AsyncPayloadWriter}) and without copying it into single array. Next part is read only when
+ * previous one was written.
+ */
+public interface PayloadParts {
+
+  /**
+   * @return next part backed by an array, valid only until next call, or null when whole payload was read
+   * @throws IOException if rest of the payload could not be read (i.e. entry was evicted in the meantime)
+   */
+  ByteBuffer next() throws IOException;
+
+  /**
+   * Single part wrapping given range of array, nothing is copied.
+   */
+  static PayloadParts of(byte[] bytes, int offset, int length) {
+
+    if (bytes == null) {
+      throw new NullPointerException("Payload should not be null");
+    }
+
+    return new PayloadParts() {
+
+      private boolean read;
+
+      @Override
+      public ByteBuffer next() {
+        if (read) {
+          return null;
+        }
+        read = true;
+        return ByteBuffer.wrap(bytes, offset, length);
+      }
+    };
+  }
+}
@@ -0,0 +1,24 @@
+package dynks.cache;
+
+/**
+ * Repository keeping entries across restarts of the process. Entries recovered on start might have been replaced or
+ * removed in other tiers in the meantime, so they are marked as unconfirmed until they are checked by their etag
+ * (see {@link TieredCacheRepository}).
+ */
+public interface PersistentCacheRepository extends CacheRepository {
+
+  /**
+   * @return number of recovered entries not confirmed yet
+   */
+  long getUnconfirmed();
+
+  /**
+   * @return etag of recovered entry that was not confirmed yet, null if there is no such entry
+   */
+  String getUnconfirmedEtag(String key) throws CacheRepositoryException;
+
+  /**
+   * Marks recovered entry as confirmed so that it is served as any other.
+   */
+  void confirm(String key) throws CacheRepositoryException;
+}
@@ -0,0 +1,199 @@
+package dynks.cache;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.*;
+
+import static dynks.Strings.recycle;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableSet;
+
+/**
+ * Key retrieving strategy that extends key built by {@link NamespacedURIKeyStrategy} with whitelisted query parameters in form:
+ * <pre>namespace:regionId:uri?a=1&amp;b=2</pre>
+ * Only parameters from whitelist are taken into account so that i.e. tracking parameters will not fragment the cache.
+ * Parameters are put into key in canonical order (sorted by name, values of repeated parameters keep order from request)
+ * so that <pre>/search?q=a&amp;page=2</pre> and <pre>/search?page=2&amp;q=a</pre> will share the same entry. Names and values
+ * are used as they were sent by client (without url decoding).
+ * <p>
+ * Whitelist containing {@link #ALL_PARAMETERS} will accept any parameter that does not start with one of ignored prefixes
+ * (i.e. <pre>utm_</pre>).
+ * <p>
+ * Key is built using buffers reused per thread so that no intermediate objects are created except the key itself.
+ */
+public class QueryStringKeyStrategy implements KeyStrategy {
+
+  public static final String ALL_PARAMETERS = "*";
+
+  private static final Comparator<String> BY_PARAMETER_NAME = (a, b) -> {
+    final int aLength = nameLength(a);
+    final int bLength = nameLength(b);
+    final int min = Math.min(aLength, bLength);
+
+    for (int i = 0; i < min; i++) {
+      final char ac = a.charAt(i);
+      final char bc = b.charAt(i);
+      if (ac != bc) {
+        return ac - bc;
+      }
+    }
+
+    return aLength - bLength;
+  };
+
+  private static final ThreadLocal<StringBuilder> KEY_BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+  private static final ThreadLocal<List<String>> PARAMETERS_BUFFER = ThreadLocal.withInitial(() -> new ArrayList<>(8));
+
+  private final String namespace;
+  private final Set<String> parameters;
+  private final List<String> ignoredPrefixes;
+  private final boolean allParameters;
+
+  public QueryStringKeyStrategy(String namespace, Collection<String> parameters, Collection<String> ignoredPrefixes) {
+
+    if (namespace == null) {
+      throw new NullPointerException("Namespace should not be null");
+    }
+
+    if (parameters == null) {
+      throw new NullPointerException("Whitelist of query parameters should not be null");
+    }
+
+    if (ignoredPrefixes == null) {
+      throw new NullPointerException("Ignored query parameter prefixes should not be null");
+    }
+
+    this.namespace = namespace;
+    this.parameters = unmodifiableSet(new TreeSet<>(parameters));
+    this.ignoredPrefixes = unmodifiableList(new ArrayList<>(ignoredPrefixes));
+    this.allParameters = parameters.contains(ALL_PARAMETERS);
+  }
+
+  @Override
+  public String wildcardKeyFor(CacheRegion region) {
+    StringBuilder builder = new StringBuilder(3 + namespace.length() + region.getId().length());
+    builder.append(namespace);
+    builder.append(':');
+    builder.append(region.getId());
+    builder.append(":*");
+    return builder.toString();
+  }
+
+  @Override
+  public String keyFor(HttpServletRequest request, CacheRegion region) {
+
+    final StringBuilder builder = KEY_BUFFER.get();
+    recycle(builder);
+    builder.append(namespace);
+    builder.append(':');
+    builder.append(region.getId());
+    builder.append(':');
+    builder.append(request.getRequestURI());
+
+    final String query = request.getQueryString();
+
+    if (query != null && !query.isEmpty()) {
+      appendCanonicalQuery(builder, query);
+    }
+
+    return builder.toString();
+  }
+
+  private void appendCanonicalQuery(StringBuilder builder, String query) {
+
+    final List<String> accepted = PARAMETERS_BUFFER.get();
+    accepted.clear();
+
+    final int length = query.length();
+    int start = 0;
+
+    while (start < length) {
+
+      int end = query.indexOf('&', start);
+      if (end < 0) {
+        end = length;
+      }
+
+      if (end > start && isAccepted(query, start, end)) {
+        accepted.add(query.substring(start, end));
+      }
+
+      start = end + 1;
+    }
+
+    if (accepted.isEmpty()) {
+      return;
+    }
+
+    //  stable sort, repeated parameters keep their order as it might be meaningful for application
+    accepted.sort(BY_PARAMETER_NAME);
+
+    builder.append('?');
+    for (int i = 0; i < accepted.size(); i++) {
+      if (i > 0) {
+        builder.append('&');
+      }
+      builder.append(accepted.get(i));
+    }
+
+    accepted.clear();
+  }
+
+  private boolean isAccepted(String query, int start, int end) {
+
+    int nameEnd = query.indexOf('=', start);
+    if (nameEnd < 0 || nameEnd > end) {
+      nameEnd = end;
+    }
+
+    if (allParameters) {
+      for (String prefix : ignoredPrefixes) {
+        if (query.startsWith(prefix, start)) {
+          return false;
+        }
+      }
+      return nameEnd > start;
+    }
+
+    //  whitelist is expected to be small so that linear scan is cheaper than extracting name for lookup
+    final int nameLength = nameEnd - start;
+    for (String parameter : parameters) {
+      if (parameter.length() == nameLength && query.regionMatches(start, parameter, 0, nameLength)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private static int nameLength(String parameter) {
+    final int separator = parameter.indexOf('=');
+    return separator < 0 ? parameter.length() : separator;
+  }
+
+  public String getNamespace() {
+    return namespace;
+  }
+
+  public Set<String> getParameters() {
+    return parameters;
+  }
+
+  public List<String> getIgnoredPrefixes() {
+    return ignoredPrefixes;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    QueryStringKeyStrategy that = (QueryStringKeyStrategy) o;
+    return namespace.equals(that.namespace) &&
+            parameters.equals(that.parameters) &&
+            ignoredPrefixes.equals(that.ignoredPrefixes);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(namespace, parameters, ignoredPrefixes);
+  }
+}
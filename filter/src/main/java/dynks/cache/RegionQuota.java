@@ -0,0 +1,86 @@
+package dynks.cache;
+
+import java.util.Objects;
+
+/**
+ * Limit of memory used in redis by entries of single region. Usage is tracked approximately (size of payload and key,
+ * without redis overhead) so quota should be set with some margin below redis maxmemory.
+ */
+public class RegionQuota {
+
+  public enum OnExceeded {
+    /**
+     * New entries are not stored until usage drops (i.e. entries expire).
+     */
+    REJECT,
+    /**
+     * Entries stored the longest time ago are removed.
+     */
+    EVICT_OLDEST
+  }
+
+  /**
+   * Indicates that usage of region is not limited.
+   */
+  public static final RegionQuota UNLIMITED = new RegionQuota(0, 0, OnExceeded.REJECT);
+
+  private final long maxBytes;
+  private final long maxEntries;
+  private final OnExceeded onExceeded;
+
+  /**
+   * @param maxBytes   maximum size of all entries, 0 means not limited
+   * @param maxEntries maximum number of entries, 0 means not limited
+   */
+  public RegionQuota(long maxBytes, long maxEntries, OnExceeded onExceeded) {
+
+    if (maxBytes < 0) {
+      throw new IllegalArgumentException("maxBytes should be >=0 but is '" + maxBytes + "'");
+    }
+
+    if (maxEntries < 0) {
+      throw new IllegalArgumentException("maxEntries should be >=0 but is '" + maxEntries + "'");
+    }
+
+    if (onExceeded == null) {
+      throw new NullPointerException("Action on exceeded quota should not be null");
+    }
+
+    this.maxBytes = maxBytes;
+    this.maxEntries = maxEntries;
+    this.onExceeded = onExceeded;
+  }
+
+  public boolean isLimited() {
+    return maxBytes > 0 || maxEntries > 0;
+  }
+
+  public boolean isExceededBy(long bytes, long entries) {
+    return (maxBytes > 0 && bytes > maxBytes) || (maxEntries > 0 && entries > maxEntries);
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  public long getMaxEntries() {
+    return maxEntries;
+  }
+
+  public OnExceeded getOnExceeded() {
+    return onExceeded;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    RegionQuota that = (RegionQuota) o;
+    return maxBytes == that.maxBytes && maxEntries == that.maxEntries && onExceeded == that.onExceeded;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(maxBytes, maxEntries, onExceeded);
+  }
+}
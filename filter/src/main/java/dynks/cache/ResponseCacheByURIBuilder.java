@@ -2,6 +2,7 @@ package dynks.cache;
 
 import com.typesafe.config.Config;
 import dynks.URIMatcher;
+import dynks.cache.RegionQuota.OnExceeded;
 import org.slf4j.Logger;
 
 import java.util.*;
@@ -22,6 +23,11 @@ public class ResponseCacheByURIBuilder {
     Map<URIMatcher, CacheRegion> regions = new HashMap<>(configuredRegions.size());
     String namespace = config.getString("dynks.namespace");
     NamespacedURIKeyStrategy keyStrategy = new NamespacedURIKeyStrategy(namespace);
+    List<String> ignoredPrefixes = config.getStringList("dynks.ignoredQueryParameterPrefixes");
+    boolean compactKeys = config.getBoolean("dynks.compactKeys");
+    boolean regionHashTags = config.getBoolean("dynks.regionHashTags");
+    long maxEntrySize = config.getBytes("dynks.maxEntrySize");
+    int admitAfter = config.getInt("dynks.admitAfter");
     Set<String> regionIds = new HashSet<>();
 
     for (Config region : configuredRegions) {
@@ -49,8 +55,40 @@ public class ResponseCacheByURIBuilder {
         throw new IllegalArgumentException("Region id should not start with underscore");
       }
 
-      //  for now only URIKeyStrategy supported
-      CacheRegion cached = new CacheRegion(id, region.getDuration("ttl", MILLISECONDS), MILLISECONDS, keyStrategy);
+      KeyStrategy regionKeyStrategy = keyStrategy;
+      if (region.hasPath("queryParameters")) {
+        List<String> parameters = region.getStringList("queryParameters");
+        if (parameters.isEmpty()) {
+          throw new IllegalArgumentException("Region '" + id + "' should have non empty list of queryParameters if provided");
+        }
+        regionKeyStrategy = new QueryStringKeyStrategy(namespace, parameters, region.hasPath("ignoredQueryParameterPrefixes") ?
+                region.getStringList("ignoredQueryParameterPrefixes") : ignoredPrefixes);
+        LOG.debug("Region '{}' will include query parameters {} in keys", id, parameters);
+      }
+
+      if (region.hasPath("compactKeys") ? region.getBoolean("compactKeys") : compactKeys) {
+        regionKeyStrategy = new HashedKeyStrategy(regionKeyStrategy);
+        LOG.debug("Region '{}' will use compacted (hashed) keys", id);
+      }
+
+      if (regionHashTags) {
+        regionKeyStrategy = new HashTaggedKeyStrategy(regionKeyStrategy);
+      }
+
+      long regionMaxEntrySize = region.hasPath("maxEntrySize") ? region.getBytes("maxEntrySize") : maxEntrySize;
+      if (regionMaxEntrySize < 0) {
+        throw new IllegalArgumentException("Region '" + id + "' should have maxEntrySize >=0 but is '" + regionMaxEntrySize + "'");
+      }
+
+      int regionAdmitAfter = region.hasPath("admitAfter") ? region.getInt("admitAfter") : admitAfter;
+      if (regionAdmitAfter < 1) {
+        throw new IllegalArgumentException("Region '" + id + "' should have admitAfter >=1 but is '" + regionAdmitAfter + "'");
+      }
+
+      RegionQuota quota = region.hasPath("quota") ? quotaOf(id, region.getConfig("quota")) : RegionQuota.UNLIMITED;
+
+      CacheRegion cached = new CacheRegion(id, region.getDuration("ttl", MILLISECONDS), MILLISECONDS, regionKeyStrategy, regionMaxEntrySize,
+              regionAdmitAfter, quota);
       String url = region.getString("pattern");
       regions.put(new URIMatcher(url), cached);
       LOG.debug("Loaded cached region against: {} with ttl: {} {}", url, cached.getTtl(), cached.getTtlUnit());
@@ -60,4 +98,19 @@ public class ResponseCacheByURIBuilder {
 
     return new CacheByURIRegionRepository(regions);
   }
+
+  private static RegionQuota quotaOf(String id, Config quota) {
+
+    long maxBytes = quota.hasPath("maxBytes") ? quota.getBytes("maxBytes") : 0;
+    long maxEntries = quota.hasPath("maxEntries") ? quota.getLong("maxEntries") : 0;
+
+    if (maxBytes < 0 || maxEntries < 0) {
+      throw new IllegalArgumentException("Region '" + id + "' should have quota with maxBytes and maxEntries >=0");
+    }
+
+    OnExceeded onExceeded = quota.hasPath("onExceeded") ? OnExceeded.valueOf(quota.getString("onExceeded")) : OnExceeded.EVICT_OLDEST;
+    LOG.debug("Region '{}' will be limited to {} bytes and {} entries ({})", id, maxBytes, maxEntries, onExceeded);
+
+    return new RegionQuota(maxBytes, maxEntries, onExceeded);
+  }
 }
@@ -0,0 +1,36 @@
+package dynks.cache;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Operations on content kept in consecutive segments, bytes of every segment are between its position and limit.
+ */
+public final class Segments {
+
+  private Segments() {
+  }
+
+  /**
+   * Joins segments into array of exact size, segments are not modified.
+   *
+   * @param size total number of bytes in segments
+   */
+  public static byte[] join(List<ByteBuffer> segments, int size) {
+
+    final byte[] out = new byte[size];
+    int offset = 0;
+
+    for (ByteBuffer segment : segments) {
+      final int length = segment.remaining();
+      if (segment.hasArray()) {
+        System.arraycopy(segment.array(), segment.arrayOffset() + segment.position(), out, offset, length);
+      } else {
+        segment.duplicate().get(out, offset, length);
+      }
+      offset += length;
+    }
+
+    return out;
+  }
+}
@@ -0,0 +1,23 @@
+package dynks.cache;
+
+import com.typesafe.config.Config;
+
+/**
+ * Service creating repositories of one kind of storage, selected by name with <pre>dynks.storage</pre> (or
+ * <pre>dynks.l1.storage</pre> for local tier). Providers are discovered with {@link java.util.ServiceLoader} so that
+ * storage not shipped with dynks can be used by listing its provider in
+ * <pre>META-INF/services/dynks.cache.StorageProvider</pre> of its jar.
+ */
+public interface StorageProvider {
+
+  /**
+   * @return name of the storage used in configuration, i.e. REDIS
+   */
+  String getName();
+
+  /**
+   * @param config whole configuration, settings of storage are expected in its own section (i.e. dynks.redis)
+   * @return repository ready to be used
+   */
+  CacheRepository create(Config config);
+}
@@ -0,0 +1,56 @@
+package dynks.cache;
+
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.TreeMap;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Finds {@link StorageProvider} of given name among providers visible to context class loader of current thread.
+ */
+public class StorageProviders {
+
+  private static final Logger LOG = getLogger(StorageProviders.class);
+
+  private StorageProviders() {
+    //  no instances allowed
+  }
+
+  /**
+   * @return repository created by provider of given storage
+   * @throws IllegalArgumentException if there is no provider of given storage
+   */
+  public static CacheRepository repositoryFor(String storage, Config config) {
+
+    final StorageProvider provider = available().get(storage);
+
+    if (provider == null) {
+      throw new IllegalArgumentException("Unsupported storage: '" + storage + "', expected one of " + available().keySet());
+    }
+
+    LOG.info("Using {} storage provided by {}", storage, provider.getClass().getName());
+    return provider.create(config);
+  }
+
+  /**
+   * @return providers by their names, if names are repeated the first provider found wins
+   */
+  public static Map<String, StorageProvider> available() {
+
+    final Map<String, StorageProvider> providers = new TreeMap<>();
+
+    for (StorageProvider provider : ServiceLoader.load(StorageProvider.class)) {
+      final StorageProvider previous = providers.putIfAbsent(provider.getName(), provider);
+      if (previous != null) {
+        LOG.warn("Storage {} provided by {} ignored, already provided by {}", provider.getName(),
+                provider.getClass().getName(), previous.getClass().getName());
+      }
+    }
+
+    return providers;
+  }
+}
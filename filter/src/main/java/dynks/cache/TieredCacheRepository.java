@@ -0,0 +1,256 @@
+package dynks.cache;
+
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.lang.Math.min;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Repository decorator serving entries from local tier of this node (i.e. {@link dynks.local.OffHeapCacheRepository})
+ * and querying shared tier only for entries not found locally. Upserted entries and entries found in shared tier are
+ * written to both tiers. Local tiers of other nodes are not updated when entry is replaced, removed or its region is
+ * evicted, so entries are kept locally at most maxLocalTtl (or ttl of their region if shorter) which bounds how long
+ * stale entry might be served.
+ * <p>
+ * Entries found in shared tier are copied to local one only if their region is known (see {@link #register(Collection)})
+ * and client did not already have them (entry not changed is returned without payload). Streamed entries are never copied.
+ * Local tier is best effort, its failures are logged and ignored.
+ * <p>
+ * If local tier is {@link PersistentCacheRepository} entries it recovered after restart are served only after shared
+ * tier confirms their etag, changed entries are replaced and entries not found in shared tier are removed. Unconfirmed
+ * entries are not served while shared tier is not available.
+ */
+@ThreadSafe
+public class TieredCacheRepository implements CacheRepository {
+
+  private static final Logger LOG = getLogger(TieredCacheRepository.class);
+
+  private static final CacheQueryResult RESULT_FOUND_BUT_NOT_CHANGED = new CacheQueryResult(false, (byte[]) null, null, null, null);
+
+  private final CacheRepository local;
+  private final CacheRepository shared;
+  /**
+   * Local tier if it is persistent, null otherwise.
+   */
+  private final PersistentCacheRepository persistent;
+  private final long maxLocalTtlInMillis;
+
+  /**
+   * Regions with ttl limited to maxLocalTtl by id and by key prefix (namespace:regionId:).
+   */
+  private final Map<String, CacheRegion> localRegions = new ConcurrentHashMap<>();
+  private final Map<String, CacheRegion> localRegionsByPrefix = new ConcurrentHashMap<>();
+
+  /**
+   * @param maxLocalTtlInMillis maximum time entry is served from local tier, 0 means ttl of region is used
+   */
+  public TieredCacheRepository(CacheRepository local, CacheRepository shared, long maxLocalTtlInMillis) {
+
+    if (local == null) {
+      throw new NullPointerException("Local repository should not be null");
+    }
+
+    if (shared == null) {
+      throw new NullPointerException("Shared repository should not be null");
+    }
+
+    if (maxLocalTtlInMillis < 0) {
+      throw new IllegalArgumentException("maxLocalTtlInMillis should be >=0 but is '" + maxLocalTtlInMillis + "'");
+    }
+
+    this.local = local;
+    this.shared = shared;
+    this.persistent = local instanceof PersistentCacheRepository ? (PersistentCacheRepository) local : null;
+    this.maxLocalTtlInMillis = maxLocalTtlInMillis;
+  }
+
+  /**
+   * Registers regions so that their entries found in shared tier are copied to local one, regions are registered
+   * also on first upsert of their entry.
+   */
+  public void register(Collection<CacheRegion> regions) {
+    for (CacheRegion region : regions) {
+      localRegionOf(region);
+    }
+  }
+
+  @Override
+  public CacheQueryResult fetchIfChanged(String key, String etag) throws CacheRepositoryException {
+
+    if (persistent != null && persistent.getUnconfirmed() > 0) {
+      final String recoveredEtag = persistent.getUnconfirmedEtag(key);
+      if (recoveredEtag != null) {
+        return confirmed(key, etag, recoveredEtag);
+      }
+    }
+
+    final CacheQueryResult cached = local.fetchIfChanged(key, etag);
+
+    if (!cached.isUpsertNeeded()) {
+      return cached;
+    }
+
+    final CacheQueryResult result = shared.fetchIfChanged(key, etag);
+
+    if (!result.isUpsertNeeded() && result.getStoredEtag() != null && !result.isStreamed()) {
+      final CacheRegion region = localRegionOf(key);
+      if (region != null) {
+        upsertLocally(key, result.getPayloadBytes(), result.getStoredEtag(), result.getContentType(), result.getEncoding(),
+                region, null);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Checks entry recovered by local tier with shared one, by etag so that payload is transferred only if it changed.
+   */
+  private CacheQueryResult confirmed(String key, String etag, String recoveredEtag) throws CacheRepositoryException {
+
+    final CacheQueryResult current = shared.fetchIfChanged(key, recoveredEtag);
+
+    if (current.isUpsertNeeded()) {
+      local.remove(key);
+      return current;
+    }
+
+    if (current.getStoredEtag() == null) {
+      persistent.confirm(key);
+      return fetchIfChanged(key, etag);
+    }
+
+    final CacheRegion region = localRegionOf(key);
+    if (region != null && !current.isStreamed()) {
+      upsertLocally(key, current.getPayloadBytes(), current.getStoredEtag(), current.getContentType(),
+              current.getEncoding(), region, null);
+    } else {
+      local.remove(key);
+    }
+
+    return current.getStoredEtag().equals(etag) ? RESULT_FOUND_BUT_NOT_CHANGED : current;
+  }
+
+  @Override
+  public void upsert(String key, byte[] content, String etag, String contentType, String encoding, CacheRegion region, String source) throws CacheRepositoryException {
+    shared.upsert(key, content, etag, contentType, encoding, region, source);
+    upsertLocally(key, content, etag, contentType, encoding, localRegionOf(region), source);
+  }
+
+  @Override
+  public void upsert(String key, List<ByteBuffer> segments, int size, String etag, String contentType, String encoding,
+                     CacheRegion region, String source) throws CacheRepositoryException {
+    shared.upsert(key, segments, size, etag, contentType, encoding, region, source);
+    try {
+      local.upsert(key, segments, size, etag, contentType, encoding, localRegionOf(region), source);
+    } catch (CacheRepositoryException e) {
+      LOG.debug("Entry '{}' not written to local tier due to {}", key, e.getMessage());
+    }
+  }
+
+  @Override
+  public void upsert(List<Upsert> upserts) throws CacheRepositoryException {
+
+    shared.upsert(upserts);
+
+    for (Upsert upsert : upserts) {
+      upsertLocally(upsert.getKey(), upsert.getContent(), upsert.getEtag(), upsert.getContentType(), upsert.getEncoding(),
+              localRegionOf(upsert.getRegion()), upsert.getSource());
+    }
+  }
+
+  @Override
+  public void remove(String key) throws CacheRepositoryException {
+    local.remove(key);
+    shared.remove(key);
+  }
+
+  @Override
+  public long evictRegion(CacheRegion region) throws CacheRepositoryException {
+    local.evictRegion(region);
+    return shared.evictRegion(region);
+  }
+
+  @Override
+  public long evictRegion(CacheRegion region, int maxEntriesDeletedInOneBatch) throws CacheRepositoryException {
+    local.evictRegion(region, maxEntriesDeletedInOneBatch);
+    return shared.evictRegion(region, maxEntriesDeletedInOneBatch);
+  }
+
+  @Override
+  public void warmUp() throws CacheRepositoryException {
+    local.warmUp();
+    shared.warmUp();
+  }
+
+  @Override
+  public void dispose() {
+    local.dispose();
+    shared.dispose();
+  }
+
+  @Override
+  public int getMaxEntriesDeletedInOneBatch() {
+    return shared.getMaxEntriesDeletedInOneBatch();
+  }
+
+  public CacheRepository getLocal() {
+    return local;
+  }
+
+  public CacheRepository getShared() {
+    return shared;
+  }
+
+  public long getMaxLocalTtlInMillis() {
+    return maxLocalTtlInMillis;
+  }
+
+  private void upsertLocally(String key, byte[] content, String etag, String contentType, String encoding, CacheRegion region, String source) {
+    try {
+      local.upsert(key, content, etag, contentType, encoding, region, source);
+    } catch (CacheRepositoryException e) {
+      LOG.debug("Entry '{}' not written to local tier due to {}", key, e.getMessage());
+    }
+  }
+
+  private CacheRegion localRegionOf(CacheRegion region) {
+
+    CacheRegion localRegion = localRegions.get(region.getId());
+
+    if (localRegion == null) {
+      final long ttl = region.getTtl() == 0 ? 0 : region.getTtlUnit().toMillis(region.getTtl());
+      final long localTtl = maxLocalTtlInMillis == 0 ? ttl : ttl == 0 ? maxLocalTtlInMillis : min(ttl, maxLocalTtlInMillis);
+      localRegion = new CacheRegion(region.getId(), localTtl, MILLISECONDS, region.getKeyStrategy());
+
+      final String wildcard = region.getKeyStrategy().wildcardKeyFor(region);
+      //  wildcard is in form namespace:regionId:*
+      localRegionsByPrefix.put(wildcard.substring(0, wildcard.length() - 1), localRegion);
+      localRegions.put(region.getId(), localRegion);
+    }
+
+    return localRegion;
+  }
+
+  /**
+   * @return region of the key or null if it was not registered
+   */
+  private CacheRegion localRegionOf(String key) {
+
+    for (Map.Entry<String, CacheRegion> region : localRegionsByPrefix.entrySet()) {
+      if (key.startsWith(region.getKey())) {
+        return region.getValue();
+      }
+    }
+
+    return null;
+  }
+}
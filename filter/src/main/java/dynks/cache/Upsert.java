@@ -0,0 +1,56 @@
+package dynks.cache;
+
+/**
+ * Single insert or update of cache entry, used when entries are written in batches.
+ */
+public class Upsert {
+
+  private final String key;
+  private final byte[] content;
+  private final String etag;
+  private final String contentType;
+  private final String encoding;
+  private final CacheRegion region;
+  private final String source;
+
+  /**
+   * @see CacheRepository#upsert(String, byte[], String, String, String, CacheRegion, String)
+   */
+  public Upsert(String key, byte[] content, String etag, String contentType, String encoding, CacheRegion region, String source) {
+    this.key = key;
+    this.content = content;
+    this.etag = etag;
+    this.contentType = contentType;
+    this.encoding = encoding;
+    this.region = region;
+    this.source = source;
+  }
+
+  public String getKey() {
+    return key;
+  }
+
+  public byte[] getContent() {
+    return content;
+  }
+
+  public String getEtag() {
+    return etag;
+  }
+
+  public String getContentType() {
+    return contentType;
+  }
+
+  public String getEncoding() {
+    return encoding;
+  }
+
+  public CacheRegion getRegion() {
+    return region;
+  }
+
+  public String getSource() {
+    return source;
+  }
+}
@@ -0,0 +1,306 @@
+package dynks.cache;
+
+import dynks.jmx.WriteBehindMBean;
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static dynks.Threads.newExecutor;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Repository decorator writing upserts in background so that request thread does not wait for the write. Upserts are
+ * put into bounded queue drained by background threads that write them in batches (see {@link CacheRepository#upsert(List)}).
+ * Upsert of key that is already waiting in the queue replaces pending one so that only the latest version is written.
+ * When queue is full new upsert is either dropped or written by the calling thread, depending on {@link Overflow}.
+ * <p>
+ * Entries are not readable until they are written. Pending upserts are discarded when entry or its region is removed.
+ * Upserts are taken from pending and written while sharing the eviction lock, so that eviction of region waits for
+ * batches already taken by writers and entries written before eviction never land after it.
+ */
+@ThreadSafe
+public class WriteBehindCacheRepository implements CacheRepository, WriteBehindMBean {
+
+  private static final Logger LOG = getLogger(WriteBehindCacheRepository.class);
+
+  public enum Overflow {
+    /**
+     * Upsert is not written at all.
+     */
+    DROP,
+    /**
+     * Upsert is written synchronously by calling thread (backpressure).
+     */
+    CALLER_RUNS
+  }
+
+  private final CacheRepository delegate;
+  private final BlockingQueue<String> queue;
+  private final ConcurrentHashMap<String, Upsert> pending;
+  private final int batchSize;
+  private final Overflow overflow;
+  private final ReadWriteLock evicting = new ReentrantReadWriteLock();
+  private ExecutorService executor;
+
+  private final LongAdder enqueued = new LongAdder();
+  private final LongAdder coalesced = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder writtenByCaller = new LongAdder();
+  private final LongAdder written = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+
+  /**
+   * Creates repository without background threads, see {@link #start(int, boolean)}.
+   *
+   * @param queueSize maximum number of entries waiting to be written
+   * @param batchSize maximum number of entries written in one batch
+   */
+  public WriteBehindCacheRepository(CacheRepository delegate, int queueSize, int batchSize, Overflow overflow) {
+
+    if (delegate == null) {
+      throw new NullPointerException("Repository to write to should not be null");
+    }
+
+    if (overflow == null) {
+      throw new NullPointerException("Overflow policy should not be null");
+    }
+
+    if (queueSize < 1) {
+      throw new IllegalArgumentException("queueSize should be >=1 but is '" + queueSize + "'");
+    }
+
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("batchSize should be >=1 but is '" + batchSize + "'");
+    }
+
+    this.delegate = delegate;
+    this.queue = new ArrayBlockingQueue<>(queueSize);
+    this.pending = new ConcurrentHashMap<>(queueSize);
+    this.batchSize = batchSize;
+    this.overflow = overflow;
+  }
+
+  /**
+   * Starts background threads draining the queue.
+   */
+  public void start(int threads, boolean virtual) {
+
+    executor = newExecutor("dynks-write-behind", threads, virtual);
+
+    for (int i = 0; i < threads; i++) {
+      executor.execute(this::drain);
+    }
+  }
+
+  @Override
+  public void upsert(String key, byte[] content, String etag, String contentType, String encoding, CacheRegion region, String source) throws CacheRepositoryException {
+
+    if (key == null) {
+      throw new CacheRepositoryException(new NullPointerException("Key to upsert should not be null"));
+    }
+
+    final Upsert upsert = new Upsert(key, content, etag, contentType, encoding, region, source);
+
+    if (pending.put(key, upsert) != null) {
+      //  key is already queued, only the latest version will be written
+      coalesced.increment();
+      return;
+    }
+
+    if (queue.offer(key)) {
+      enqueued.increment();
+      return;
+    }
+
+    evicting.readLock().lock();
+    try {
+      //  upsert of the same key might have been coalesced into this one in the meantime, both are gone
+      final Upsert rejected = pending.remove(key);
+
+      if (rejected == null) {
+        return;
+      }
+
+      if (overflow == Overflow.CALLER_RUNS) {
+        writtenByCaller.increment();
+        delegate.upsert(rejected.getKey(), rejected.getContent(), rejected.getEtag(), rejected.getContentType(),
+                rejected.getEncoding(), rejected.getRegion(), rejected.getSource());
+      } else {
+        dropped.increment();
+      }
+    } finally {
+      evicting.readLock().unlock();
+    }
+  }
+
+  private void drain() {
+
+    final List<String> keys = new ArrayList<>(batchSize);
+
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        keys.add(queue.take());
+        queue.drainTo(keys, batchSize - 1);
+        write(keys);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (RuntimeException e) {
+        LOG.error("Unexpected error while writing behind", e);
+      } finally {
+        keys.clear();
+      }
+    }
+  }
+
+  /**
+   * Writes all pending upserts using calling thread.
+   */
+  public void flush() {
+
+    final List<String> keys = new ArrayList<>(batchSize);
+
+    while (queue.drainTo(keys, batchSize) > 0) {
+      write(keys);
+      keys.clear();
+    }
+  }
+
+  private void write(List<String> keys) {
+
+    evicting.readLock().lock();
+    try {
+      final List<Upsert> batch = new ArrayList<>(keys.size());
+
+      for (String key : keys) {
+        final Upsert upsert = pending.remove(key);
+        //  might have been removed from cache in the meantime
+        if (upsert != null) {
+          batch.add(upsert);
+        }
+      }
+
+      if (batch.isEmpty()) {
+        return;
+      }
+
+      try {
+        delegate.upsert(batch);
+        written.add(batch.size());
+      } catch (CacheRepositoryException e) {
+        failed.add(batch.size());
+        LOG.warn("{} entries not cached due to {}:{}", batch.size(), e.getCause().getClass().toString(), e.getCause().getMessage());
+      }
+    } finally {
+      evicting.readLock().unlock();
+    }
+  }
+
+  @Override
+  public CacheQueryResult fetchIfChanged(String key, String etag) throws CacheRepositoryException {
+    return delegate.fetchIfChanged(key, etag);
+  }
+
+  @Override
+  public void remove(String key) throws CacheRepositoryException {
+    if (key != null) {
+      pending.remove(key);
+    }
+    delegate.remove(key);
+  }
+
+  @Override
+  public void warmUp() throws CacheRepositoryException {
+    delegate.warmUp();
+  }
+
+  @Override
+  public long evictRegion(CacheRegion region) throws CacheRepositoryException {
+    discardPending(region);
+    return delegate.evictRegion(region);
+  }
+
+  @Override
+  public long evictRegion(CacheRegion region, int maxEntriesDeletedInOneBatch) throws CacheRepositoryException {
+    discardPending(region);
+    return delegate.evictRegion(region, maxEntriesDeletedInOneBatch);
+  }
+
+  /**
+   * Waits for batches being written, upserts queued afterwards are written after eviction.
+   */
+  private void discardPending(CacheRegion region) {
+    evicting.writeLock().lock();
+    try {
+      pending.values().removeIf(upsert -> upsert.getRegion().equals(region));
+    } finally {
+      evicting.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Stops background threads, writes what is still pending and disposes underlying repository.
+   */
+  @Override
+  public void dispose() {
+
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+
+    flush();
+    delegate.dispose();
+  }
+
+  @Override
+  public int getMaxEntriesDeletedInOneBatch() {
+    return delegate.getMaxEntriesDeletedInOneBatch();
+  }
+
+  public CacheRepository getDelegate() {
+    return delegate;
+  }
+
+  @Override
+  public int getPending() {
+    return pending.size();
+  }
+
+  @Override
+  public long getEnqueued() {
+    return enqueued.sum();
+  }
+
+  @Override
+  public long getCoalesced() {
+    return coalesced.sum();
+  }
+
+  @Override
+  public long getDropped() {
+    return dropped.sum();
+  }
+
+  @Override
+  public long getWrittenByCaller() {
+    return writtenByCaller.sum();
+  }
+
+  @Override
+  public long getWritten() {
+    return written.sum();
+  }
+
+  @Override
+  public long getFailed() {
+    return failed.sum();
+  }
+}
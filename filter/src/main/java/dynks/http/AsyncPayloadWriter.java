@@ -0,0 +1,88 @@
+package dynks.http;
+
+import dynks.cache.PayloadParts;
+import net.jcip.annotations.NotThreadSafe;
+import org.slf4j.Logger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static java.lang.Math.min;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Writes cached payload to the client using Servlet 3.1 non-blocking IO. Payload is written in slices only as long as
+ * the socket is writable, remaining slices are written when container notifies that writing is possible again so that
+ * slow clients do not pin request threads. Async context is completed after the last slice was accepted or on error.
+ * <p>
+ * Payload is taken from {@link PayloadParts} so that payload read lazily (stored in chunks or off heap) is neither read
+ * nor copied as a whole, next part is read only after previous one was accepted.
+ * <p>
+ * Container guarantees that callbacks for single response are not invoked concurrently.
+ */
+@NotThreadSafe
+public class AsyncPayloadWriter implements WriteListener {
+
+  private static final Logger LOG = getLogger(AsyncPayloadWriter.class);
+
+  private final PayloadParts payload;
+  private final int sliceSize;
+  private final ServletOutputStream out;
+  private final AsyncContext context;
+  private ByteBuffer part;
+  private int position;
+
+  public AsyncPayloadWriter(PayloadParts payload, int sliceSize, ServletOutputStream out, AsyncContext context) {
+
+    if (payload == null) {
+      throw new NullPointerException("Payload should not be null");
+    }
+
+    if (sliceSize < 1) {
+      throw new IllegalArgumentException("sliceSize should be >=1 but is '" + sliceSize + "'");
+    }
+
+    this.payload = payload;
+    this.sliceSize = sliceSize;
+    this.out = out;
+    this.context = context;
+  }
+
+  @Override
+  public void onWritePossible() throws IOException {
+
+    while (out.isReady()) {
+
+      while (part == null || !part.hasRemaining()) {
+        part = payload.next();
+        if (part == null) {
+          //  last slice was accepted by the container
+          context.complete();
+          return;
+        }
+      }
+
+      final int length = min(sliceSize, part.remaining());
+      out.write(part.array(), part.arrayOffset() + part.position(), length);
+      part.position(part.position() + length);
+      position += length;
+    }
+  }
+
+  @Override
+  public void onError(Throwable t) {
+    //  usually client disconnected before whole payload was sent
+    LOG.debug("Async write of cached payload failed after {} bytes: {}", position, t.getMessage());
+    context.complete();
+  }
+
+  /**
+   * @return number of bytes accepted by the container so far
+   */
+  public int getPosition() {
+    return position;
+  }
+}
@@ -0,0 +1,226 @@
+package dynks.http;
+
+import dynks.cache.CacheByURIRegionRepository;
+import org.slf4j.Logger;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+import static dynks.Threads.newExecutor;
+import static dynks.cache.CacheRegion.Cacheability.PASSTHROUGH;
+import static java.lang.System.nanoTime;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Populates cache by replaying GET requests of given URIs against this node, so that they go through the whole filter
+ * chain exactly as requests of clients do. URIs not belonging to any cache region are skipped. At most concurrency
+ * requests are in flight and at most requestsPerSecond are started every second so that backend is not overloaded by
+ * the warm up itself.
+ */
+public class CacheWarmer {
+
+  private static final Logger LOG = getLogger(CacheWarmer.class);
+
+  public static final String CLASSPATH_PREFIX = "classpath:";
+
+  /**
+   * Source standing for hot URIs recorded by {@link dynks.cache.HotKeyTracker} before last shutdown.
+   */
+  public static final String RECORDED_SOURCE = "recorded";
+
+  private static final int READ_BUFFER_SIZE = 8192;
+
+  private final String baseUrl;
+  private final CacheByURIRegionRepository policy;
+  private final int concurrency;
+  private final long intervalNanos;
+  private final int timeoutInMillis;
+  private final boolean virtual;
+
+  /**
+   * @param baseUrl           scheme, host and port of this node (i.e. http://localhost:8080), URIs are expected to
+   *                          contain context path
+   * @param requestsPerSecond maximum number of requests started per second, 0 means no limit
+   */
+  public CacheWarmer(String baseUrl, CacheByURIRegionRepository policy, int concurrency, int requestsPerSecond, int timeoutInMillis, boolean virtual) {
+
+    if (baseUrl == null) {
+      throw new NullPointerException("Base url should not be null");
+    }
+
+    if (policy == null) {
+      throw new NullPointerException("Cache regions should not be null");
+    }
+
+    if (concurrency < 1) {
+      throw new IllegalArgumentException("concurrency should be >=1 but is '" + concurrency + "'");
+    }
+
+    if (requestsPerSecond < 0) {
+      throw new IllegalArgumentException("requestsPerSecond should be >=0 but is '" + requestsPerSecond + "'");
+    }
+
+    this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    this.policy = policy;
+    this.concurrency = concurrency;
+    this.intervalNanos = requestsPerSecond == 0 ? 0 : SECONDS.toNanos(1) / requestsPerSecond;
+    this.timeoutInMillis = timeoutInMillis;
+    this.virtual = virtual;
+  }
+
+  /**
+   * Replays given URIs blocking until all of them are processed.
+   *
+   * @param uris request URIs with optional query string
+   * @return number of URIs that were successfully requested
+   */
+  public long warm(List<String> uris) throws InterruptedException {
+
+    final long start = nanoTime();
+    final LongAdder warmed = new LongAdder();
+    final LongAdder failed = new LongAdder();
+    final Semaphore inFlight = new Semaphore(concurrency);
+    final ExecutorService executor = newExecutor("dynks-prewarm", concurrency, virtual);
+    int skipped = 0;
+    long nextStart = nanoTime();
+
+    try {
+      for (String uri : uris) {
+
+        if (isSkipped(uri)) {
+          skipped++;
+          continue;
+        }
+
+        final long wait = nextStart - nanoTime();
+        if (wait > 0) {
+          NANOSECONDS.sleep(wait);
+        }
+        nextStart = Math.max(nextStart, nanoTime() - intervalNanos) + intervalNanos;
+
+        inFlight.acquire();
+        executor.execute(() -> {
+          try {
+            final int status = request(uri);
+            if (status < 400) {
+              warmed.increment();
+            } else {
+              failed.increment();
+              LOG.debug("Warming up '{}' failed with status {}", uri, status);
+            }
+          } catch (IOException | RuntimeException e) {
+            failed.increment();
+            LOG.debug("Warming up '{}' failed due to {}", uri, e.getMessage());
+          } finally {
+            inFlight.release();
+          }
+        });
+      }
+
+      //  waiting for requests still in flight
+      inFlight.acquire(concurrency);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    LOG.info("Cache warmed up with {} URIs in {} ms ({} failed, {} not cacheable)", warmed.sum(),
+            NANOSECONDS.toMillis(nanoTime() - start), failed.sum(), skipped);
+    return warmed.sum();
+  }
+
+  private boolean isSkipped(String uri) {
+    final int query = uri.indexOf('?');
+    final String path = query < 0 ? uri : uri.substring(0, query);
+    return policy.getForURI(path).getCacheability() == PASSTHROUGH;
+  }
+
+  /**
+   * Requests given URI reading the whole response so that it is captured and cached by the filter.
+   *
+   * @return HTTP status of the response
+   */
+  protected int request(String uri) throws IOException {
+
+    final HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + uri).openConnection();
+    connection.setConnectTimeout(timeoutInMillis);
+    connection.setReadTimeout(timeoutInMillis);
+
+    try {
+      final int status = connection.getResponseCode();
+      try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+        if (in != null) {
+          final byte[] buffer = new byte[READ_BUFFER_SIZE];
+          while (in.read(buffer) >= 0) {
+            //  discarding, only caching side effect is needed
+          }
+        }
+      }
+      return status;
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  /**
+   * Reads URIs from given source, one per line. Empty lines and lines starting with # are ignored.
+   *
+   * @param source path to file or resource prefixed with {@link #CLASSPATH_PREFIX}
+   * @throws FileNotFoundException if source does not exist
+   */
+  public static List<String> read(String source) throws IOException {
+
+    final InputStream in;
+
+    if (source.startsWith(CLASSPATH_PREFIX)) {
+      final String resource = source.substring(CLASSPATH_PREFIX.length());
+      in = Thread.currentThread().getContextClassLoader().getResourceAsStream(resource);
+      if (in == null) {
+        throw new FileNotFoundException("Resource '" + resource + "' not found on classpath");
+      }
+    } else {
+      if (!Files.exists(Paths.get(source))) {
+        throw new FileNotFoundException("File '" + source + "' not found");
+      }
+      in = Files.newInputStream(Paths.get(source));
+    }
+
+    final List<String> uris = new ArrayList<>();
+
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (!line.isEmpty() && line.charAt(0) != '#') {
+          uris.add(line);
+        }
+      }
+    }
+
+    return uris;
+  }
+
+  /**
+   * Writes URIs to given file in format readable by {@link #read(String)}.
+   */
+  public static void write(Path file, List<String> uris) throws IOException {
+    try (Writer writer = Files.newBufferedWriter(file, UTF_8)) {
+      writer.write("# recorded by dynks, most requested first\n");
+      for (String uri : uris) {
+        writer.write(uri);
+        writer.write('\n');
+      }
+    }
+  }
+}
@@ -7,6 +7,9 @@ import java.io.IOException;
 import java.io.OutputStream;
 
 /**
+ * Stream that is forwarding everything written to the client as soon as it is produced and at the same time
+ * accumulates it in cache stream so that it can be stored after response is sent.
+ *
  * Created by jszczepankiewicz on 2015-03-20.
  */
 public class CachedResponseStream extends ServletOutputStream {
@@ -20,25 +23,30 @@ public class CachedResponseStream extends ServletOutputStream {
         super();
         closed = false;
         this.response = response;
+        this.output = response.getOutputStream();
         this.cache = cache;
     }
 
     @Override
     public boolean isReady() {
-        //  FIXM: understand me
-        return true;
+        return output.isReady();
     }
 
     @Override
     public void setWriteListener(WriteListener writeListener) {
-        System.out.println("\tXX: setWriteListener");
+        output.setWriteListener(writeListener);
     }
 
+    /**
+     * Closes cache stream, the client stream is only flushed as it is owned by container and
+     * response is still being processed by the filter.
+     */
     public void close() throws IOException {
         if (closed) {
             throw new IOException(
                     "This output stream has already been closed");
         }
+        output.flush();
         cache.close();
         closed = true;
     }
@@ -48,6 +56,7 @@ public class CachedResponseStream extends ServletOutputStream {
             throw new IOException(
                     "Cannot flush a closed output stream");
         }
+        output.flush();
         cache.flush();
     }
 
@@ -56,6 +65,7 @@ public class CachedResponseStream extends ServletOutputStream {
             throw new IOException(
                     "Cannot write to a closed output stream");
         }
+        output.write(b);
         cache.write((byte)b);
     }
 
@@ -69,6 +79,7 @@ public class CachedResponseStream extends ServletOutputStream {
             throw new IOException(
                     "Cannot write to a closed output stream");
         }
+        output.write(b, off, len);
         cache.write(b, off, len);
     }
 
@@ -9,6 +9,8 @@ import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 
 /**
+ * Response wrapper forwarding generated content to the client and copying it into cache stream at the same time.
+ *
  * Created by jszczepankiewicz on 2015-03-20.
  */
 public class CachedResponseWrapper extends HttpServletResponseWrapper {
@@ -24,12 +26,36 @@ public class CachedResponseWrapper extends HttpServletResponseWrapper {
         this.cache = cache;
     }
 
+    @Override
+    public void setContentLength(int len) {
+        super.setContentLength(len);
+        expectSize(len);
+    }
+
+    @Override
+    public void setContentLengthLong(long len) {
+        super.setContentLengthLong(len);
+        expectSize(len);
+    }
+
+    private void expectSize(long len) {
+        if (cache instanceof CaptureBuffer) {
+            ((CaptureBuffer) cache).expectSize(len);
+        }
+    }
+
     public ServletOutputStream createOutputStream() throws IOException {
         return (new CachedResponseStream(origResponse, cache));
     }
 
     public void flushBuffer() throws IOException {
-        stream.flush();
+        if (writer != null) {
+            writer.flush();
+        } else if (stream != null) {
+            stream.flush();
+        } else {
+            origResponse.flushBuffer();
+        }
     }
 
     public ServletOutputStream getOutputStream() throws IOException {
@@ -54,7 +80,7 @@ public class CachedResponseWrapper extends HttpServletResponseWrapper {
         }
 
         stream = createOutputStream();
-        writer = new PrintWriter(new OutputStreamWriter(stream, "UTF-8"));
+        writer = new PrintWriter(new OutputStreamWriter(stream, getCharacterEncoding()));
         return (writer);
     }
 }
@@ -5,22 +5,35 @@ import com.typesafe.config.ConfigFactory;
 import dynks.Frontend;
 import dynks.ProbeFactory.Probe;
 import dynks.cache.*;
+import dynks.cache.WriteBehindCacheRepository.Overflow;
+import dynks.jmx.CircuitBreakerMBean;
+import dynks.jmx.HotKeysMBean;
 import dynks.jmx.JmxServer;
-import dynks.redis.RedisCacheRepositoryConfigBuilder;
+import dynks.jmx.PrewarmMBean;
+import dynks.jmx.WriteBehindMBean;
 import org.slf4j.Logger;
 
 import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
 
 import static dynks.ProbeFactory.getProbe;
+import static dynks.Threads.newExecutor;
 import static dynks.cache.CacheRegion.Cacheability.PASSTHROUGH;
 import static dynks.http.ETag.*;
 import static dynks.http.HttpMethod.GET;
+import static dynks.jmx.CircuitBreakerMBean.CIRCUIT_BREAKER_JMX_NAME;
 import static dynks.jmx.Configuration.HARDENED_MODE;
+import static dynks.jmx.HotKeysMBean.HOT_KEYS_JMX_NAME;
+import static dynks.jmx.PrewarmMBean.PREWARM_JMX_NAME;
+import static dynks.jmx.Configuration.STORAGE;
+import static dynks.jmx.WriteBehindMBean.WRITE_BEHIND_JMX_NAME;
 import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static javax.servlet.http.HttpServletResponse.SC_NOT_MODIFIED;
 import static javax.servlet.http.HttpServletResponse.SC_OK;
 import static org.slf4j.LoggerFactory.getLogger;
@@ -39,16 +52,124 @@ public class CachingFilter implements Filter {
   private CacheByURIRegionRepository policy;
   private boolean hardenedModeEnabled;
   private JmxServer jmxServer;
+  private SegmentPool segments;
+  private boolean asyncHits;
+  private long asyncMinSize;
+  private int asyncSliceSize;
+  private long asyncTimeout;
+  private ExecutorService background;
+  private HotKeyTracker hotKeys;
+  private AdmissionFilter admission;
+  private String recordFile;
+  private int recordSize;
+  private Prewarm prewarm;
 
   @Override
   public void init(FilterConfig filterConfig) throws ServletException {
     Config config = ConfigFactory.load("dynks");
     hardenedModeEnabled = config.getBoolean(HARDENED_MODE);
-    cache = RedisCacheRepositoryConfigBuilder.build(config);
+    segments = new SegmentPool(config.getBytes("dynks.capture.segmentSize").intValue(),
+            config.getInt("dynks.capture.maxPooledSegments"), config.getBoolean("dynks.capture.direct"));
+    asyncHits = config.getBoolean("dynks.async.enabled");
+    asyncMinSize = config.getBytes("dynks.async.minSize");
+    asyncSliceSize = config.getBytes("dynks.async.sliceSize").intValue();
+    asyncTimeout = config.getDuration("dynks.async.timeout", MILLISECONDS);
+    cache = StorageProviders.repositoryFor(config.getString(STORAGE), config);
+    if (config.getBoolean("dynks.warmUp.enabled")) {
+      warmUp(config.getBoolean("dynks.warmUp.failFast"));
+    }
     policy = ResponseCacheByURIBuilder.build(config);
-    Frontend.initialize(cache, policy);
+    background = newExecutor("dynks-background", config.getInt("dynks.background.threads"), config.getBoolean("dynks.virtualThreads"));
+    if (AdmissionFilter.isRequiredFor(policy.getRegions().values())) {
+      admission = new AdmissionFilter(config.getInt("dynks.admission.width"), background);
+    }
     jmxServer = new JmxServer(config);
     jmxServer.start();
+
+    cache.registerMBeans(jmxServer);
+
+    if (config.getBoolean("dynks.circuitBreaker.enabled")) {
+      CircuitBreakerCacheRepository guarded = new CircuitBreakerCacheRepository(cache, circuitBreakerOf(config));
+      jmxServer.register(CIRCUIT_BREAKER_JMX_NAME, guarded, CircuitBreakerMBean.class);
+      cache = guarded;
+    }
+
+    //  outside of circuit breaker so that local hits are served while it is open
+    if (config.getBoolean("dynks.l1.enabled")) {
+      CacheRepository local = StorageProviders.repositoryFor(config.getString("dynks.l1.storage"), config);
+      TieredCacheRepository tiered = new TieredCacheRepository(local, cache, config.getDuration("dynks.l1.ttl", MILLISECONDS));
+      tiered.register(policy.getRegions().values());
+      local.registerMBeans(jmxServer);
+      cache = tiered;
+    }
+
+    if (config.getBoolean("dynks.writeBehind.enabled")) {
+      WriteBehindCacheRepository writeBehind = new WriteBehindCacheRepository(cache, config.getInt("dynks.writeBehind.queueSize"),
+              config.getInt("dynks.writeBehind.batchSize"), Overflow.valueOf(config.getString("dynks.writeBehind.overflow")));
+      writeBehind.start(config.getInt("dynks.writeBehind.threads"), config.getBoolean("dynks.virtualThreads"));
+      jmxServer.register(WRITE_BEHIND_JMX_NAME, writeBehind, WriteBehindMBean.class);
+      cache = writeBehind;
+    }
+
+    final boolean recording = config.getBoolean("dynks.prewarm.record.enabled");
+
+    if (config.getBoolean("dynks.hotKeys.enabled") || recording) {
+      //  recorded URIs are the hottest keys so every region has to track at least as many as are written
+      final int topK = recording ? Math.max(config.getInt("dynks.hotKeys.topK"), config.getInt("dynks.prewarm.record.size"))
+              : config.getInt("dynks.hotKeys.topK");
+      hotKeys = new HotKeyTracker(config.getInt("dynks.hotKeys.width"), topK, background);
+      jmxServer.register(HOT_KEYS_JMX_NAME, hotKeys, HotKeysMBean.class);
+    }
+
+    if (recording) {
+      recordFile = config.getString("dynks.prewarm.record.file");
+      recordSize = config.getInt("dynks.prewarm.record.size");
+    }
+
+    if (config.getBoolean("dynks.prewarm.enabled")) {
+      prewarm = prewarmOf(config);
+      jmxServer.register(PREWARM_JMX_NAME, prewarm, PrewarmMBean.class);
+      if (config.getBoolean("dynks.prewarm.onStart")) {
+        //  after delay so that node is already serving requests when they are sent to it
+        prewarm.start(config.getDuration("dynks.prewarm.delay", MILLISECONDS));
+      }
+    }
+
+    Frontend.initialize(cache, policy, background, prewarm);
+  }
+
+  private Prewarm prewarmOf(Config config) {
+    final CacheWarmer warmer = new CacheWarmer(config.getString("dynks.prewarm.baseUrl"), policy,
+            config.getInt("dynks.prewarm.concurrency"), config.getInt("dynks.prewarm.rate"),
+            (int) config.getDuration("dynks.prewarm.timeout", MILLISECONDS), config.getBoolean("dynks.virtualThreads"));
+    return new Prewarm(warmer, config.getStringList("dynks.prewarm.sources"), config.getString("dynks.prewarm.record.file"));
+  }
+
+  /**
+   * Opens connections before first request arrives. When storage is not reachable filter either fails to start or
+   * starts anyway, connecting lazily on the first requests (with hardened mode they are passed through until then).
+   */
+  private void warmUp(boolean failFast) throws ServletException {
+
+    final long start = nanoTime();
+
+    try {
+      cache.warmUp();
+      LOG.info("Storage warmed up in {} ms", NANOSECONDS.toMillis(nanoTime() - start));
+    } catch (CacheRepositoryException e) {
+      if (failFast) {
+        cache.dispose();
+        throw new ServletException("Storage is not reachable", e);
+      }
+      LOG.warn("Storage is not reachable, starting without warm up {}:{}", e.getCause().getClass().toString(), e.getCause().getMessage());
+    }
+  }
+
+  private static CircuitBreaker circuitBreakerOf(Config config) {
+    return new CircuitBreaker(config.getInt("dynks.circuitBreaker.windowSize"), config.getInt("dynks.circuitBreaker.minimumCalls"),
+            config.getInt("dynks.circuitBreaker.failureRateThreshold"), config.getDuration("dynks.circuitBreaker.slowCallDuration", NANOSECONDS),
+            config.getInt("dynks.circuitBreaker.slowCallRateThreshold"), config.getDuration("dynks.circuitBreaker.openDuration", NANOSECONDS),
+            config.getInt("dynks.circuitBreaker.halfOpenCalls"));
   }
 
   @Override
@@ -74,6 +195,10 @@ public class CachingFilter implements Filter {
           return;
         }
 
+        if (hotKeys != null) {
+          hotKeys.record(cacheRegion, uriOf(request));
+        }
+
         String key = cacheRegion.getKeyStrategy().keyFor(request, cacheRegion);
         String requestEtag = getFrom(request);
         probe.start('f');
@@ -81,24 +206,44 @@ public class CachingFilter implements Filter {
         probe.stop();
 
         if (result.isUpsertNeeded()) {
+          if (admission != null && !admission.admit(cacheRegion, key)) {
+            //  not requested often enough to be worth storing
+            doFiltering(chain, probe, req, res);
+            probe.log("not-admitted");
+            return;
+          }
           probe.log("upsert");
-          ByteArrayOutputStream baos = new ByteArrayOutputStream();
-          CachedResponseWrapper wrappedResponse = new CachedResponseWrapper(response, baos);
-          //  invoking "production" of content from underlying resources
-          doFiltering(chain, probe, req, wrappedResponse);
-          //  caching response for future use
-          String encoding = wrappedResponse.getCharacterEncoding();
-          String generated = baos.toString(encoding);
-          probe.log(baos.size());
-          String etag = of(generated, new StringBuilder(SIZEOF_ETAG));
+          //  etag has to be known before first byte is sent to the client
+          String etag = next(new StringBuilder(SIZEOF_ETAG));
           probe.log(etag);
-          probe.start('u');
-          cache.upsert(key, generated, etag, wrappedResponse.getContentType(), encoding, cacheRegion);
-          probe.stop();
           writeIn(response, etag);
-          //  now we need to copy from generated stream into original stream
-          res.getOutputStream().write(baos.toByteArray());
-          res.getOutputStream().flush();
+          CaptureBuffer captured = new CaptureBuffer(segments, cacheRegion.getMaxEntrySize());
+          try {
+            CachedResponseWrapper wrappedResponse = new CachedResponseWrapper(response, captured);
+            //  invoking "production" of content from underlying resources, it is streamed to the client as it is generated
+            doFiltering(chain, probe, req, wrappedResponse);
+            //  sending rest of the content to the client before cache is updated
+            wrappedResponse.flushBuffer();
+            if (captured.isOverflowed()) {
+              //  content was already streamed to the client, entry is too large to be cached
+              probe.log("too-large");
+              return;
+            }
+            //  caching response for future use
+            probe.log(captured.size());
+            probe.start('u');
+            try {
+              //  content is passed in segments so that large response is not copied into single array
+              cache.upsert(key, captured.segments(), captured.size(), etag, wrappedResponse.getContentType(),
+                      wrappedResponse.getCharacterEncoding(), cacheRegion, sourceOf(request, cacheRegion));
+            } catch (CacheRepositoryException e) {
+              //  response was already sent to the client, it can not be repeated in passthrough mode
+              onUpsertError(e, probe);
+            }
+            probe.stop();
+          } finally {
+            captured.release();
+          }
 
           return;
         } else {
@@ -115,7 +260,14 @@ public class CachingFilter implements Filter {
             //  writing to response should be done AFTER encoding was set
             writeIn(response, result.getStoredEtag());
             response.setStatus(SC_OK);
-            res.getOutputStream().write(result.getPayload().getBytes(result.getEncoding()));
+
+            if (isAsyncWriteApplicable(request, result)) {
+              writeAsync(request, response, result);
+              probe.log("new-or-changed-async");
+              return;
+            }
+
+            result.writeTo(res.getOutputStream());
 
             res.getOutputStream().flush();
             probe.log("new-or-changed");
@@ -135,9 +287,47 @@ public class CachingFilter implements Filter {
     }
   }
 
+  private boolean isAsyncWriteApplicable(HttpServletRequest request, CacheQueryResult result) {
+    //  size of payload stored in chunks is not known before it is read, it is large enough to be chunked though
+    final int size = result.getKnownPayloadSize();
+    return asyncHits && request.isAsyncSupported() && (size < 0 || size >= asyncMinSize);
+  }
+
+  /**
+   * Request thread is released right after listener is registered, payload is pushed by container threads whenever
+   * client socket becomes writable. Payload read lazily is read part by part by the same threads.
+   */
+  private void writeAsync(HttpServletRequest request, HttpServletResponse response, CacheQueryResult result) throws IOException {
+    final int size = result.getKnownPayloadSize();
+    if (size >= 0) {
+      response.setContentLength(size);
+    }
+    final AsyncContext context = request.startAsync();
+    context.setTimeout(asyncTimeout);
+    final ServletOutputStream out = response.getOutputStream();
+    out.setWriteListener(new AsyncPayloadWriter(result.openParts(), asyncSliceSize, out, context));
+  }
+
+  private void onUpsertError(CacheRepositoryException e, Probe probe) throws ServletException {
+
+    if (hardenedModeEnabled && e.getCause() instanceof CircuitOpenException) {
+      probe.log("upsert-circuit-open");
+    } else if (hardenedModeEnabled) {
+      probe.log("upsert-error");
+      LOG.warn("Response not cached due to {}:{}", e.getCause().getClass().toString(), e.getCause().getMessage());
+    } else {
+      LOG.error("CacheRepositoryException occurred and hardened mode is disabled", e);
+      throw new ServletException(e);
+    }
+  }
+
   private void onRepositoryError(CacheRepositoryException e, HttpServletRequest request, HttpServletResponse response, FilterChain chain, Probe probe) throws ServletException, IOException {
 
-    if (hardenedModeEnabled) {
+    if (hardenedModeEnabled && e.getCause() instanceof CircuitOpenException) {
+      //  not logged as it happens for every request until circuit is closed
+      probe.log("passthrough-circuit-open");
+      chain.doFilter(request, response);
+    } else if (hardenedModeEnabled) {
       probe.log("passthrough-on-error");
       LOG.warn("Passthrough-on-error {}:{}", e.getCause().getClass().toString(), e.getCause().getMessage());
       chain.doFilter(request, response);
@@ -147,6 +337,23 @@ public class CachingFilter implements Filter {
     }
   }
 
+  /**
+   * Original URI that should be stored together with entry, only when it is not readable from the key itself.
+   */
+  private String sourceOf(HttpServletRequest request, CacheRegion region) {
+
+    if (!region.getKeyStrategy().isCompact()) {
+      return null;
+    }
+
+    return uriOf(request);
+  }
+
+  private static String uriOf(HttpServletRequest request) {
+    final String query = request.getQueryString();
+    return query == null ? request.getRequestURI() : request.getRequestURI() + '?' + query;
+  }
+
   private void doFiltering(FilterChain chain, Probe probe, ServletRequest req, ServletResponse res) throws IOException, ServletException {
     probe.start('g');
     chain.doFilter(req, res);
@@ -156,6 +363,23 @@ public class CachingFilter implements Filter {
   @Override
   public void destroy() {
 
+    if (prewarm != null) {
+      prewarm.stop();
+    }
+
+    if (recordFile != null) {
+      try {
+        CacheWarmer.write(Paths.get(recordFile), hotKeys.hottest(recordSize));
+        LOG.info("Hot URIs written to '{}'", recordFile);
+      } catch (IOException e) {
+        LOG.warn("Unable to write hot URIs to '{}' due to {}", recordFile, e.getMessage());
+      }
+    }
+
+    if (background != null) {
+      background.shutdownNow();
+    }
+
     if (cache != null) {
       cache.dispose();
     }
@@ -0,0 +1,186 @@
+package dynks.http;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static dynks.cache.Segments.join;
+
+import static dynks.cache.CacheRegion.UNLIMITED_ENTRY_SIZE;
+import static java.lang.Math.min;
+
+/**
+ * Growable buffer built from fixed size segments borrowed from {@link SegmentPool}. Growing does not copy already
+ * captured content. Segments have to be returned to the pool with {@link #release()} once content is no longer needed.
+ * <p>
+ * Buffer may be limited in size. Once limit is exceeded captured content is discarded, segments are returned to the pool
+ * and all further writes are ignored so that memory used by single oversized response stays bounded.
+ */
+@NotThreadSafe
+public class CaptureBuffer extends OutputStream {
+
+  private static final ThreadLocal<byte[]> TRANSFER_BUFFER = ThreadLocal.withInitial(() -> new byte[8 * 1024]);
+
+  private final SegmentPool pool;
+  private final long limit;
+  private final List<ByteBuffer> segments = new ArrayList<>(4);
+  private ByteBuffer current;
+  private int size;
+  private boolean overflowed;
+
+  public CaptureBuffer(SegmentPool pool) {
+    this(pool, UNLIMITED_ENTRY_SIZE);
+  }
+
+  /**
+   * @param limit maximum number of bytes that may be captured, {@link dynks.cache.CacheRegion#UNLIMITED_ENTRY_SIZE}
+   *              if buffer should not be limited
+   */
+  public CaptureBuffer(SegmentPool pool, long limit) {
+    this.pool = pool;
+    this.limit = limit;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    if (exceedsLimit(1)) {
+      return;
+    }
+    ensureWritable();
+    current.put((byte) b);
+    size++;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+
+    if (exceedsLimit(len)) {
+      return;
+    }
+
+    while (len > 0) {
+      ensureWritable();
+      final int chunk = min(len, current.remaining());
+      current.put(b, off, chunk);
+      off += chunk;
+      len -= chunk;
+      size += chunk;
+    }
+  }
+
+  /**
+   * Notifies buffer about expected size of content (i.e. declared Content-Length) so that capturing can be
+   * abandoned before anything is written.
+   */
+  public void expectSize(long expected) {
+    if (limit != UNLIMITED_ENTRY_SIZE && expected > limit) {
+      overflow();
+    }
+  }
+
+  private boolean exceedsLimit(int len) {
+
+    if (overflowed) {
+      return true;
+    }
+
+    if (limit != UNLIMITED_ENTRY_SIZE && size + (long) len > limit) {
+      overflow();
+      return true;
+    }
+
+    return false;
+  }
+
+  private void overflow() {
+    release();
+    overflowed = true;
+  }
+
+  /**
+   * @return true if content exceeded limit and was not captured
+   */
+  public boolean isOverflowed() {
+    return overflowed;
+  }
+
+  private void ensureWritable() {
+    if (current == null || !current.hasRemaining()) {
+      current = pool.acquire();
+      segments.add(current);
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns captured content in array of exact size, this is the only copy of content done by the buffer.
+   */
+  public byte[] toByteArray() {
+    return join(segments(), size);
+  }
+
+  /**
+   * Returns views of captured segments so that content can be written without joining it, views are valid only till
+   * {@link #release()}.
+   */
+  public List<ByteBuffer> segments() {
+
+    final List<ByteBuffer> views = new ArrayList<>(segments.size());
+
+    for (ByteBuffer segment : segments) {
+      ByteBuffer view = segment.duplicate();
+      view.flip();
+      views.add(view);
+    }
+
+    return views;
+  }
+
+  /**
+   * Writes captured content segment by segment into given stream.
+   */
+  public void writeTo(OutputStream out) throws IOException {
+
+    for (ByteBuffer segment : segments) {
+      final int length = segment.position();
+      if (segment.hasArray()) {
+        out.write(segment.array(), segment.arrayOffset(), length);
+      } else {
+        final byte[] transfer = TRANSFER_BUFFER.get();
+        ByteBuffer view = segment.duplicate();
+        view.flip();
+        while (view.hasRemaining()) {
+          final int chunk = min(transfer.length, view.remaining());
+          view.get(transfer, 0, chunk);
+          out.write(transfer, 0, chunk);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns all segments to the pool, buffer is empty afterwards and may be reused.
+   */
+  public void release() {
+
+    for (ByteBuffer segment : segments) {
+      pool.release(segment);
+    }
+
+    segments.clear();
+    current = null;
+    size = 0;
+  }
+
+  @Override
+  public void close() {
+    //  content is still accessible after close, segments are returned only by release()
+  }
+}
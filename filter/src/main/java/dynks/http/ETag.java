@@ -6,6 +6,7 @@ import javax.servlet.http.HttpServletResponse;
 import static java.lang.String.valueOf;
 import static dynks.Strings.recycle;
 import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.ThreadLocalRandom.current;
 
 /**
  * Created by jszczepankiewicz on 2015-04-06.
@@ -40,6 +41,24 @@ public class ETag {
 
     }
 
+    /**
+     * Returns fast etag that does not depend on the content so that it may be sent to client before content is
+     * generated.
+     * @param builder buffer (might be non-empty, will be recycled) with internal buffer size to be at least SIZEOF_ETAG
+     *                to prevent reallocation of string buffer
+     * @return
+     */
+    public static String next(StringBuilder builder){
+
+        recycle(builder);
+
+        builder.append(currentTimeMillis());
+        builder.append('-');
+        builder.append(current().nextInt());
+
+        return builder.toString();
+    }
+
     public static String getFrom(HttpServletRequest request){
         return request.getHeader(ETAG_REQUEST_HEADER);
     }
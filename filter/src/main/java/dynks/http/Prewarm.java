@@ -0,0 +1,126 @@
+package dynks.http;
+
+import dynks.jmx.PrewarmMBean;
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static dynks.Threads.threadFactory;
+import static dynks.http.CacheWarmer.RECORDED_SOURCE;
+import static dynks.http.CacheWarmer.read;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Replays URIs of configured sources with {@link CacheWarmer} after start of the node and again whenever requested
+ * (i.e. after redis failover or flush) through {@link dynks.Frontend#prewarm()} or JMX. At most one replay runs at a
+ * time, every replay runs on its own thread.
+ */
+@ThreadSafe
+public class Prewarm implements PrewarmMBean {
+
+  private static final Logger LOG = getLogger(Prewarm.class);
+
+  private final CacheWarmer warmer;
+  private final List<String> sources;
+  private final String recordFile;
+  private final ThreadFactory threads = threadFactory("dynks-prewarm-replay", false);
+  private final AtomicReference<Thread> running = new AtomicReference<>();
+  private volatile long lastWarmed;
+
+  /**
+   * @param sources    files with URIs (see {@link CacheWarmer#read(String)}) or {@link CacheWarmer#RECORDED_SOURCE}
+   * @param recordFile file with URIs recorded on last shutdown
+   */
+  public Prewarm(CacheWarmer warmer, List<String> sources, String recordFile) {
+
+    if (warmer == null) {
+      throw new NullPointerException("Warmer should not be null");
+    }
+
+    if (sources == null) {
+      throw new NullPointerException("Sources should not be null");
+    }
+
+    this.warmer = warmer;
+    this.sources = new ArrayList<>(sources);
+    this.recordFile = recordFile;
+  }
+
+  @Override
+  public boolean start() {
+    return start(0);
+  }
+
+  /**
+   * Starts replaying after delay, so that node started together with filter is already serving requests.
+   *
+   * @return false if replaying is already in progress
+   */
+  public boolean start(long delayInMillis) {
+
+    final Thread thread = threads.newThread(() -> {
+      try {
+        MILLISECONDS.sleep(delayInMillis);
+        lastWarmed = warm();
+      } catch (InterruptedException e) {
+        LOG.info("Warming up cache interrupted");
+      } finally {
+        running.set(null);
+      }
+    });
+
+    if (!running.compareAndSet(null, thread)) {
+      LOG.info("Warming up cache already in progress");
+      return false;
+    }
+
+    thread.start();
+    return true;
+  }
+
+  /**
+   * Replays all sources blocking until they are processed, sources that can not be read are skipped.
+   *
+   * @return number of URIs successfully requested
+   */
+  long warm() throws InterruptedException {
+
+    long warmed = 0;
+
+    for (String source : sources) {
+      try {
+        warmed += warmer.warm(read(RECORDED_SOURCE.equals(source) ? recordFile : source));
+      } catch (IOException e) {
+        LOG.warn("Unable to warm up cache from '{}' due to {}", source, e.getMessage());
+      }
+    }
+
+    return warmed;
+  }
+
+  /**
+   * Interrupts replay in progress.
+   */
+  public void stop() {
+    final Thread thread = running.get();
+    if (thread != null) {
+      thread.interrupt();
+    }
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running.get() != null;
+  }
+
+  @Override
+  public long getLastWarmed() {
+    return lastWarmed;
+  }
+}
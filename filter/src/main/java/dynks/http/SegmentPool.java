@@ -0,0 +1,74 @@
+package dynks.http;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static java.nio.ByteBuffer.allocate;
+import static java.nio.ByteBuffer.allocateDirect;
+
+/**
+ * Bounded pool of fixed size buffers used to capture generated responses. Segments are small enough to never be
+ * allocated as humongous objects and are reused between requests so that capturing response does not
+ * cause repeated allocation and copying of growing arrays. When pool is empty new segment is allocated, when pool is
+ * full released segment is left for garbage collector.
+ * <p>
+ * Segments may be allocated off-heap (direct) which keeps captured content out of the heap at the cost of copying
+ * it while writing to streams.
+ */
+@ThreadSafe
+public class SegmentPool {
+
+  public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024;
+  public static final int DEFAULT_MAX_POOLED_SEGMENTS = 1024;
+
+  private final int segmentSize;
+  private final boolean direct;
+  private final BlockingQueue<ByteBuffer> segments;
+
+  public SegmentPool(int segmentSize, int maxPooledSegments, boolean direct) {
+
+    if (segmentSize < 1) {
+      throw new IllegalArgumentException("segmentSize should be >=1 but is '" + segmentSize + "'");
+    }
+
+    if (maxPooledSegments < 1) {
+      throw new IllegalArgumentException("maxPooledSegments should be >=1 but is '" + maxPooledSegments + "'");
+    }
+
+    this.segmentSize = segmentSize;
+    this.direct = direct;
+    this.segments = new ArrayBlockingQueue<>(maxPooledSegments);
+  }
+
+  public ByteBuffer acquire() {
+
+    ByteBuffer segment = segments.poll();
+
+    if (segment == null) {
+      return direct ? allocateDirect(segmentSize) : allocate(segmentSize);
+    }
+
+    return segment;
+  }
+
+  public void release(ByteBuffer segment) {
+    segment.clear();
+    //  if pool is full segment will be collected
+    segments.offer(segment);
+  }
+
+  public int getSegmentSize() {
+    return segmentSize;
+  }
+
+  public boolean isDirect() {
+    return direct;
+  }
+
+  public int getPooledSegments() {
+    return segments.size();
+  }
+}
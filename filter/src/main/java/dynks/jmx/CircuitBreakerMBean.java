@@ -0,0 +1,39 @@
+package dynks.jmx;
+
+/**
+ * JMX bean exposing state of circuit breaker guarding cache repository.
+ */
+public interface CircuitBreakerMBean {
+
+  String CIRCUIT_BREAKER_JMX_NAME = "dynks:type=CircuitBreaker";
+
+  /**
+   * @return CLOSED, OPEN or HALF_OPEN
+   */
+  String getState();
+
+  /**
+   * @return percentage of failed calls in current window
+   */
+  int getFailureRate();
+
+  /**
+   * @return percentage of slow calls in current window
+   */
+  int getSlowCallRate();
+
+  /**
+   * @return number of calls rejected since start
+   */
+  long getRejected();
+
+  /**
+   * @return number of times circuit was opened since start
+   */
+  long getOpened();
+
+  /**
+   * Closes circuit, i.e. after redis was fixed.
+   */
+  void reset();
+}
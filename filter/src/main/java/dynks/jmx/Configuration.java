@@ -8,7 +8,7 @@ import com.typesafe.config.Config;
  */
 public class Configuration implements ConfigurationMBean {
 
-  private static final String STORAGE = "dynks.storage";
+  public static final String STORAGE = "dynks.storage";
   public static final String HARDENED_MODE = "dynks.hardenedMode";
   public static final String NAMESPACE = "dynks.namespace";
   public static final String IGNORE_NO_REGIONS_CONFIGURED = "dynks.ignoreNoRegionsConfigured";
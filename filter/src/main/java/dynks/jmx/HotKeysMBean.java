@@ -0,0 +1,20 @@
+package dynks.jmx;
+
+/**
+ * JMX bean exposing the most frequently requested URIs of every cache region.
+ */
+public interface HotKeysMBean {
+
+  String HOT_KEYS_JMX_NAME = "dynks:type=HotKeys";
+
+  /**
+   * @return ids of regions that received at least one request
+   */
+  String[] getRegions();
+
+  /**
+   * @param regionId id of cache region
+   * @return top URIs of region in form <pre>estimatedCount uri</pre>, the most frequent first
+   */
+  String[] topKeys(String regionId);
+}
@@ -4,6 +4,8 @@ import com.typesafe.config.Config;
 import org.slf4j.Logger;
 
 import javax.management.*;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static dynks.jmx.ConfigurationMBean.CONFIGURATION_JMX_NAME;
 import static java.lang.management.ManagementFactory.getPlatformMBeanServer;
@@ -20,6 +22,7 @@ public class JmxServer {
   private static final Logger LOG = getLogger(JmxServer.class);
 
   private final Configuration configuration;
+  private final List<String> registered = new CopyOnWriteArrayList<>();
 
   public JmxServer(Config config) {
     this.configuration = new Configuration(config);
@@ -39,10 +42,42 @@ public class JmxServer {
     LOG.info("Successfully registered mbean: {}", CONFIGURATION_JMX_NAME);
   }
 
+  /**
+   * Registers additional mbean that will be unregistered together with configuration on {@link #dispose()}.
+   *
+   * @param name           object name of the mbean
+   * @param implementation instance exposed
+   * @param mbeanInterface interface defining exposed attributes
+   */
+  public <T> void register(String name, T implementation, Class<T> mbeanInterface) {
+
+    try {
+      StandardMBean mbean = new StandardMBean(implementation, mbeanInterface);
+      getPlatformMBeanServer().registerMBean(mbean, new ObjectName(name));
+      registered.add(name);
+    } catch (MalformedObjectNameException | MBeanRegistrationException | InstanceAlreadyExistsException |
+            NotCompliantMBeanException e) {
+      throw new IllegalStateException("Exception during JMX registration", e);
+    }
+
+    LOG.info("Successfully registered mbean: {}", name);
+  }
+
   /**
    * Unregister mbean to clean up references.
    */
   public void dispose() {
+
+    for (String name : registered) {
+      try {
+        getPlatformMBeanServer().unregisterMBean(new ObjectName(name));
+        LOG.info("Successfully unregistered mbean: {}", name);
+      } catch (InstanceNotFoundException | MBeanRegistrationException | MalformedObjectNameException e) {
+        LOG.warn("Exception while unregistering mbean", e);
+      }
+    }
+    registered.clear();
+
     try {
       getPlatformMBeanServer().unregisterMBean(new ObjectName(CONFIGURATION_JMX_NAME));
       LOG.info("Successfully unregistered mbean: {}", CONFIGURATION_JMX_NAME);
@@ -0,0 +1,44 @@
+package dynks.jmx;
+
+/**
+ * JMX bean with statistics of local (in process) cache tier.
+ */
+public interface LocalCacheMBean {
+
+  String LOCAL_CACHE_JMX_NAME = "dynks:type=LocalCache";
+
+  /**
+   * @return number of entries in the index, including expired ones not removed yet
+   */
+  long getEntries();
+
+  /**
+   * @return bytes of memory already allocated for entries
+   */
+  long getAllocatedBytes();
+
+  /**
+   * @return maximum number of bytes used for entries
+   */
+  long getCapacity();
+
+  /**
+   * @return number of lookups that found entry
+   */
+  long getHits();
+
+  /**
+   * @return number of lookups that did not find entry or found expired one
+   */
+  long getMisses();
+
+  /**
+   * @return number of entries removed to make room for new ones
+   */
+  long getEvicted();
+
+  /**
+   * @return number of entries recovered after restart that were not confirmed by shared tier yet
+   */
+  long getUnconfirmed();
+}
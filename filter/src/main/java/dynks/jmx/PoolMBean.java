@@ -0,0 +1,54 @@
+package dynks.jmx;
+
+/**
+ * JMX bean exposing statistics of connection pool to redis.
+ */
+public interface PoolMBean {
+
+  String POOL_JMX_NAME = "dynks:type=Pool";
+
+  /**
+   * @return number of connections currently borrowed
+   */
+  int getActive();
+
+  /**
+   * @return number of idle connections in the pool
+   */
+  int getIdle();
+
+  /**
+   * @return number of threads currently waiting for connection
+   */
+  int getWaiters();
+
+  /**
+   * @return current maximum number of connections, changes in adaptive mode
+   */
+  int getMaxTotal();
+
+  /**
+   * @return number of borrowed connections since start
+   */
+  long getBorrowed();
+
+  /**
+   * @return number of borrows that found pool exhausted (no idle connection and maximum number of connections reached)
+   */
+  long getExhausted();
+
+  /**
+   * @return mean time of waiting for connection since start in microseconds
+   */
+  long getMeanBorrowWaitMicros();
+
+  /**
+   * @return maximum time of waiting for connection since start in microseconds
+   */
+  long getMaxBorrowWaitMicros();
+
+  /**
+   * @return mean time for which connection was held since start in microseconds (approximates latency of redis)
+   */
+  long getMeanHoldMicros();
+}
@@ -0,0 +1,26 @@
+package dynks.jmx;
+
+/**
+ * JMX bean replaying configured prewarm sources on demand, i.e. after redis failover or flush.
+ */
+public interface PrewarmMBean {
+
+  String PREWARM_JMX_NAME = "dynks:type=Prewarm";
+
+  /**
+   * Starts replaying URIs of configured sources in background.
+   *
+   * @return false if replaying is already in progress
+   */
+  boolean start();
+
+  /**
+   * @return true while URIs are replayed
+   */
+  boolean isRunning();
+
+  /**
+   * @return number of URIs successfully requested by the last finished replay
+   */
+  long getLastWarmed();
+}
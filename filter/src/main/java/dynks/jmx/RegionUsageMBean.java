@@ -0,0 +1,24 @@
+package dynks.jmx;
+
+/**
+ * JMX bean exposing memory used in redis by entries of cache regions.
+ */
+public interface RegionUsageMBean {
+
+  String REGION_USAGE_JMX_NAME = "dynks:type=RegionUsage";
+
+  /**
+   * @return usage of every accounted region read from redis in form <pre>regionId bytes entries</pre>
+   */
+  String[] getUsage();
+
+  /**
+   * @return number of entries not stored since start because quota of their region was exceeded
+   */
+  long getRejected();
+
+  /**
+   * @return number of entries removed since start to fit in quota of their region
+   */
+  long getEvicted();
+}
@@ -0,0 +1,44 @@
+package dynks.jmx;
+
+/**
+ * JMX bean with statistics of write-behind upserts.
+ */
+public interface WriteBehindMBean {
+
+  String WRITE_BEHIND_JMX_NAME = "dynks:type=WriteBehind";
+
+  /**
+   * @return number of entries waiting to be written
+   */
+  int getPending();
+
+  /**
+   * @return number of upserts accepted into the queue
+   */
+  long getEnqueued();
+
+  /**
+   * @return number of upserts that replaced pending upsert of the same key
+   */
+  long getCoalesced();
+
+  /**
+   * @return number of upserts dropped as queue was full
+   */
+  long getDropped();
+
+  /**
+   * @return number of upserts written synchronously by request thread as queue was full
+   */
+  long getWrittenByCaller();
+
+  /**
+   * @return number of entries written to the repository
+   */
+  long getWritten();
+
+  /**
+   * @return number of entries not written due to repository errors
+   */
+  long getFailed();
+}
@@ -0,0 +1,276 @@
+package dynks.local;
+
+import dynks.MediaType;
+import dynks.cache.CacheQueryResult;
+import dynks.cache.CacheRegion;
+import dynks.cache.CacheRepository;
+import dynks.cache.CacheRepositoryException;
+import dynks.jmx.JmxServer;
+import dynks.jmx.LocalCacheMBean;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static dynks.jmx.LocalCacheMBean.LOCAL_CACHE_JMX_NAME;
+import static java.lang.System.currentTimeMillis;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Repository keeping entries on the heap of this process, mostly for tests, benchmarks and single node deployments.
+ * Entries are evicted in order of writing once their size (payload and characters of key and etag) exceeds capacity.
+ * Payload is not copied, arrays passed to upsert should not be changed later.
+ */
+@ThreadSafe
+public class HeapCacheRepository implements CacheRepository, LocalCacheMBean {
+
+  private static final Logger LOG = getLogger(HeapCacheRepository.class);
+
+  private static final CacheQueryResult NO_RESULT_FOUND = new CacheQueryResult(true, (byte[]) null, null, null, null);
+  private static final CacheQueryResult RESULT_FOUND_BUT_NOT_CHANGED = new CacheQueryResult(false, (byte[]) null, null, null, null);
+
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+  /**
+   * Entries in order of writing, lookups do not change it so that they can be done under read lock.
+   */
+  @GuardedBy("lock")
+  private final LinkedHashMap<String, HeapEntry> entries = new LinkedHashMap<>();
+  @GuardedBy("lock")
+  private long allocated;
+  private final long capacity;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evicted = new LongAdder();
+
+  /**
+   * @param capacity maximum size of entries in bytes
+   */
+  public HeapCacheRepository(long capacity) {
+
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity should be >=1 but is '" + capacity + "'");
+    }
+
+    this.capacity = capacity;
+  }
+
+  @Override
+  public CacheQueryResult fetchIfChanged(String key, String etag) throws CacheRepositoryException {
+
+    if (key == null) {
+      throw new CacheRepositoryException(new IllegalArgumentException("Key to upsert should not be null"));
+    }
+
+    final HeapEntry entry;
+    lock.readLock().lock();
+    try {
+      entry = entries.get(key);
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    if (entry == null || entry.isExpired(currentTimeMillis())) {
+      misses.increment();
+      return NO_RESULT_FOUND;
+    }
+
+    hits.increment();
+
+    if (entry.etag.equals(etag)) {
+      return RESULT_FOUND_BUT_NOT_CHANGED;
+    }
+
+    return new CacheQueryResult(false, entry.payload, entry.etag, entry.type.getContentType(), entry.type.getEncoding());
+  }
+
+  @Override
+  public void upsert(String key, byte[] content, String etag, String contentType, String encoding, CacheRegion region, String source) throws CacheRepositoryException {
+
+    try {
+      if (content == null) {
+        throw new NullPointerException("Content to put into cache should not be null");
+      }
+
+      if (etag == null) {
+        throw new NullPointerException("Etag to put into cache should not be null");
+      }
+
+      final long ttl = region.getTtl() == 0 ? 0 : region.getTtlUnit().toMillis(region.getTtl());
+      final HeapEntry entry = new HeapEntry(content, etag, MediaType.of(contentType, encoding),
+              ttl == 0 ? 0 : currentTimeMillis() + ttl, content.length + 2L * (key.length() + etag.length()));
+
+      if (entry.size > capacity) {
+        LOG.debug("Entry '{}' of {} bytes not stored as it exceeds capacity", key, content.length);
+        return;
+      }
+
+      lock.writeLock().lock();
+      try {
+        //  removed first so that replaced entry is written as the newest one
+        removed(entries.remove(key));
+        entries.put(key, entry);
+        allocated += entry.size;
+        evictOverCapacity();
+      } finally {
+        lock.writeLock().unlock();
+      }
+    } catch (RuntimeException e) {
+      throw new CacheRepositoryException(e);
+    }
+  }
+
+  @Override
+  public void remove(String key) throws CacheRepositoryException {
+    lock.writeLock().lock();
+    try {
+      removed(entries.remove(key));
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public long evictRegion(CacheRegion region) throws CacheRepositoryException {
+
+    final String wildcard = region.getKeyStrategy().wildcardKeyFor(region);
+    //  wildcard is in form namespace:regionId:*
+    final String prefix = wildcard.substring(0, wildcard.length() - 1);
+    long removed = 0;
+
+    lock.writeLock().lock();
+    try {
+      for (Iterator<Map.Entry<String, HeapEntry>> i = entries.entrySet().iterator(); i.hasNext(); ) {
+        final Map.Entry<String, HeapEntry> entry = i.next();
+        if (entry.getKey().startsWith(prefix)) {
+          allocated -= entry.getValue().size;
+          i.remove();
+          removed++;
+        }
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+
+    return removed;
+  }
+
+  /**
+   * Entries are removed at once, batches are not needed.
+   */
+  @Override
+  public long evictRegion(CacheRegion region, int maxEntriesDeletedInOneBatch) throws CacheRepositoryException {
+    return evictRegion(region);
+  }
+
+  @Override
+  public void dispose() {
+    lock.writeLock().lock();
+    try {
+      entries.clear();
+      allocated = 0;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void registerMBeans(JmxServer jmx) {
+    jmx.register(LOCAL_CACHE_JMX_NAME, this, LocalCacheMBean.class);
+  }
+
+  @Override
+  public int getMaxEntriesDeletedInOneBatch() {
+    return Integer.MAX_VALUE;
+  }
+
+  @Override
+  public long getEntries() {
+    lock.readLock().lock();
+    try {
+      return entries.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public long getAllocatedBytes() {
+    lock.readLock().lock();
+    try {
+      return allocated;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public long getCapacity() {
+    return capacity;
+  }
+
+  @Override
+  public long getHits() {
+    return hits.sum();
+  }
+
+  @Override
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  @Override
+  public long getEvicted() {
+    return evicted.sum();
+  }
+
+  /**
+   * Entries are not kept across restarts.
+   */
+  @Override
+  public long getUnconfirmed() {
+    return 0;
+  }
+
+  @GuardedBy("lock")
+  private void removed(HeapEntry entry) {
+    if (entry != null) {
+      allocated -= entry.size;
+    }
+  }
+
+  @GuardedBy("lock")
+  private void evictOverCapacity() {
+    for (Iterator<HeapEntry> i = entries.values().iterator(); allocated > capacity && i.hasNext(); ) {
+      allocated -= i.next().size;
+      i.remove();
+      evicted.increment();
+    }
+  }
+
+  private static final class HeapEntry {
+
+    private final byte[] payload;
+    private final String etag;
+    private final MediaType type;
+    private final long expiresAt;
+    private final long size;
+
+    HeapEntry(byte[] payload, String etag, MediaType type, long expiresAt, long size) {
+      this.payload = payload;
+      this.etag = etag;
+      this.type = type;
+      this.expiresAt = expiresAt;
+      this.size = size;
+    }
+
+    boolean isExpired(long now) {
+      return expiresAt != 0 && expiresAt <= now;
+    }
+  }
+}
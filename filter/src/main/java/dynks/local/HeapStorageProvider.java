@@ -0,0 +1,23 @@
+package dynks.local;
+
+import com.typesafe.config.Config;
+import dynks.cache.CacheRepository;
+import dynks.cache.StorageProvider;
+
+/**
+ * Heap of this process, configured with dynks.heap.
+ */
+public class HeapStorageProvider implements StorageProvider {
+
+  public static final String NAME = "HEAP";
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public CacheRepository create(Config config) {
+    return new HeapCacheRepository(config.getBytes("dynks.heap.capacity"));
+  }
+}
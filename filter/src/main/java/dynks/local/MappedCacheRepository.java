@@ -0,0 +1,181 @@
+package dynks.local;
+
+import dynks.cache.PersistentCacheRepository;
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.lang.System.currentTimeMillis;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Local repository keeping slabs in memory mapped files so that entries survive restart of the process. Every slab is
+ * a file named <pre>segment-slab.slab</pre> in given directory, it is written by operating system in the background
+ * and forced to the storage device on dispose.
+ * <p>
+ * On start slabs written by previous process with the same number of segments and slab size are replayed in order of
+ * writing, other files are discarded. Entries expired in the meantime are skipped and the remaining ones are marked
+ * as unconfirmed, {@link dynks.cache.TieredCacheRepository} confirms them by etag with shared tier before they are
+ * served. Records written partially (i.e. when the host crashed) are detected by their checksums.
+ * <p>
+ * As removals are written as records too, slab about to be reused is compacted when its entries take no more than
+ * compaction threshold of it, so that long living entries are not lost with replaced ones. Directory is locked while
+ * repository is used so that it is not shared by two processes.
+ */
+@ThreadSafe
+public class MappedCacheRepository extends OffHeapCacheRepository implements PersistentCacheRepository {
+
+  private static final Logger LOG = getLogger(MappedCacheRepository.class);
+
+  private static final String SLAB_SUFFIX = ".slab";
+  private static final String LOCK_FILE = "dynks.lock";
+
+  private final Path directory;
+  private final FileChannel lockChannel;
+  private final FileLock lock;
+  private final long recovered;
+
+  /**
+   * @param directory           where slabs are kept, created if it does not exist
+   * @param compactionThreshold slab is compacted instead of being reused if its entries take no more than this part
+   *                            of it, 0 disables compaction
+   * @throws IOException if directory can not be used
+   */
+  public MappedCacheRepository(Path directory, long capacity, int slabSize, int segments, double compactionThreshold) throws IOException {
+
+    super(capacity, slabSize, segments, compactionThreshold, true);
+
+    if (directory == null) {
+      throw new NullPointerException("Directory of local cache should not be null");
+    }
+
+    this.directory = directory;
+    Files.createDirectories(directory);
+    this.lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), CREATE, WRITE);
+    this.lock = tryLock(lockChannel);
+
+    if (lock == null) {
+      lockChannel.close();
+      throw new IllegalStateException("Directory '" + directory + "' is used by other process");
+    }
+
+    try {
+      this.recovered = recover();
+    } catch (IOException | RuntimeException e) {
+      lock.release();
+      lockChannel.close();
+      throw e;
+    }
+  }
+
+  @Override
+  protected ByteBuffer allocate(int segment, int slab) throws IOException {
+    return map(directory.resolve(segment + "-" + slab + SLAB_SUFFIX));
+  }
+
+  /**
+   * Forces slabs to be written and releases them, files are kept for the next start.
+   */
+  @Override
+  public void dispose() {
+
+    for (int i = 0; i < getSegments(); i++) {
+      segment(i).flush();
+    }
+
+    super.dispose();
+
+    try {
+      lock.release();
+      lockChannel.close();
+    } catch (IOException e) {
+      LOG.warn("Unable to release lock of '{}' due to {}", directory, e.getMessage());
+    }
+  }
+
+  public Path getDirectory() {
+    return directory;
+  }
+
+  /**
+   * @return number of entries recovered on start
+   */
+  public long getRecovered() {
+    return recovered;
+  }
+
+  private long recover() throws IOException {
+
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SLAB_SUFFIX)) {
+      for (Path file : files) {
+
+        final int[] position = positionOf(file.getFileName().toString());
+
+        if (position == null || position[0] >= getSegments() || position[1] >= getSlabsPerSegment()
+                || Files.size(file) != getSlabSize()) {
+          LOG.info("Removing slab '{}' not matching current capacity, slab size or number of segments", file);
+          Files.delete(file);
+        } else if (!segment(position[0]).restore(position[1], map(file))) {
+          LOG.info("Slab '{}' written with other layout will be overwritten", file);
+        }
+      }
+    }
+
+    final long now = currentTimeMillis();
+    long entries = 0;
+    for (int i = 0; i < getSegments(); i++) {
+      entries += segment(i).replay(now);
+    }
+
+    LOG.info("Recovered {} local entries from '{}'", entries, directory);
+    return entries;
+  }
+
+  private static FileLock tryLock(FileChannel channel) throws IOException {
+    try {
+      return channel.tryLock();
+    } catch (OverlappingFileLockException e) {
+      //  already locked by this process
+      return null;
+    }
+  }
+
+  private ByteBuffer map(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, CREATE, READ, WRITE)) {
+      //  file is extended to the size of slab if needed
+      return channel.map(READ_WRITE, 0, getSlabSize());
+    }
+  }
+
+  /**
+   * @return segment and slab of the file named segment-slab.slab, null if name is in other form
+   */
+  private static int[] positionOf(String name) {
+
+    final int separator = name.indexOf('-');
+
+    if (separator < 1 || separator == name.length() - SLAB_SUFFIX.length() - 1) {
+      return null;
+    }
+
+    try {
+      final int segment = Integer.parseInt(name.substring(0, separator));
+      final int slab = Integer.parseInt(name.substring(separator + 1, name.length() - SLAB_SUFFIX.length()));
+      return segment < 0 || slab < 0 ? null : new int[]{segment, slab};
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+}
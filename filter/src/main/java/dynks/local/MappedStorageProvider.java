@@ -0,0 +1,35 @@
+package dynks.local;
+
+import com.typesafe.config.Config;
+import dynks.cache.CacheRepository;
+import dynks.cache.StorageProvider;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+
+/**
+ * Memory mapped files surviving restart, configured with capacity, slabSize, segments and persistent section of dynks.l1.
+ */
+public class MappedStorageProvider implements StorageProvider {
+
+  public static final String NAME = "MAPPED";
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public CacheRepository create(Config config) {
+
+    final String directory = config.getString("dynks.l1.persistent.directory");
+    try {
+      return new MappedCacheRepository(Paths.get(directory), config.getBytes("dynks.l1.capacity"),
+              config.getBytes("dynks.l1.slabSize").intValue(), config.getInt("dynks.l1.segments"),
+              config.getDouble("dynks.l1.persistent.compactionThreshold"));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to use local cache directory '" + directory + "'", e);
+    }
+  }
+}
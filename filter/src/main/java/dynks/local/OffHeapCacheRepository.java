@@ -0,0 +1,1235 @@
+package dynks.local;
+
+import dynks.MediaType;
+import dynks.cache.CacheQueryResult;
+import dynks.cache.CacheRegion;
+import dynks.cache.CacheRepository;
+import dynks.cache.CacheRepositoryException;
+import dynks.cache.PayloadParts;
+import dynks.jmx.JmxServer;
+import dynks.jmx.LocalCacheMBean;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongPredicate;
+import java.util.zip.CRC32;
+
+import static dynks.Murmur3.HASH_SIZE_IN_BYTES;
+import static dynks.Murmur3.hash128;
+import static dynks.jmx.LocalCacheMBean.LOCAL_CACHE_JMX_NAME;
+import static java.lang.Math.min;
+import static java.lang.System.currentTimeMillis;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Repository keeping entries in memory of this process but outside of the heap, so that gigabytes of entries do not
+ * slow down garbage collection. Memory is reserved in slabs of direct buffers (allocated on first use) split between
+ * independently locked segments. Entries are appended to current slab of the segment, when it is full next slab is
+ * used and when all of them are used the oldest one is reused, removing all entries it contains (so entries are
+ * evicted in order of writing once capacity is reached). Replaced and removed entries keep their memory until their
+ * slab is reused.
+ * <p>
+ * Every segment has open addressing index (linear probing) from 64 bit hash of the key to location of the entry, keys
+ * are stored with entries and compared on lookup so that colliding hashes are not a problem.
+ * <p>
+ * Payload of found entry is not copied to the heap, it is written to the client in small parts taken from the slab.
+ * Entry is written to the client only if its slab was not reused in the meantime, otherwise writing fails as for entries
+ * removed from redis while being streamed.
+ * <p>
+ * Direct memory is limited by -XX:MaxDirectMemorySize (by default equal to maximum heap size) that should be raised
+ * above capacity.
+ * <p>
+ * Subclasses may provide slabs of other kind (see {@link MappedCacheRepository}) and make them persistent, then every
+ * record carries checksum and removals are written as tombstone records so that slabs can be replayed in order of
+ * writing after restart. Slab that is about to be reused may be compacted instead, its entries still found in the index
+ * are moved to its beginning when they take no more than given part of it.
+ */
+@ThreadSafe
+public class OffHeapCacheRepository implements CacheRepository, LocalCacheMBean {
+
+  private static final Logger LOG = getLogger(OffHeapCacheRepository.class);
+
+  static final CacheQueryResult NO_RESULT_FOUND = new CacheQueryResult(true, (byte[]) null, null, null, null);
+  static final CacheQueryResult RESULT_FOUND_BUT_NOT_CHANGED = new CacheQueryResult(false, (byte[]) null, null, null, null);
+
+  /**
+   * Magic, version of the layout, number of segments, size of slab (int each), sequence number of slab in its segment
+   * (long), number of bytes written (int) and reserved int.
+   */
+  static final int SLAB_HEADER_SIZE = 4 * 4 + 8 + 4 + 4;
+  static final int SLAB_MAGIC = 0x64796e6b;
+  static final int SLAB_VERSION = 1;
+  private static final int SLAB_SEQUENCE = 16;
+  private static final int SLAB_COMMITTED = 24;
+
+  /**
+   * Expiration time (long), lengths of key, etag, content type and encoding (unsigned short each), of payload and
+   * checksum of the record (int each).
+   */
+  static final int RECORD_HEADER_SIZE = 8 + 4 * 2 + 4 + 4;
+  static final int MAX_ATTRIBUTE_LENGTH = 0xffff;
+  private static final int RECORD_CHECKSUM = 20;
+
+  /**
+   * Payload lengths of tombstones, key of {@link #EVICTED} is prefix of evicted keys.
+   */
+  static final int REMOVED = -1;
+  static final int EVICTED = -2;
+
+  /**
+   * Marks location of entry recovered after restart that was not confirmed yet.
+   */
+  private static final long UNCONFIRMED = 1L << 63;
+
+  private static final int INITIAL_INDEX_SIZE = 1024;
+  private static final int TRANSFER_SIZE = 8 * 1024;
+
+  private static final ThreadLocal<byte[]> HASH_BUFFER = ThreadLocal.withInitial(() -> new byte[HASH_SIZE_IN_BYTES]);
+  private static final ThreadLocal<byte[]> ATTRIBUTES_BUFFER = ThreadLocal.withInitial(() -> new byte[512]);
+  private static final ThreadLocal<byte[]> TRANSFER_BUFFER = ThreadLocal.withInitial(() -> new byte[TRANSFER_SIZE]);
+
+  private final Segment[] segments;
+  private final long capacity;
+  private final int slabSize;
+  private final double compactionThreshold;
+  private final boolean persistent;
+  private final AtomicLong unconfirmed = new AtomicLong();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evicted = new LongAdder();
+
+  /**
+   * @param capacity maximum number of bytes used for entries
+   * @param slabSize size of single slab, entries larger than slab are not stored
+   * @param segments number of independently locked segments, rounded up to power of 2
+   */
+  public OffHeapCacheRepository(long capacity, int slabSize, int segments) {
+    this(capacity, slabSize, segments, 0, false);
+  }
+
+  /**
+   * @param compactionThreshold slab is compacted instead of being reused if its entries take no more than this part
+   *                            of it, 0 disables compaction
+   * @param persistent          if slabs should be written so that they can be replayed after restart
+   */
+  protected OffHeapCacheRepository(long capacity, int slabSize, int segments, double compactionThreshold, boolean persistent) {
+
+    if (slabSize < SLAB_HEADER_SIZE + RECORD_HEADER_SIZE) {
+      throw new IllegalArgumentException("slabSize should be >=" + (SLAB_HEADER_SIZE + RECORD_HEADER_SIZE) + " but is '"
+              + slabSize + "'");
+    }
+
+    if (compactionThreshold < 0 || compactionThreshold >= 1) {
+      throw new IllegalArgumentException("compactionThreshold should be >=0 and <1 but is '" + compactionThreshold + "'");
+    }
+
+    if (segments < 1) {
+      throw new IllegalArgumentException("segments should be >=1 but is '" + segments + "'");
+    }
+
+    final int segmentCount = Integer.highestOneBit(segments) == segments ? segments : Integer.highestOneBit(segments) << 1;
+    final long slabsPerSegment = capacity / slabSize / segmentCount;
+
+    if (slabsPerSegment < 1) {
+      throw new IllegalArgumentException("capacity should be >=slabSize * segments (" + (long) slabSize * segmentCount
+              + ") but is '" + capacity + "'");
+    }
+
+    if (slabsPerSegment > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("capacity '" + capacity + "' requires too many slabs of size " + slabSize);
+    }
+
+    this.slabSize = slabSize;
+    this.capacity = slabsPerSegment * slabSize * segmentCount;
+    this.compactionThreshold = compactionThreshold;
+    this.persistent = persistent;
+    this.segments = new Segment[segmentCount];
+
+    for (int i = 0; i < segmentCount; i++) {
+      this.segments[i] = new Segment(i, (int) slabsPerSegment);
+    }
+  }
+
+  /**
+   * Reserves memory for new slab, invoked under lock of the segment.
+   */
+  protected ByteBuffer allocate(int segment, int slab) throws IOException {
+    return ByteBuffer.allocateDirect(slabSize);
+  }
+
+  @Override
+  public CacheQueryResult fetchIfChanged(String key, String etag) throws CacheRepositoryException {
+
+    if (key == null) {
+      throw new CacheRepositoryException(new IllegalArgumentException("Key to upsert should not be null"));
+    }
+
+    final byte[] rawKey = key.getBytes(UTF_8);
+    final long hash = hashOf(key);
+    final Segment segment = segmentFor(hash);
+    final CacheQueryResult result = segment.get(hash, rawKey, etag, currentTimeMillis());
+
+    if (result == NO_RESULT_FOUND) {
+      misses.increment();
+    } else {
+      hits.increment();
+    }
+
+    return result;
+  }
+
+  @Override
+  public void upsert(String key, byte[] content, String etag, String contentType, String encoding, CacheRegion region, String source) throws CacheRepositoryException {
+
+    if (content == null) {
+      throw new CacheRepositoryException(new NullPointerException("Content to put into cache should not be null"));
+    }
+
+    upsert(key, singletonList(ByteBuffer.wrap(content)), content.length, etag, contentType, encoding, region, source);
+  }
+
+  /**
+   * Segments are copied into slab as they are.
+   */
+  @Override
+  public void upsert(String key, List<ByteBuffer> segments, int size, String etag, String contentType, String encoding,
+                     CacheRegion region, String source) throws CacheRepositoryException {
+
+    try {
+      if (segments == null) {
+        throw new NullPointerException("Content to put into cache should not be null");
+      }
+
+      if (etag == null) {
+        throw new NullPointerException("Etag to put into cache should not be null");
+      }
+
+      final long ttl = region.getTtl() == 0 ? 0 : region.getTtlUnit().toMillis(region.getTtl());
+      final long expiresAt = ttl == 0 ? 0 : currentTimeMillis() + ttl;
+      final long hash = hashOf(key);
+
+      if (!segmentFor(hash).put(hash, key.getBytes(UTF_8), etag.getBytes(UTF_8), raw(contentType, encoding, true),
+              raw(contentType, encoding, false), segments, size, expiresAt)) {
+        LOG.debug("Entry '{}' of {} bytes not stored as it does not fit into slab", key, size);
+      }
+    } catch (RuntimeException e) {
+      throw new CacheRepositoryException(e);
+    }
+  }
+
+  @Override
+  public void remove(String key) throws CacheRepositoryException {
+    final long hash = hashOf(key);
+    segmentFor(hash).remove(hash, key.getBytes(UTF_8));
+  }
+
+  @Override
+  public long evictRegion(CacheRegion region) throws CacheRepositoryException {
+
+    final String wildcard = region.getKeyStrategy().wildcardKeyFor(region);
+    //  wildcard is in form namespace:regionId:*
+    final byte[] prefix = wildcard.substring(0, wildcard.length() - 1).getBytes(UTF_8);
+    long removed = 0;
+
+    for (Segment segment : segments) {
+      removed += segment.removeWithPrefix(prefix);
+    }
+
+    LOG.debug("Evicted {} local entries from region '{}'", removed, region.getId());
+    return removed;
+  }
+
+  /**
+   * Entries are removed from every segment at once, batches are not needed.
+   */
+  @Override
+  public long evictRegion(CacheRegion region, int maxEntriesDeletedInOneBatch) throws CacheRepositoryException {
+    return evictRegion(region);
+  }
+
+  /**
+   * Releases slabs, they are freed by garbage collector.
+   */
+  @Override
+  public void dispose() {
+    for (Segment segment : segments) {
+      segment.clear();
+    }
+  }
+
+  /**
+   * @return etag of entry recovered after restart and not confirmed yet, null if there is no such entry
+   */
+  public String getUnconfirmedEtag(String key) {
+    final long hash = hashOf(key);
+    return segmentFor(hash).unconfirmedEtag(hash, key.getBytes(UTF_8));
+  }
+
+  /**
+   * Marks entry recovered after restart as confirmed so that it is served as any other.
+   */
+  public void confirm(String key) {
+    final long hash = hashOf(key);
+    segmentFor(hash).confirm(hash, key.getBytes(UTF_8));
+  }
+
+  @Override
+  public void registerMBeans(JmxServer jmx) {
+    jmx.register(LOCAL_CACHE_JMX_NAME, this, LocalCacheMBean.class);
+  }
+
+  @Override
+  public int getMaxEntriesDeletedInOneBatch() {
+    return Integer.MAX_VALUE;
+  }
+
+  @Override
+  public long getEntries() {
+    long entries = 0;
+    for (Segment segment : segments) {
+      entries += segment.size();
+    }
+    return entries;
+  }
+
+  @Override
+  public long getAllocatedBytes() {
+    long allocated = 0;
+    for (Segment segment : segments) {
+      allocated += segment.allocatedSlabs() * (long) slabSize;
+    }
+    return allocated;
+  }
+
+  @Override
+  public long getCapacity() {
+    return capacity;
+  }
+
+  @Override
+  public long getHits() {
+    return hits.sum();
+  }
+
+  @Override
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  @Override
+  public long getEvicted() {
+    return evicted.sum();
+  }
+
+  @Override
+  public long getUnconfirmed() {
+    return unconfirmed.get();
+  }
+
+  public int getSlabSize() {
+    return slabSize;
+  }
+
+  public int getSegments() {
+    return segments.length;
+  }
+
+  public double getCompactionThreshold() {
+    return compactionThreshold;
+  }
+
+  int getSlabsPerSegment() {
+    return segments[0].slabs.length;
+  }
+
+  Segment segment(int index) {
+    return segments[index];
+  }
+
+  private Segment segmentFor(long hash) {
+    //  bits not used to find slot in the index of segment
+    return segments[(int) (hash >>> 40) & (segments.length - 1)];
+  }
+
+  private static long hashOf(String key) {
+
+    final byte[] hash = HASH_BUFFER.get();
+    hash128(key, 0, hash);
+
+    long value = 0;
+    for (int i = 0; i < 8; i++) {
+      value |= (hash[i] & 0xffL) << (8 * i);
+    }
+
+    //  0 marks empty slot
+    return value == 0 ? 1 : value;
+  }
+
+  private static byte[] raw(String contentType, String encoding, boolean ofContentType) {
+    final MediaType type = MediaType.of(contentType, encoding);
+    final byte[] raw = ofContentType ? type.getRawContentType() : type.getRawEncoding();
+    return raw == null ? new byte[0] : raw;
+  }
+
+  private static long locationOf(int slab, int offset) {
+    return ((long) slab << 32) | offset;
+  }
+
+  private static int slabOf(long location) {
+    return (int) (location >>> 32) & Integer.MAX_VALUE;
+  }
+
+  private static int offsetOf(long location) {
+    return (int) location;
+  }
+
+  /**
+   * Part of the cache with own slabs, index and lock. Index and slabs are modified only under write lock, entries are
+   * read under read lock.
+   */
+  final class Segment {
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final int index;
+
+    @GuardedBy("lock")
+    private final ByteBuffer[] slabs;
+    /**
+     * Views of slabs used for writing (their position is changed).
+     */
+    @GuardedBy("lock")
+    private final ByteBuffer[] writers;
+    /**
+     * Incremented when slab is reused so that entries read from it can detect it.
+     */
+    @GuardedBy("lock")
+    private final int[] generations;
+    @GuardedBy("lock")
+    private int current = -1;
+    @GuardedBy("lock")
+    private int position;
+    /**
+     * Sequence number of current slab, slabs are replayed in order of their sequence numbers.
+     */
+    @GuardedBy("lock")
+    private long sequence;
+    @GuardedBy("lock")
+    private long[] hashes = new long[INITIAL_INDEX_SIZE];
+    @GuardedBy("lock")
+    private long[] locations = new long[INITIAL_INDEX_SIZE];
+    @GuardedBy("lock")
+    private int size;
+
+    Segment(int index, int slabCount) {
+      this.index = index;
+      this.slabs = new ByteBuffer[slabCount];
+      this.writers = new ByteBuffer[slabCount];
+      this.generations = new int[slabCount];
+    }
+
+    CacheQueryResult get(long hash, byte[] key, String etag, long now) {
+
+      lock.readLock().lock();
+      try {
+        final int slot = find(hash, key);
+
+        if (slot < 0) {
+          return NO_RESULT_FOUND;
+        }
+
+        final int slab = slabOf(locations[slot]);
+        final ByteBuffer buffer = slabs[slab];
+        final int offset = offsetOf(locations[slot]);
+        final long expiresAt = buffer.getLong(offset);
+
+        if (expiresAt != 0 && expiresAt <= now) {
+          return NO_RESULT_FOUND;
+        }
+
+        final int etagLength = buffer.getShort(offset + 10) & 0xffff;
+        final int contentTypeLength = buffer.getShort(offset + 12) & 0xffff;
+        final int encodingLength = buffer.getShort(offset + 14) & 0xffff;
+        final int payloadLength = buffer.getInt(offset + 16);
+        final int etagOffset = offset + RECORD_HEADER_SIZE + key.length;
+
+        if (etag != null && hasEtag(buffer, etagOffset, etagLength, etag)) {
+          return RESULT_FOUND_BUT_NOT_CHANGED;
+        }
+
+        //  attributes are copied to reused buffer so that content type and encoding are looked up without allocation
+        byte[] attributes = ATTRIBUTES_BUFFER.get();
+        final int attributesLength = etagLength + contentTypeLength + encodingLength;
+        if (attributes.length < attributesLength) {
+          attributes = new byte[attributesLength];
+          ATTRIBUTES_BUFFER.set(attributes);
+        }
+
+        for (int i = 0; i < attributesLength; i++) {
+          attributes[i] = buffer.get(etagOffset + i);
+        }
+
+        final MediaType type = MediaType.of(contentTypeLength == 0 ? null : attributes, etagLength, contentTypeLength,
+                encodingLength == 0 ? null : attributes, etagLength + contentTypeLength, encodingLength);
+
+        return new OffHeapCacheQueryResult(this, slab, generations[slab], buffer.duplicate(), etagOffset + attributesLength,
+                payloadLength, new String(attributes, 0, etagLength, UTF_8), type.getContentType(), type.getEncoding());
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    /**
+     * Copies part of payload of entry read earlier.
+     *
+     * @throws IOException if slab of the entry was reused in the meantime
+     */
+    void copy(int slab, int generation, ByteBuffer view, int offset, byte[] out, int length) throws IOException {
+
+      lock.readLock().lock();
+      try {
+        if (slabs[slab] == null || generations[slab] != generation) {
+          throw new IOException("Entry was evicted from local cache while being read");
+        }
+        view.position(offset);
+        view.get(out, 0, length);
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    /**
+     * @return false if entry does not fit into slab
+     */
+    boolean put(long hash, byte[] key, byte[] etag, byte[] contentType, byte[] encoding, List<ByteBuffer> payload,
+                int payloadLength, long expiresAt) {
+
+      if (key.length > MAX_ATTRIBUTE_LENGTH || etag.length > MAX_ATTRIBUTE_LENGTH
+              || contentType.length > MAX_ATTRIBUTE_LENGTH || encoding.length > MAX_ATTRIBUTE_LENGTH) {
+        return false;
+      }
+
+      final long recordSize = (long) RECORD_HEADER_SIZE + key.length + etag.length + contentType.length + encoding.length
+              + payloadLength;
+
+      if (recordSize > slabSize - SLAB_HEADER_SIZE) {
+        return false;
+      }
+
+      lock.writeLock().lock();
+      try {
+        final long location = append(key, etag, contentType, encoding, payload, payloadLength, expiresAt, (int) recordSize);
+
+        final int slot = find(hash, key);
+        if (slot >= 0) {
+          dropped(locations[slot]);
+          locations[slot] = location;
+        } else {
+          insert(hash, location);
+        }
+
+        return true;
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    void remove(long hash, byte[] key) {
+
+      lock.writeLock().lock();
+      try {
+        final int slot = find(hash, key);
+        if (slot >= 0) {
+          delete(slot);
+          if (persistent) {
+            appendTombstone(key, REMOVED);
+          }
+        }
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    int removeWithPrefix(byte[] prefix) {
+
+      lock.writeLock().lock();
+      try {
+        final int removed = removeIf(location -> startsWith(slabs[slabOf(location)], offsetOf(location), prefix));
+        if (persistent && removed > 0 && prefix.length <= MAX_ATTRIBUTE_LENGTH) {
+          appendTombstone(prefix, EVICTED);
+        }
+        return removed;
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    String unconfirmedEtag(long hash, byte[] key) {
+
+      lock.readLock().lock();
+      try {
+        final int slot = find(hash, key);
+
+        if (slot < 0 || (locations[slot] & UNCONFIRMED) == 0) {
+          return null;
+        }
+
+        final ByteBuffer buffer = slabs[slabOf(locations[slot])];
+        final int offset = offsetOf(locations[slot]);
+        final byte[] etag = new byte[buffer.getShort(offset + 10) & 0xffff];
+        for (int i = 0; i < etag.length; i++) {
+          etag[i] = buffer.get(offset + RECORD_HEADER_SIZE + key.length + i);
+        }
+        return new String(etag, UTF_8);
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    void confirm(long hash, byte[] key) {
+
+      lock.writeLock().lock();
+      try {
+        final int slot = find(hash, key);
+        if (slot >= 0 && (locations[slot] & UNCONFIRMED) != 0) {
+          locations[slot] &= ~UNCONFIRMED;
+          unconfirmed.decrementAndGet();
+        }
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    /**
+     * Takes over slab written by previous process, it is replayed by {@link #replay(long)}.
+     *
+     * @return false if slab was not written with the same layout, it is then left to be allocated again
+     */
+    boolean restore(int slab, ByteBuffer buffer) {
+
+      if (buffer.capacity() != slabSize || buffer.getInt(0) != SLAB_MAGIC || buffer.getInt(4) != SLAB_VERSION
+              || buffer.getInt(8) != segments.length || buffer.getInt(12) != slabSize) {
+        return false;
+      }
+
+      lock.writeLock().lock();
+      try {
+        slabs[slab] = buffer;
+        writers[slab] = buffer.duplicate();
+        return true;
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    /**
+     * Rebuilds index from restored slabs taken in order of their sequence numbers. Records are read till the first
+     * one with wrong checksum (i.e. written partially before crash), entries expired till now are skipped and the
+     * rest of them are marked as unconfirmed.
+     *
+     * @return number of recovered entries
+     */
+    int replay(long now) {
+
+      lock.writeLock().lock();
+      try {
+        final Integer[] order = new Integer[slabs.length];
+        int restored = 0;
+        for (int i = 0; i < slabs.length; i++) {
+          if (slabs[i] != null) {
+            order[restored++] = i;
+          }
+        }
+
+        Arrays.sort(order, 0, restored, (a, b) -> Long.compare(slabs[a].getLong(SLAB_SEQUENCE), slabs[b].getLong(SLAB_SEQUENCE)));
+
+        for (int i = 0; i < restored; i++) {
+          final int slab = order[i];
+          final ByteBuffer buffer = slabs[slab];
+          final int committed = min(buffer.getInt(SLAB_COMMITTED), slabSize);
+          int offset = SLAB_HEADER_SIZE;
+
+          for (int recordSize = recordSizeAt(buffer, offset, committed); recordSize > 0;
+               recordSize = recordSizeAt(buffer, offset, committed)) {
+            replayRecord(slab, offset, now);
+            offset += recordSize;
+          }
+
+          buffer.putInt(SLAB_COMMITTED, offset);
+          current = slab;
+          position = offset;
+          sequence = buffer.getLong(SLAB_SEQUENCE);
+        }
+
+        return size;
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    /**
+     * Forces changes of memory mapped slabs to be written to the storage device.
+     */
+    void flush() {
+
+      lock.readLock().lock();
+      try {
+        for (ByteBuffer slab : slabs) {
+          if (slab instanceof MappedByteBuffer) {
+            ((MappedByteBuffer) slab).force();
+          }
+        }
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    void clear() {
+
+      lock.writeLock().lock();
+      try {
+        for (int i = 0; i < slabs.length; i++) {
+          slabs[i] = null;
+          writers[i] = null;
+          generations[i]++;
+        }
+        for (long location : locations) {
+          dropped(location);
+        }
+        hashes = new long[INITIAL_INDEX_SIZE];
+        locations = new long[INITIAL_INDEX_SIZE];
+        size = 0;
+        current = -1;
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    int size() {
+      lock.readLock().lock();
+      try {
+        return size;
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    int allocatedSlabs() {
+      lock.readLock().lock();
+      try {
+        int allocated = 0;
+        for (ByteBuffer slab : slabs) {
+          if (slab != null) {
+            allocated++;
+          }
+        }
+        return allocated;
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    /**
+     * Appends record to current slab moving to next ones if it does not fit. After every slab was tried compaction is
+     * not attempted anymore so that record always fits into reused slab.
+     *
+     * @return location of the record
+     */
+    @GuardedBy("lock")
+    private long append(byte[] key, byte[] etag, byte[] contentType, byte[] encoding, List<ByteBuffer> payload, int payloadLength,
+                        long expiresAt, int recordSize) {
+
+      for (int attempts = 0; current < 0 || position + recordSize > slabSize; attempts++) {
+        nextSlab(attempts < slabs.length);
+      }
+
+      final ByteBuffer writer = writers[current];
+      writer.position(position);
+      writer.putLong(expiresAt);
+      writer.putShort((short) key.length);
+      writer.putShort((short) etag.length);
+      writer.putShort((short) contentType.length);
+      writer.putShort((short) encoding.length);
+      writer.putInt(payloadLength);
+      writer.putInt(0);
+      writer.put(key);
+      writer.put(etag);
+      writer.put(contentType);
+      writer.put(encoding);
+      for (ByteBuffer part : payload) {
+        writer.put(part.duplicate());
+      }
+
+      final ByteBuffer slab = slabs[current];
+      if (persistent) {
+        slab.putInt(position + RECORD_CHECKSUM, checksumOf(slab, position, recordSize));
+      }
+
+      final long location = locationOf(current, position);
+      position += recordSize;
+      slab.putInt(SLAB_COMMITTED, position);
+      return location;
+    }
+
+    @GuardedBy("lock")
+    private void appendTombstone(byte[] key, int type) {
+      final byte[] empty = new byte[0];
+      append(key, empty, empty, empty, emptyList(), type, 0, RECORD_HEADER_SIZE + key.length);
+    }
+
+    /**
+     * Moves to next slab, reusing it if it was already allocated. Reused slab is compacted if allowed and its entries
+     * take no more than compaction threshold of it, otherwise all its entries are removed.
+     */
+    @GuardedBy("lock")
+    private void nextSlab(boolean compactionAllowed) {
+
+      final int next = (current + 1) % slabs.length;
+
+      if (slabs[next] == null) {
+        try {
+          slabs[next] = allocate(index, next);
+        } catch (IOException e) {
+          throw new UncheckedIOException("Slab " + next + " of segment " + index + " not allocated", e);
+        }
+        writers[next] = slabs[next].duplicate();
+        slabs[next].putInt(0, SLAB_MAGIC);
+        slabs[next].putInt(4, SLAB_VERSION);
+        slabs[next].putInt(8, segments.length);
+        slabs[next].putInt(12, slabSize);
+        position = SLAB_HEADER_SIZE;
+        startSlab(next);
+      } else if (!compactionAllowed || compactionThreshold == 0 || !compact(next)) {
+        final long now = currentTimeMillis();
+        //  expired entries of other slabs are removed on the occasion
+        final int removed = removeIf(location -> slabOf(location) == next || isExpired(location, now));
+        generations[next]++;
+        evicted.add(removed);
+        position = SLAB_HEADER_SIZE;
+        startSlab(next);
+      }
+
+      current = next;
+    }
+
+    /**
+     * Starts writing of slab as the newest one, it is considered empty until its records are written.
+     */
+    @GuardedBy("lock")
+    private void startSlab(int slab) {
+      slabs[slab].putLong(SLAB_SEQUENCE, ++sequence);
+      slabs[slab].putInt(SLAB_COMMITTED, SLAB_HEADER_SIZE);
+    }
+
+    /**
+     * Moves entries of the slab still found in the index to its beginning if they take no more than compaction
+     * threshold of it. Replaced and removed entries as well as tombstones are dropped, the latter are not needed
+     * anymore as older records are in slabs reused before.
+     *
+     * @return false if slab was not compacted as its entries take too much of it
+     */
+    @GuardedBy("lock")
+    private boolean compact(int slab) {
+
+      final long now = currentTimeMillis();
+      final ByteBuffer buffer = slabs[slab];
+      int live = 0;
+      int liveBytes = 0;
+
+      for (int i = 0; i < hashes.length; i++) {
+        if (hashes[i] != 0 && slabOf(locations[i]) == slab && !isExpired(locations[i], now)) {
+          live++;
+          liveBytes += recordSizeOf(buffer, offsetOf(locations[i]));
+        }
+      }
+
+      if (liveBytes > (slabSize - SLAB_HEADER_SIZE) * compactionThreshold) {
+        return false;
+      }
+
+      //  entries are moved in order of writing so that they can be replayed
+      final long[] moved = new long[live];
+      final long[] movedHashes = new long[live];
+      int count = 0;
+      for (int i = 0; i < hashes.length; i++) {
+        if (hashes[i] != 0 && slabOf(locations[i]) == slab && !isExpired(locations[i], now)) {
+          moved[count++] = ((long) offsetOf(locations[i]) << 32) | i;
+        }
+      }
+      Arrays.sort(moved);
+
+      final byte[] records = new byte[liveBytes];
+      final ByteBuffer reader = buffer.duplicate();
+      int written = 0;
+      for (int i = 0; i < live; i++) {
+        final int slot = (int) moved[i];
+        final int offset = offsetOf(locations[slot]);
+        final int recordSize = (int) recordSizeOf(buffer, offset);
+        reader.position(offset);
+        reader.get(records, written, recordSize);
+        movedHashes[i] = hashes[slot];
+        //  offset in the slab after compaction, keeping unconfirmed mark
+        moved[i] = (locations[slot] & UNCONFIRMED) | locationOf(slab, SLAB_HEADER_SIZE + written);
+        written += recordSize;
+      }
+
+      final int removed = removeIf(location -> slabOf(location) == slab || isExpired(location, now));
+      generations[slab]++;
+      evicted.add(removed - live);
+
+      startSlab(slab);
+      final ByteBuffer writer = writers[slab];
+      writer.position(SLAB_HEADER_SIZE);
+      writer.put(records);
+      buffer.putInt(SLAB_COMMITTED, SLAB_HEADER_SIZE + liveBytes);
+      position = SLAB_HEADER_SIZE + liveBytes;
+
+      for (int i = 0; i < live; i++) {
+        insert(movedHashes[i], moved[i]);
+        if ((moved[i] & UNCONFIRMED) != 0) {
+          unconfirmed.incrementAndGet();
+        }
+      }
+
+      return true;
+    }
+
+    @GuardedBy("lock")
+    private void replayRecord(int slab, int offset, long now) {
+
+      final ByteBuffer buffer = slabs[slab];
+      final byte[] key = new byte[buffer.getShort(offset + 8) & 0xffff];
+      for (int i = 0; i < key.length; i++) {
+        key[i] = buffer.get(offset + RECORD_HEADER_SIZE + i);
+      }
+
+      final int payloadLength = buffer.getInt(offset + 16);
+
+      if (payloadLength == EVICTED) {
+        removeIf(location -> startsWith(slabs[slabOf(location)], offsetOf(location), key));
+        return;
+      }
+
+      final long hash = hashOf(new String(key, UTF_8));
+      final int slot = find(hash, key);
+
+      if (slot >= 0) {
+        delete(slot);
+      }
+
+      final long expiresAt = buffer.getLong(offset);
+      if (payloadLength != REMOVED && (expiresAt == 0 || expiresAt > now)) {
+        insert(hash, UNCONFIRMED | locationOf(slab, offset));
+        unconfirmed.incrementAndGet();
+      }
+    }
+
+    /**
+     * @return size of record at given offset or 0 if there is no record with valid checksum before limit
+     */
+    @GuardedBy("lock")
+    private int recordSizeAt(ByteBuffer buffer, int offset, int limit) {
+
+      if (offset + RECORD_HEADER_SIZE > limit) {
+        return 0;
+      }
+
+      final long size = recordSizeOf(buffer, offset);
+
+      if (buffer.getInt(offset + 16) < EVICTED || offset + size > limit
+              || buffer.getInt(offset + RECORD_CHECKSUM) != checksumOf(buffer, offset, (int) size)) {
+        return 0;
+      }
+
+      return (int) size;
+    }
+
+    /**
+     * @return slot of the key or -1 if there is no such key
+     */
+    @GuardedBy("lock")
+    private int find(long hash, byte[] key) {
+
+      final int mask = hashes.length - 1;
+
+      for (int slot = slotOf(hash, mask); hashes[slot] != 0; slot = (slot + 1) & mask) {
+        if (hashes[slot] == hash && hasKey(locations[slot], key)) {
+          return slot;
+        }
+      }
+
+      return -1;
+    }
+
+    @GuardedBy("lock")
+    private void insert(long hash, long location) {
+
+      if ((size + 1) * 4L > hashes.length * 3L) {
+        resize(hashes.length * 2);
+      }
+
+      final int mask = hashes.length - 1;
+      int slot = slotOf(hash, mask);
+      while (hashes[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+
+      hashes[slot] = hash;
+      locations[slot] = location;
+      size++;
+    }
+
+    /**
+     * Removes slot moving following entries back so that no tombstones are needed.
+     */
+    @GuardedBy("lock")
+    private void delete(int slot) {
+
+      dropped(locations[slot]);
+
+      final int mask = hashes.length - 1;
+      int empty = slot;
+
+      for (int next = (slot + 1) & mask; hashes[next] != 0; next = (next + 1) & mask) {
+        final int home = slotOf(hashes[next], mask);
+        //  entry can be moved to empty slot only if its home is not between empty slot and its current slot
+        final boolean between = empty <= next ? empty < home && home <= next : empty < home || home <= next;
+        if (!between) {
+          hashes[empty] = hashes[next];
+          locations[empty] = locations[next];
+          empty = next;
+        }
+      }
+
+      hashes[empty] = 0;
+      locations[empty] = 0;
+      size--;
+    }
+
+    /**
+     * Deletes matching entries in place. Deleting moves following entries back, so the same slot is checked again, entries
+     * are never moved before the slot being deleted except for the ones wrapped around the end that were already checked.
+     *
+     * @return number of removed entries
+     */
+    @GuardedBy("lock")
+    private int removeIf(LongPredicate removed) {
+
+      final int before = size;
+
+      for (int slot = 0; slot < hashes.length; ) {
+        if (hashes[slot] != 0 && removed.test(locations[slot])) {
+          delete(slot);
+        } else {
+          slot++;
+        }
+      }
+
+      return before - size;
+    }
+
+    @GuardedBy("lock")
+    private void resize(int length) {
+
+      final long[] oldHashes = hashes;
+      final long[] oldLocations = locations;
+      hashes = new long[length];
+      locations = new long[length];
+      size = 0;
+
+      for (int i = 0; i < oldHashes.length; i++) {
+        if (oldHashes[i] != 0) {
+          insert(oldHashes[i], oldLocations[i]);
+        }
+      }
+    }
+
+    @GuardedBy("lock")
+    private boolean hasKey(long location, byte[] key) {
+      final ByteBuffer buffer = slabs[slabOf(location)];
+      final int offset = offsetOf(location);
+      return (buffer.getShort(offset + 8) & 0xffff) == key.length && startsWith(buffer, offset, key);
+    }
+
+    @GuardedBy("lock")
+    private boolean isExpired(long location, long now) {
+      final long expiresAt = slabs[slabOf(location)].getLong(offsetOf(location));
+      return expiresAt != 0 && expiresAt <= now;
+    }
+  }
+
+  /**
+   * Updates number of unconfirmed entries when entry at given location leaves the index.
+   */
+  private void dropped(long location) {
+    if ((location & UNCONFIRMED) != 0) {
+      unconfirmed.decrementAndGet();
+    }
+  }
+
+  private static long recordSizeOf(ByteBuffer slab, int offset) {
+    final int payloadLength = slab.getInt(offset + 16);
+    return (long) RECORD_HEADER_SIZE + (slab.getShort(offset + 8) & 0xffff) + (slab.getShort(offset + 10) & 0xffff)
+            + (slab.getShort(offset + 12) & 0xffff) + (slab.getShort(offset + 14) & 0xffff)
+            + (payloadLength < 0 ? 0 : payloadLength);
+  }
+
+  /**
+   * Checksum of the record without its checksum field.
+   */
+  private static int checksumOf(ByteBuffer slab, int offset, int recordSize) {
+    final CRC32 crc = new CRC32();
+    final ByteBuffer view = slab.duplicate();
+    view.limit(offset + RECORD_CHECKSUM).position(offset);
+    crc.update(view);
+    view.limit(offset + recordSize).position(offset + RECORD_CHECKSUM + 4);
+    crc.update(view);
+    return (int) crc.getValue();
+  }
+
+  private static int slotOf(long hash, int mask) {
+    return (int) (hash ^ (hash >>> 32)) & mask;
+  }
+
+  /**
+   * @return true if key of the record at given offset starts with given bytes
+   */
+  private static boolean startsWith(ByteBuffer buffer, int offset, byte[] prefix) {
+
+    if ((buffer.getShort(offset + 8) & 0xffff) < prefix.length) {
+      return false;
+    }
+
+    final int keyOffset = offset + RECORD_HEADER_SIZE;
+    for (int i = 0; i < prefix.length; i++) {
+      if (buffer.get(keyOffset + i) != prefix[i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private static boolean hasEtag(ByteBuffer buffer, int offset, int length, String etag) {
+
+    //  etags are ASCII, other ones are never equal and entry is returned as changed
+    if (length != etag.length()) {
+      return false;
+    }
+
+    for (int i = 0; i < length; i++) {
+      if (buffer.get(offset + i) != (byte) etag.charAt(i)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Entry read from the slab, payload is copied in parts while being written.
+   */
+  static final class OffHeapCacheQueryResult extends CacheQueryResult {
+
+    private final Segment segment;
+    private final int slab;
+    private final int generation;
+    private final ByteBuffer view;
+    private final int offset;
+    private final int length;
+
+    OffHeapCacheQueryResult(Segment segment, int slab, int generation, ByteBuffer view, int offset, int length,
+                            String storedEtag, String contentType, String encoding) {
+      super(false, (byte[]) null, storedEtag, contentType, encoding);
+      this.segment = segment;
+      this.slab = slab;
+      this.generation = generation;
+      this.view = view;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    /**
+     * Payload is copied from the slab while being written so that it is not copied to the heap as a whole, slab might
+     * be reused in the meantime.
+     */
+    @Override
+    public boolean isStreamed() {
+      return true;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+
+      final byte[] transfer = TRANSFER_BUFFER.get();
+
+      for (int written = 0; written < length; ) {
+        final int part = min(transfer.length, length - written);
+        segment.copy(slab, generation, view, offset + written, transfer, part);
+        out.write(transfer, 0, part);
+        written += part;
+      }
+    }
+
+    /**
+     * Parts are copied from the slab one by one into buffer owned by returned parts, as they are written by container
+     * threads thread local buffer can not be used.
+     */
+    @Override
+    public PayloadParts openParts() {
+
+      final byte[] transfer = new byte[min(TRANSFER_SIZE, length)];
+
+      return new PayloadParts() {
+
+        private int read;
+
+        @Override
+        public ByteBuffer next() throws IOException {
+
+          if (read == length) {
+            return null;
+          }
+
+          final int part = min(transfer.length, length - read);
+          segment.copy(slab, generation, view, offset + read, transfer, part);
+          read += part;
+          return ByteBuffer.wrap(transfer, 0, part);
+        }
+      };
+    }
+
+    @Override
+    public int getPayloadSize() {
+      return length;
+    }
+
+    /**
+     * Copies payload to the heap, prefer {@link #writeTo(OutputStream)}.
+     */
+    @Override
+    public byte[] getPayloadBytes() {
+      try {
+        final byte[] payload = new byte[length];
+        segment.copy(slab, generation, view, offset, payload, length);
+        return payload;
+      } catch (IOException e) {
+        throw new IllegalStateException(e.getMessage(), e);
+      }
+    }
+  }
+}
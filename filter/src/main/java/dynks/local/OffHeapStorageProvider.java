@@ -0,0 +1,24 @@
+package dynks.local;
+
+import com.typesafe.config.Config;
+import dynks.cache.CacheRepository;
+import dynks.cache.StorageProvider;
+
+/**
+ * Memory of this process outside of the heap, configured with capacity, slabSize and segments of dynks.l1.
+ */
+public class OffHeapStorageProvider implements StorageProvider {
+
+  public static final String NAME = "OFF_HEAP";
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public CacheRepository create(Config config) {
+    return new OffHeapCacheRepository(config.getBytes("dynks.l1.capacity"), config.getBytes("dynks.l1.slabSize").intValue(),
+            config.getInt("dynks.l1.segments"));
+  }
+}
@@ -0,0 +1,54 @@
+package dynks.redis;
+
+import dynks.cache.CacheQueryResult;
+import dynks.cache.PayloadParts;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static java.util.Arrays.copyOfRange;
+
+/**
+ * Result for entry stored in binary format (see {@link BinaryEntryCodec}). Payload is written directly from the value
+ * returned by redis, it is copied only when requested as separate array.
+ */
+class BinaryCacheQueryResult extends CacheQueryResult {
+
+  private final byte[] value;
+  private final int offset;
+  private volatile byte[] payloadCopy;
+
+  BinaryCacheQueryResult(byte[] value, int offset, String storedEtag, String contentType, String encoding) {
+    super(false, (byte[]) null, storedEtag, contentType, encoding);
+    this.value = value;
+    this.offset = offset;
+  }
+
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+    out.write(value, offset, value.length - offset);
+  }
+
+  @Override
+  public PayloadParts openParts() {
+    return PayloadParts.of(value, offset, value.length - offset);
+  }
+
+  @Override
+  public int getPayloadSize() {
+    return value.length - offset;
+  }
+
+  /**
+   * Copies payload out of the value, prefer {@link #writeTo(OutputStream)}.
+   */
+  @Override
+  public byte[] getPayloadBytes() {
+    byte[] copy = payloadCopy;
+    if (copy == null) {
+      copy = copyOfRange(value, offset, value.length);
+      payloadCopy = copy;
+    }
+    return copy;
+  }
+}
@@ -0,0 +1,273 @@
+package dynks.redis;
+
+import dynks.MediaType;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compact format of cache entry stored as single redis string instead of hash with one field per attribute:
+ * <pre>
+ * version (1 byte)
+ * etag length (varint), etag (ASCII)
+ * number of chunks (varint), 0 when payload follows
+ * content type id (varint), 0 followed by length (varint) and UTF-8 bytes when not among well known ones
+ * encoding id (varint), 0 followed by length (varint) and UTF-8 bytes when not among well known ones
+ * source length (varint), source (UTF-8), length 0 when source is not stored
+ * payload in original encoding (rest of the value)
+ * </pre>
+ * Etag is placed right after version so that it can be compared after reading only beginning of the value
+ * ({@link #HEADER_PROBE_SIZE} bytes). Payload is not transcoded so that it is written to the client directly from
+ * the value returned by redis. Content type and encoding are decoded into interned {@link MediaType} so that no strings
+ * are created when reading the entry.
+ */
+final class BinaryEntryCodec {
+
+  static final byte VERSION = 1;
+
+  /**
+   * Number of bytes read from the beginning of the value to compare etag.
+   */
+  static final int HEADER_PROBE_SIZE = 64;
+
+  /**
+   * Ids are stored in redis, new values may only be appended.
+   */
+  static final String[] CONTENT_TYPES = {null, "application/json", "text/html", "text/plain", "application/xml",
+          "text/xml", "application/javascript", "text/javascript", "text/css", "text/csv", "application/hal+json"};
+
+  static final String[] ENCODINGS = {null, "UTF-8", "ISO-8859-1", "ISO-8859-2", "US-ASCII", "UTF-16", "windows-1250",
+          "windows-1252"};
+
+  private static final byte[][] RAW_CONTENT_TYPES = rawOf(CONTENT_TYPES);
+  private static final byte[][] RAW_ENCODINGS = rawOf(ENCODINGS);
+
+  private BinaryEntryCodec() {
+    //  no instances allowed
+  }
+
+  /**
+   * Header of decoded entry, payload is not copied out of the value.
+   */
+  static final class Header {
+
+    final String etag;
+    final int chunks;
+    final String contentType;
+    final String encoding;
+    final int payloadOffset;
+
+    private Header(String etag, int chunks, String contentType, String encoding, int payloadOffset) {
+      this.etag = etag;
+      this.chunks = chunks;
+      this.contentType = contentType;
+      this.encoding = encoding;
+      this.payloadOffset = payloadOffset;
+    }
+  }
+
+  /**
+   * @param payload content in given encoding, empty for entries stored in chunks
+   * @param source  might be null
+   */
+  static byte[] encode(byte[] payload, String etag, String contentType, String encoding, String source, int chunks) {
+
+    final byte[] rawEtag = etag.getBytes(ISO_8859_1);
+    final MediaType type = MediaType.of(contentType, encoding);
+    final int contentTypeId = idOf(CONTENT_TYPES, contentType);
+    final byte[] rawContentType = contentTypeId == 0 ? type.getRawContentType() : null;
+    final int encodingId = idOf(ENCODINGS, encoding);
+    final byte[] rawEncoding = encodingId == 0 ? type.getRawEncoding() : null;
+    final byte[] rawSource = source == null ? null : source.getBytes(UTF_8);
+
+    int size = 1 + sizeOf(rawEtag.length) + rawEtag.length + sizeOf(chunks) + sizeOf(contentTypeId) + sizeOf(encodingId)
+            + payload.length;
+    size += rawContentType == null ? 0 : sizeOf(rawContentType.length) + rawContentType.length;
+    size += rawEncoding == null ? 0 : sizeOf(rawEncoding.length) + rawEncoding.length;
+    size += rawSource == null ? 1 : sizeOf(rawSource.length) + rawSource.length;
+
+    final byte[] value = new byte[size];
+    value[0] = VERSION;
+    int position = putBytes(value, 1, rawEtag);
+    position = putVarint(value, position, chunks);
+    position = putVarint(value, position, contentTypeId);
+    if (rawContentType != null) {
+      position = putBytes(value, position, rawContentType);
+    }
+    position = putVarint(value, position, encodingId);
+    if (rawEncoding != null) {
+      position = putBytes(value, position, rawEncoding);
+    }
+    position = rawSource == null ? putVarint(value, position, 0) : putBytes(value, position, rawSource);
+    System.arraycopy(payload, 0, value, position, payload.length);
+
+    return value;
+  }
+
+  /**
+   * @return header of the value or null if it was written with unknown version of the format
+   * @throws IllegalArgumentException if value is truncated
+   */
+  static Header decode(byte[] value) {
+
+    if (value.length == 0 || value[0] != VERSION) {
+      return null;
+    }
+
+    try {
+      final int[] position = {1};
+      final int etagLength = readVarint(value, position);
+      final String etag = new String(value, position[0], etagLength, ISO_8859_1);
+      position[0] += etagLength;
+      final int chunks = readVarint(value, position);
+
+      final int contentTypeId = readKnownId(value, position, RAW_CONTENT_TYPES);
+      final int contentTypeLength = contentTypeId == 0 ? skipInline(value, position) : RAW_CONTENT_TYPES[contentTypeId].length;
+      final int contentTypeOffset = contentTypeId == 0 ? position[0] - contentTypeLength : 0;
+
+      final int encodingId = readKnownId(value, position, RAW_ENCODINGS);
+      final int encodingLength = encodingId == 0 ? skipInline(value, position) : RAW_ENCODINGS[encodingId].length;
+      final int encodingOffset = encodingId == 0 ? position[0] - encodingLength : 0;
+
+      //  source is kept only for debugging, not needed when serving the entry
+      final int sourceLength = readVarint(value, position);
+      position[0] += sourceLength;
+
+      if (position[0] > value.length) {
+        throw new IllegalArgumentException("Entry is truncated");
+      }
+
+      final MediaType type = MediaType.of(contentTypeId == 0 ? value : RAW_CONTENT_TYPES[contentTypeId], contentTypeOffset,
+              contentTypeLength, encodingId == 0 ? value : RAW_ENCODINGS[encodingId], encodingOffset, encodingLength);
+
+      return new Header(etag, chunks, type.getContentType(), type.getEncoding(), position[0]);
+    } catch (ArrayIndexOutOfBoundsException | StringIndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("Entry is truncated", e);
+    }
+  }
+
+  /**
+   * Compares etag without decoding it.
+   *
+   * @param value whole value or its beginning
+   * @return true if value contains given etag, false if it contains other etag or etag was not read completely
+   */
+  static boolean hasEtag(byte[] value, String etag) {
+
+    if (value.length < 2 || value[0] != VERSION) {
+      return false;
+    }
+
+    final int[] position = {1};
+    final int length = readVarintOrNegative(value, position);
+
+    if (length != etag.length() || position[0] + length > value.length) {
+      return false;
+    }
+
+    for (int i = 0; i < length; i++) {
+      if (value[position[0] + i] != (byte) etag.charAt(i)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private static int readKnownId(byte[] value, int[] position, byte[][] known) {
+
+    final int id = readVarint(value, position);
+
+    if (id >= known.length) {
+      throw new IllegalArgumentException("Unknown id " + id + ", entry written by newer version");
+    }
+
+    return id;
+  }
+
+  /**
+   * @return length of inline value, position is moved after it
+   */
+  private static int skipInline(byte[] value, int[] position) {
+
+    final int length = readVarint(value, position);
+
+    if (position[0] + length > value.length) {
+      throw new IllegalArgumentException("Entry is truncated");
+    }
+
+    position[0] += length;
+    return length;
+  }
+
+  private static byte[][] rawOf(String[] known) {
+    final byte[][] raw = new byte[known.length][];
+    for (int i = 1; i < known.length; i++) {
+      raw[i] = known[i].getBytes(UTF_8);
+    }
+    return raw;
+  }
+
+  private static int idOf(String[] known, String value) {
+    for (int i = 1; i < known.length; i++) {
+      if (known[i].equalsIgnoreCase(value)) {
+        return i;
+      }
+    }
+    return 0;
+  }
+
+  private static int putBytes(byte[] out, int position, byte[] bytes) {
+    position = putVarint(out, position, bytes.length);
+    System.arraycopy(bytes, 0, out, position, bytes.length);
+    return position + bytes.length;
+  }
+
+  private static int putVarint(byte[] out, int position, int value) {
+    while ((value & ~0x7f) != 0) {
+      out[position++] = (byte) ((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    out[position++] = (byte) value;
+    return position;
+  }
+
+  private static int readVarint(byte[] in, int[] position) {
+    final int value = readVarintOrNegative(in, position);
+    if (value < 0) {
+      throw new IllegalArgumentException("Entry is truncated");
+    }
+    return value;
+  }
+
+  /**
+   * @return value or -1 if varint is not complete
+   */
+  private static int readVarintOrNegative(byte[] in, int[] position) {
+
+    int value = 0;
+    int shift = 0;
+    int i = position[0];
+
+    while (i < in.length && shift < 32) {
+      final byte b = in[i++];
+      value |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        position[0] = i;
+        return value;
+      }
+      shift += 7;
+    }
+
+    return -1;
+  }
+
+  private static int sizeOf(int value) {
+    int size = 1;
+    while ((value & ~0x7f) != 0) {
+      value >>>= 7;
+      size++;
+    }
+    return size;
+  }
+}
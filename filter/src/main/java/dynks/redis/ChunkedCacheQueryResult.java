@@ -0,0 +1,122 @@
+package dynks.redis;
+
+import dynks.cache.CacheQueryResult;
+import dynks.cache.PayloadParts;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+
+import static java.lang.Math.min;
+
+/**
+ * Result for entry stored in chunks. First batch of chunks is read together with manifest so that missing entry is
+ * detected before anything is sent to the client, the rest is read in batches while payload is written.
+ */
+class ChunkedCacheQueryResult extends CacheQueryResult {
+
+  private final RedisCacheRepository repository;
+  private final String key;
+  private final int chunks;
+  private final int chunksPerRead;
+  private final List<byte[]> firstBatch;
+
+  ChunkedCacheQueryResult(RedisCacheRepository repository, String key, int chunks, int chunksPerRead, List<byte[]> firstBatch,
+                          String storedEtag, String contentType, String encoding) {
+    super(false, (byte[]) null, storedEtag, contentType, encoding);
+    this.repository = repository;
+    this.key = key;
+    this.chunks = chunks;
+    this.chunksPerRead = chunksPerRead;
+    this.firstBatch = firstBatch;
+  }
+
+  @Override
+  public boolean isStreamed() {
+    return true;
+  }
+
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+
+    for (byte[] chunk : firstBatch) {
+      out.write(chunk);
+    }
+
+    int next = firstBatch.size();
+
+    while (next < chunks) {
+      //  let client consume what was already read while next batch is being fetched
+      out.flush();
+      List<byte[]> batch = repository.readChunks(key, storedEtag, next, min(chunksPerRead, chunks - next));
+      for (byte[] chunk : batch) {
+        out.write(chunk);
+      }
+      next += batch.size();
+    }
+  }
+
+  /**
+   * Every chunk is single part, next batch of chunks is read when all chunks of previous one were written.
+   */
+  @Override
+  public PayloadParts openParts() {
+    return new PayloadParts() {
+
+      private Iterator<byte[]> batch = firstBatch.iterator();
+      private int next = firstBatch.size();
+
+      @Override
+      public ByteBuffer next() throws IOException {
+
+        if (!batch.hasNext()) {
+          if (next == chunks) {
+            return null;
+          }
+          final List<byte[]> read = repository.readChunks(key, storedEtag, next, min(chunksPerRead, chunks - next));
+          next += read.size();
+          batch = read.iterator();
+        }
+
+        return ByteBuffer.wrap(batch.next());
+      }
+    };
+  }
+
+  /**
+   * Reads whole payload into memory, prefer {@link #writeTo(OutputStream)}.
+   */
+  @Override
+  public byte[] getPayloadBytes() {
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      writeTo(out);
+      return out.toByteArray();
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to read chunks of '" + key + "'", e);
+    }
+  }
+
+  /**
+   * Size is not stored in the manifest, it is known only after whole payload was read.
+   */
+  @Override
+  public int getKnownPayloadSize() {
+    return -1;
+  }
+
+  /**
+   * Reads whole payload into memory as size is not stored in the manifest.
+   */
+  @Override
+  public int getPayloadSize() {
+    return getPayloadBytes().length;
+  }
+
+  public int getChunks() {
+    return chunks;
+  }
+}
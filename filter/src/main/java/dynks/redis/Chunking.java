@@ -0,0 +1,88 @@
+package dynks.redis;
+
+/**
+ * Configuration of storing large entries in chunks. Entry larger than threshold is stored as manifest (hash
+ * with etag, content type and encoding) and number of chunks stored under separate keys so that no single redis
+ * command has to transfer the whole payload and payload can be streamed to the client while it is read.
+ * <p>
+ * Chunks always expire, entries of regions without ttl are kept for ttl of chunks, so that chunks of versions that were
+ * replaced or evicted without removing them explicitly are not kept forever.
+ */
+public class Chunking {
+
+  public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+  public static final int DEFAULT_CHUNKS_PER_READ = 4;
+  public static final int DEFAULT_TTL_IN_SECONDS = 24 * 3600;
+
+  /**
+   * Chunking disabled, every entry will be stored as single value.
+   */
+  public static final Chunking DISABLED = new Chunking(0, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNKS_PER_READ);
+
+  private final long threshold;
+  private final int chunkSize;
+  private final int chunksPerRead;
+  private final int ttlInSeconds;
+
+  public Chunking(long threshold, int chunkSize, int chunksPerRead) {
+    this(threshold, chunkSize, chunksPerRead, DEFAULT_TTL_IN_SECONDS);
+  }
+
+  /**
+   * @param threshold     entries larger than threshold (in bytes) will be stored in chunks, 0 disables chunking
+   * @param chunkSize     size of single chunk in bytes
+   * @param chunksPerRead number of chunks read from redis in one pipeline
+   * @param ttlInSeconds  ttl of chunked entries of regions without ttl
+   */
+  public Chunking(long threshold, int chunkSize, int chunksPerRead, int ttlInSeconds) {
+
+    if (threshold < 0) {
+      throw new IllegalArgumentException("chunkThreshold should be >=0 but is '" + threshold + "'");
+    }
+
+    if (chunkSize < 1) {
+      throw new IllegalArgumentException("chunkSize should be >=1 but is '" + chunkSize + "'");
+    }
+
+    if (chunksPerRead < 1) {
+      throw new IllegalArgumentException("chunksPerRead should be >=1 but is '" + chunksPerRead + "'");
+    }
+
+    if (ttlInSeconds < 1) {
+      throw new IllegalArgumentException("chunkTtl should be >=1s but is '" + ttlInSeconds + "'");
+    }
+
+    this.threshold = threshold;
+    this.chunkSize = chunkSize;
+    this.chunksPerRead = chunksPerRead;
+    this.ttlInSeconds = ttlInSeconds;
+  }
+
+  public boolean isEnabled() {
+    return threshold > 0;
+  }
+
+  public boolean appliesTo(int size) {
+    return isEnabled() && size > threshold;
+  }
+
+  public int chunksFor(int size) {
+    return (size + chunkSize - 1) / chunkSize;
+  }
+
+  public long getThreshold() {
+    return threshold;
+  }
+
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+  public int getChunksPerRead() {
+    return chunksPerRead;
+  }
+
+  public int getTtlInSeconds() {
+    return ttlInSeconds;
+  }
+}
@@ -0,0 +1,87 @@
+package dynks.redis;
+
+import redis.clients.jedis.HostAndPort;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Ranges of redis cluster slots with nodes serving them, read from reply to CLUSTER SLOTS.
+ */
+final class ClusterSlots {
+
+  static final int SLOTS = 16384;
+
+  private ClusterSlots() {
+    //  no instances allowed
+  }
+
+  /**
+   * @param reply      to CLUSTER SLOTS
+   * @param queriedHost host of the node that replied, used for nodes announced without host
+   */
+  static List<SlotRange> parse(List<Object> reply, String queriedHost) {
+
+    final List<SlotRange> ranges = new ArrayList<>(reply.size());
+
+    for (Object element : reply) {
+      final List<?> range = (List<?>) element;
+      final List<HostAndPort> replicas = new ArrayList<>(range.size() - 3);
+
+      for (int i = 3; i < range.size(); i++) {
+        replicas.add(nodeOf((List<?>) range.get(i), queriedHost));
+      }
+
+      ranges.add(new SlotRange(((Long) range.get(0)).intValue(), ((Long) range.get(1)).intValue(),
+              nodeOf((List<?>) range.get(2), queriedHost), replicas));
+    }
+
+    return ranges;
+  }
+
+  private static HostAndPort nodeOf(List<?> node, String queriedHost) {
+    final String host = new String((byte[]) node.get(0), UTF_8);
+    return new HostAndPort(host.isEmpty() ? queriedHost : host, ((Long) node.get(1)).intValue());
+  }
+
+  static String nameOf(HostAndPort node) {
+    return node.getHost() + ':' + node.getPort();
+  }
+
+  /**
+   * Slots from start to end (inclusive) served by master and its replicas.
+   */
+  static final class SlotRange {
+
+    private final int start;
+    private final int end;
+    private final HostAndPort master;
+    private final List<HostAndPort> replicas;
+
+    SlotRange(int start, int end, HostAndPort master, List<HostAndPort> replicas) {
+      this.start = start;
+      this.end = end;
+      this.master = master;
+      this.replicas = Collections.unmodifiableList(replicas);
+    }
+
+    int getStart() {
+      return start;
+    }
+
+    int getEnd() {
+      return end;
+    }
+
+    HostAndPort getMaster() {
+      return master;
+    }
+
+    List<HostAndPort> getReplicas() {
+      return replicas;
+    }
+  }
+}
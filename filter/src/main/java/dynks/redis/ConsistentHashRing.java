@@ -0,0 +1,94 @@
+package dynks.redis;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static dynks.Murmur3.HASH_SIZE_IN_BYTES;
+import static dynks.Murmur3.hash128;
+
+/**
+ * Ring of points assigned to nodes by hashing their names, every node is placed on the ring as given number of virtual
+ * nodes so that keys are spread evenly. Key belongs to the node of first point following hash of the key, so when node
+ * is added or removed only keys of its points are moved to other nodes.
+ */
+@ThreadSafe
+final class ConsistentHashRing<T> {
+
+  private static final ThreadLocal<byte[]> HASH_BUFFER = ThreadLocal.withInitial(() -> new byte[HASH_SIZE_IN_BYTES]);
+
+  private final long[] points;
+  private final Object[] owners;
+
+  /**
+   * @param nodes        by their names, placement depends only on names so that it is the same on every instance
+   * @param virtualNodes number of points of every node
+   */
+  ConsistentHashRing(Map<String, T> nodes, int virtualNodes) {
+
+    if (nodes.isEmpty()) {
+      throw new IllegalArgumentException("At least one node should be given");
+    }
+
+    if (virtualNodes < 1) {
+      throw new IllegalArgumentException("virtualNodes should be >=1 but is '" + virtualNodes + "'");
+    }
+
+    final long[][] placed = new long[nodes.size() * virtualNodes][];
+    final Object[] byIndex = nodes.values().toArray();
+    int i = 0;
+    int node = 0;
+
+    for (String name : nodes.keySet()) {
+      for (int v = 0; v < virtualNodes; v++) {
+        placed[i++] = new long[]{hashOf(name + '#' + v), node};
+      }
+      node++;
+    }
+
+    //  ties (practically never) are resolved by node order so that ring does not depend on sorting stability
+    Arrays.sort(placed, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+
+    points = new long[placed.length];
+    owners = new Object[placed.length];
+    for (int p = 0; p < placed.length; p++) {
+      points[p] = placed[p][0];
+      owners[p] = byIndex[(int) placed[p][1]];
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  T nodeFor(CharSequence key) {
+
+    int index = Arrays.binarySearch(points, hashOf(key));
+
+    if (index < 0) {
+      index = -index - 1;
+      if (index == points.length) {
+        index = 0;
+      }
+    }
+
+    return (T) owners[index];
+  }
+
+  int size() {
+    return points.length;
+  }
+
+  /**
+   * @return first 64 bits of MurmurHash3 of the value
+   */
+  static long hashOf(CharSequence value) {
+
+    final byte[] hash = HASH_BUFFER.get();
+    hash128(value, 0, hash);
+
+    long h = 0;
+    for (int i = 7; i >= 0; i--) {
+      h = (h << 8) | (hash[i] & 0xff);
+    }
+    return h;
+  }
+}
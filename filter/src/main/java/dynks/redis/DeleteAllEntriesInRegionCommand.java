@@ -20,9 +20,9 @@ import static java.lang.String.valueOf;
 public class DeleteAllEntriesInRegionCommand {
 
   private Map<CacheRegion, String> cachedEvictionWildcardPatterns = new ConcurrentHashMap<>();
-  private String lastScriptSha = "firstUseWillThrowException";
+  private volatile String lastScriptSha = "firstUseWillThrowException";
 
-  private final static String SCRIPT = "" +
+  final static String SCRIPT = "" +
           "local p = KEYS[1]\n" + //  pattern
           "local l = KEYS[2]\n" + //  maxEntriesDeletedInOneBatch
           "local c = 0\n" +
@@ -39,6 +39,13 @@ public class DeleteAllEntriesInRegionCommand {
           "return c";
 
 
+  /**
+   * Loads script into redis so that first eviction does not need to fall back on NOSCRIPT.
+   */
+  public void load(Jedis jedis) {
+    lastScriptSha = jedis.scriptLoad(SCRIPT);
+  }
+
   public Long execute(Jedis jedis, CacheRegion region, final int maxEntriesDeletedInOneBatch) {
 
     long allRemoved = 0;
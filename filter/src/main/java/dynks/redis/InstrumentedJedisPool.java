@@ -0,0 +1,194 @@
+package dynks.redis;
+
+import dynks.jmx.PoolMBean;
+import net.jcip.annotations.ThreadSafe;
+import org.apache.commons.pool2.PooledObjectFactory;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Jedis pool recording time of waiting for connection, time for which connection was held and borrows that found pool
+ * exhausted. Time of borrow is kept per connection so that connections borrowed while holding other one (i.e. replication
+ * checks, region accounting) are measured separately, hold is recorded when connection is returned to the underlying
+ * pool by {@link Jedis#close()}. Maximum number of connections may be changed at runtime (see {@link PoolSizer}).
+ */
+@ThreadSafe
+public class InstrumentedJedisPool extends JedisPool implements PoolMBean {
+
+  private final LongAdder borrowed = new LongAdder();
+  private final LongAdder exhausted = new LongAdder();
+  private final LongAdder waitNanos = new LongAdder();
+  private final AtomicLong maxWaitNanos = new AtomicLong();
+  private final LongAdder returned = new LongAdder();
+  private final LongAdder holdNanos = new LongAdder();
+  private final AtomicLong peakActive = new AtomicLong();
+  private final ConcurrentMap<Jedis, Long> borrowedAt = new ConcurrentHashMap<>();
+
+  private volatile PoolSizer sizer;
+
+  public InstrumentedJedisPool(JedisPoolConfig poolConfig, String host, int port, int timeout) {
+    super(poolConfig, host, port, timeout);
+
+    //  replaced before any connection was created so that returns are recorded without overriding deprecated methods
+    final GenericObjectPool<Jedis> created = internalPool;
+    internalPool = new InstrumentedObjectPool(created.getFactory(), poolConfig);
+    created.close();
+  }
+
+  @Override
+  public Jedis getResource() {
+
+    final int active = internalPool.getNumActive();
+    if (internalPool.getNumIdle() == 0 && active >= internalPool.getMaxTotal()) {
+      exhausted.increment();
+    }
+
+    final long start = nanoTime();
+    final Jedis jedis = super.getResource();
+    final long now = nanoTime();
+    final long wait = now - start;
+
+    borrowed.increment();
+    waitNanos.add(wait);
+    maxWaitNanos.accumulateAndGet(wait, Math::max);
+    peakActive.accumulateAndGet(active + 1, Math::max);
+    borrowedAt.put(jedis, now);
+
+    return jedis;
+  }
+
+  private void recordHold(Jedis resource) {
+    final Long borrowed = borrowedAt.remove(resource);
+    if (borrowed != null) {
+      holdNanos.add(nanoTime() - borrowed);
+      returned.increment();
+    }
+  }
+
+  /**
+   * Starts adjusting maximum number of connections, stopped on {@link #destroy()}.
+   */
+  public void startSizing(PoolSizer sizer) {
+    this.sizer = sizer;
+    sizer.start(this);
+  }
+
+  /**
+   * @return sizer adjusting maximum number of connections or null if it is constant
+   */
+  public PoolSizer getSizer() {
+    return sizer;
+  }
+
+  @Override
+  public void destroy() {
+    final PoolSizer current = sizer;
+    if (current != null) {
+      current.stop();
+    }
+    super.destroy();
+  }
+
+  void setMaxTotal(int maxTotal) {
+    internalPool.setMaxTotal(maxTotal);
+  }
+
+  /**
+   * @return highest number of active connections observed since last invocation
+   */
+  long resetPeakActive() {
+    return peakActive.getAndSet(internalPool.getNumActive());
+  }
+
+  private final class InstrumentedObjectPool extends GenericObjectPool<Jedis> {
+
+    private InstrumentedObjectPool(PooledObjectFactory<Jedis> factory, GenericObjectPoolConfig config) {
+      super(factory, config);
+    }
+
+    @Override
+    public void returnObject(Jedis jedis) {
+      recordHold(jedis);
+      super.returnObject(jedis);
+    }
+
+    /**
+     * Broken connections are invalidated instead of being returned.
+     */
+    @Override
+    public void invalidateObject(Jedis jedis) throws Exception {
+      recordHold(jedis);
+      super.invalidateObject(jedis);
+    }
+  }
+
+  long getWaitNanos() {
+    return waitNanos.sum();
+  }
+
+  long getHoldNanos() {
+    return holdNanos.sum();
+  }
+
+  long getReturned() {
+    return returned.sum();
+  }
+
+  @Override
+  public int getActive() {
+    return internalPool.getNumActive();
+  }
+
+  @Override
+  public int getIdle() {
+    return internalPool.getNumIdle();
+  }
+
+  @Override
+  public int getWaiters() {
+    return internalPool.getNumWaiters();
+  }
+
+  @Override
+  public int getMaxTotal() {
+    return internalPool.getMaxTotal();
+  }
+
+  @Override
+  public long getBorrowed() {
+    return borrowed.sum();
+  }
+
+  @Override
+  public long getExhausted() {
+    return exhausted.sum();
+  }
+
+  @Override
+  public long getMeanBorrowWaitMicros() {
+    final long count = borrowed.sum();
+    return count == 0 ? 0 : NANOSECONDS.toMicros(waitNanos.sum() / count);
+  }
+
+  @Override
+  public long getMaxBorrowWaitMicros() {
+    return NANOSECONDS.toMicros(maxWaitNanos.get());
+  }
+
+  @Override
+  public long getMeanHoldMicros() {
+    final long count = returned.sum();
+    return count == 0 ? 0 : NANOSECONDS.toMicros(holdNanos.sum() / count);
+  }
+}
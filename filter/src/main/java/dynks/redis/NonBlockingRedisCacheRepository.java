@@ -0,0 +1,444 @@
+package dynks.redis;
+
+import dynks.MediaType;
+import dynks.cache.AsyncCacheRepository;
+import dynks.cache.CacheQueryResult;
+import dynks.cache.CacheRegion;
+import dynks.cache.CacheRepositoryException;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+import static dynks.Encodings.fromUtf8;
+import static dynks.cache.Entry.*;
+import static dynks.redis.RedisCacheRepository.NO_RESULT_FOUND;
+import static dynks.redis.RedisCacheRepository.RESULT_FOUND_BUT_NOT_CHANGED;
+import static dynks.redis.RedisCacheRepository.binaryEntry;
+import static dynks.redis.RespCodec.bytes;
+import static java.lang.String.valueOf;
+import static java.lang.System.nanoTime;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Repository using few multiplexed non-blocking connections instead of connection pool, so that number of concurrent
+ * lookups is not limited by number of connections and no thread is blocked on the socket. Entries are stored in the same
+ * format as by {@link RedisCacheRepository} so both may be used against the same redis, except that entries stored in
+ * chunks are not read (they are treated as missing) nor written. Entries are written as hashes, entries written in binary
+ * format (see {@link RedisCacheRepository.EntryFormat}) are read and replaced.
+ * <p>
+ * Blocking methods wait for the reply at most timeout milliseconds. Broken connection is replaced by new one on next
+ * use, connecting waits at most the same timeout. While connection is being replaced other callers using it fail
+ * immediately instead of waiting for the connect.
+ */
+public class NonBlockingRedisCacheRepository implements AsyncCacheRepository {
+
+  private static final Logger LOG = getLogger(NonBlockingRedisCacheRepository.class);
+
+  private static final byte[] GET = bytes("GET");
+  private static final byte[] HGET = bytes("HGET");
+  private static final byte[] HGETALL = bytes("HGETALL");
+  private static final byte[] HMSET = bytes("HMSET");
+  private static final byte[] EXPIRE = bytes("EXPIRE");
+  private static final byte[] MULTI = bytes("MULTI");
+  private static final byte[] EXEC = bytes("EXEC");
+  private static final byte[] DEL = bytes("DEL");
+  private static final byte[] EVAL = bytes("EVAL");
+  private static final byte[] PING = bytes("PING");
+  private static final byte[] SCRIPT = bytes("SCRIPT");
+  private static final byte[] LOAD = bytes("LOAD");
+  private static final byte[] TWO_KEYS = bytes("2");
+  private static final byte[] DELETE_SCRIPT = bytes(DeleteAllEntriesInRegionCommand.SCRIPT);
+  private static final byte[] ETAG_FIELD = bytes(ETAG);
+
+  private final String host;
+  private final int port;
+  private final long timeoutInMillis;
+  private final int maxEntriesDeletedInOneBatch;
+  private final AtomicReferenceArray<RespConnection> connections;
+  private final AtomicIntegerArray reconnecting;
+  private volatile boolean disposed;
+  private final AtomicInteger next = new AtomicInteger();
+
+  NonBlockingRedisCacheRepository(String host, int port, int connections, long timeoutInMillis, int maxEntriesDeletedInOneBatch) {
+
+    if (connections < 1) {
+      throw new IllegalArgumentException("connections should be >=1 but is '" + connections + "'");
+    }
+
+    this.host = host;
+    this.port = port;
+    this.timeoutInMillis = timeoutInMillis;
+    this.maxEntriesDeletedInOneBatch = maxEntriesDeletedInOneBatch;
+    this.connections = new AtomicReferenceArray<>(connections);
+    this.reconnecting = new AtomicIntegerArray(connections);
+  }
+
+  @Override
+  public CompletableFuture<CacheQueryResult> fetchIfChangedAsync(String key, String etag) {
+
+    try {
+
+      if (key == null) {
+        throw new IllegalArgumentException("Key to upsert should not be null");
+      }
+
+      if (key.trim().length() == 0) {
+        throw new IllegalArgumentException("Key to upsert should not be empty");
+      }
+
+      final RespConnection connection = connection();
+      final byte[] rawKey = key.getBytes(UTF_8);
+
+      //  client does not have any version, query for both content + etag
+      if (etag == null) {
+        return wrapped(orIfBinary(connection.send(HGETALL, rawKey).thenApply(NonBlockingRedisCacheRepository::toResult),
+                () -> connection.send(GET, rawKey).thenApply(reply -> toBinaryResult(reply, null))));
+      }
+
+      return wrapped(orIfBinary(connection.send(HGET, rawKey, ETAG_FIELD).thenCompose(cached -> {
+
+        if (cached == null) {
+          return completedFuture(NO_RESULT_FOUND);
+        }
+
+        if (etag.equals(new String((byte[]) cached, UTF_8))) {
+          return completedFuture(RESULT_FOUND_BUT_NOT_CHANGED);
+        }
+
+        //  entry might have expired in the meantime, it is handled as missing one
+        return connection.send(HGETALL, rawKey).thenApply(NonBlockingRedisCacheRepository::toResult);
+      }), () -> connection.send(GET, rawKey).thenApply(reply -> toBinaryResult(reply, etag))));
+    } catch (Exception e) {
+      return failed(e);
+    }
+  }
+
+  @Override
+  public CompletableFuture<Void> upsertAsync(String key, byte[] content, String etag, String contentType, String encoding, CacheRegion region, String source) {
+
+    try {
+      final byte[] rawKey = key.getBytes(UTF_8);
+      final Map<byte[], byte[]> entry = binaryEntry(content, etag, contentType, encoding, source);
+
+      final byte[][] hmset = new byte[2 + entry.size() * 2][];
+      hmset[0] = HMSET;
+      hmset[1] = rawKey;
+      int i = 2;
+      for (Map.Entry<byte[], byte[]> field : entry.entrySet()) {
+        hmset[i++] = field.getKey();
+        hmset[i++] = field.getValue();
+      }
+
+      final RespConnection connection = connection();
+      final CompletableFuture<Object> reply;
+
+      //  previous version might have been written in binary format
+      if (region.getTtl() == 0) {
+        reply = connection.sendAll(new byte[][]{MULTI}, new byte[][]{DEL, rawKey}, hmset, new byte[][]{EXEC});
+      } else {
+        reply = connection.sendAll(new byte[][]{MULTI}, new byte[][]{DEL, rawKey}, hmset,
+                new byte[][]{EXPIRE, rawKey, bytes(valueOf(region.getTtlInSeconds()))}, new byte[][]{EXEC});
+      }
+
+      return wrapped(reply.thenApply(ignored -> null));
+    } catch (Exception e) {
+      return failed(e);
+    }
+  }
+
+  @Override
+  public CacheQueryResult fetchIfChanged(String key, String etag) throws CacheRepositoryException {
+    return await(fetchIfChangedAsync(key, etag));
+  }
+
+  @Override
+  public void upsert(String key, byte[] content, String etag, String contentType, String encoding, CacheRegion region, String source) throws CacheRepositoryException {
+    await(upsertAsync(key, content, etag, contentType, encoding, region, source));
+  }
+
+  @Override
+  public void remove(String key) throws CacheRepositoryException {
+    try {
+      await(wrapped(connection().send(DEL, key.getBytes(UTF_8))));
+    } catch (CacheRepositoryException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new CacheRepositoryException(e);
+    }
+  }
+
+  @Override
+  public long evictRegion(CacheRegion region) throws CacheRepositoryException {
+    return evictRegion(region, maxEntriesDeletedInOneBatch);
+  }
+
+  /**
+   * Uses the same script as {@link RedisCacheRepository}, sent with every batch as eviction is rare.
+   */
+  @Override
+  public long evictRegion(CacheRegion region, int maxEntriesDeletedInOneBatch) throws CacheRepositoryException {
+
+    try {
+      final long start = nanoTime();
+      final byte[] pattern = bytes(region.getKeyStrategy().wildcardKeyFor(region));
+      final byte[] limit = bytes(valueOf(maxEntriesDeletedInOneBatch));
+      long removed = 0;
+      long lastBatchRemoved;
+
+      do {
+        lastBatchRemoved = (Long) await(wrapped(connection().send(EVAL, DELETE_SCRIPT, TWO_KEYS, pattern, limit)));
+        removed += lastBatchRemoved;
+      } while (lastBatchRemoved > 0);
+
+      LOG.debug("Evicted {} entries from region '{}' in {} ms ", removed, region.getId(), NANOSECONDS.toMillis(nanoTime() - start));
+      return removed;
+    } catch (CacheRepositoryException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new CacheRepositoryException(e);
+    }
+  }
+
+  /**
+   * Opens all connections verifying each of them with PING and loads eviction script so that it is already compiled
+   * on first EVAL.
+   */
+  @Override
+  public void warmUp() throws CacheRepositoryException {
+    try {
+      for (int i = 0; i < connections.length(); i++) {
+        await(wrapped(connection().send(PING)));
+      }
+      await(wrapped(connection().send(SCRIPT, LOAD, DELETE_SCRIPT)));
+    } catch (CacheRepositoryException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new CacheRepositoryException(e);
+    }
+
+    LOG.info("Opened {} connection(s) to redis at {}:{}", connections.length(), host, port);
+  }
+
+  @Override
+  public void dispose() {
+    LOG.info("Disposing redis connections...");
+    disposed = true;
+    for (int i = 0; i < connections.length(); i++) {
+      final RespConnection connection = connections.get(i);
+      if (connection != null) {
+        connection.close();
+      }
+    }
+  }
+
+  @Override
+  public int getMaxEntriesDeletedInOneBatch() {
+    return maxEntriesDeletedInOneBatch;
+  }
+
+  /**
+   * Next connection in round robin order, connection that failed is replaced by new one. Connect happens without any
+   * lock held, callers that get connection being replaced by other thread fail fast.
+   */
+  private RespConnection connection() throws IOException {
+
+    final int index = (next.getAndIncrement() & Integer.MAX_VALUE) % connections.length();
+    RespConnection connection = connections.get(index);
+
+    if (connection != null && connection.isOpen()) {
+      return connection;
+    }
+
+    if (!reconnecting.compareAndSet(index, 0, 1)) {
+      throw new IOException("Connection " + index + " to redis at " + host + ":" + port + " is being reconnected");
+    }
+
+    try {
+      connection = connections.get(index);
+      if (connection == null || !connection.isOpen()) {
+        connection = new RespConnection(host, port, "dynks-redis-" + index, timeoutInMillis);
+        connections.set(index, connection);
+      }
+    } finally {
+      reconnecting.set(index, 0);
+    }
+
+    if (disposed) {
+      //  disposed while connecting
+      connection.close();
+      throw new IOException("Repository disposed");
+    }
+
+    return connection;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static CacheQueryResult toResult(Object reply) {
+
+    final List<Object> fields = (List<Object>) reply;
+
+    if (fields == null || fields.isEmpty()) {
+      return NO_RESULT_FOUND;
+    }
+
+    byte[] payload = null;
+    String etag = null;
+    byte[] contentType = null;
+    byte[] encoding = null;
+
+    for (int i = 0; i + 1 < fields.size(); i += 2) {
+
+      final byte[] name = (byte[]) fields.get(i);
+      final byte[] value = (byte[]) fields.get(i + 1);
+
+      if (name.length != 1) {
+        continue;
+      }
+
+      if (name[0] == PAYLOAD.charAt(0)) {
+        payload = value;
+      } else if (name[0] == ETAG.charAt(0)) {
+        etag = new String(value, UTF_8);
+      } else if (name[0] == CONTENT_TYPE.charAt(0)) {
+        contentType = value;
+      } else if (name[0] == ENCODING.charAt(0)) {
+        encoding = value;
+      }
+    }
+
+    if (payload == null) {
+      //  missing or stored in chunks
+      return NO_RESULT_FOUND;
+    }
+
+    final MediaType type = MediaType.of(contentType, encoding);
+    return new CacheQueryResult(false, fromUtf8(payload, type.getCharset()), etag, type.getContentType(), type.getEncoding());
+  }
+
+  private <T> T await(CompletableFuture<T> future) throws CacheRepositoryException {
+    try {
+      return future.get(timeoutInMillis, MILLISECONDS);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof CacheRepositoryException) {
+        throw (CacheRepositoryException) e.getCause();
+      }
+      throw new CacheRepositoryException(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CacheRepositoryException(e);
+    } catch (TimeoutException e) {
+      throw new CacheRepositoryException(e);
+    }
+  }
+
+  /**
+   * Entry written in binary format is read when hash command fails with WRONGTYPE.
+   */
+  private static <T> CompletableFuture<T> orIfBinary(CompletableFuture<T> hashRead, Supplier<CompletableFuture<T>> binaryRead) {
+
+    final CompletableFuture<T> result = new CompletableFuture<>();
+
+    hashRead.whenComplete((value, error) -> {
+      if (error == null) {
+        result.complete(value);
+        return;
+      }
+
+      final Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+
+      if (cause instanceof RespException && cause.getMessage() != null && cause.getMessage().startsWith("WRONGTYPE")) {
+        binaryRead.get().whenComplete((binary, binaryError) -> {
+          if (binaryError == null) {
+            result.complete(binary);
+          } else {
+            result.completeExceptionally(binaryError);
+          }
+        });
+      } else {
+        result.completeExceptionally(error);
+      }
+    });
+
+    return result;
+  }
+
+  /**
+   * @param etag version held by the client, might be null
+   */
+  private static CacheQueryResult toBinaryResult(Object reply, String etag) {
+
+    final byte[] value = (byte[]) reply;
+
+    if (value == null || value.length == 0) {
+      return NO_RESULT_FOUND;
+    }
+
+    final BinaryEntryCodec.Header header = BinaryEntryCodec.decode(value);
+
+    if (header == null || header.chunks > 0) {
+      //  unknown version or stored in chunks
+      return NO_RESULT_FOUND;
+    }
+
+    if (header.etag.equals(etag)) {
+      return RESULT_FOUND_BUT_NOT_CHANGED;
+    }
+
+    return new BinaryCacheQueryResult(value, header.payloadOffset, header.etag, header.contentType, header.encoding);
+  }
+
+  /**
+   * Translates any failure to {@link CacheRepositoryException}.
+   */
+  private static <T> CompletableFuture<T> wrapped(CompletableFuture<T> future) {
+
+    final CompletableFuture<T> result = new CompletableFuture<>();
+
+    future.whenComplete((value, error) -> {
+      if (error == null) {
+        result.complete(value);
+      } else {
+        final Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        result.completeExceptionally(cause instanceof Exception ? new CacheRepositoryException((Exception) cause) : cause);
+      }
+    });
+
+    return result;
+  }
+
+  private static <T> CompletableFuture<T> failed(Exception e) {
+    final CompletableFuture<T> result = new CompletableFuture<>();
+    result.completeExceptionally(new CacheRepositoryException(e));
+    return result;
+  }
+
+  public String getHost() {
+    return host;
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  public int getConnections() {
+    return connections.length();
+  }
+
+  public long getTimeoutInMillis() {
+    return timeoutInMillis;
+  }
+}
@@ -0,0 +1,23 @@
+package dynks.redis;
+
+import com.typesafe.config.Config;
+import dynks.cache.CacheRepository;
+import dynks.cache.StorageProvider;
+
+/**
+ * Redis accessed with few multiplexed non-blocking connections, configured with dynks.redis and dynks.redis.nio.
+ */
+public class NonBlockingRedisStorageProvider implements StorageProvider {
+
+  public static final String NAME = "REDIS_NIO";
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public CacheRepository create(Config config) {
+    return RedisCacheRepositoryConfigBuilder.buildNonBlocking(config);
+  }
+}
@@ -0,0 +1,113 @@
+package dynks.redis;
+
+import org.slf4j.Logger;
+
+import java.util.concurrent.ScheduledExecutorService;
+
+import static dynks.Threads.threadFactory;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Periodically adjusts maximum number of connections of the pool within bounds. Pool grows when in last interval
+ * borrowers found it exhausted and waited longer than wait threshold on average while redis itself was fast (mean
+ * hold time below latency limit), as more connections do not help when redis is the bottleneck. Pool shrinks when it
+ * was never exhausted and peak number of active connections was below half of maximum.
+ */
+public class PoolSizer {
+
+  private static final Logger LOG = getLogger(PoolSizer.class);
+
+  private final int minTotal;
+  private final int maxTotal;
+  private final long intervalNanos;
+  private final long waitThresholdNanos;
+  private final long latencyLimitNanos;
+
+  private ScheduledExecutorService scheduler;
+  private long lastBorrowed;
+  private long lastExhausted;
+  private long lastWaitNanos;
+  private long lastReturned;
+  private long lastHoldNanos;
+
+  public PoolSizer(int minTotal, int maxTotal, long intervalNanos, long waitThresholdNanos, long latencyLimitNanos) {
+
+    if (minTotal < 1) {
+      throw new IllegalArgumentException("minTotal should be >=1 but is '" + minTotal + "'");
+    }
+
+    if (maxTotal < minTotal) {
+      throw new IllegalArgumentException("maxTotal should be >=minTotal but is '" + maxTotal + "'");
+    }
+
+    if (intervalNanos < 1) {
+      throw new IllegalArgumentException("interval should be positive but is '" + intervalNanos + "'");
+    }
+
+    this.minTotal = minTotal;
+    this.maxTotal = maxTotal;
+    this.intervalNanos = intervalNanos;
+    this.waitThresholdNanos = waitThresholdNanos;
+    this.latencyLimitNanos = latencyLimitNanos;
+  }
+
+  void start(InstrumentedJedisPool pool) {
+    pool.setMaxTotal(Math.max(minTotal, Math.min(maxTotal, pool.getMaxTotal())));
+    scheduler = newSingleThreadScheduledExecutor(threadFactory("dynks-pool-sizer", false));
+    scheduler.scheduleWithFixedDelay(() -> adjust(pool), intervalNanos, intervalNanos, NANOSECONDS);
+  }
+
+  void stop() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+  }
+
+  /**
+   * @return new maximum number of connections
+   */
+  int adjust(InstrumentedJedisPool pool) {
+
+    final long borrowed = pool.getBorrowed() - lastBorrowed;
+    final long exhausted = pool.getExhausted() - lastExhausted;
+    final long waitNanos = pool.getWaitNanos() - lastWaitNanos;
+    final long returned = pool.getReturned() - lastReturned;
+    final long holdNanos = pool.getHoldNanos() - lastHoldNanos;
+    final long peakActive = pool.resetPeakActive();
+
+    lastBorrowed += borrowed;
+    lastExhausted += exhausted;
+    lastWaitNanos += waitNanos;
+    lastReturned += returned;
+    lastHoldNanos += holdNanos;
+
+    final int current = pool.getMaxTotal();
+    final long meanWait = borrowed == 0 ? 0 : waitNanos / borrowed;
+    final long meanHold = returned == 0 ? 0 : holdNanos / returned;
+    int next = current;
+
+    if (exhausted > 0 && meanWait > waitThresholdNanos && meanHold < latencyLimitNanos) {
+      next = Math.min(maxTotal, current + Math.max(1, current / 4));
+    } else if (exhausted == 0 && peakActive < current / 2) {
+      next = Math.max(minTotal, current - Math.max(1, current / 8));
+    }
+
+    if (next != current) {
+      LOG.info("Changing maximum number of connections from {} to {} (exhausted: {}, mean wait: {} us, mean hold: {} us, peak active: {})",
+              current, next, exhausted, NANOSECONDS.toMicros(meanWait), NANOSECONDS.toMicros(meanHold), peakActive);
+      pool.setMaxTotal(next);
+    }
+
+    return next;
+  }
+
+  public int getMinTotal() {
+    return minTotal;
+  }
+
+  public int getMaxTotal() {
+    return maxTotal;
+  }
+}
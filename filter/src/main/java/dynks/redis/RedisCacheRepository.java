@@ -1,20 +1,54 @@
 package dynks.redis;
 
+import dynks.MediaType;
 import dynks.cache.CacheQueryResult;
 import dynks.cache.CacheRegion;
 import dynks.cache.CacheRepository;
 import dynks.cache.CacheRepositoryException;
+import dynks.cache.Upsert;
+import dynks.jmx.JmxServer;
+import dynks.jmx.PoolMBean;
+import dynks.jmx.RegionUsageMBean;
+import dynks.redis.RegionAccounting.Pending;
 import org.slf4j.Logger;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.Transaction;
-
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
+import static dynks.Encodings.fromUtf8;
+import static dynks.cache.Segments.join;
+import static dynks.jmx.PoolMBean.POOL_JMX_NAME;
+import static dynks.jmx.RegionUsageMBean.REGION_USAGE_JMX_NAME;
+import static dynks.redis.BinaryEntryCodec.HEADER_PROBE_SIZE;
+import static dynks.redis.BinaryEntryCodec.decode;
+import static dynks.redis.BinaryEntryCodec.encode;
+import static dynks.redis.BinaryEntryCodec.hasEtag;
+import static dynks.redis.RedisCacheRepository.EntryFormat.BINARY;
+import static dynks.Encodings.toUtf8;
+import static dynks.redis.RegionAccounting.sizeOf;
 import static dynks.cache.Entry.*;
+import static java.lang.Integer.parseInt;
+import static java.lang.Math.min;
+import static java.lang.System.currentTimeMillis;
 import static java.lang.System.nanoTime;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static javax.management.ObjectName.quote;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.slf4j.LoggerFactory.getLogger;
 
 /**
@@ -23,17 +57,46 @@ import static org.slf4j.LoggerFactory.getLogger;
  */
 public class RedisCacheRepository implements CacheRepository {
 
+  /**
+   * Format in which entries are written, entries written in the other format are still read.
+   */
+  public enum EntryFormat {
+    /**
+     * Hash with field per attribute (see {@link dynks.cache.Entry}), payload converted to UTF-8.
+     */
+    HASH,
+    /**
+     * Single value (see {@link BinaryEntryCodec}), payload in original encoding.
+     */
+    BINARY
+  }
+
   private static final Logger LOG = getLogger(RedisCacheRepository.class);
 
   private final DeleteAllEntriesInRegionCommand deleteCommand = new DeleteAllEntriesInRegionCommand();
   private final JedisPool pool;
   private final JedisPoolConfig poolConfig;
+  private final RegionAccounting accounting;
   private final String host;
   private final int port;
   private final int maxEntriesDeletedInOneBatch;
+  private final Chunking chunking;
+  private final EntryFormat format;
 
-  public static final CacheQueryResult NO_RESULT_FOUND = new CacheQueryResult(true, null, null, null, null);
-  private static final CacheQueryResult RESULT_FOUND_BUT_NOT_CHANGED = new CacheQueryResult(false, null, null, null, null);
+  public static final CacheQueryResult NO_RESULT_FOUND = new CacheQueryResult(true, (byte[]) null, null, null, null);
+  static final CacheQueryResult RESULT_FOUND_BUT_NOT_CHANGED = new CacheQueryResult(false, (byte[]) null, null, null, null);
+
+  private static final byte[] PAYLOAD_FIELD = PAYLOAD.getBytes(UTF_8);
+  private static final byte[] ETAG_FIELD = ETAG.getBytes(UTF_8);
+  private static final byte[] CONTENT_TYPE_FIELD = CONTENT_TYPE.getBytes(UTF_8);
+  private static final byte[] ENCODING_FIELD = ENCODING.getBytes(UTF_8);
+  private static final byte[] SOURCE_FIELD = SOURCE.getBytes(UTF_8);
+  private static final byte[] CHUNKS_FIELD = CHUNKS.getBytes(UTF_8);
+
+  /**
+   * Chunks of replaced entry are not removed immediately as they might be still streamed to some clients.
+   */
+  private static final int REPLACED_CHUNKS_TTL_IN_SECONDS = 30;
 
   /**
    * Constructor of RedisCacheRepository. It should be created only internally so that default access specified.
@@ -45,12 +108,36 @@ public class RedisCacheRepository implements CacheRepository {
    * @param maxEntriesDeletedInOneBatch
    */
   RedisCacheRepository(JedisPoolConfig poolConfig, String host, int port, int maxEntriesDeletedInOneBatch, JedisPool pool) {
+    this(poolConfig, host, port, maxEntriesDeletedInOneBatch, pool, Chunking.DISABLED);
+  }
+
+  RedisCacheRepository(JedisPoolConfig poolConfig, String host, int port, int maxEntriesDeletedInOneBatch, JedisPool pool, Chunking chunking) {
+    this(poolConfig, host, port, maxEntriesDeletedInOneBatch, pool, chunking, false);
+  }
+
+  /**
+   * @param accountAllRegions if true memory used by every region is tracked, otherwise only by regions with quota
+   */
+  RedisCacheRepository(JedisPoolConfig poolConfig, String host, int port, int maxEntriesDeletedInOneBatch, JedisPool pool, Chunking chunking,
+                       boolean accountAllRegions) {
+    this(poolConfig, host, port, maxEntriesDeletedInOneBatch, pool, chunking, accountAllRegions, EntryFormat.HASH);
+  }
+
+  RedisCacheRepository(JedisPoolConfig poolConfig, String host, int port, int maxEntriesDeletedInOneBatch, JedisPool pool, Chunking chunking,
+                       boolean accountAllRegions, EntryFormat format) {
+
+    if (format == null) {
+      throw new NullPointerException("Entry format should not be null");
+    }
 
+    this.format = format;
+    this.accounting = new RegionAccounting(pool, accountAllRegions);
     this.host = host;
     this.port = port;
     this.poolConfig = poolConfig;
     this.pool = pool;
     this.maxEntriesDeletedInOneBatch = maxEntriesDeletedInOneBatch;
+    this.chunking = chunking;
   }
 
   @Override
@@ -59,14 +146,30 @@ public class RedisCacheRepository implements CacheRepository {
   }
 
   /**
-   * Return entry assuming exist. If not then it reacts as it would not exist.
+   * Return entry assuming exist, regardless of format it was written in.
+   */
+  private CacheQueryResult getEntryAssumingCached(Jedis jedis, String key) {
+    try {
+      return format == BINARY ? getBinaryEntry(jedis, key) : getHashEntry(jedis, key);
+    } catch (JedisDataException e) {
+      if (!isWrongType(e)) {
+        throw e;
+      }
+      //  entry written before format was switched
+      return format == BINARY ? getHashEntry(jedis, key) : getBinaryEntry(jedis, key);
+    }
+  }
+
+  /**
+   * Return entry assuming exist. If not then it reacts as it would not exist. Payload is read as bytes so that
+   * content stored in UTF-8 (the most common case) is returned to the client without any conversion.
    *
    * @param key
    * @return
    */
-  private CacheQueryResult getEntryAssumingCached(Jedis jedis, String key) {
+  private CacheQueryResult getHashEntry(Jedis jedis, String key) {
 
-    Map<String, String> out = jedis.hgetAll(key);
+    Map<byte[], byte[]> out = jedis.hgetAll(key.getBytes(UTF_8));
 
         /*
             According to the documentation of redis hgetAll should return null when
@@ -77,7 +180,146 @@ public class RedisCacheRepository implements CacheRepository {
       return NO_RESULT_FOUND;
     }
 
-    return new CacheQueryResult(false, out.get(PAYLOAD), out.get(ETAG), out.get(CONTENT_TYPE), out.get(ENCODING));
+    byte[] payload = null;
+    String etag = null;
+    byte[] contentType = null;
+    byte[] encoding = null;
+    String chunks = null;
+
+    //  all fields have single character names
+    for (Map.Entry<byte[], byte[]> field : out.entrySet()) {
+
+      if (field.getKey().length != 1) {
+        continue;
+      }
+
+      final char name = (char) field.getKey()[0];
+
+      if (name == PAYLOAD.charAt(0)) {
+        payload = field.getValue();
+      } else if (name == ETAG.charAt(0)) {
+        etag = new String(field.getValue(), UTF_8);
+      } else if (name == CONTENT_TYPE.charAt(0)) {
+        contentType = field.getValue();
+      } else if (name == ENCODING.charAt(0)) {
+        encoding = field.getValue();
+      } else if (name == CHUNKS.charAt(0)) {
+        chunks = new String(field.getValue(), UTF_8);
+      }
+    }
+
+    //  canonical instances instead of new strings on every hit
+    final MediaType type = MediaType.of(contentType, encoding);
+
+    if (payload == null) {
+      return chunks == null ? NO_RESULT_FOUND : getChunkedEntry(jedis, key, parseInt(chunks), etag, type.getContentType(), type.getEncoding());
+    }
+
+    return new CacheQueryResult(false, fromUtf8(payload, type.getCharset()), etag, type.getContentType(), type.getEncoding());
+  }
+
+  private CacheQueryResult getBinaryEntry(Jedis jedis, String key) {
+    return binaryEntryOf(jedis, key, jedis.get(key.getBytes(UTF_8)));
+  }
+
+  /**
+   * Payload is not copied out of the value, it is written to the client directly from it.
+   */
+  private CacheQueryResult binaryEntryOf(Jedis jedis, String key, byte[] value) {
+
+    if (value == null || value.length == 0) {
+      return NO_RESULT_FOUND;
+    }
+
+    final BinaryEntryCodec.Header header = decode(value);
+
+    if (header == null) {
+      LOG.warn("Entry '{}' written in unknown format version {}, treated as not existing", key, value[0]);
+      return NO_RESULT_FOUND;
+    }
+
+    if (header.chunks > 0) {
+      return getChunkedEntry(jedis, key, header.chunks, header.etag, header.contentType, header.encoding);
+    }
+
+    return new BinaryCacheQueryResult(value, header.payloadOffset, header.etag, header.contentType, header.encoding);
+  }
+
+  /**
+   * Reads first batch of chunks, if any of them is missing entry is treated as not existing.
+   */
+  private CacheQueryResult getChunkedEntry(Jedis jedis, String key, int chunks, String etag, String contentType, String encoding) {
+
+    List<byte[]> firstBatch = readChunks(jedis, key, etag, 0, min(chunking.getChunksPerRead(), chunks));
+
+    if (firstBatch == null) {
+      return NO_RESULT_FOUND;
+    }
+
+    //  chunks are stored in original encoding, no conversion needed
+    return new ChunkedCacheQueryResult(this, key, chunks, chunking.getChunksPerRead(), firstBatch, etag, contentType, encoding);
+  }
+
+  /**
+   * Reads given range of chunks using new connection.
+   *
+   * @throws IOException if chunk is missing (entry replaced or expired while being read) or redis is not accessible
+   */
+  List<byte[]> readChunks(String key, String etag, int from, int count) throws IOException {
+
+    List<byte[]> batch;
+
+    try (Jedis jedis = pool.getResource()) {
+      batch = readChunks(jedis, key, etag, from, count);
+    } catch (Exception e) {
+      throw new IOException("Unable to read chunks of '" + key + "'", e);
+    }
+
+    if (batch == null) {
+      throw new IOException("Chunks of '" + key + "' are missing, entry was replaced or expired while being read");
+    }
+
+    return batch;
+  }
+
+  /**
+   * @return chunks or null if any of them is missing
+   */
+  private List<byte[]> readChunks(Jedis jedis, String key, String etag, int from, int count) {
+
+    Pipeline pipeline = jedis.pipelined();
+    List<Response<byte[]>> responses = new ArrayList<>(count);
+
+    for (int i = from; i < from + count; i++) {
+      responses.add(pipeline.get(chunkKey(key, etag, i)));
+    }
+
+    pipeline.sync();
+
+    List<byte[]> chunks = new ArrayList<>(count);
+    for (Response<byte[]> response : responses) {
+      byte[] chunk = response.get();
+      if (chunk == null) {
+        return null;
+      }
+      chunks.add(chunk);
+    }
+
+    return chunks;
+  }
+
+  /**
+   * Chunk keys contain etag so that chunks of different versions of the entry are never mixed. They share prefix with
+   * the entry key so region eviction removes them together with the entry.
+   */
+  private static byte[] chunkKey(String key, String etag, int index) {
+    StringBuilder builder = new StringBuilder(key.length() + etag.length() + 8);
+    builder.append(key);
+    builder.append(":#");
+    builder.append(etag);
+    builder.append(':');
+    builder.append(index);
+    return builder.toString().getBytes(UTF_8);
   }
 
   @Override
@@ -100,46 +342,457 @@ public class RedisCacheRepository implements CacheRepository {
           return getEntryAssumingCached(jedis, key);
         }
 
-        // get value of etag assuming key exists. This is less costly as checking if key exists and get
-        String cachedEtag = jedis.hget(key, ETAG);
-
-        if (cachedEtag == null) {
-          return NO_RESULT_FOUND;
+        try {
+          return format == BINARY ? fetchBinaryIfChanged(jedis, key, etag) : fetchHashIfChanged(jedis, key, etag);
+        } catch (JedisDataException e) {
+          if (!isWrongType(e)) {
+            throw e;
+          }
+          return format == BINARY ? fetchHashIfChanged(jedis, key, etag) : fetchBinaryIfChanged(jedis, key, etag);
         }
+      }
+    } catch (Exception e) {
+      throw new CacheRepositoryException(e);
+    }
+  }
+
+  private CacheQueryResult fetchHashIfChanged(Jedis jedis, String key, String etag) {
+
+    // get value of etag assuming key exists. This is less costly as checking if key exists and get
+    String cachedEtag = jedis.hget(key, ETAG);
+
+    if (cachedEtag == null) {
+      return NO_RESULT_FOUND;
+    }
 
-        if (cachedEtag.equals(etag)) {
-          return RESULT_FOUND_BUT_NOT_CHANGED;
+    if (cachedEtag.equals(etag)) {
+      return RESULT_FOUND_BUT_NOT_CHANGED;
+    }
+
+    /*
+      entry in cache different, we assume cached entry is newer than on client side
+      we need also to take into consideration that durint last check above entry expired
+      thus may not exist when queried for full content.
+    */
+    return getHashEntry(jedis, key);
+  }
+
+  /**
+   * Etag is compared after reading only beginning of the value, whole value is read only if it has changed.
+   */
+  private CacheQueryResult fetchBinaryIfChanged(Jedis jedis, String key, String etag) {
+
+    final byte[] rawKey = key.getBytes(UTF_8);
+    final byte[] probe = jedis.getrange(rawKey, 0, HEADER_PROBE_SIZE - 1);
+
+    if (probe == null || probe.length == 0) {
+      return NO_RESULT_FOUND;
+    }
+
+    if (hasEtag(probe, etag)) {
+      return RESULT_FOUND_BUT_NOT_CHANGED;
+    }
+
+    //  value shorter than probe was already read as a whole
+    final CacheQueryResult result = binaryEntryOf(jedis, key, probe.length < HEADER_PROBE_SIZE ? probe : jedis.get(rawKey));
+
+    //  etag longer than probe can be compared only after reading whole value
+    return etag.equals(result.getStoredEtag()) ? RESULT_FOUND_BUT_NOT_CHANGED : result;
+  }
+
+  private static boolean isWrongType(JedisDataException e) {
+    return e.getMessage() != null && e.getMessage().startsWith("WRONGTYPE");
+  }
+
+  @Override
+  public void upsert(String key, byte[] content, String etag, String contentType, String encoding, CacheRegion region, String source) throws CacheRepositoryException {
+    try {
+      final byte[] rawKey = key.getBytes(UTF_8);
+      final boolean accounted = accounting.isAccounted(region);
+
+      if (isRejected(key, region)) {
+        return;
+      }
+
+      if (content != null && chunking.appliesTo(content.length)) {
+        upsertChunked(key, rawKey, singletonList(ByteBuffer.wrap(content)), content.length, etag, contentType, encoding,
+                region, source);
+        return;
+      }
+
+      try (Jedis jedis = pool.getResource()) {
+
+        if (accounted) {
+          //  entry and its accounting in one transaction and round trip
+          final Pipeline pipeline = jedis.pipelined();
+          pipeline.multi();
+          write(pipeline, rawKey, content, etag, contentType, encoding, source, region);
+          final Pending pending = accounting.upserted(pipeline, region, key, sizeOf(key, content), expiresAt(region, false));
+          pipeline.exec();
+          pipeline.sync();
+          removeEvicted(jedis, accounting.apply(jedis, pending));
+        } else if (format == BINARY) {
+          upsertBinary(jedis, rawKey, encodedEntry(content, etag, contentType, encoding, source, 0), region);
+        } else {
+          upsertHash(jedis, rawKey, binaryEntry(content, etag, contentType, encoding, source), region);
         }
+      }
+    } catch (Exception e) {
+      throw new CacheRepositoryException(e);
+    }
+  }
 
-        /*
-          entry in cache different, we assume cached entry is newer than on client side
-          we need also to take into consideration that durint last check above entry expired
-          thus may not exist when queried for full content.
-        */
-        return getEntryAssumingCached(jedis, key);
+  /**
+   * Content large enough to be chunked is written in chunks assembled from segments so that it is never copied into
+   * single array, smaller content is joined.
+   */
+  @Override
+  public void upsert(String key, List<ByteBuffer> segments, int size, String etag, String contentType, String encoding,
+                     CacheRegion region, String source) throws CacheRepositoryException {
+
+    if (!chunking.appliesTo(size)) {
+      upsert(key, join(segments, size), etag, contentType, encoding, region, source);
+      return;
+    }
+
+    try {
+      if (!isRejected(key, region)) {
+        upsertChunked(key, key.getBytes(UTF_8), segments, size, etag, contentType, encoding, region, source);
       }
     } catch (Exception e) {
       throw new CacheRepositoryException(e);
     }
   }
 
+  private boolean isRejected(String key, CacheRegion region) {
+
+    if (accounting.isAccounted(region) && accounting.isRejected(region)) {
+      LOG.debug("Entry '{}' not stored as quota of region '{}' is exceeded", key, region.getId());
+      return true;
+    }
+
+    return false;
+  }
+
+  /**
+   * Chunks of previous version (if it was chunked) are not looked up, they expire on their own (see {@link Chunking}).
+   */
+  private void upsertHash(Jedis jedis, byte[] rawKey, Map<byte[], byte[]> entry, CacheRegion region) {
+
+    if (region.getTtl() == 0) {
+      try {
+        jedis.hmset(rawKey, entry);
+      } catch (JedisDataException e) {
+        if (!isWrongType(e)) {
+          throw e;
+        }
+        //  replacing entry written in binary format
+        jedis.del(rawKey);
+        jedis.hmset(rawKey, entry);
+      }
+    } else {
+      Transaction t = jedis.multi();
+      //  previous version might have been written in binary format
+      t.del(rawKey);
+      t.hmset(rawKey, entry);
+      t.expire(rawKey, region.getTtlInSeconds());
+      t.exec();
+    }
+  }
+
+  /**
+   * SET replaces value of any type so entry written in hash format does not have to be removed first.
+   */
+  private void upsertBinary(Jedis jedis, byte[] rawKey, byte[] value, CacheRegion region) {
+
+    if (region.getTtl() == 0) {
+      jedis.set(rawKey, value);
+    } else {
+      jedis.setex(rawKey, region.getTtlInSeconds(), value);
+    }
+  }
+
+  /**
+   * Writes all values in one pipeline, entries large enough to be chunked are written one by one afterwards.
+   */
   @Override
-  public void upsert(String key, String content, String etag, String contentType, String encoding, CacheRegion region) throws CacheRepositoryException {
+  public void upsert(List<Upsert> upserts) throws CacheRepositoryException {
+
+    final List<Upsert> chunked = new ArrayList<>();
+
     try {
       try (Jedis jedis = pool.getResource()) {
 
-        if (region.getTtl() == 0) {
-          jedis.hmset(key, new dynks.cache.Entry(content, etag, contentType, encoding));
-        } else {
-          Transaction t = jedis.multi();
-          t.hmset(key, new dynks.cache.Entry(content, etag, contentType, encoding));
-          t.expire(key, region.getTtlInSeconds());
-          t.exec();
+        final Pipeline pipeline = jedis.pipelined();
+        final List<Pending> accounted = new ArrayList<>();
+
+        for (Upsert upsert : upserts) {
+
+          if (upsert.getContent() != null && chunking.appliesTo(upsert.getContent().length)) {
+            chunked.add(upsert);
+            continue;
+          }
+
+          final CacheRegion region = upsert.getRegion();
+          final boolean isAccounted = accounting.isAccounted(region);
+
+          if (isAccounted && accounting.isRejected(region)) {
+            continue;
+          }
+
+          //  hash entry is replaced in transaction as previous version might have been written in binary format
+          final boolean transaction = isAccounted || format != BINARY;
+
+          if (transaction) {
+            pipeline.multi();
+          }
+
+          write(pipeline, upsert.getKey().getBytes(UTF_8), upsert.getContent(), upsert.getEtag(), upsert.getContentType(),
+                  upsert.getEncoding(), upsert.getSource(), region);
+
+          if (isAccounted) {
+            accounted.add(accounting.upserted(pipeline, region, upsert.getKey(), sizeOf(upsert.getKey(), upsert.getContent()),
+                    expiresAt(region, false)));
+          }
+
+          if (transaction) {
+            pipeline.exec();
+          }
+        }
+
+        pipeline.sync();
+
+        for (Pending pending : accounted) {
+          removeEvicted(jedis, accounting.apply(jedis, pending));
         }
       }
     } catch (Exception e) {
       throw new CacheRepositoryException(e);
     }
+
+    for (Upsert upsert : chunked) {
+      upsert(upsert.getKey(), upsert.getContent(), upsert.getEtag(), upsert.getContentType(), upsert.getEncoding(),
+              upsert.getRegion(), upsert.getSource());
+    }
+  }
+
+  /**
+   * Chunks are written with plain pipeline so that redis is not blocked for the time of writing whole payload, manifest
+   * is written after all chunks so that it never points to chunks that are missing. Chunks of previous version are
+   * marked to expire shortly in the same transaction as the manifest is written.
+   * <p>
+   * Every chunk is assembled from consecutive segments of content, if chunk size is multiple of segment size chunks
+   * are aligned with segments.
+   */
+  private void upsertChunked(String key, byte[] rawKey, List<ByteBuffer> segments, int size, String etag, String contentType,
+                             String encoding, CacheRegion region, String source) {
+
+    final int chunks = chunking.chunksFor(size);
+    final int chunkSize = chunking.getChunkSize();
+    final int ttl = region.getTtl() > 0 ? region.getTtlInSeconds() : chunking.getTtlInSeconds();
+
+    try (Jedis jedis = pool.getResource()) {
+
+      final List<String> previous = previousVersionOf(jedis, key);
+      final Pipeline pipeline = jedis.pipelined();
+
+      final Iterator<ByteBuffer> parts = segments.iterator();
+      ByteBuffer segment = ByteBuffer.allocate(0);
+
+      for (int i = 0; i < chunks; i++) {
+        final byte[] chunk = new byte[min(chunkSize, size - i * chunkSize)];
+        int filled = 0;
+        while (filled < chunk.length) {
+          if (!segment.hasRemaining()) {
+            segment = parts.next().duplicate();
+          }
+          final int length = min(segment.remaining(), chunk.length - filled);
+          segment.get(chunk, filled, length);
+          filled += length;
+        }
+        pipeline.setex(chunkKey(key, etag, i), ttl, chunk);
+      }
+
+      pipeline.multi();
+      expireChunksOf(pipeline, key, previous, etag);
+
+      //  manifest does not contain payload, chunks are stored in original encoding
+      if (format == BINARY) {
+        pipeline.setex(rawKey, ttl, encodedEntry(new byte[0], etag, contentType, encoding, source, chunks));
+      } else {
+        final Map<byte[], byte[]> manifest = binaryEntry(new byte[0], etag, contentType, encoding, source);
+        manifest.remove(PAYLOAD_FIELD);
+        manifest.put(CHUNKS_FIELD, String.valueOf(chunks).getBytes(UTF_8));
+        pipeline.del(rawKey);
+        pipeline.hmset(rawKey, manifest);
+        pipeline.expire(rawKey, ttl);
+      }
+
+      final Pending pending = accounting.isAccounted(region)
+              ? accounting.upserted(pipeline, region, key, sizeOf(key, size), expiresAt(region, true)) : null;
+
+      pipeline.exec();
+      pipeline.sync();
+
+      if (pending != null) {
+        removeEvicted(jedis, accounting.apply(jedis, pending));
+      }
+    }
+  }
+
+  /**
+   * Queues commands writing not chunked entry, hash entry has to be written in transaction.
+   */
+  private void write(Pipeline pipeline, byte[] rawKey, byte[] content, String etag, String contentType, String encoding,
+                     String source, CacheRegion region) {
+
+    if (format == BINARY) {
+      final byte[] value = encodedEntry(content, etag, contentType, encoding, source, 0);
+      if (region.getTtl() == 0) {
+        pipeline.set(rawKey, value);
+      } else {
+        pipeline.setex(rawKey, region.getTtlInSeconds(), value);
+      }
+      return;
+    }
+
+    pipeline.del(rawKey);
+    pipeline.hmset(rawKey, binaryEntry(content, etag, contentType, encoding, source));
+    if (region.getTtl() > 0) {
+      pipeline.expire(rawKey, region.getTtlInSeconds());
+    }
+  }
+
+  /**
+   * @return time (in millis) at which entry written now expires, 0 if it does not expire
+   */
+  private long expiresAt(CacheRegion region, boolean chunked) {
+
+    if (region.getTtl() > 0) {
+      return currentTimeMillis() + SECONDS.toMillis(region.getTtlInSeconds());
+    }
+
+    return chunked ? currentTimeMillis() + SECONDS.toMillis(chunking.getTtlInSeconds()) : 0;
+  }
+
+  /**
+   * Removes entries evicted by accounting to fit region in its quota, together with their chunks.
+   */
+  private void removeEvicted(Jedis jedis, List<String> evicted) {
+    for (String key : evicted) {
+      final List<String> previous = chunking.isEnabled() ? previousVersionOf(jedis, key) : null;
+      final Pipeline pipeline = jedis.pipelined();
+      pipeline.del(key);
+      expireChunksOf(pipeline, key, previous, null);
+      pipeline.sync();
+    }
+  }
+
+  /**
+   * @return etag and number of chunks (null if not chunked) of current version of the entry regardless of format it
+   * was written in, null if there is no such entry
+   */
+  private List<String> previousVersionOf(Jedis jedis, String key) {
+    try {
+      return format == BINARY ? binaryVersionOf(jedis, key) : jedis.hmget(key, ETAG, CHUNKS);
+    } catch (JedisDataException e) {
+      if (!isWrongType(e)) {
+        throw e;
+      }
+      return format == BINARY ? jedis.hmget(key, ETAG, CHUNKS) : binaryVersionOf(jedis, key);
+    }
+  }
+
+  private List<String> binaryVersionOf(Jedis jedis, String key) {
+
+    final byte[] rawKey = key.getBytes(UTF_8);
+    byte[] value = jedis.getrange(rawKey, 0, HEADER_PROBE_SIZE - 1);
+
+    if (value != null && value.length == HEADER_PROBE_SIZE) {
+      try {
+        decode(value);
+      } catch (IllegalArgumentException e) {
+        //  header longer than probe
+        value = jedis.get(rawKey);
+      }
+    }
+
+    final BinaryEntryCodec.Header header = value == null || value.length == 0 ? null : decode(value);
+
+    if (header == null) {
+      return null;
+    }
+
+    return asList(header.etag, header.chunks > 0 ? String.valueOf(header.chunks) : null);
+  }
+
+  /**
+   * Marks chunks of previous version of the entry (if it was chunked) to expire shortly.
+   *
+   * @param previous etag and number of chunks of previous version
+   * @param etag     of version being written (its chunks are the same keys if etag did not change), null if none
+   */
+  private void expireChunksOf(Pipeline pipeline, String key, List<String> previous, String etag) {
+
+    if (previous == null || previous.size() < 2 || previous.get(0) == null || previous.get(1) == null
+            || previous.get(0).equals(etag)) {
+      return;
+    }
+
+    final int chunks = parseInt(previous.get(1));
+    for (int i = 0; i < chunks; i++) {
+      pipeline.expire(chunkKey(key, previous.get(0), i), REPLACED_CHUNKS_TTL_IN_SECONDS);
+    }
+  }
+
+  /**
+   * Binary counterpart of {@link dynks.cache.Entry}, payload is stored in UTF-8 regardless of encoding of content
+   * so that entries stay readable for clients using string commands.
+   */
+  static Map<byte[], byte[]> binaryEntry(byte[] content, String etag, String contentType, String encoding, String source) {
+
+    checkEntry(content, etag, contentType, encoding);
+
+    final MediaType type = MediaType.of(contentType, encoding);
+
+    Map<byte[], byte[]> entry = new HashMap<>(source == null ? 6 : 7);
+    entry.put(PAYLOAD_FIELD, toUtf8(content, type.getCharset()));
+    entry.put(ETAG_FIELD, etag.getBytes(UTF_8));
+    entry.put(CONTENT_TYPE_FIELD, type.getRawContentType());
+    entry.put(ENCODING_FIELD, type.getRawEncoding());
+
+    if (source != null) {
+      entry.put(SOURCE_FIELD, source.getBytes(UTF_8));
+    }
+
+    return entry;
+  }
+
+  /**
+   * Entry in binary format, payload is stored in original encoding.
+   */
+  static byte[] encodedEntry(byte[] content, String etag, String contentType, String encoding, String source, int chunks) {
+    checkEntry(content, etag, contentType, encoding);
+    return encode(content, etag, contentType, encoding, source, chunks);
+  }
+
+  private static void checkEntry(byte[] content, String etag, String contentType, String encoding) {
+
+    if (content == null) {
+      throw new NullPointerException("Content to put into cache should not be null");
+    }
+
+    if (etag == null) {
+      throw new NullPointerException("Etag to put into cache should not be null");
+    }
+
+    if (contentType == null) {
+      throw new NullPointerException("Content type should not be null");
+    }
+
+    if (encoding == null) {
+      throw new NullPointerException("Encoding should not be null");
+    }
   }
 
   @Override
@@ -147,13 +800,82 @@ public class RedisCacheRepository implements CacheRepository {
 
     try {
       try (Jedis jedis = pool.getResource()) {
-        jedis.del(key);
+
+        final List<String> previous = chunking.isEnabled() ? previousVersionOf(jedis, key) : null;
+
+        //  removal and its accounting in one transaction and round trip
+        final Pipeline pipeline = jedis.pipelined();
+        pipeline.multi();
+        pipeline.del(key);
+        expireChunksOf(pipeline, key, previous, null);
+        final Pending pending = accounting.removed(pipeline, key);
+        pipeline.exec();
+        pipeline.sync();
+
+        if (pending != null) {
+          accounting.apply(jedis, pending);
+        }
       }
     } catch (Exception e) {
       throw new CacheRepositoryException(e);
     }
   }
 
+  /**
+   * Registers pool of connections (if it is instrumented) and region usage.
+   */
+  @Override
+  public void registerMBeans(JmxServer jmx) {
+    registerMBeans(jmx, "");
+  }
+
+  /**
+   * Registers mbeans the same way as {@link #registerMBeans(JmxServer)} as one of many nodes, host and port of this
+   * node are added to their names.
+   */
+  void registerNodeMBeans(JmxServer jmx) {
+    registerMBeans(jmx, ",node=" + quote(host + ':' + port));
+  }
+
+  private void registerMBeans(JmxServer jmx, String nameSuffix) {
+
+    if (pool instanceof InstrumentedJedisPool) {
+      jmx.register(POOL_JMX_NAME + nameSuffix, (InstrumentedJedisPool) pool, PoolMBean.class);
+    }
+
+    jmx.register(REGION_USAGE_JMX_NAME + nameSuffix, accounting, RegionUsageMBean.class);
+  }
+
+  /**
+   * Opens minIdle connections (at least one) verifying each of them with PING and loads lua scripts.
+   */
+  @Override
+  public void warmUp() throws CacheRepositoryException {
+
+    final int count = Math.max(1, min(poolConfig.getMinIdle(), poolConfig.getMaxTotal()));
+    final List<Jedis> opened = new ArrayList<>(count);
+
+    try {
+      for (int i = 0; i < count; i++) {
+        Jedis jedis = pool.getResource();
+        opened.add(jedis);
+        jedis.ping();
+      }
+
+      deleteCommand.load(opened.get(0));
+      accounting.load(opened.get(0));
+    } catch (Exception e) {
+      throw new CacheRepositoryException(e);
+    } finally {
+      //  returned to the pool as idle connections
+      for (Jedis jedis : opened) {
+        jedis.close();
+      }
+    }
+
+    LOG.info("Opened {} connection(s) to redis at {}:{}", count, host, port);
+  }
+
   @Override
   public long evictRegion(CacheRegion region) throws CacheRepositoryException {
     try {
@@ -173,6 +895,7 @@ public class RedisCacheRepository implements CacheRepository {
       try (Jedis jedis = pool.getResource()) {
         removed = deleteCommand.execute(jedis, region, maxEntriesDeletedInOneBatch);
       }
+      accounting.evicted(region);
 
       LOG.debug("Evicted {} entries from region '{}' in {} ms ", removed, region.getId(), NANOSECONDS.toMillis(nanoTime() - start));
       return removed;
@@ -192,6 +915,18 @@ public class RedisCacheRepository implements CacheRepository {
     return poolConfig;
   }
 
+  public JedisPool getPool() {
+    return pool;
+  }
+
+  public RegionAccounting getAccounting() {
+    return accounting;
+  }
+
+  public Chunking getChunking() {
+    return chunking;
+  }
+
   public String getHost() {
     return host;
   }
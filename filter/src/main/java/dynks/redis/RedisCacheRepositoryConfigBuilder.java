@@ -1,10 +1,21 @@
 package dynks.redis;
 
 import com.typesafe.config.Config;
+import dynks.cache.CacheRepository;
+import dynks.redis.RedisCacheRepository.EntryFormat;
 import org.slf4j.Logger;
-import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.HostAndPort;
 import redis.clients.jedis.JedisPoolConfig;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import static dynks.redis.Chunking.DEFAULT_CHUNKS_PER_READ;
+import static dynks.redis.Chunking.DEFAULT_CHUNK_SIZE;
+import static dynks.redis.Chunking.DEFAULT_TTL_IN_SECONDS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.slf4j.LoggerFactory.getLogger;
 
 /**
@@ -15,11 +26,26 @@ public class RedisCacheRepositoryConfigBuilder {
 
   private static final Logger LOG = getLogger(RedisCacheRepositoryConfigBuilder.class);
   public static final int DEFAULT_MAX_ENTRIES_DELETED_IN_ONE_BATCH = 1000;
+  public static final int DEFAULT_TIMEOUT_IN_MILLIS = 2000;
+  public static final int DEFAULT_NIO_CONNECTIONS = 2;
+  public static final long DEFAULT_NIO_TIMEOUT_IN_MILLIS = 2000;
+  public static final long DEFAULT_CALL_TIMEOUT_IN_MILLIS = 250;
+
+  public static final int DEFAULT_CLUSTER_EVICTION_THREADS = 4;
+  public static final int DEFAULT_VIRTUAL_NODES = 160;
+  public static final int DEFAULT_SHARD_EVICTION_THREADS = 4;
+  public static final long DEFAULT_REPLICA_MAX_LAG_IN_MILLIS = 1000;
+  public static final long DEFAULT_REPLICA_CHECK_INTERVAL_IN_MILLIS = 250;
 
   public static RedisCacheRepository build(Config config) {
+    return build(config, config.getString("dynks.redis.host"), config.getInt("dynks.redis.port"));
+  }
+
+  /**
+   * Builds repository of given redis node using remaining settings from dynks.redis.
+   */
+  static RedisCacheRepository build(Config config, String host, int port) {
 
-    String host = config.getString("dynks.redis.host");
-    int port = config.getInt("dynks.redis.port");
     LOG.info("Will connect to redis at {}:{}", host, port);
 
     JedisPoolConfig poolConfig = new JedisPoolConfig();
@@ -72,6 +98,196 @@ public class RedisCacheRepositoryConfigBuilder {
 
     LOG.debug("\tTimeBetweenEvictionRunsMillis: {}", poolConfig.getTimeBetweenEvictionRunsMillis());
 
+    final String maxWait = "dynks.redis.pool.maxWait";
+    if (config.hasPath(maxWait)) {
+      poolConfig.setMaxWaitMillis(config.getDuration(maxWait, MILLISECONDS));
+    }
+    LOG.debug("\tMaxWaitMillis: {}", poolConfig.getMaxWaitMillis());
+
+    final int timeout = (int) timeoutOf(config, "dynks.redis.timeout", DEFAULT_TIMEOUT_IN_MILLIS);
+    LOG.debug("\tTimeout: {} ms", timeout);
+
+    final int maxEntriesDeletedInOneBatch = maxEntriesDeletedInOneBatchOf(config);
+
+    final Chunking chunking = chunkingOf(config);
+    LOG.debug("\tChunkThreshold: {}, ChunkSize: {}, ChunksPerRead: {}", chunking.getThreshold(), chunking.getChunkSize(), chunking.getChunksPerRead());
+
+    final InstrumentedJedisPool pool = new InstrumentedJedisPool(poolConfig, host, port, timeout);
+    final PoolSizer sizer = poolSizerOf(config);
+    if (sizer != null) {
+      LOG.debug("\tAdaptive MaxTotal between {} and {}", sizer.getMinTotal(), sizer.getMaxTotal());
+      pool.startSizing(sizer);
+    }
+
+    final boolean accounting = config.hasPath("dynks.redis.accounting") && config.getBoolean("dynks.redis.accounting");
+    LOG.debug("\tAccounting of all regions: {}", accounting);
+
+    final EntryFormat format = config.hasPath("dynks.redis.entryFormat") ? EntryFormat.valueOf(config.getString("dynks.redis.entryFormat")) : EntryFormat.HASH;
+    LOG.debug("\tEntry format: {}", format);
+
+    return new RedisCacheRepository(poolConfig, host, port, maxEntriesDeletedInOneBatch, pool, chunking, accounting, format);
+  }
+
+  /**
+   * @return sizer adjusting maximum number of connections or null if adaptive pool sizing is disabled
+   */
+  static PoolSizer poolSizerOf(Config config) {
+
+    final String adaptive = "dynks.redis.pool.adaptive.";
+    if (!config.hasPath(adaptive + "enabled") || !config.getBoolean(adaptive + "enabled")) {
+      return null;
+    }
+
+    return new PoolSizer(config.getInt(adaptive + "minTotal"), config.getInt(adaptive + "maxTotal"),
+            config.getDuration(adaptive + "interval", NANOSECONDS), config.getDuration(adaptive + "waitThreshold", NANOSECONDS),
+            config.getDuration(adaptive + "latencyLimit", NANOSECONDS));
+  }
+
+  /**
+   * Builds repository of redis at dynks.redis.host:port, reading entries from its replicas if dynks.redis.replicas.nodes
+   * are given (<pre>dynks.storage = "REDIS"</pre>).
+   */
+  public static CacheRepository buildWithReplicas(Config config) {
+
+    final RedisCacheRepository master = build(config);
+
+    if (!config.hasPath("dynks.redis.replicas.nodes") || config.getStringList("dynks.redis.replicas.nodes").isEmpty()) {
+      return master;
+    }
+
+    final List<String> nodes = config.getStringList("dynks.redis.replicas.nodes");
+    LOG.info("Will read entries from redis replicas {}", nodes);
+
+    final long maxLag = config.hasPath("dynks.redis.replicas.maxLag") ? config.getDuration("dynks.redis.replicas.maxLag", NANOSECONDS)
+            : MILLISECONDS.toNanos(DEFAULT_REPLICA_MAX_LAG_IN_MILLIS);
+    final long interval = config.hasPath("dynks.redis.replicas.checkInterval") ? config.getDuration("dynks.redis.replicas.checkInterval", NANOSECONDS)
+            : MILLISECONDS.toNanos(DEFAULT_REPLICA_CHECK_INTERVAL_IN_MILLIS);
+    LOG.debug("\tMaxLag: {} ms, CheckInterval: {} ms", NANOSECONDS.toMillis(maxLag), NANOSECONDS.toMillis(interval));
+
+    final List<RedisCacheRepository> replicas = new ArrayList<>(nodes.size());
+    for (String node : nodes) {
+      final HostAndPort replica = HostAndPort.parseString(node);
+      replicas.add(build(config, replica.getHost(), replica.getPort()));
+    }
+
+    return new ReplicatedRedisCacheRepository(master, replicas, maxLag, interval);
+  }
+
+  /**
+   * Builds repository of redis cluster (<pre>dynks.storage = "REDIS_CLUSTER"</pre>) reading slots from
+   * dynks.redis.cluster.nodes or from dynks.redis.host:port if no nodes are given. Every master is accessed with own
+   * pool configured with dynks.redis.pool.
+   */
+  public static RedisClusterCacheRepository buildCluster(Config config) {
+
+    final List<HostAndPort> seeds = new ArrayList<>();
+    if (config.hasPath("dynks.redis.cluster.nodes")) {
+      for (String node : config.getStringList("dynks.redis.cluster.nodes")) {
+        seeds.add(HostAndPort.parseString(node));
+      }
+    }
+    if (seeds.isEmpty()) {
+      seeds.add(new HostAndPort(config.getString("dynks.redis.host"), config.getInt("dynks.redis.port")));
+    }
+    LOG.info("Will connect to redis cluster using nodes {}", seeds);
+
+    final boolean hashTags = config.hasPath("dynks.regionHashTags") && config.getBoolean("dynks.regionHashTags");
+    if (!hashTags && chunkingOf(config).isEnabled()) {
+      throw new IllegalArgumentException("dynks.redis.chunkThreshold requires dynks.regionHashTags in redis cluster");
+    }
+    if (!hashTags && config.hasPath("dynks.redis.accounting") && config.getBoolean("dynks.redis.accounting")) {
+      throw new IllegalArgumentException("dynks.redis.accounting requires dynks.regionHashTags in redis cluster");
+    }
+    if (!hashTags && config.hasPath("dynks.regions")) {
+      for (Config region : config.getConfigList("dynks.regions")) {
+        if (region.hasPath("quota")) {
+          throw new IllegalArgumentException("Quota of region '" + region.getString("id")
+                  + "' requires dynks.regionHashTags in redis cluster");
+        }
+      }
+    }
+
+    final int threads = config.hasPath("dynks.redis.cluster.evictionThreads") ? config.getInt("dynks.redis.cluster.evictionThreads")
+            : DEFAULT_CLUSTER_EVICTION_THREADS;
+    if (threads < 1) {
+      throw new IllegalArgumentException("evictionThreads should be >=1 but is '" + threads + "'");
+    }
+    LOG.debug("\tEvictionThreads: {}", threads);
+
+    return new RedisClusterCacheRepository(seeds, node -> build(config, node.getHost(), node.getPort()),
+            maxEntriesDeletedInOneBatchOf(config), threads);
+  }
+
+  /**
+   * Builds repository sharding entries across standalone redis instances from dynks.redis.sharding.nodes
+   * (<pre>dynks.storage = "REDIS_SHARDED"</pre>). Every shard is accessed with own pool configured with dynks.redis.pool.
+   */
+  public static ShardedRedisCacheRepository buildSharded(Config config) {
+
+    final List<String> nodes = config.getStringList("dynks.redis.sharding.nodes");
+    if (nodes.isEmpty()) {
+      throw new IllegalArgumentException("dynks.redis.sharding.nodes should contain at least one host:port");
+    }
+    LOG.info("Will shard entries across redis instances {}", nodes);
+
+    final int virtualNodes = config.hasPath("dynks.redis.sharding.virtualNodes") ? config.getInt("dynks.redis.sharding.virtualNodes")
+            : DEFAULT_VIRTUAL_NODES;
+    LOG.debug("\tVirtualNodes: {}", virtualNodes);
+
+    final int threads = config.hasPath("dynks.redis.sharding.evictionThreads") ? config.getInt("dynks.redis.sharding.evictionThreads")
+            : DEFAULT_SHARD_EVICTION_THREADS;
+    if (threads < 1) {
+      throw new IllegalArgumentException("evictionThreads should be >=1 but is '" + threads + "'");
+    }
+    LOG.debug("\tEvictionThreads: {}", threads);
+
+    final List<RedisCacheRepository> shards = new ArrayList<>(nodes.size());
+    for (String node : nodes) {
+      final HostAndPort shard = HostAndPort.parseString(node);
+      shards.add(build(config, shard.getHost(), shard.getPort()));
+    }
+
+    return new ShardedRedisCacheRepository(shards, virtualNodes, maxEntriesDeletedInOneBatchOf(config), threads);
+  }
+
+  /**
+   * Builds repository using multiplexed non-blocking connections (<pre>dynks.storage = "REDIS_NIO"</pre>).
+   */
+  public static NonBlockingRedisCacheRepository buildNonBlocking(Config config) {
+
+    String host = config.getString("dynks.redis.host");
+    int port = config.getInt("dynks.redis.port");
+    LOG.info("Will connect to redis at {}:{} using non-blocking connections", host, port);
+
+    final int connections = config.hasPath("dynks.redis.nio.connections") ? config.getInt("dynks.redis.nio.connections") : DEFAULT_NIO_CONNECTIONS;
+    final long timeout = timeoutOf(config, "dynks.redis.nio.timeout", DEFAULT_NIO_TIMEOUT_IN_MILLIS);
+    LOG.debug("\tConnections: {}, Timeout: {} ms", connections, timeout);
+
+    return new NonBlockingRedisCacheRepository(host, port, connections, timeout, maxEntriesDeletedInOneBatchOf(config));
+  }
+
+  /**
+   * With circuit breaker enabled single operation may take at most <pre>dynks.circuitBreaker.callTimeout</pre> so that
+   * unavailable storage opens circuit after few short calls instead of holding requests for whole connection timeout.
+   */
+  static long timeoutOf(Config config, String path, long defaultTimeout) {
+
+    final long timeout = config.hasPath(path) ? config.getDuration(path, MILLISECONDS) : defaultTimeout;
+
+    if (config.hasPath("dynks.circuitBreaker.enabled") && config.getBoolean("dynks.circuitBreaker.enabled")) {
+      final long callTimeout = config.hasPath("dynks.circuitBreaker.callTimeout") ? config.getDuration("dynks.circuitBreaker.callTimeout", MILLISECONDS)
+              : DEFAULT_CALL_TIMEOUT_IN_MILLIS;
+      if (callTimeout < 1) {
+        throw new IllegalArgumentException("callTimeout should be >=1ms but is '" + callTimeout + "'");
+      }
+      return Math.min(timeout, callTimeout);
+    }
+
+    return timeout;
+  }
+
+  static int maxEntriesDeletedInOneBatchOf(Config config) {
+
     final int maxEntriesDeletedInOneBatch = config.hasPath("dynks.redis.maxEntriesDeletedInOneBatch") ? config.getInt("dynks.redis.maxEntriesDeletedInOneBatch")
             : DEFAULT_MAX_ENTRIES_DELETED_IN_ONE_BATCH;
     if (maxEntriesDeletedInOneBatch < 1) {
@@ -79,6 +295,24 @@ public class RedisCacheRepositoryConfigBuilder {
     }
     LOG.debug("\tMaxEntriesDeletedInOneBatch: {}", maxEntriesDeletedInOneBatch);
 
-    return new RedisCacheRepository(poolConfig, host, port, maxEntriesDeletedInOneBatch, new JedisPool(poolConfig, host, port));
+    return maxEntriesDeletedInOneBatch;
+  }
+
+  static Chunking chunkingOf(Config config) {
+
+    final long threshold = config.hasPath("dynks.redis.chunkThreshold") ? config.getBytes("dynks.redis.chunkThreshold") : 0;
+    final long chunkSize = config.hasPath("dynks.redis.chunkSize") ? config.getBytes("dynks.redis.chunkSize") : DEFAULT_CHUNK_SIZE;
+    final int chunksPerRead = config.hasPath("dynks.redis.chunksPerRead") ? config.getInt("dynks.redis.chunksPerRead") : DEFAULT_CHUNKS_PER_READ;
+    final long ttl = config.hasPath("dynks.redis.chunkTtl") ? config.getDuration("dynks.redis.chunkTtl", SECONDS) : DEFAULT_TTL_IN_SECONDS;
+
+    if (chunkSize > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("chunkSize should be <=" + Integer.MAX_VALUE + " but is '" + chunkSize + "'");
+    }
+
+    if (ttl > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("chunkTtl should be <=" + Integer.MAX_VALUE + "s but is '" + ttl + "'");
+    }
+
+    return new Chunking(threshold, (int) chunkSize, chunksPerRead, (int) ttl);
   }
 }
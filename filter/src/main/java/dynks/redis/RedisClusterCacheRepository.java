@@ -0,0 +1,494 @@
+package dynks.redis;
+
+import dynks.cache.CacheQueryResult;
+import dynks.cache.CacheRegion;
+import dynks.cache.CacheRepository;
+import dynks.cache.CacheRepositoryException;
+import dynks.cache.HashTaggedKeyStrategy;
+import dynks.cache.Upsert;
+import dynks.jmx.JmxServer;
+import dynks.redis.ClusterSlots.SlotRange;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import static dynks.Threads.newExecutor;
+import static dynks.redis.ClusterSlots.SLOTS;
+import static dynks.redis.ClusterSlots.nameOf;
+import static java.lang.System.currentTimeMillis;
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+import static redis.clients.jedis.ScanParams.SCAN_POINTER_START;
+import static redis.clients.util.JedisClusterCRC16.getSlot;
+
+/**
+ * Repository of entries kept in redis cluster. Every master is accessed with own {@link RedisCacheRepository} (and
+ * pool of connections), entries are routed to master serving slot of their key according to CLUSTER SLOTS read on
+ * first use. When master replies with MOVED (i.e. after resharding or failover) slots are read again and the command
+ * is repeated once. ASK redirections of slots being migrated are not followed, such commands fail.
+ * <p>
+ * Keys are spread across all slots unless region id is embedded in hash tag (see {@link HashTaggedKeyStrategy}), then
+ * all entries of the region are kept in one slot. Region accounting (and quotas) and chunked entries require hash tags
+ * as their keys have to be in the same slot as the entry, it is validated once by
+ * {@link RedisCacheRepositoryConfigBuilder#buildCluster}.
+ * <p>
+ * Region is evicted with SCAN on every master in parallel or, when its keys are hash tagged, only on master of its
+ * slot with CLUSTER GETKEYSINSLOT.
+ */
+@ThreadSafe
+public class RedisClusterCacheRepository implements CacheRepository {
+
+  private static final Logger LOG = getLogger(RedisClusterCacheRepository.class);
+
+  /**
+   * Slots are not read again more often, commands failing with MOVED in the meantime are repeated with current slots.
+   */
+  private static final long MIN_REFRESH_INTERVAL_IN_MILLIS = 100;
+
+  private final List<HostAndPort> seeds;
+  private final Function<HostAndPort, RedisCacheRepository> nodeFactory;
+  private final int maxEntriesDeletedInOneBatch;
+  private final ExecutorService evictions;
+
+  private final Object topologyLock = new Object();
+  /**
+   * Repositories of nodes by host:port.
+   */
+  @GuardedBy("topologyLock")
+  private final Map<String, RedisCacheRepository> nodes = new HashMap<>();
+  @GuardedBy("topologyLock")
+  private long refreshedAt;
+  /**
+   * Repository of master serving every slot, null until slots are read.
+   */
+  private volatile RedisCacheRepository[] slots;
+
+  /**
+   * @param seeds       nodes from which slots are read
+   * @param nodeFactory creates repository of single node
+   */
+  public RedisClusterCacheRepository(Collection<HostAndPort> seeds, Function<HostAndPort, RedisCacheRepository> nodeFactory,
+                                     int maxEntriesDeletedInOneBatch, int evictionThreads) {
+
+    if (seeds == null || seeds.isEmpty()) {
+      throw new IllegalArgumentException("At least one node of the cluster should be given");
+    }
+
+    if (nodeFactory == null) {
+      throw new NullPointerException("Factory of node repositories should not be null");
+    }
+
+    if (maxEntriesDeletedInOneBatch < 1) {
+      throw new IllegalArgumentException("maxEntriesDeletedInOneBatch should be >=1 but is '" + maxEntriesDeletedInOneBatch + "'");
+    }
+
+    this.seeds = new ArrayList<>(seeds);
+    this.nodeFactory = nodeFactory;
+    this.maxEntriesDeletedInOneBatch = maxEntriesDeletedInOneBatch;
+    this.evictions = newExecutor("dynks-cluster-eviction", evictionThreads, false);
+  }
+
+  @Override
+  public CacheQueryResult fetchIfChanged(String key, String etag) throws CacheRepositoryException {
+    return routed(key, node -> node.fetchIfChanged(key, etag));
+  }
+
+  @Override
+  public void upsert(String key, byte[] content, String etag, String contentType, String encoding, CacheRegion region, String source) throws CacheRepositoryException {
+    routed(key, node -> {
+      node.upsert(key, content, etag, contentType, encoding, region, source);
+      return null;
+    });
+  }
+
+  @Override
+  public void upsert(String key, List<ByteBuffer> segments, int size, String etag, String contentType, String encoding,
+                     CacheRegion region, String source) throws CacheRepositoryException {
+    routed(key, node -> {
+      node.upsert(key, segments, size, etag, contentType, encoding, region, source);
+      return null;
+    });
+  }
+
+  /**
+   * Upserts are written by every master in one round trip, if some master replied with MOVED its upserts are written
+   * again one by one.
+   */
+  @Override
+  public void upsert(List<Upsert> upserts) throws CacheRepositoryException {
+
+    final Map<RedisCacheRepository, List<Upsert>> byNode = new IdentityHashMap<>();
+    for (Upsert upsert : upserts) {
+      byNode.computeIfAbsent(nodeFor(upsert.getKey()), node -> new ArrayList<>()).add(upsert);
+    }
+
+    for (Map.Entry<RedisCacheRepository, List<Upsert>> group : byNode.entrySet()) {
+      try {
+        group.getKey().upsert(group.getValue());
+      } catch (CacheRepositoryException e) {
+        if (!isMoved(e)) {
+          throw e;
+        }
+        refreshSlots();
+        for (Upsert upsert : group.getValue()) {
+          nodeFor(upsert.getKey()).upsert(upsert.getKey(), upsert.getContent(), upsert.getEtag(), upsert.getContentType(),
+                  upsert.getEncoding(), upsert.getRegion(), upsert.getSource());
+        }
+      }
+    }
+  }
+
+  @Override
+  public void remove(String key) throws CacheRepositoryException {
+    routed(key, node -> {
+      node.remove(key);
+      return null;
+    });
+  }
+
+  @Override
+  public long evictRegion(CacheRegion region) throws CacheRepositoryException {
+    return evictRegion(region, maxEntriesDeletedInOneBatch);
+  }
+
+  @Override
+  public long evictRegion(CacheRegion region, int maxEntriesDeletedInOneBatch) throws CacheRepositoryException {
+
+    final long start = nanoTime();
+    final String wildcard = region.getKeyStrategy().wildcardKeyFor(region);
+    long removed = 0;
+
+    try {
+      if (region.getKeyStrategy() instanceof HashTaggedKeyStrategy) {
+        final int slot = slotOf(wildcard);
+        removed = evictSlot(nodeFor(wildcard), slot, wildcard, maxEntriesDeletedInOneBatch);
+      } else {
+        final List<Future<Long>> evicted = new ArrayList<>();
+        for (RedisCacheRepository master : masters()) {
+          evicted.add(evictions.submit(() -> scanAndDelete(master, wildcard, maxEntriesDeletedInOneBatch)));
+        }
+        for (Future<Long> master : evicted) {
+          removed += master.get();
+        }
+      }
+    } catch (ExecutionException e) {
+      throw new CacheRepositoryException(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CacheRepositoryException(e);
+    } catch (RuntimeException e) {
+      throw new CacheRepositoryException(e);
+    }
+
+    for (RedisCacheRepository master : masters()) {
+      master.getAccounting().evicted(region);
+    }
+
+    LOG.debug("Evicted {} entries from region '{}' in {} ms ", removed, region.getId(), NANOSECONDS.toMillis(nanoTime() - start));
+    return removed;
+  }
+
+  /**
+   * Reads slots and warms up every master.
+   */
+  @Override
+  public void warmUp() throws CacheRepositoryException {
+
+    refreshSlots();
+
+    for (RedisCacheRepository master : masters()) {
+      master.warmUp();
+    }
+  }
+
+  /**
+   * Registers mbeans of masters known at the time of registration, masters appearing later (i.e. after failover) are not
+   * registered.
+   */
+  @Override
+  public void registerMBeans(JmxServer jmx) {
+
+    final Set<RedisCacheRepository> masters = masters();
+
+    if (masters.isEmpty()) {
+      LOG.warn("Slots were not read yet, no mbeans of cluster masters registered");
+    }
+
+    for (RedisCacheRepository master : masters) {
+      master.registerNodeMBeans(jmx);
+    }
+  }
+
+  @Override
+  public void dispose() {
+
+    evictions.shutdownNow();
+
+    synchronized (topologyLock) {
+      for (RedisCacheRepository node : nodes.values()) {
+        node.dispose();
+      }
+      nodes.clear();
+      slots = null;
+    }
+  }
+
+  @Override
+  public int getMaxEntriesDeletedInOneBatch() {
+    return maxEntriesDeletedInOneBatch;
+  }
+
+  /**
+   * @return repositories of masters serving at least one slot, empty until slots are read
+   */
+  public Set<RedisCacheRepository> masters() {
+
+    final RedisCacheRepository[] current = slots;
+    final Set<RedisCacheRepository> masters = new LinkedHashSet<>();
+
+    if (current != null) {
+      for (RedisCacheRepository master : current) {
+        if (master != null) {
+          masters.add(master);
+        }
+      }
+    }
+
+    return masters;
+  }
+
+  public List<HostAndPort> getSeeds() {
+    return seeds;
+  }
+
+  /**
+   * @return repository of master serving slot of the key
+   * @throws CacheRepositoryException if slots could not be read or slot is not served
+   */
+  RedisCacheRepository nodeFor(String key) throws CacheRepositoryException {
+
+    RedisCacheRepository[] current = slots;
+
+    if (current == null) {
+      refreshSlots();
+      current = slots;
+    }
+
+    final RedisCacheRepository node = current[slotOf(key)];
+
+    if (node == null) {
+      throw new CacheRepositoryException(new IllegalStateException("Slot " + slotOf(key) + " of key '" + key
+              + "' is not served by any master"));
+    }
+
+    return node;
+  }
+
+  private <T> T routed(String key, NodeCall<T> call) throws CacheRepositoryException {
+    try {
+      return call.apply(nodeFor(key));
+    } catch (CacheRepositoryException e) {
+      if (!isMoved(e)) {
+        throw e;
+      }
+      refreshSlots();
+      return call.apply(nodeFor(key));
+    }
+  }
+
+  /**
+   * Reads slots from known masters or seeds (whichever replies first), creating repositories of new masters and
+   * disposing repositories of nodes that are not masters anymore.
+   */
+  private void refreshSlots() throws CacheRepositoryException {
+
+    synchronized (topologyLock) {
+
+      if (slots != null && currentTimeMillis() - refreshedAt < MIN_REFRESH_INTERVAL_IN_MILLIS) {
+        return;
+      }
+
+      final Map<String, HostAndPort> candidates = new LinkedHashMap<>();
+      for (RedisCacheRepository master : masters()) {
+        candidates.put(master.getHost() + ':' + master.getPort(), new HostAndPort(master.getHost(), master.getPort()));
+      }
+      for (HostAndPort seed : seeds) {
+        candidates.putIfAbsent(nameOf(seed), seed);
+      }
+
+      Exception failure = null;
+
+      for (HostAndPort candidate : candidates.values()) {
+        try {
+          final List<SlotRange> ranges;
+          try (Jedis jedis = nodeOf(candidate).getPool().getResource()) {
+            ranges = ClusterSlots.parse(jedis.clusterSlots(), candidate.getHost());
+          }
+          applySlots(ranges);
+          refreshedAt = currentTimeMillis();
+          return;
+        } catch (Exception e) {
+          LOG.debug("Unable to read slots from {} due to {}", nameOf(candidate), e.getMessage());
+          failure = e;
+        }
+      }
+
+      throw new CacheRepositoryException(failure);
+    }
+  }
+
+  @GuardedBy("topologyLock")
+  private void applySlots(List<SlotRange> ranges) {
+
+    final RedisCacheRepository[] table = new RedisCacheRepository[SLOTS];
+    final Set<String> masters = new LinkedHashSet<>();
+
+    for (SlotRange range : ranges) {
+      final RedisCacheRepository master = nodeOf(range.getMaster());
+      masters.add(nameOf(range.getMaster()));
+      for (int slot = range.getStart(); slot <= range.getEnd(); slot++) {
+        table[slot] = master;
+      }
+    }
+
+    slots = table;
+
+    //  i.e. seeds that are replicas or masters that failed over
+    nodes.entrySet().removeIf(node -> {
+      if (masters.contains(node.getKey())) {
+        return false;
+      }
+      node.getValue().dispose();
+      return true;
+    });
+
+    LOG.info("Read {} slot ranges served by masters {}", ranges.size(), masters);
+  }
+
+  @GuardedBy("topologyLock")
+  private RedisCacheRepository nodeOf(HostAndPort node) {
+    return nodes.computeIfAbsent(nameOf(node), name -> nodeFactory.apply(node));
+  }
+
+  /**
+   * Removes keys of the slot matching the wildcard. If the slot contains also other keys (i.e. of region with the same
+   * slot) CLUSTER GETKEYSINSLOT would keep returning them, so remaining keys are then removed with SCAN.
+   */
+  private static long evictSlot(RedisCacheRepository master, int slot, String wildcard, int batch) {
+
+    final String prefix = wildcard.substring(0, wildcard.length() - 1);
+    long removed = 0;
+
+    try (Jedis jedis = master.getPool().getResource()) {
+      for (; ; ) {
+        final List<String> keys = jedis.clusterGetKeysInSlot(slot, batch);
+        final List<String> matching = new ArrayList<>(keys.size());
+        for (String key : keys) {
+          if (key.startsWith(prefix)) {
+            matching.add(key);
+          }
+        }
+
+        removed += delete(jedis, matching);
+
+        if (matching.size() < keys.size()) {
+          return removed + scanAndDelete(jedis, wildcard, batch);
+        }
+
+        if (keys.size() < batch) {
+          return removed;
+        }
+      }
+    }
+  }
+
+  private static long scanAndDelete(RedisCacheRepository master, String wildcard, int batch) {
+    try (Jedis jedis = master.getPool().getResource()) {
+      return scanAndDelete(jedis, wildcard, batch);
+    }
+  }
+
+  private static long scanAndDelete(Jedis jedis, String wildcard, int batch) {
+
+    final ScanParams params = new ScanParams().match(wildcard).count(batch);
+    String cursor = SCAN_POINTER_START;
+    long removed = 0;
+
+    do {
+      final ScanResult<String> result = jedis.scan(cursor, params);
+      removed += delete(jedis, result.getResult());
+      cursor = result.getStringCursor();
+    } while (!SCAN_POINTER_START.equals(cursor));
+
+    return removed;
+  }
+
+  /**
+   * Keys are deleted one by one (in one round trip) as they might belong to different slots.
+   */
+  private static long delete(Jedis jedis, List<String> keys) {
+
+    if (keys.isEmpty()) {
+      return 0;
+    }
+
+    final Pipeline pipeline = jedis.pipelined();
+    final List<Response<Long>> deleted = new ArrayList<>(keys.size());
+    for (String key : keys) {
+      deleted.add(pipeline.del(key));
+    }
+    pipeline.sync();
+
+    long removed = 0;
+    for (Response<Long> response : deleted) {
+      removed += response.get();
+    }
+    return removed;
+  }
+
+  static int slotOf(String key) {
+    return getSlot(key);
+  }
+
+  /**
+   * @return true if command failed as its slot is served by other master
+   */
+  static boolean isMoved(Throwable e) {
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof JedisMovedDataException
+              || (cause instanceof JedisDataException && cause.getMessage() != null && cause.getMessage().startsWith("MOVED "))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @FunctionalInterface
+  private interface NodeCall<T> {
+    T apply(RedisCacheRepository node) throws CacheRepositoryException;
+  }
+}
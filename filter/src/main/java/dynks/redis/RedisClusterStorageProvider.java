@@ -0,0 +1,24 @@
+package dynks.redis;
+
+import com.typesafe.config.Config;
+import dynks.cache.CacheRepository;
+import dynks.cache.StorageProvider;
+
+/**
+ * Redis cluster accessed with pool of blocking connections per master, configured with dynks.redis.cluster and
+ * dynks.redis.
+ */
+public class RedisClusterStorageProvider implements StorageProvider {
+
+  public static final String NAME = "REDIS_CLUSTER";
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public CacheRepository create(Config config) {
+    return RedisCacheRepositoryConfigBuilder.buildCluster(config);
+  }
+}
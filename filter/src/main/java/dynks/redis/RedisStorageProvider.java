@@ -0,0 +1,24 @@
+package dynks.redis;
+
+import com.typesafe.config.Config;
+import dynks.cache.CacheRepository;
+import dynks.cache.StorageProvider;
+
+/**
+ * Redis accessed with pool of blocking connections, configured with dynks.redis. Entries are read from replicas of the
+ * redis when dynks.redis.replicas are given.
+ */
+public class RedisStorageProvider implements StorageProvider {
+
+  public static final String NAME = "REDIS";
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public CacheRepository create(Config config) {
+    return RedisCacheRepositoryConfigBuilder.buildWithReplicas(config);
+  }
+}
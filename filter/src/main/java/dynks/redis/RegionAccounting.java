@@ -0,0 +1,361 @@
+package dynks.redis;
+
+import dynks.cache.CacheRegion;
+import dynks.cache.RegionQuota;
+import dynks.jmx.RegionUsageMBean;
+import net.jcip.annotations.ThreadSafe;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static dynks.cache.RegionQuota.OnExceeded.EVICT_OLDEST;
+import static java.lang.String.valueOf;
+import static java.lang.System.currentTimeMillis;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+
+/**
+ * Approximate usage of redis memory by cache regions, kept in redis so that it is shared by all instances using the
+ * same redis. For every region (keys prefixed with <pre>namespace:regionId:</pre>) four keys are maintained by lua
+ * script executed in the same transaction as every upsert and removal:
+ * <ul>
+ * <li><pre>prefix#usage</pre> hash with total bytes (b) and number of entries (n)</li>
+ * <li><pre>prefix#sizes</pre> hash with size of every entry</li>
+ * <li><pre>prefix#order</pre> sorted set of entries by time of upsert</li>
+ * <li><pre>prefix#expiry</pre> sorted set of entries by time they expire at</li>
+ * </ul>
+ * Entries that expired are subtracted lazily on next upsert. As these keys share prefix of the region they are removed
+ * by region eviction together with entries. Size of entry is size of payload and key in bytes.
+ * <p>
+ * Script touches only keys it is given, so entries evicted to fit in quota are only subtracted by it and returned to
+ * the caller, which removes them (together with their chunks) right after the transaction.
+ */
+@ThreadSafe
+public class RegionAccounting implements RegionUsageMBean {
+
+  static final String SCRIPT = "" +
+          "local usage, sizes, order, expiry = KEYS[1], KEYS[2], KEYS[3], KEYS[4]\n" +
+          "local key, size, now, expiresAt = ARGV[1], tonumber(ARGV[2]), tonumber(ARGV[3]), tonumber(ARGV[4])\n" +
+          "local maxBytes, maxEntries, evict = tonumber(ARGV[5]), tonumber(ARGV[6]), ARGV[7] == '1'\n" +
+          "local evicted = {}\n" +
+          "local function forget(k)\n" +
+          "  local s = redis.call('hget', sizes, k)\n" +
+          "  if s then\n" +
+          "    redis.call('hdel', sizes, k)\n" +
+          "    redis.call('zrem', order, k)\n" +
+          "    redis.call('zrem', expiry, k)\n" +
+          "    redis.call('hincrby', usage, 'b', -tonumber(s))\n" +
+          "    redis.call('hincrby', usage, 'n', -1)\n" +
+          "  end\n" +
+          "end\n" +
+          "local expired = redis.call('zrangebyscore', expiry, '-inf', now, 'LIMIT', 0, 100)\n" +
+          "for i = 1, #expired do\n" +
+          "  forget(expired[i])\n" +
+          "end\n" +
+          "forget(key)\n" +
+          "if size >= 0 then\n" +
+          "  redis.call('hset', sizes, key, size)\n" +
+          "  redis.call('zadd', order, now, key)\n" +
+          "  if expiresAt > 0 then\n" +
+          "    redis.call('zadd', expiry, expiresAt, key)\n" +
+          "  end\n" +
+          "  redis.call('hincrby', usage, 'b', size)\n" +
+          "  redis.call('hincrby', usage, 'n', 1)\n" +
+          "end\n" +
+          "local b = tonumber(redis.call('hget', usage, 'b') or 0)\n" +
+          "local n = tonumber(redis.call('hget', usage, 'n') or 0)\n" +
+          "while evict and ((maxBytes > 0 and b > maxBytes) or (maxEntries > 0 and n > maxEntries)) do\n" +
+          "  local oldest = redis.call('zrange', order, 0, 0)\n" +
+          "  if #oldest == 0 then\n" +
+          "    break\n" +
+          "  end\n" +
+          "  forget(oldest[1])\n" +
+          "  evicted[#evicted + 1] = oldest[1]\n" +
+          "  b = tonumber(redis.call('hget', usage, 'b') or 0)\n" +
+          "  n = tonumber(redis.call('hget', usage, 'n') or 0)\n" +
+          "end\n" +
+          "return {b, n, evicted}";
+
+  /**
+   * Time after which usage of region that exceeded quota is read again, as it drops when entries expire.
+   */
+  public static final long RECHECK_INTERVAL_IN_MILLIS = 1000;
+
+  private static final String REMOVED = "-1";
+  private static final String[] NONE = new String[0];
+
+  private final JedisPool pool;
+  private final boolean allRegions;
+  private final Map<String, CacheRegion> regions = new ConcurrentHashMap<>();
+  private final Map<String, Long> exceeded = new ConcurrentHashMap<>();
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder evicted = new LongAdder();
+  private volatile String scriptSha = "firstUseWillThrowException";
+
+  /**
+   * @param allRegions if true usage of every region is tracked, otherwise only of regions with quota
+   */
+  public RegionAccounting(JedisPool pool, boolean allRegions) {
+    this.pool = pool;
+    this.allRegions = allRegions;
+  }
+
+  public boolean isAccounted(CacheRegion region) {
+    return allRegions || region.getQuota().isLimited();
+  }
+
+  /**
+   * @return true if entry should not be stored as region exceeded its quota (according to last accounting) and
+   * quota does not allow evicting older entries
+   */
+  public boolean isRejected(CacheRegion region) {
+
+    if (region.getQuota().getOnExceeded() == EVICT_OLDEST) {
+      return false;
+    }
+
+    final Long checkedAt = exceeded.get(region.getId());
+
+    if (checkedAt == null) {
+      return false;
+    }
+
+    if (currentTimeMillis() - checkedAt > RECHECK_INTERVAL_IN_MILLIS) {
+      //  expired entries are subtracted without storing anything
+      try (Jedis jedis = pool.getResource()) {
+        update(region, evalsha(jedis, prefixOf(region), args(region, "", -1, 0)));
+      }
+      if (!exceeded.containsKey(region.getId())) {
+        return false;
+      }
+    }
+
+    rejected.increment();
+    return true;
+  }
+
+  /**
+   * Queues accounting of entry written by the same transaction of the pipeline, see {@link #apply(Jedis, Pending)}.
+   *
+   * @param expiresAt time (in millis) at which entry expires, 0 if it does not expire
+   */
+  public Pending upserted(Pipeline pipeline, CacheRegion region, String key, long size, long expiresAt) {
+    final String prefix = prefixOf(region);
+    final List<String> args = args(region, key, size, expiresAt);
+    return new Pending(region, prefix, args, evalsha(pipeline, prefix, args));
+  }
+
+  /**
+   * Queues accounting of removal of entry by the same transaction of the pipeline, region is recognized by prefix of
+   * the key.
+   *
+   * @return pending accounting or null if key does not belong to any region accounted so far
+   */
+  public Pending removed(Pipeline pipeline, String key) {
+
+    final String prefix = prefixOf(key);
+
+    //  nothing to do until first entry of accounted region is written
+    if (prefix == null || regions.isEmpty()) {
+      return null;
+    }
+
+    final List<String> args = asList(key, REMOVED, valueOf(currentTimeMillis()), "0", "0", "0", "0");
+    return new Pending(null, prefix, args, evalsha(pipeline, prefix, args));
+  }
+
+  /**
+   * Reads reply of accounting queued in transaction that was executed. If script was not loaded (i.e. redis restarted)
+   * entry was written without accounting so it is accounted again after loading the script.
+   *
+   * @return keys of entries evicted to fit region in its quota, they should be removed by the caller
+   */
+  public List<String> apply(Jedis jedis, Pending pending) {
+
+    Object reply;
+    try {
+      reply = pending.reply.get();
+    } catch (JedisDataException e) {
+      if (e.getMessage() == null || !e.getMessage().startsWith("NOSCRIPT")) {
+        throw e;
+      }
+      reply = evalsha(jedis, pending.prefix, pending.args);
+    }
+
+    if (pending.region == null) {
+      return emptyList();
+    }
+
+    update(pending.region, reply);
+    return evictedOf(reply);
+  }
+
+  /**
+   * Forgets locally known usage of evicted region, usage kept in redis is removed together with entries.
+   */
+  public void evicted(CacheRegion region) {
+    exceeded.remove(region.getId());
+  }
+
+  /**
+   * @return bytes and number of entries of region read from redis
+   */
+  public long[] usageOf(Jedis jedis, CacheRegion region) {
+    final String prefix = prefixOf(region);
+    final List<String> usage = jedis.hmget(prefix + "#usage", "b", "n");
+    return new long[]{parse(usage.get(0)), parse(usage.get(1))};
+  }
+
+  public void load(Jedis jedis) {
+    scriptSha = jedis.scriptLoad(SCRIPT);
+  }
+
+  static long sizeOf(String key, byte[] content) {
+    return sizeOf(key, content.length);
+  }
+
+  static long sizeOf(String key, int size) {
+    return size + key.getBytes(UTF_8).length;
+  }
+
+  @Override
+  public String[] getUsage() {
+
+    if (regions.isEmpty()) {
+      return NONE;
+    }
+
+    final List<String> usage = new ArrayList<>(regions.size());
+
+    try (Jedis jedis = pool.getResource()) {
+      for (CacheRegion region : regions.values()) {
+        final long[] current = usageOf(jedis, region);
+        usage.add(region.getId() + " " + current[0] + " " + current[1]);
+      }
+    }
+
+    return usage.toArray(NONE);
+  }
+
+  @Override
+  public long getRejected() {
+    return rejected.sum();
+  }
+
+  @Override
+  public long getEvicted() {
+    return evicted.sum();
+  }
+
+  private void update(CacheRegion region, Object reply) {
+
+    regions.putIfAbsent(region.getId(), region);
+    final List<?> usage = (List<?>) reply;
+    final RegionQuota quota = region.getQuota();
+
+    if (quota.isExceededBy((Long) usage.get(0), (Long) usage.get(1))) {
+      exceeded.put(region.getId(), currentTimeMillis());
+    } else {
+      exceeded.remove(region.getId());
+    }
+
+    evicted.add(((List<?>) usage.get(2)).size());
+  }
+
+  private List<String> args(CacheRegion region, String key, long size, long expiresAt) {
+
+    final RegionQuota quota = region.getQuota();
+
+    return asList(key, valueOf(size), valueOf(currentTimeMillis()), valueOf(expiresAt), valueOf(quota.getMaxBytes()),
+            valueOf(quota.getMaxEntries()), quota.getOnExceeded() == EVICT_OLDEST ? "1" : "0");
+  }
+
+  /**
+   * Binary variant is used as reply of the other one is built as single string, which fails on array returned by
+   * script. Keys of evicted entries are returned as bytes.
+   */
+  private Response<Object> evalsha(Pipeline pipeline, String prefix, List<String> args) {
+    return pipeline.evalsha(scriptSha.getBytes(UTF_8), bytesOf(keysOf(prefix)), bytesOf(args));
+  }
+
+  private Object evalsha(Jedis jedis, String prefix, List<String> args) {
+    try {
+      return jedis.evalsha(scriptSha, keysOf(prefix), args);
+    } catch (JedisDataException e) {
+      if (e.getMessage().startsWith("NOSCRIPT")) {
+        load(jedis);
+        return jedis.evalsha(scriptSha, keysOf(prefix), args);
+      }
+      throw e;
+    }
+  }
+
+  private static List<String> evictedOf(Object reply) {
+
+    final List<?> evicted = (List<?>) ((List<?>) reply).get(2);
+    final List<String> keys = new ArrayList<>(evicted.size());
+
+    for (Object key : evicted) {
+      keys.add(key instanceof byte[] ? new String((byte[]) key, UTF_8) : (String) key);
+    }
+
+    return keys;
+  }
+
+  private static List<byte[]> bytesOf(List<String> values) {
+    final List<byte[]> raw = new ArrayList<>(values.size());
+    for (String value : values) {
+      raw.add(value.getBytes(UTF_8));
+    }
+    return raw;
+  }
+
+  private static List<String> keysOf(String prefix) {
+    return asList(prefix + "#usage", prefix + "#sizes", prefix + "#order", prefix + "#expiry");
+  }
+
+  private static String prefixOf(CacheRegion region) {
+    final String wildcard = region.getKeyStrategy().wildcardKeyFor(region);
+    return wildcard.substring(0, wildcard.length() - 1);
+  }
+
+  /**
+   * @return <pre>namespace:regionId:</pre> part of the key or null if key does not have it
+   */
+  static String prefixOf(String key) {
+    final int namespaceEnd = key.indexOf(':');
+    final int regionEnd = namespaceEnd < 0 ? -1 : key.indexOf(':', namespaceEnd + 1);
+    return regionEnd < 0 ? null : key.substring(0, regionEnd + 1);
+  }
+
+  private static long parse(String value) {
+    return value == null ? 0 : Long.parseLong(value);
+  }
+
+  /**
+   * Accounting queued in transaction, reply is available after the transaction is executed.
+   */
+  public static final class Pending {
+
+    private final CacheRegion region;
+    private final String prefix;
+    private final List<String> args;
+    private final Response<Object> reply;
+
+    private Pending(CacheRegion region, String prefix, List<String> args, Response<Object> reply) {
+      this.region = region;
+      this.prefix = prefix;
+      this.args = args;
+      this.reply = reply;
+    }
+  }
+}
@@ -0,0 +1,355 @@
+package dynks.redis;
+
+import dynks.cache.CacheQueryResult;
+import dynks.cache.CacheRegion;
+import dynks.cache.CacheRepository;
+import dynks.cache.CacheRepositoryException;
+import dynks.cache.Upsert;
+import dynks.jmx.JmxServer;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+import redis.clients.jedis.Jedis;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static dynks.Threads.threadFactory;
+import static java.lang.System.nanoTime;
+import static java.util.Collections.unmodifiableList;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Repository reading entries from replicas of redis master, while upserts, removals and evictions are sent to the
+ * master. Reads are spread round robin across replicas lagging behind the master at most maxLag, when no replica is in
+ * sync reads go to the master.
+ * <p>
+ * Lag is measured by sampling replication offset of the master every check interval and finding the newest sample
+ * already reached by offset of the replica (read with INFO replication), so its resolution is the check interval.
+ * Replicas that are not reachable or lost link to master are not read until next check.
+ * <p>
+ * Keys upserted or removed by this instance (and regions evicted by it) are read from the master for maxLag after the
+ * write, so that replica that did not receive it yet does not return a miss (or previous version) just after write.
+ * Misses of replicas are read again from the master as the key might have been written by other instance after the
+ * replica was last in sync, misses are rare compared to hits so it does not add much load to the master.
+ */
+@ThreadSafe
+public class ReplicatedRedisCacheRepository implements CacheRepository {
+
+  private static final Logger LOG = getLogger(ReplicatedRedisCacheRepository.class);
+
+  private static final RedisCacheRepository[] NONE = new RedisCacheRepository[0];
+
+  private final RedisCacheRepository master;
+  private final List<RedisCacheRepository> replicas;
+  private final long maxLagNanos;
+  private final ScheduledExecutorService scheduler;
+
+  /**
+   * Replicas in sync with master, read round robin.
+   */
+  private volatile RedisCacheRepository[] readable = NONE;
+  private final AtomicInteger next = new AtomicInteger();
+
+  /**
+   * Time of write by key and of eviction by region wildcard without trailing *.
+   */
+  private final Map<String, Long> writtenAt = new ConcurrentHashMap<>();
+  private final Map<String, Long> evictedAt = new ConcurrentHashMap<>();
+
+  /**
+   * Replication offsets of master with time they were sampled at (oldest first).
+   */
+  @GuardedBy("this")
+  private final Deque<long[]> offsets = new ArrayDeque<>();
+
+  /**
+   * @param master         repository to which all writes are sent
+   * @param replicas       repositories of replicas of the master
+   * @param maxLagNanos    replicas lagging more are not read
+   * @param intervalNanos  time between checks of replication lag
+   */
+  public ReplicatedRedisCacheRepository(RedisCacheRepository master, Collection<RedisCacheRepository> replicas, long maxLagNanos,
+                                        long intervalNanos) {
+
+    if (master == null) {
+      throw new NullPointerException("Master should not be null");
+    }
+
+    if (replicas == null || replicas.isEmpty()) {
+      throw new IllegalArgumentException("At least one replica should be given");
+    }
+
+    if (maxLagNanos < 1) {
+      throw new IllegalArgumentException("maxLag should be positive but is '" + maxLagNanos + "'");
+    }
+
+    if (intervalNanos < 1) {
+      throw new IllegalArgumentException("interval should be positive but is '" + intervalNanos + "'");
+    }
+
+    this.master = master;
+    this.replicas = unmodifiableList(new ArrayList<>(replicas));
+    this.maxLagNanos = maxLagNanos;
+    this.scheduler = newSingleThreadScheduledExecutor(threadFactory("dynks-replica-lag", false));
+    this.scheduler.scheduleWithFixedDelay(this::checkReplicas, intervalNanos, intervalNanos, NANOSECONDS);
+  }
+
+  @Override
+  public CacheQueryResult fetchIfChanged(String key, String etag) throws CacheRepositoryException {
+
+    final RedisCacheRepository replica = replicaFor(key);
+
+    if (replica != null) {
+      try {
+        final CacheQueryResult result = replica.fetchIfChanged(key, etag);
+        if (!result.isUpsertNeeded()) {
+          return result;
+        }
+        LOG.debug("Reading '{}' from master as it is missing on replica {}:{}", key, replica.getHost(), replica.getPort());
+      } catch (CacheRepositoryException e) {
+        LOG.debug("Reading '{}' from master as replica {}:{} failed: {}", key, replica.getHost(), replica.getPort(), e.getMessage());
+      }
+    }
+
+    return master.fetchIfChanged(key, etag);
+  }
+
+  @Override
+  public void upsert(String key, byte[] content, String etag, String contentType, String encoding, CacheRegion region, String source) throws CacheRepositoryException {
+    written(key);
+    master.upsert(key, content, etag, contentType, encoding, region, source);
+  }
+
+  @Override
+  public void upsert(String key, List<ByteBuffer> segments, int size, String etag, String contentType, String encoding,
+                     CacheRegion region, String source) throws CacheRepositoryException {
+    written(key);
+    master.upsert(key, segments, size, etag, contentType, encoding, region, source);
+  }
+
+  @Override
+  public void upsert(List<Upsert> upserts) throws CacheRepositoryException {
+    for (Upsert upsert : upserts) {
+      written(upsert.getKey());
+    }
+    master.upsert(upserts);
+  }
+
+  @Override
+  public void remove(String key) throws CacheRepositoryException {
+    written(key);
+    master.remove(key);
+  }
+
+  @Override
+  public long evictRegion(CacheRegion region) throws CacheRepositoryException {
+    return evictRegion(region, master.getMaxEntriesDeletedInOneBatch());
+  }
+
+  @Override
+  public long evictRegion(CacheRegion region, int maxEntriesDeletedInOneBatch) throws CacheRepositoryException {
+    final String wildcard = region.getKeyStrategy().wildcardKeyFor(region);
+    evictedAt.put(wildcard.substring(0, wildcard.length() - 1), nanoTime());
+    return master.evictRegion(region, maxEntriesDeletedInOneBatch);
+  }
+
+  /**
+   * Warms up master and replicas and checks their lag so that replicas are read from the first request.
+   */
+  @Override
+  public void warmUp() throws CacheRepositoryException {
+
+    master.warmUp();
+
+    for (RedisCacheRepository replica : replicas) {
+      replica.warmUp();
+    }
+
+    checkReplicas();
+  }
+
+  /**
+   * Replicas are only read, mbeans of the master are registered.
+   */
+  @Override
+  public void registerMBeans(JmxServer jmx) {
+    master.registerMBeans(jmx);
+  }
+
+  @Override
+  public void dispose() {
+
+    scheduler.shutdownNow();
+    readable = NONE;
+
+    master.dispose();
+    for (RedisCacheRepository replica : replicas) {
+      replica.dispose();
+    }
+  }
+
+  @Override
+  public int getMaxEntriesDeletedInOneBatch() {
+    return master.getMaxEntriesDeletedInOneBatch();
+  }
+
+  public RedisCacheRepository getMaster() {
+    return master;
+  }
+
+  public List<RedisCacheRepository> getReplicas() {
+    return replicas;
+  }
+
+  /**
+   * @return number of replicas currently read
+   */
+  public int getReadableReplicas() {
+    return readable.length;
+  }
+
+  /**
+   * @return replica from which key should be read or null if it should be read from master
+   */
+  RedisCacheRepository replicaFor(String key) {
+
+    final RedisCacheRepository[] current = readable;
+
+    if (current.length == 0 || isRecentlyWritten(key)) {
+      return null;
+    }
+
+    return current[(next.getAndIncrement() & Integer.MAX_VALUE) % current.length];
+  }
+
+  private void written(String key) {
+    writtenAt.put(key, nanoTime());
+  }
+
+  private boolean isRecentlyWritten(String key) {
+
+    final long now = nanoTime();
+    final Long written = writtenAt.get(key);
+
+    if (written != null && now - written < maxLagNanos) {
+      return true;
+    }
+
+    if (!evictedAt.isEmpty()) {
+      for (Map.Entry<String, Long> evicted : evictedAt.entrySet()) {
+        if (now - evicted.getValue() < maxLagNanos && key.startsWith(evicted.getKey())) {
+          return true;
+        }
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Samples offset of master, selects replicas that reached the oldest offset sampled within maxLag and forgets writes
+   * older than maxLag.
+   */
+  synchronized void checkReplicas() {
+
+    final long now = nanoTime();
+
+    try {
+      final long masterOffset = offsetOf(master, "master_repl_offset");
+      offsets.addLast(new long[]{now, masterOffset});
+      while (offsets.size() > 1 && now - offsets.peekFirst()[0] > maxLagNanos) {
+        offsets.removeFirst();
+      }
+    } catch (Exception e) {
+      //  writes fail as well, reading replicas would serve entries that are not updated anymore
+      LOG.warn("Unable to read replication offset of master {}:{}, replicas will not be read: {}", master.getHost(), master.getPort(),
+              e.getMessage());
+      offsets.clear();
+      readable = NONE;
+      return;
+    }
+
+    final List<RedisCacheRepository> inSync = new ArrayList<>(replicas.size());
+    for (RedisCacheRepository replica : replicas) {
+      if (isInSync(replica)) {
+        inSync.add(replica);
+      }
+    }
+
+    if (inSync.size() != readable.length) {
+      LOG.info("Reading from {} of {} replicas", inSync.size(), replicas.size());
+    }
+    readable = inSync.toArray(NONE);
+
+    writtenAt.values().removeIf(written -> now - written >= maxLagNanos);
+    evictedAt.values().removeIf(evicted -> now - evicted >= maxLagNanos);
+  }
+
+  @GuardedBy("this")
+  private boolean isInSync(RedisCacheRepository replica) {
+
+    final String info;
+    try (Jedis jedis = replica.getPool().getResource()) {
+      info = jedis.info("replication");
+    } catch (Exception e) {
+      LOG.debug("Unable to read replication info of replica {}:{}: {}", replica.getHost(), replica.getPort(), e.getMessage());
+      return false;
+    }
+
+    if (!"up".equals(fieldOf(info, "master_link_status"))) {
+      return false;
+    }
+
+    final String offset = fieldOf(info, "slave_repl_offset");
+    if (offset == null) {
+      return false;
+    }
+
+    //  samples are kept for maxLag, replica that reached the oldest one misses at most writes done in last maxLag
+    return Long.parseLong(offset) >= offsets.peekFirst()[1];
+  }
+
+  private static long offsetOf(RedisCacheRepository node, String field) {
+    try (Jedis jedis = node.getPool().getResource()) {
+      final String value = fieldOf(jedis.info("replication"), field);
+      if (value == null) {
+        throw new IllegalStateException("No " + field + " in replication info");
+      }
+      return Long.parseLong(value);
+    }
+  }
+
+  /**
+   * @return value of field from INFO reply (lines in form field:value) or null if there is no such field
+   */
+  static String fieldOf(String info, String field) {
+
+    int start = 0;
+
+    while (start < info.length()) {
+      int end = info.indexOf('\n', start);
+      if (end < 0) {
+        end = info.length();
+      }
+
+      if (info.startsWith(field, start) && start + field.length() < end && info.charAt(start + field.length()) == ':') {
+        return info.substring(start + field.length() + 1, end).trim();
+      }
+
+      start = end + 1;
+    }
+
+    return null;
+  }
+}
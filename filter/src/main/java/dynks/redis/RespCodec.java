@@ -0,0 +1,275 @@
+package dynks.redis;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Minimal codec of redis serialization protocol (RESP). Commands are encoded as arrays of bulk strings, replies are
+ * decoded to:
+ * <ul>
+ * <li>simple string: {@link String}</li>
+ * <li>error: {@link ErrorReply}</li>
+ * <li>integer: {@link Long}</li>
+ * <li>bulk string: byte[] or null</li>
+ * <li>array: {@link List} or null</li>
+ * </ul>
+ * Decoding does not keep any state between invocations, reply is consumed from the buffer only when it is complete.
+ */
+final class RespCodec {
+
+  /**
+   * Returned when buffer does not contain whole reply yet.
+   */
+  static final Object INCOMPLETE = new Object();
+
+  private static final long INCOMPLETE_NUMBER = Long.MIN_VALUE;
+
+  private RespCodec() {
+    //  no instances allowed
+  }
+
+  static byte[] bytes(String value) {
+    return value.getBytes(UTF_8);
+  }
+
+  static byte[] encode(byte[]... arguments) {
+
+    int size = 1 + digits(arguments.length) + 2;
+    for (byte[] argument : arguments) {
+      size += 1 + digits(argument.length) + 2 + argument.length + 2;
+    }
+
+    final ByteBuffer out = ByteBuffer.allocate(size);
+    out.put((byte) '*');
+    putNumber(out, arguments.length);
+
+    for (byte[] argument : arguments) {
+      out.put((byte) '$');
+      putNumber(out, argument.length);
+      out.put(argument);
+      out.put((byte) '\r');
+      out.put((byte) '\n');
+    }
+
+    return out.array();
+  }
+
+  /**
+   * Decodes single reply starting at current position of the buffer. Position is moved after the reply only if it was
+   * complete.
+   *
+   * @return decoded reply or {@link #INCOMPLETE}
+   * @throws IllegalStateException on data not conforming to the protocol
+   */
+  static Object decode(ByteBuffer buffer) {
+
+    final int start = buffer.position();
+    //  large replies usually arrive in many reads, nothing is allocated until whole reply is available
+    final boolean complete = skip(buffer);
+    buffer.position(start);
+
+    return complete ? parse(buffer) : INCOMPLETE;
+  }
+
+  /**
+   * Moves position after the reply without decoding it.
+   *
+   * @return false if reply is not complete
+   */
+  private static boolean skip(ByteBuffer buffer) {
+
+    if (!buffer.hasRemaining()) {
+      return false;
+    }
+
+    final byte type = buffer.get();
+
+    switch (type) {
+      case '+':
+      case '-':
+      case ':':
+        return skipLine(buffer);
+      case '$': {
+        final long length = readNumber(buffer);
+        if (length == INCOMPLETE_NUMBER) {
+          return false;
+        }
+        if (length < 0) {
+          return true;
+        }
+        if (buffer.remaining() < length + 2) {
+          return false;
+        }
+        buffer.position(buffer.position() + (int) length + 2);
+        return true;
+      }
+      case '*': {
+        final long size = readNumber(buffer);
+        if (size == INCOMPLETE_NUMBER) {
+          return false;
+        }
+        for (int i = 0; i < size; i++) {
+          if (!skip(buffer)) {
+            return false;
+          }
+        }
+        return true;
+      }
+      default:
+        throw new IllegalStateException("Unexpected type of reply: '" + (char) type + "'");
+    }
+  }
+
+  private static boolean skipLine(ByteBuffer buffer) {
+
+    for (int i = buffer.position(); i < buffer.limit() - 1; i++) {
+      if (buffer.get(i) == '\r' && buffer.get(i + 1) == '\n') {
+        buffer.position(i + 2);
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private static Object parse(ByteBuffer buffer) {
+
+    if (!buffer.hasRemaining()) {
+      return INCOMPLETE;
+    }
+
+    final byte type = buffer.get();
+
+    switch (type) {
+      case '+': {
+        final String line = readLine(buffer);
+        return line == null ? INCOMPLETE : line;
+      }
+      case '-': {
+        final String line = readLine(buffer);
+        return line == null ? INCOMPLETE : new ErrorReply(line);
+      }
+      case ':': {
+        final long value = readNumber(buffer);
+        return value == INCOMPLETE_NUMBER ? INCOMPLETE : value;
+      }
+      case '$': {
+        final long length = readNumber(buffer);
+        if (length == INCOMPLETE_NUMBER) {
+          return INCOMPLETE;
+        }
+        if (length < 0) {
+          return null;
+        }
+        if (buffer.remaining() < length + 2) {
+          return INCOMPLETE;
+        }
+        final byte[] value = new byte[(int) length];
+        buffer.get(value);
+        buffer.position(buffer.position() + 2);
+        return value;
+      }
+      case '*': {
+        final long size = readNumber(buffer);
+        if (size == INCOMPLETE_NUMBER) {
+          return INCOMPLETE;
+        }
+        if (size < 0) {
+          return null;
+        }
+        final List<Object> elements = new ArrayList<>((int) size);
+        for (int i = 0; i < size; i++) {
+          final Object element = parse(buffer);
+          if (element == INCOMPLETE) {
+            return INCOMPLETE;
+          }
+          elements.add(element);
+        }
+        return elements;
+      }
+      default:
+        throw new IllegalStateException("Unexpected type of reply: '" + (char) type + "'");
+    }
+  }
+
+  private static String readLine(ByteBuffer buffer) {
+
+    final int start = buffer.position();
+
+    for (int i = start; i < buffer.limit() - 1; i++) {
+      if (buffer.get(i) == '\r' && buffer.get(i + 1) == '\n') {
+        final byte[] line = new byte[i - start];
+        buffer.get(line);
+        buffer.position(i + 2);
+        return new String(line, UTF_8);
+      }
+    }
+
+    return null;
+  }
+
+  private static long readNumber(ByteBuffer buffer) {
+
+    long value = 0;
+    boolean negative = false;
+
+    while (buffer.remaining() >= 2) {
+      final byte b = buffer.get();
+      if (b == '\r') {
+        buffer.get();
+        return negative ? -value : value;
+      } else if (b == '-') {
+        negative = true;
+      } else {
+        value = value * 10 + (b - '0');
+      }
+    }
+
+    return INCOMPLETE_NUMBER;
+  }
+
+  private static int digits(int value) {
+    int digits = 1;
+    while (value >= 10) {
+      value /= 10;
+      digits++;
+    }
+    return digits;
+  }
+
+  private static void putNumber(ByteBuffer out, int value) {
+    final int digits = digits(value);
+    final int start = out.position();
+    for (int i = digits - 1; i >= 0; i--) {
+      out.put(start + i, (byte) ('0' + value % 10));
+      value /= 10;
+    }
+    out.position(start + digits);
+    out.put((byte) '\r');
+    out.put((byte) '\n');
+  }
+
+  /**
+   * Error reply sent by redis, i.e. for wrong type of key.
+   */
+  static final class ErrorReply {
+
+    private final String message;
+
+    ErrorReply(String message) {
+      this.message = message;
+    }
+
+    String getMessage() {
+      return message;
+    }
+
+    @Override
+    public String toString() {
+      return message;
+    }
+  }
+}
@@ -0,0 +1,281 @@
+package dynks.redis;
+
+import dynks.redis.RespCodec.ErrorReply;
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static dynks.redis.RespCodec.INCOMPLETE;
+import static java.net.StandardSocketOptions.TCP_NODELAY;
+import static java.nio.channels.SelectionKey.OP_CONNECT;
+import static java.nio.channels.SelectionKey.OP_READ;
+import static java.nio.channels.SelectionKey.OP_WRITE;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Single non-blocking connection to redis shared by any number of threads. Commands are queued by callers and written
+ * by dedicated IO thread in batches (pipelining), replies are matched with commands in order they were sent so that
+ * caller never waits for the socket, it only gets future completed when reply arrives.
+ * <p>
+ * Connection is not reconnected, after any IO error all pending commands fail and connection stays closed
+ * (see {@link #isOpen()}). Connecting waits at most given timeout so that unreachable redis does not block the caller.
+ */
+@ThreadSafe
+class RespConnection implements Closeable {
+
+  private static final Logger LOG = getLogger(RespConnection.class);
+
+  private static final int INITIAL_READ_BUFFER_SIZE = 64 * 1024;
+  private static final ByteBuffer[] NO_BUFFERS = new ByteBuffer[0];
+
+  private final SocketChannel channel;
+  private final Selector selector;
+  private final SelectionKey selectionKey;
+  private final Thread io;
+
+  private final Queue<Command> submitted = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean wakeupPending = new AtomicBoolean();
+  private volatile boolean closed;
+
+  //  accessed by IO thread only
+  private final Queue<Command> awaiting = new ArrayDeque<>();
+  private final ArrayDeque<ByteBuffer> writes = new ArrayDeque<>();
+  private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER_SIZE);
+
+  RespConnection(String host, int port, String name, long connectTimeoutInMillis) throws IOException {
+
+    channel = connect(new InetSocketAddress(host, port), connectTimeoutInMillis);
+    channel.setOption(TCP_NODELAY, true);
+    selector = Selector.open();
+    selectionKey = channel.register(selector, OP_READ);
+
+    io = new Thread(this::run, name);
+    io.setDaemon(true);
+    io.start();
+  }
+
+  private static SocketChannel connect(InetSocketAddress address, long timeoutInMillis) throws IOException {
+
+    final SocketChannel channel = SocketChannel.open();
+
+    try {
+      channel.configureBlocking(false);
+
+      if (!channel.connect(address)) {
+        try (Selector connecting = Selector.open()) {
+          channel.register(connecting, OP_CONNECT);
+          if (connecting.select(timeoutInMillis) == 0 || !channel.finishConnect()) {
+            throw new SocketTimeoutException("Connect to " + address + " timed out after " + timeoutInMillis + " ms");
+          }
+        }
+      }
+
+      return channel;
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Sends single command.
+   *
+   * @return future completed with reply or exceptionally with {@link RespException} for error replies and
+   * {@link IOException} when connection failed
+   */
+  CompletableFuture<Object> send(byte[]... arguments) {
+    return submit(new Command(RespCodec.encode(arguments), 1));
+  }
+
+  /**
+   * Sends commands one after another without any other command in between (i.e. MULTI ... EXEC).
+   *
+   * @return future completed with reply for the last command or exceptionally with first error
+   */
+  CompletableFuture<Object> sendAll(byte[][]... commands) {
+
+    int size = 0;
+    final byte[][] encoded = new byte[commands.length][];
+    for (int i = 0; i < commands.length; i++) {
+      encoded[i] = RespCodec.encode(commands[i]);
+      size += encoded[i].length;
+    }
+
+    final ByteBuffer joined = ByteBuffer.allocate(size);
+    for (byte[] command : encoded) {
+      joined.put(command);
+    }
+
+    return submit(new Command(joined.array(), commands.length));
+  }
+
+  private CompletableFuture<Object> submit(Command command) {
+
+    if (closed) {
+      command.future.completeExceptionally(new IOException("Connection closed"));
+      return command.future;
+    }
+
+    submitted.add(command);
+
+    if (closed) {
+      //  IO thread could have failed in the meantime without seeing this command
+      failSubmitted(new IOException("Connection closed"));
+    } else if (wakeupPending.compareAndSet(false, true)) {
+      //  single wakeup for all commands queued before IO thread gets to them
+      selector.wakeup();
+    }
+
+    return command.future;
+  }
+
+  boolean isOpen() {
+    return !closed;
+  }
+
+  private void run() {
+
+    try {
+      while (!closed) {
+        selector.select();
+        selector.selectedKeys().clear();
+        wakeupPending.set(false);
+        read();
+        queueSubmitted();
+        write();
+      }
+      fail(new IOException("Connection closed"));
+    } catch (Exception e) {
+      LOG.warn("Connection to redis failed: {}", e.getMessage());
+      fail(e);
+    }
+  }
+
+  private void queueSubmitted() {
+
+    Command command;
+    while ((command = submitted.poll()) != null) {
+      awaiting.add(command);
+      writes.add(ByteBuffer.wrap(command.bytes));
+    }
+  }
+
+  private void write() throws IOException {
+
+    if (!writes.isEmpty()) {
+      //  gathering write of everything queued since last loop
+      channel.write(writes.toArray(NO_BUFFERS));
+      while (!writes.isEmpty() && !writes.peek().hasRemaining()) {
+        writes.poll();
+      }
+    }
+
+    selectionKey.interestOps(writes.isEmpty() ? OP_READ : OP_READ | OP_WRITE);
+  }
+
+  private void read() throws IOException {
+
+    int read;
+    while ((read = channel.read(readBuffer)) > 0) {
+
+      readBuffer.flip();
+      Object reply;
+      while ((reply = RespCodec.decode(readBuffer)) != INCOMPLETE) {
+        onReply(reply);
+      }
+      readBuffer.compact();
+
+      if (!readBuffer.hasRemaining()) {
+        //  reply larger than buffer
+        final ByteBuffer larger = ByteBuffer.allocate(readBuffer.capacity() * 2);
+        readBuffer.flip();
+        larger.put(readBuffer);
+        readBuffer = larger;
+      }
+    }
+
+    if (read < 0) {
+      throw new IOException("Connection closed by redis");
+    }
+  }
+
+  private void onReply(Object reply) {
+
+    final Command command = awaiting.peek();
+
+    if (command == null) {
+      throw new IllegalStateException("Reply received without pending command");
+    }
+
+    if (reply instanceof ErrorReply && command.error == null) {
+      command.error = (ErrorReply) reply;
+    }
+
+    if (--command.replies == 0) {
+      awaiting.poll();
+      if (command.error != null) {
+        command.future.completeExceptionally(new RespException(command.error.getMessage()));
+      } else {
+        command.future.complete(reply);
+      }
+    }
+  }
+
+  private void fail(Exception cause) {
+
+    closed = true;
+
+    try {
+      channel.close();
+      selector.close();
+    } catch (IOException e) {
+      LOG.debug("Unable to close connection: {}", e.getMessage());
+    }
+
+    Command command;
+    while ((command = awaiting.poll()) != null) {
+      command.future.completeExceptionally(cause);
+    }
+
+    failSubmitted(cause);
+  }
+
+  private void failSubmitted(Exception cause) {
+    Command command;
+    while ((command = submitted.poll()) != null) {
+      command.future.completeExceptionally(cause);
+    }
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    selector.wakeup();
+  }
+
+  private static final class Command {
+
+    private final byte[] bytes;
+    private final CompletableFuture<Object> future = new CompletableFuture<>();
+    private int replies;
+    private ErrorReply error;
+
+    private Command(byte[] bytes, int replies) {
+      this.bytes = bytes;
+      this.replies = replies;
+    }
+  }
+}
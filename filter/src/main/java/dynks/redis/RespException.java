@@ -0,0 +1,13 @@
+package dynks.redis;
+
+/**
+ * Error reply returned by redis for command sent over {@link RespConnection}.
+ */
+public class RespException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  public RespException(String message) {
+    super(message);
+  }
+}
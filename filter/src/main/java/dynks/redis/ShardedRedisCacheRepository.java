@@ -0,0 +1,195 @@
+package dynks.redis;
+
+import dynks.cache.CacheQueryResult;
+import dynks.cache.CacheRegion;
+import dynks.cache.CacheRepository;
+import dynks.cache.CacheRepositoryException;
+import dynks.cache.Upsert;
+import dynks.jmx.JmxServer;
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static dynks.Threads.newExecutor;
+import static java.lang.System.nanoTime;
+import static java.util.Collections.unmodifiableCollection;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Repository of entries spread across independent redis instances (shards) by consistent hashing of their keys, every
+ * shard is accessed with own {@link RedisCacheRepository} (and pool of connections). Entry together with its chunks is
+ * kept by one shard, so when shard is added or removed only entries from about 1/n of the key space are moved (and
+ * missed once). Shards are placed on the ring by their host:port so that every instance of the application routes
+ * keys the same way regardless of order of shards in configuration.
+ * <p>
+ * Region is evicted by all shards in parallel. Region accounting and quota is maintained by every shard for its part of
+ * the region.
+ */
+@ThreadSafe
+public class ShardedRedisCacheRepository implements CacheRepository {
+
+  private static final Logger LOG = getLogger(ShardedRedisCacheRepository.class);
+
+  private final Map<String, RedisCacheRepository> shards;
+  private final ConsistentHashRing<RedisCacheRepository> ring;
+  private final int maxEntriesDeletedInOneBatch;
+  private final ExecutorService evictions;
+
+  /**
+   * @param shards       repositories of shards
+   * @param virtualNodes number of points of every shard on the ring
+   */
+  public ShardedRedisCacheRepository(Collection<RedisCacheRepository> shards, int virtualNodes, int maxEntriesDeletedInOneBatch,
+                                     int evictionThreads) {
+
+    if (shards == null || shards.isEmpty()) {
+      throw new IllegalArgumentException("At least one shard should be given");
+    }
+
+    if (maxEntriesDeletedInOneBatch < 1) {
+      throw new IllegalArgumentException("maxEntriesDeletedInOneBatch should be >=1 but is '" + maxEntriesDeletedInOneBatch + "'");
+    }
+
+    final Map<String, RedisCacheRepository> byName = new LinkedHashMap<>();
+    for (RedisCacheRepository shard : shards) {
+      if (byName.put(shard.getHost() + ':' + shard.getPort(), shard) != null) {
+        throw new IllegalArgumentException("Shard " + shard.getHost() + ':' + shard.getPort() + " should be given once");
+      }
+    }
+
+    this.shards = byName;
+    this.ring = new ConsistentHashRing<>(byName, virtualNodes);
+    this.maxEntriesDeletedInOneBatch = maxEntriesDeletedInOneBatch;
+    this.evictions = newExecutor("dynks-shard-eviction", evictionThreads, false);
+  }
+
+  @Override
+  public CacheQueryResult fetchIfChanged(String key, String etag) throws CacheRepositoryException {
+    return shardFor(key).fetchIfChanged(key, etag);
+  }
+
+  @Override
+  public void upsert(String key, byte[] content, String etag, String contentType, String encoding, CacheRegion region, String source) throws CacheRepositoryException {
+    shardFor(key).upsert(key, content, etag, contentType, encoding, region, source);
+  }
+
+  @Override
+  public void upsert(String key, List<ByteBuffer> segments, int size, String etag, String contentType, String encoding,
+                     CacheRegion region, String source) throws CacheRepositoryException {
+    shardFor(key).upsert(key, segments, size, etag, contentType, encoding, region, source);
+  }
+
+  /**
+   * Upserts are written by every shard in one round trip.
+   */
+  @Override
+  public void upsert(List<Upsert> upserts) throws CacheRepositoryException {
+
+    final Map<RedisCacheRepository, List<Upsert>> byShard = new IdentityHashMap<>();
+    for (Upsert upsert : upserts) {
+      byShard.computeIfAbsent(shardFor(upsert.getKey()), shard -> new ArrayList<>()).add(upsert);
+    }
+
+    for (Map.Entry<RedisCacheRepository, List<Upsert>> group : byShard.entrySet()) {
+      group.getKey().upsert(group.getValue());
+    }
+  }
+
+  @Override
+  public void remove(String key) throws CacheRepositoryException {
+    shardFor(key).remove(key);
+  }
+
+  @Override
+  public long evictRegion(CacheRegion region) throws CacheRepositoryException {
+    return evictRegion(region, maxEntriesDeletedInOneBatch);
+  }
+
+  @Override
+  public long evictRegion(CacheRegion region, int maxEntriesDeletedInOneBatch) throws CacheRepositoryException {
+
+    final long start = nanoTime();
+    final List<Future<Long>> evicted = new ArrayList<>(shards.size());
+
+    for (RedisCacheRepository shard : shards.values()) {
+      evicted.add(evictions.submit(() -> shard.evictRegion(region, maxEntriesDeletedInOneBatch)));
+    }
+
+    long removed = 0;
+    CacheRepositoryException failure = null;
+
+    //  waiting for all shards even if some failed so that eviction is not left running after return
+    for (Future<Long> shard : evicted) {
+      try {
+        removed += shard.get();
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          failure = e.getCause() instanceof CacheRepositoryException ? (CacheRepositoryException) e.getCause()
+                  : new CacheRepositoryException(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CacheRepositoryException(e);
+      }
+    }
+
+    if (failure != null) {
+      throw failure;
+    }
+
+    LOG.debug("Evicted {} entries from region '{}' on {} shards in {} ms ", removed, region.getId(), shards.size(),
+            NANOSECONDS.toMillis(nanoTime() - start));
+    return removed;
+  }
+
+  @Override
+  public void warmUp() throws CacheRepositoryException {
+    for (RedisCacheRepository shard : shards.values()) {
+      shard.warmUp();
+    }
+  }
+
+  /**
+   * Registers mbeans of every shard.
+   */
+  @Override
+  public void registerMBeans(JmxServer jmx) {
+    for (RedisCacheRepository shard : shards.values()) {
+      shard.registerNodeMBeans(jmx);
+    }
+  }
+
+  @Override
+  public void dispose() {
+
+    evictions.shutdownNow();
+
+    for (RedisCacheRepository shard : shards.values()) {
+      shard.dispose();
+    }
+  }
+
+  @Override
+  public int getMaxEntriesDeletedInOneBatch() {
+    return maxEntriesDeletedInOneBatch;
+  }
+
+  public Collection<RedisCacheRepository> getShards() {
+    return unmodifiableCollection(shards.values());
+  }
+
+  RedisCacheRepository shardFor(String key) {
+    return ring.nodeFor(key);
+  }
+}
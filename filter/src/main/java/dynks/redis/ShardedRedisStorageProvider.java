@@ -0,0 +1,24 @@
+package dynks.redis;
+
+import com.typesafe.config.Config;
+import dynks.cache.CacheRepository;
+import dynks.cache.StorageProvider;
+
+/**
+ * Standalone redis instances sharing entries by consistent hashing, accessed with pool of blocking connections per
+ * instance and configured with dynks.redis.sharding and dynks.redis.
+ */
+public class ShardedRedisStorageProvider implements StorageProvider {
+
+  public static final String NAME = "REDIS_SHARDED";
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public CacheRepository create(Config config) {
+    return RedisCacheRepositoryConfigBuilder.buildSharded(config);
+  }
+}
@@ -0,0 +1,77 @@
+package dynks;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static dynks.MediaType.CAPACITY;
+import static dynks.cache.test.DynksAssertions.assertThat;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class MediaTypeTest {
+
+  @Before
+  public void clearInterned() {
+    MediaType.clear();
+  }
+
+  @Test
+  public void returnCanonicalInstanceForTheSamePair() {
+
+    //  when
+    MediaType fromStrings = MediaType.of(new String("application/json"), new String("UTF-8"));
+    MediaType fromBytes = MediaType.of("application/json".getBytes(UTF_8), "UTF-8".getBytes(UTF_8));
+
+    //  then
+    assertThat(fromBytes).isSameAs(fromStrings);
+    assertThat(fromBytes.getContentType()).isEqualTo("application/json");
+    assertThat(fromBytes.getEncoding()).isEqualTo("UTF-8");
+    assertThat(fromBytes.getRawContentType()).isEqualTo("application/json".getBytes(UTF_8));
+    assertThat(fromBytes.getCharset()).isEqualTo(UTF_8);
+  }
+
+  @Test
+  public void lookUpPairInPartsOfBuffer() {
+
+    //  given
+    byte[] buffer = "xxtext/csvISO-8859-1yy".getBytes(UTF_8);
+
+    //  when
+    MediaType type = MediaType.of(buffer, 2, 8, buffer, 10, 10);
+
+    //  then
+    assertThat(type).isSameAs(MediaType.of("text/csv", "ISO-8859-1"));
+    assertThat(type.getCharset()).isEqualTo(ISO_8859_1);
+  }
+
+  @Test
+  public void distinguishPairsWithMissingValues() {
+
+    //  when
+    MediaType withoutEncoding = MediaType.of("text/plain", null);
+    MediaType withEncoding = MediaType.of("text/plain", "UTF-8");
+
+    //  then
+    assertThat(withoutEncoding).isNotEqualTo(withEncoding);
+    assertThat(MediaType.of("text/plain".getBytes(UTF_8), null)).isSameAs(withoutEncoding);
+    assertThat(withoutEncoding.getEncoding()).isNull();
+    assertThat(withoutEncoding.getRawEncoding()).isNull();
+  }
+
+  @Test
+  public void notInternPairsAboveCapacity() {
+
+    //  given
+    for (int i = 0; MediaType.size() < CAPACITY; i++) {
+      MediaType.of("application/x-filler-" + i, "UTF-8");
+    }
+
+    //  when
+    MediaType first = MediaType.of("application/x-above-capacity", "UTF-8");
+    MediaType second = MediaType.of("application/x-above-capacity", "UTF-8");
+
+    //  then
+    assertThat(MediaType.size()).isEqualTo(CAPACITY);
+    assertThat(second).isEqualTo(first).isNotSameAs(first);
+  }
+}
@@ -0,0 +1,47 @@
+package dynks;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+import static dynks.cache.test.DynksAssertions.assertThat;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+public class ThreadsTest {
+
+  @Test
+  public void createNamedDaemonPlatformThreads() {
+
+    //  given
+    ThreadFactory factory = Threads.threadFactory("dynks-test", false);
+
+    //  when
+    Thread first = factory.newThread(() -> {
+    });
+    Thread second = factory.newThread(() -> {
+    });
+
+    //  then
+    assertThat(first.getName()).isEqualTo("dynks-test-0");
+    assertThat(second.getName()).isEqualTo("dynks-test-1");
+    assertThat(first.isDaemon()).isTrue();
+  }
+
+  @Test
+  public void executeTasksWhenVirtualThreadsRequestedRegardlessOfJvmSupport() throws Exception {
+
+    //  given
+    ExecutorService executor = Threads.newExecutor("dynks-test", 2, true);
+
+    try {
+      //  when
+      String name = executor.submit(() -> Thread.currentThread().getName()).get(5, SECONDS);
+
+      //  then
+      assertThat(name).isEqualTo("dynks-test-0");
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package dynks;
+
+import com.typesafe.config.ConfigFactory;
+import dynks.cache.CacheRepository;
+import dynks.redis.RedisCacheRepositoryConfigBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.ThreadLocalRandom.current;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Manually executed benchmark comparing throughput of background executors using platform and virtual threads for
+ * work blocked on IO. By default IO is simulated with 2ms sleep, with argument <pre>redis</pre> every task fetches
+ * entry from redis configured in dynks.conf (blocking pool is then the limit, see dynks.redis.pool.maxTotalConnectionsToCache).
+ * <pre>
+ * java -cp ... dynks.VirtualThreadsBenchmark [sleep|redis] [platformThreads] [virtualThreads] [tasks]
+ * </pre>
+ * Virtual threads are cheap so that they are compared using much higher concurrency, they are used only on JDK 21+.
+ */
+public class VirtualThreadsBenchmark {
+
+  public static void main(String[] args) throws Exception {
+
+    final boolean redis = args.length > 0 && "redis".equals(args[0]);
+    final int platformThreads = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+    final int virtualThreads = args.length > 2 ? Integer.parseInt(args[2]) : 5000;
+    final int tasks = args.length > 3 ? Integer.parseInt(args[3]) : 100000;
+    final CacheRepository repository = redis ? RedisCacheRepositoryConfigBuilder.build(ConfigFactory.load()) : null;
+
+    final Runnable task = () -> {
+      try {
+        if (repository == null) {
+          Thread.sleep(2);
+        } else {
+          repository.fetchIfChanged("dynks:benchmark:" + current().nextInt(1000), null);
+        }
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    };
+
+    System.out.println("virtual threads supported: " + Threads.isVirtualThreadsSupported());
+
+    for (int round = 0; round < 3; round++) {
+      run("platform", Threads.newExecutor("benchmark-platform", platformThreads, false), task, tasks);
+      run("virtual", Threads.newExecutor("benchmark-virtual", virtualThreads, true), task, tasks);
+    }
+
+    if (repository != null) {
+      repository.dispose();
+    }
+  }
+
+  private static void run(String name, ExecutorService executor, Runnable task, int tasks) throws Exception {
+
+    final List<Future<?>> futures = new ArrayList<>(tasks);
+    final long start = nanoTime();
+
+    for (int i = 0; i < tasks; i++) {
+      futures.add(executor.submit(task));
+    }
+
+    for (Future<?> future : futures) {
+      future.get();
+    }
+
+    final long millis = NANOSECONDS.toMillis(nanoTime() - start);
+    System.out.printf("%-8s %8d tasks in %6d ms, %10.0f tasks/s%n", name, tasks, millis, tasks * 1000.0 / Math.max(1, millis));
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,105 @@
+package dynks.cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static dynks.cache.test.DynksAssertions.assertThat;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+public class AdmissionFilterTest {
+
+  private static final KeyStrategy KEYS = new NamespacedURIKeyStrategy("tst");
+  private static final CacheRegion ALWAYS = new CacheRegion("always", 1, MINUTES, KEYS);
+  private static final CacheRegion ON_THIRD = new CacheRegion("third", 1, MINUTES, KEYS, 0, 3);
+
+  @Test
+  public void admitEveryKeyInRegionWithoutThreshold() {
+
+    //  given
+    AdmissionFilter filter = new AdmissionFilter(1024, Runnable::run);
+
+    //  when
+    boolean admitted = filter.admit(ALWAYS, "tst:always:/a");
+
+    //  then
+    assertThat(admitted).isTrue();
+    assertThat(filter.getRejected()).isEqualTo(0);
+  }
+
+  @Test
+  public void admitKeyOnNthRequest() {
+
+    //  given
+    AdmissionFilter filter = new AdmissionFilter(1024, Runnable::run);
+
+    //  when
+    boolean first = filter.admit(ON_THIRD, "tst:third:/a");
+    boolean second = filter.admit(ON_THIRD, "tst:third:/a");
+    boolean third = filter.admit(ON_THIRD, "tst:third:/a");
+    boolean other = filter.admit(ON_THIRD, "tst:third:/b");
+
+    //  then
+    assertThat(first).isFalse();
+    assertThat(second).isFalse();
+    assertThat(third).isTrue();
+    assertThat(other).isFalse();
+    assertThat(filter.getRejected()).isEqualTo(3);
+  }
+
+  @Test
+  public void forgetRequestsOutsideOfWindow() {
+
+    //  given
+    //  window of 10 * 16 requests
+    AdmissionFilter filter = new AdmissionFilter(16, Runnable::run);
+    filter.admit(ON_THIRD, "tst:third:/a");
+    filter.admit(ON_THIRD, "tst:third:/a");
+    for (int i = 0; i < 158; i++) {
+      filter.admit(ALWAYS, "tst:always:/b");
+      filter.admit(ON_THIRD, "tst:third:/b");
+    }
+
+    //  when
+    boolean admitted = filter.admit(ON_THIRD, "tst:third:/a");
+
+    //  then
+    assertThat(admitted).isFalse();
+  }
+
+  @Test
+  public void halveCountsOutsideOfRequestThread() {
+
+    //  given
+    List<Runnable> tasks = new ArrayList<>();
+    AdmissionFilter filter = new AdmissionFilter(16, tasks::add);
+    filter.admit(ON_THIRD, "tst:third:/a");
+    filter.admit(ON_THIRD, "tst:third:/a");
+    for (int i = 0; i < 158; i++) {
+      filter.admit(ON_THIRD, "tst:third:/b");
+    }
+
+    //  when
+    boolean beforeHalving = filter.admit(ON_THIRD, "tst:third:/a");
+    tasks.get(0).run();
+    boolean afterHalving = filter.admit(ON_THIRD, "tst:third:/a");
+
+    //  then
+    assertThat(tasks).hasSize(1);
+    assertThat(beforeHalving).isTrue();
+    assertThat(afterHalving).isFalse();
+  }
+
+  @Test
+  public void requiredOnlyWhenAnyRegionHasThreshold() {
+    assertThat(AdmissionFilter.isRequiredFor(asList(ALWAYS))).isFalse();
+    assertThat(AdmissionFilter.isRequiredFor(asList(ALWAYS, ON_THIRD))).isTrue();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void throwIAEOnAdmitAfterBelowOne() {
+    new CacheRegion("invalid", 1, MINUTES, KEYS, 0, 0);
+  }
+}
@@ -0,0 +1,193 @@
+package dynks.cache;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static dynks.cache.CircuitBreaker.State.*;
+import static dynks.cache.test.DynksAssertions.assertThat;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+public class CircuitBreakerTest {
+
+  private static final long FAST = MILLISECONDS.toNanos(1);
+  private static final long SLOW = MILLISECONDS.toNanos(500);
+
+  @Test
+  public void openWhenFailureRateReachedThreshold() {
+
+    //  given
+    CircuitBreaker breaker = new CircuitBreaker(10, 4, 50, MILLISECONDS.toNanos(100), 80, SECONDS.toNanos(60), 1);
+
+    //  when
+    call(breaker, true);
+    call(breaker, false);
+    call(breaker, true);
+    call(breaker, false);
+
+    //  then
+    assertThat(breaker.getState()).isEqualTo(OPEN);
+    assertThat(breaker.tryAcquire()).isFalse();
+    assertThat(breaker.getRejected()).isEqualTo(1);
+    assertThat(breaker.getOpened()).isEqualTo(1);
+  }
+
+  @Test
+  public void stayClosedBelowMinimumCalls() {
+
+    //  given
+    CircuitBreaker breaker = new CircuitBreaker(10, 4, 50, MILLISECONDS.toNanos(100), 80, SECONDS.toNanos(60), 1);
+
+    //  when
+    call(breaker, false);
+    call(breaker, false);
+    call(breaker, false);
+
+    //  then
+    assertThat(breaker.getState()).isEqualTo(CLOSED);
+    assertThat(breaker.getFailureRate()).isEqualTo(100);
+  }
+
+  @Test
+  public void openWhenTooManyCallsAreSlow() {
+
+    //  given
+    CircuitBreaker breaker = new CircuitBreaker(4, 4, 50, MILLISECONDS.toNanos(100), 75, SECONDS.toNanos(60), 1);
+
+    //  when
+    for (int i = 0; i < 3; i++) {
+      breaker.tryAcquire();
+      breaker.onSuccess(SLOW);
+    }
+    call(breaker, true);
+
+    //  then
+    assertThat(breaker.getState()).isEqualTo(OPEN);
+  }
+
+  @Test
+  public void forgetOutcomesOutsideOfWindow() {
+
+    //  given
+    CircuitBreaker breaker = new CircuitBreaker(4, 4, 50, MILLISECONDS.toNanos(100), 80, SECONDS.toNanos(60), 1);
+    call(breaker, false);
+
+    //  when
+    for (int i = 0; i < 10; i++) {
+      call(breaker, true);
+    }
+
+    //  then
+    assertThat(breaker.getState()).isEqualTo(CLOSED);
+    assertThat(breaker.getFailureRate()).isEqualTo(0);
+  }
+
+  @Test
+  public void closeAfterSuccessfulProbesInHalfOpenState() {
+
+    //  given
+    CircuitBreaker breaker = new CircuitBreaker(2, 2, 50, MILLISECONDS.toNanos(100), 80, 0, 2);
+    call(breaker, false);
+    call(breaker, false);
+
+    //  when
+    assertThat(breaker.tryAcquire()).isTrue();
+    assertThat(breaker.getState()).isEqualTo(HALF_OPEN);
+    assertThat(breaker.tryAcquire()).isTrue();
+    assertThat(breaker.tryAcquire()).isFalse();
+    breaker.onSuccess(FAST);
+    breaker.onSuccess(FAST);
+
+    //  then
+    assertThat(breaker.getState()).isEqualTo(CLOSED);
+  }
+
+  @Test
+  public void openAgainWhenProbeFailed() {
+
+    //  given
+    CircuitBreaker breaker = new CircuitBreaker(2, 2, 50, MILLISECONDS.toNanos(100), 80, 0, 2);
+    call(breaker, false);
+    call(breaker, false);
+
+    //  when
+    call(breaker, false);
+
+    //  then
+    assertThat(breaker.getState()).isEqualTo(OPEN);
+    assertThat(breaker.getOpened()).isEqualTo(2);
+  }
+
+  @Test
+  public void openOnceWhenManyThreadsRecordFailures() throws InterruptedException {
+
+    //  given
+    final CircuitBreaker breaker = new CircuitBreaker(100, 20, 50, MILLISECONDS.toNanos(100), 80, SECONDS.toNanos(60), 1);
+    final CountDownLatch start = new CountDownLatch(1);
+    Thread[] threads = new Thread[8];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        for (int j = 0; j < 1000; j++) {
+          call(breaker, false);
+        }
+      });
+      threads[i].start();
+    }
+
+    //  when
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    //  then
+    assertThat(breaker.getState()).isEqualTo(OPEN);
+    assertThat(breaker.getOpened()).isEqualTo(1);
+    assertThat(breaker.getRejected()).isGreaterThan(0);
+  }
+
+  @Test
+  public void keepCountsOfWindowWhenManyThreadsRecord() throws InterruptedException {
+
+    //  given
+    final CircuitBreaker breaker = new CircuitBreaker(64, 64, 100, MILLISECONDS.toNanos(100), 100, SECONDS.toNanos(60), 1);
+    Thread[] threads = new Thread[8];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(() -> {
+        for (int j = 0; j < 10000; j++) {
+          call(breaker, true);
+        }
+      });
+      threads[i].start();
+    }
+
+    //  when
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    for (int i = 0; i < 63; i++) {
+      call(breaker, false);
+    }
+
+    //  then
+    assertThat(breaker.getState()).isEqualTo(CLOSED);
+    assertThat(breaker.getFailureRate()).isEqualTo(98);
+    call(breaker, false);
+    assertThat(breaker.getState()).isEqualTo(OPEN);
+  }
+
+  private static void call(CircuitBreaker breaker, boolean success) {
+    breaker.tryAcquire();
+    if (success) {
+      breaker.onSuccess(FAST);
+    } else {
+      breaker.onError();
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package dynks.cache;
+
+import org.junit.Test;
+
+import static dynks.cache.test.DynksAssertions.assertThat;
+
+public class CountMinSketchTest {
+
+  @Test
+  public void roundWidthUpToPowerOfTwo() {
+    assertThat(new CountMinSketch(1000).getWidth()).isEqualTo(1024);
+    assertThat(new CountMinSketch(1024).getWidth()).isEqualTo(1024);
+  }
+
+  @Test
+  public void neverUnderestimateCount() {
+
+    //  given
+    CountMinSketch sketch = new CountMinSketch(64);
+
+    //  when
+    for (int i = 0; i < 1000; i++) {
+      sketch.increment("/item/" + (i % 100));
+    }
+    for (int i = 0; i < 50; i++) {
+      sketch.increment("/hot");
+    }
+
+    //  then
+    assertThat(sketch.estimate("/hot")).isGreaterThanOrEqualTo(50);
+    for (int i = 0; i < 100; i++) {
+      assertThat(sketch.estimate("/item/" + i)).isGreaterThanOrEqualTo(10);
+    }
+  }
+
+  @Test
+  public void estimateExactlyWithoutCollisions() {
+
+    //  given
+    CountMinSketch sketch = new CountMinSketch(4096);
+
+    //  when
+    sketch.increment("/a");
+    sketch.increment("/a");
+    int estimate = sketch.increment("/a");
+
+    //  then
+    assertThat(estimate).isEqualTo(3);
+    assertThat(sketch.estimate("/never-seen")).isEqualTo(0);
+  }
+
+  @Test
+  public void halveCounters() {
+
+    //  given
+    CountMinSketch sketch = new CountMinSketch(4096);
+    for (int i = 0; i < 9; i++) {
+      sketch.increment("/a");
+    }
+
+    //  when
+    sketch.halve();
+
+    //  then
+    assertThat(sketch.estimate("/a")).isEqualTo(4);
+  }
+}
@@ -62,6 +62,21 @@ public class ETagTest {
         assertThat(etag2).isNotEmpty().isNotEqualTo(etag1);
     }
 
+    @Test
+    public void shouldGenerateEtagWithoutValue() {
+
+        //  given
+        StringBuilder builder = new StringBuilder(SIZEOF_ETAG);
+
+        //  when
+        String etag1 = ETag.next(builder);
+        String etag2 = ETag.next(builder);
+
+        //  then
+        assertThat(etag1).isNotEmpty().contains("-");
+        assertThat(etag2).isNotEmpty().isNotEqualTo(etag1);
+    }
+
     private HttpServletResponse responseMock() {
         HttpServletResponse response = mock(HttpServletResponse.class);
         return response;
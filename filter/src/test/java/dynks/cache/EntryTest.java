@@ -53,4 +53,15 @@ public class EntryTest {
         assertThat(entry).hasContent(content).hasEtag(etag);
     }
 
+    @Test
+    public void storeSourceWhenProvided(){
+
+        //  when
+        Entry entry = new Entry("[]", "980", UTF8_JSON, UTF8, "/api/v1/search?q=books");
+
+        //  then
+        assertThat(entry.getSource()).isEqualTo("/api/v1/search?q=books");
+        assertThat(entry.size()).isEqualTo(5);
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,63 @@
+package dynks.cache;
+
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+
+import static dynks.cache.test.DynksAssertions.assertThat;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class HashTaggedKeyStrategyTest {
+
+  private static final String NAMESPACE = "rm";
+
+  private final KeyStrategy keyStrategy = new HashTaggedKeyStrategy(new NamespacedURIKeyStrategy(NAMESPACE));
+  private final CacheRegion region = new CacheRegion("search", 1800000, MILLISECONDS, keyStrategy);
+
+  @Test
+  public void embedRegionInHashTag() {
+
+    //  when
+    String key = keyStrategy.keyFor(forURI("/api/v1/books"), region);
+
+    //  then
+    assertThat(key).isEqualTo(NAMESPACE + ":{search}:/api/v1/books");
+  }
+
+  @Test
+  public void generateWildcardKeyWithHashTag() {
+
+    //  when
+    String key = keyStrategy.wildcardKeyFor(region);
+
+    //  then
+    assertThat(key).isEqualTo(NAMESPACE + ":{search}:*");
+  }
+
+  @Test
+  public void tagCompactedKeys() {
+
+    //  given
+    KeyStrategy tagged = new HashTaggedKeyStrategy(new HashedKeyStrategy(new NamespacedURIKeyStrategy(NAMESPACE)));
+
+    //  when
+    String key = tagged.keyFor(forURI("/api/v1/books"), region);
+
+    //  then
+    assertThat(key).matches(NAMESPACE + ":\\{search\\}:[A-Za-z0-9_-]{22}");
+    assertThat(tagged.isCompact()).isTrue();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void throwIAEOnRegionWithBraces() {
+    keyStrategy.wildcardKeyFor(new CacheRegion("{search}", 1800000, MILLISECONDS, keyStrategy));
+  }
+
+  private HttpServletRequest forURI(final String uri) {
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    when(request.getRequestURI()).thenReturn(uri);
+    return request;
+  }
+}
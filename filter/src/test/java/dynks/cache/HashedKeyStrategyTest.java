@@ -0,0 +1,97 @@
+package dynks.cache;
+
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+
+import static dynks.cache.HashedKeyStrategy.SIZEOF_HASH;
+import static dynks.cache.test.DynksAssertions.assertThat;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class HashedKeyStrategyTest {
+
+  private static final String NAMESPACE = "rm";
+
+  private final KeyStrategy keyStrategy = new HashedKeyStrategy(new NamespacedURIKeyStrategy(NAMESPACE));
+  private final CacheRegion region = new CacheRegion("search", 1800000, MILLISECONDS, keyStrategy);
+
+  @Test
+  public void generateWildcardKeySameAsDecoratedStrategy() {
+
+    //  when
+    String key = keyStrategy.wildcardKeyFor(region);
+
+    //  then
+    assertThat(key).isEqualTo(NAMESPACE + ":search:*");
+  }
+
+  @Test
+  public void keepNamespaceAndRegionAndReplaceURIWithHash() {
+
+    //  given
+    final String uri = "/api/v1/search/books/fantasy/authors/tolkien/years/1937-1955/formats/hardcover/languages/en";
+
+    //  when
+    String key = keyStrategy.keyFor(forURI(uri, null), region);
+
+    //  then
+    assertThat(key).startsWith(NAMESPACE + ":search:")
+            .hasSize((NAMESPACE + ":search:").length() + SIZEOF_HASH)
+            .doesNotContain("tolkien")
+            .matches(NAMESPACE + ":search:[A-Za-z0-9_-]{22}");
+  }
+
+  @Test
+  public void generateSameKeyForSameURI() {
+
+    //  when
+    String key1 = keyStrategy.keyFor(forURI("/api/v1/books", null), region);
+    String key2 = keyStrategy.keyFor(forURI("/api/v1/books", null), region);
+
+    //  then
+    assertThat(key1).isEqualTo(key2);
+  }
+
+  @Test
+  public void generateDifferentKeysForDifferentURIs() {
+
+    //  when
+    String key1 = keyStrategy.keyFor(forURI("/api/v1/books/1", null), region);
+    String key2 = keyStrategy.keyFor(forURI("/api/v1/books/2", null), region);
+
+    //  then
+    assertThat(key1).isNotEqualTo(key2);
+  }
+
+  @Test
+  public void hashCanonicalQueryOfDecoratedStrategy() {
+
+    //  given
+    KeyStrategy compacted = new HashedKeyStrategy(new QueryStringKeyStrategy(NAMESPACE, asList("q", "page"), singletonList("utm_")));
+
+    //  when
+    String key1 = compacted.keyFor(forURI("/search", "q=a&page=2&utm_source=x"), region);
+    String key2 = compacted.keyFor(forURI("/search", "page=2&q=a"), region);
+    String key3 = compacted.keyFor(forURI("/search", "page=3&q=a"), region);
+
+    //  then
+    assertThat(key1).isEqualTo(key2).isNotEqualTo(key3);
+  }
+
+  @Test
+  public void indicateCompactKeys() {
+    assertThat(keyStrategy.isCompact()).isTrue();
+    assertThat(new NamespacedURIKeyStrategy(NAMESPACE).isCompact()).isFalse();
+  }
+
+  private HttpServletRequest forURI(final String uri, final String query) {
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    when(request.getRequestURI()).thenReturn(uri);
+    when(request.getQueryString()).thenReturn(query);
+    return request;
+  }
+}
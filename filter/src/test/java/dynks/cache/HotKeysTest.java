@@ -0,0 +1,118 @@
+package dynks.cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static dynks.cache.test.DynksAssertions.assertThat;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+public class HotKeysTest {
+
+  @Test
+  public void keepOnlyTopKeys() {
+
+    //  given
+    HotKeys hotKeys = new HotKeys(1024, 2, 1_000_000, Runnable::run);
+
+    //  when
+    record(hotKeys, "/a", 30);
+    record(hotKeys, "/b", 20);
+    record(hotKeys, "/c", 10);
+    for (int i = 0; i < 500; i++) {
+      hotKeys.record("/cold/" + i);
+    }
+
+    //  then
+    List<Map.Entry<String, Long>> top = hotKeys.top();
+    assertThat(top).hasSize(2);
+    assertThat(top.get(0).getKey()).isEqualTo("/a");
+    assertThat(top.get(1).getKey()).isEqualTo("/b");
+    assertThat(top.get(0).getValue()).isGreaterThanOrEqualTo(30);
+  }
+
+  @Test
+  public void replaceKeysThatStoppedBeingRequested() {
+
+    //  given
+    HotKeys hotKeys = new HotKeys(1024, 1, 100, Runnable::run);
+    record(hotKeys, "/old", 90);
+
+    //  when
+    //  frequencies are halved every 100 keys
+    record(hotKeys, "/new", 300);
+
+    //  then
+    assertThat(hotKeys.top().get(0).getKey()).isEqualTo("/new");
+  }
+
+  @Test
+  public void halveFrequenciesOutsideOfRecordingThread() {
+
+    //  given
+    List<Runnable> tasks = new ArrayList<>();
+    HotKeys hotKeys = new HotKeys(1024, 1, 10, tasks::add);
+
+    //  when
+    record(hotKeys, "/a", 30);
+
+    //  then
+    //  halving is submitted only once until it is executed
+    assertThat(tasks).hasSize(1);
+    assertThat(hotKeys.estimate("/a")).isEqualTo(30);
+    tasks.get(0).run();
+    assertThat(hotKeys.estimate("/a")).isEqualTo(15);
+    assertThat(hotKeys.top().get(0).getValue()).isEqualTo(15);
+    record(hotKeys, "/a", 10);
+    assertThat(tasks).hasSize(2);
+  }
+
+  @Test
+  public void trackRegionsSeparately() {
+
+    //  given
+    HotKeyTracker tracker = new HotKeyTracker(1024, 5, Runnable::run);
+    CacheRegion users = new CacheRegion("users", 1, MINUTES, new NamespacedURIKeyStrategy("tst"));
+    CacheRegion books = new CacheRegion("books", 1, MINUTES, new NamespacedURIKeyStrategy("tst"));
+
+    //  when
+    tracker.record(users, "/users/1");
+    tracker.record(users, "/users/1");
+    tracker.record(books, "/books/1");
+
+    //  then
+    assertThat(tracker.getRegions()).containsOnly("users", "books");
+    assertThat(tracker.topKeys("users")).containsExactly("2 /users/1");
+    assertThat(tracker.topKeys("books")).containsExactly("1 /books/1");
+    assertThat(tracker.topKeys("unknown")).isEmpty();
+    assertThat(tracker.estimate(users, "/books/1")).isEqualTo(0);
+  }
+
+  @Test
+  public void returnHottestKeysOfAllRegions() {
+
+    //  given
+    HotKeyTracker tracker = new HotKeyTracker(1024, 5, Runnable::run);
+    CacheRegion users = new CacheRegion("users", 1, MINUTES, new NamespacedURIKeyStrategy("tst"));
+    CacheRegion books = new CacheRegion("books", 1, MINUTES, new NamespacedURIKeyStrategy("tst"));
+    record(tracker.forRegion("users"), "/users/1", 3);
+    record(tracker.forRegion("users"), "/users/2", 1);
+    record(tracker.forRegion("books"), "/books/1", 2);
+
+    //  when
+    List<String> hottest = tracker.hottest(2);
+
+    //  then
+    assertThat(hottest).containsExactly("/users/1", "/books/1");
+    assertThat(tracker.estimate(users, "/users/1")).isEqualTo(3);
+    assertThat(tracker.estimate(books, "/books/1")).isEqualTo(2);
+  }
+
+  private static void record(HotKeys hotKeys, String key, int times) {
+    for (int i = 0; i < times; i++) {
+      hotKeys.record(key);
+    }
+  }
+}
@@ -0,0 +1,259 @@
+package dynks.cache;
+
+import com.typesafe.config.ConfigFactory;
+import dynks.cache.test.CauseMatcher;
+import dynks.redis.NonBlockingRedisCacheRepository;
+import dynks.redis.RedisCacheRepository;
+import dynks.redis.RedisCacheRepositoryConfigBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import redis.clients.jedis.Jedis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static dynks.cache.Entry.*;
+import static dynks.cache.TestValues.UTF8;
+import static dynks.cache.TestValues.UTF8_JSON;
+import static dynks.cache.test.DynksAssertions.assertThat;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.data.MapEntry.entry;
+import static org.junit.rules.ExpectedException.none;
+
+/**
+ * Integration test that will assume that redis server for testing will be run on localhost on default port.
+ * Every execution will do the cleanup on before test.
+ */
+public class NonBlockingRedisCacheRepositoryTest {
+
+  @Rule
+  public ExpectedException thrown = none();
+
+  private static final String JSON_SAVED = "{\"yourName\":\"alice\"}";
+  private static final String KEY = "someKeyValue";
+
+  private NonBlockingRedisCacheRepository repo;
+
+  @Before
+  public void cleanUpRedis() {
+    repo = RedisCacheRepositoryConfigBuilder.buildNonBlocking(ConfigFactory.load());
+    getJedis().del(KEY);
+  }
+
+  @After
+  public void dispose() {
+    repo.dispose();
+  }
+
+  @Test
+  public void throwIAEOnNulledKeyForFetchIfChanged() throws CacheRepositoryException {
+
+    //  then
+    thrown.expect(CacheRepositoryException.class);
+    thrown.expectCause(new CauseMatcher(IllegalArgumentException.class, "Key to upsert should not be null"));
+
+    //  when
+    repo.fetchIfChanged(null, "someEtag");
+  }
+
+  @Test
+  public void upsertValueIfNotExist() throws CacheRepositoryException {
+
+    //  when
+    repo.upsert(KEY, JSON_SAVED, "etag1", UTF8_JSON, UTF8, regionFor(999, HOURS));
+
+    //  then
+    assertValueExist(KEY, "etag1", JSON_SAVED, UTF8_JSON, UTF8);
+    assertThat(getJedis().ttl(KEY)).isBetween(999L * 3600 - 10, 999L * 3600);
+  }
+
+  @Test
+  public void upsertValueForEthernalLife() throws CacheRepositoryException {
+
+    //  when
+    repo.upsert(KEY, JSON_SAVED, "etag1", UTF8_JSON, UTF8, regionFor(0, HOURS));
+
+    //  then
+    assertValueExist(KEY, "etag1", JSON_SAVED, UTF8_JSON, UTF8);
+    assertThat(getJedis().ttl(KEY)).isEqualTo(-1L);
+  }
+
+  @Test
+  public void detectMissingEntryOnFetch() throws CacheRepositoryException {
+
+    //  when
+    CacheQueryResult withoutEtag = repo.fetchIfChanged(KEY, null);
+    CacheQueryResult withEtag = repo.fetchIfChanged(KEY, "etag1");
+
+    //  then
+    assertThat(withoutEtag.isUpsertNeeded()).isTrue();
+    assertThat(withEtag.isUpsertNeeded()).isTrue();
+  }
+
+  @Test
+  public void returnEntryFromCacheWhenEtagUnknownOrChanged() throws CacheRepositoryException {
+
+    //  given
+    repo.upsert(KEY, JSON_SAVED, "etag1", UTF8_JSON, UTF8, regionFor(999, HOURS));
+
+    //  when
+    CacheQueryResult unknown = repo.fetchIfChanged(KEY, null);
+    CacheQueryResult changed = repo.fetchIfChanged(KEY, "etag0");
+
+    //  then
+    for (CacheQueryResult result : new CacheQueryResult[]{unknown, changed}) {
+      assertThat(result.isUpsertNeeded()).isFalse();
+      assertThat(result.getPayload()).isEqualTo(JSON_SAVED);
+      assertThat(result.getStoredEtag()).isEqualTo("etag1");
+      assertThat(result.getContentType()).isEqualTo(UTF8_JSON);
+      assertThat(result.getEncoding()).isEqualTo(UTF8);
+    }
+  }
+
+  @Test
+  public void fetchNotNeededAsCachedVersionNotChanged() throws CacheRepositoryException {
+
+    //  given
+    repo.upsert(KEY, JSON_SAVED, "etag1", UTF8_JSON, UTF8, regionFor(999, HOURS));
+
+    //  when
+    CacheQueryResult result = repo.fetchIfChanged(KEY, "etag1");
+
+    //  then
+    assertThat(result.isUpsertNeeded()).isFalse();
+    assertThat(result.getStoredEtag()).isNull();
+  }
+
+  @Test
+  public void completePipelinedFetchesWithTheirOwnEntries() throws Exception {
+
+    //  given
+    CacheRegion region = forRegion("pipelined");
+    for (int i = 0; i < 500; i++) {
+      repo.upsert("tst:pipelined:" + i, "content" + i, "etag" + i, UTF8_JSON, UTF8, region);
+    }
+
+    //  when
+    List<CompletableFuture<CacheQueryResult>> fetches = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      fetches.add(repo.fetchIfChangedAsync("tst:pipelined:" + i, i % 2 == 0 ? null : "etag" + i));
+    }
+
+    //  then
+    for (int i = 0; i < 500; i++) {
+      CacheQueryResult result = fetches.get(i).get(5, SECONDS);
+      if (i % 2 == 0) {
+        assertThat(result.getPayload()).isEqualTo("content" + i);
+      } else {
+        assertThat(result.isUpsertNeeded()).isFalse();
+        assertThat(result.getStoredEtag()).isNull();
+      }
+    }
+    repo.evictRegion(region);
+  }
+
+  @Test
+  public void entriesWrittenInBinaryFormatShouldBeReadAndReplaced() throws CacheRepositoryException {
+
+    //  given
+    RedisCacheRepository binary = RedisCacheRepositoryConfigBuilder.build(ConfigFactory.parseString(
+            "dynks.redis.entryFormat = BINARY").withFallback(ConfigFactory.load()));
+    binary.upsert(KEY, JSON_SAVED, "etag1", UTF8_JSON, UTF8, regionFor(999, HOURS));
+
+    //  when
+    CacheQueryResult changed = repo.fetchIfChanged(KEY, null);
+    CacheQueryResult notChanged = repo.fetchIfChanged(KEY, "etag1");
+    repo.upsert(KEY, "[]", "etag2", UTF8_JSON, UTF8, regionFor(999, HOURS));
+
+    //  then
+    assertThat(changed.getPayload()).isEqualTo(JSON_SAVED);
+    assertThat(changed.getStoredEtag()).isEqualTo("etag1");
+    assertThat(notChanged.isUpsertNeeded()).isFalse();
+    assertThat(getJedis().type(KEY)).isEqualTo("hash");
+    assertValueExist(KEY, "etag2", "[]", UTF8_JSON, UTF8);
+    binary.dispose();
+  }
+
+  @Test
+  public void evictAllEntriesFromRegionInManyBatches() throws CacheRepositoryException {
+
+    //  given
+    CacheRegion users = forRegion("users");
+    CacheRegion logs = forRegion("logs");
+    repo.upsert("tst:users:user1", "somecontent", "someetag", UTF8_JSON, UTF8, users);
+    for (int i = 0; i < 25; i++) {
+      repo.upsert("tst:logs:logs" + i, "something", "someetag", UTF8_JSON, UTF8, logs);
+    }
+
+    //  when
+    long removed = repo.evictRegion(logs, 10);
+
+    //  then
+    assertThat(removed).isEqualTo(25);
+    assertThat(getJedis().exists("tst:logs:logs0")).isFalse();
+    assertThat(getJedis().exists("tst:logs:logs24")).isFalse();
+    assertThat(getJedis().exists("tst:users:user1")).isTrue();
+    repo.evictRegion(users);
+  }
+
+  @Test
+  public void evictRegionAfterWarmUp() throws CacheRepositoryException {
+
+    //  given
+    getJedis().scriptFlush();
+    repo.upsert("tst:warm:1", JSON_SAVED, "etag1", UTF8_JSON, UTF8, forRegion("warm"));
+    repo.warmUp();
+
+    //  when
+    long removed = repo.evictRegion(forRegion("warm"));
+
+    //  then
+    assertThat(removed).isEqualTo(1);
+    assertThat(getJedis().exists("tst:warm:1")).isFalse();
+  }
+
+  @Test
+  public void removeKeyIfExist() throws CacheRepositoryException {
+
+    //  given
+    repo.upsert(KEY, JSON_SAVED, "etag1", UTF8_JSON, UTF8, regionFor(999, HOURS));
+
+    //  when
+    repo.remove(KEY);
+
+    //  then
+    assertThat(getJedis().exists(KEY)).isFalse();
+  }
+
+  //  test utils
+
+  private Jedis getJedis() {
+    return new Jedis("localhost");
+  }
+
+  private CacheRegion regionFor(long ttl, TimeUnit unit) {
+    return new CacheRegion("test", ttl, unit, new NamespacedURIKeyStrategy("test"));
+  }
+
+  private CacheRegion forRegion(String id) {
+    return new CacheRegion(id, 1800000, TimeUnit.MILLISECONDS, new NamespacedURIKeyStrategy("tst"));
+  }
+
+  private void assertValueExist(String key, String expectedEtag, String expectedContent, String expectedContentType, String expectedEncoding) {
+
+    Map<String, String> out = getJedis().hgetAll(key);
+
+    assertThat(out).hasSize(4)
+            .contains(entry(PAYLOAD, expectedContent))
+            .contains(entry(ETAG, expectedEtag))
+            .contains(entry(CONTENT_TYPE, expectedContentType))
+            .contains(entry(ENCODING, expectedEncoding));
+  }
+}
@@ -0,0 +1,126 @@
+package dynks.cache;
+
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+
+import static dynks.cache.test.DynksAssertions.assertThat;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class QueryStringKeyStrategyTest {
+
+  private static final String NAMESPACE = "rm";
+  private static final String URI = "/api/v1/search";
+
+  private final KeyStrategy keyStrategy = new QueryStringKeyStrategy(NAMESPACE, asList("q", "page"), singletonList("utm_"));
+  private final CacheRegion region = new CacheRegion("search", 1800000, MILLISECONDS, keyStrategy);
+
+  @Test
+  public void generateWildcardKeySameAsForNamespacedURI() {
+
+    //  when
+    String key = keyStrategy.wildcardKeyFor(region);
+
+    //  then
+    assertThat(key).isEqualTo(new NamespacedURIKeyStrategy(NAMESPACE).wildcardKeyFor(region));
+  }
+
+  @Test
+  public void generateKeyWithoutQueryStringWhenNoParametersSent() {
+
+    //  when
+    String key = keyStrategy.keyFor(forURI(URI, null), region);
+
+    //  then
+    assertThat(key).isEqualTo(NAMESPACE + ":search:" + URI);
+  }
+
+  @Test
+  public void differentWhitelistedValuesShouldGenerateDifferentKeys() {
+
+    //  when
+    String keyA = keyStrategy.keyFor(forURI(URI, "q=a"), region);
+    String keyB = keyStrategy.keyFor(forURI(URI, "q=b"), region);
+
+    //  then
+    assertThat(keyA).isEqualTo(NAMESPACE + ":search:" + URI + "?q=a");
+    assertThat(keyB).isEqualTo(NAMESPACE + ":search:" + URI + "?q=b");
+  }
+
+  @Test
+  public void orderOfParametersShouldNotMatter() {
+
+    //  when
+    String key1 = keyStrategy.keyFor(forURI(URI, "q=books&page=2"), region);
+    String key2 = keyStrategy.keyFor(forURI(URI, "page=2&q=books"), region);
+
+    //  then
+    assertThat(key1).isEqualTo(key2).isEqualTo(NAMESPACE + ":search:" + URI + "?page=2&q=books");
+  }
+
+  @Test
+  public void ignoreParametersNotOnWhitelist() {
+
+    //  when
+    String key = keyStrategy.keyFor(forURI(URI, "utm_source=mail&q=books&session=x&pages=3"), region);
+
+    //  then
+    assertThat(key).isEqualTo(NAMESPACE + ":search:" + URI + "?q=books");
+  }
+
+  @Test
+  public void generateKeyWithoutQueryStringWhenNoWhitelistedParameterSent() {
+
+    //  when
+    String key = keyStrategy.keyFor(forURI(URI, "utm_source=mail&&"), region);
+
+    //  then
+    assertThat(key).isEqualTo(NAMESPACE + ":search:" + URI);
+  }
+
+  @Test
+  public void repeatedParametersShouldKeepOrderOfValues() {
+
+    //  when
+    String key = keyStrategy.keyFor(forURI(URI, "q=z&page=1&q=a"), region);
+
+    //  then
+    assertThat(key).isEqualTo(NAMESPACE + ":search:" + URI + "?page=1&q=z&q=a");
+  }
+
+  @Test
+  public void acceptAllParametersExceptIgnoredPrefixesWhenWildcardWhitelisted() {
+
+    //  given
+    KeyStrategy all = new QueryStringKeyStrategy(NAMESPACE, singletonList("*"), asList("utm_", "_"));
+
+    //  when
+    String key = all.keyFor(forURI(URI, "utm_medium=x&sort=asc&_=1476&b&a=1"), region);
+
+    //  then
+    assertThat(key).isEqualTo(NAMESPACE + ":search:" + URI + "?a=1&b&sort=asc");
+  }
+
+  @Test
+  public void twoInstancesWithSameWhitelistShouldBeEqual() {
+
+    //  given
+    KeyStrategy other = new QueryStringKeyStrategy(NAMESPACE, asList("page", "q"), singletonList("utm_"));
+
+    //  then
+    assertThat(other.hashCode()).isEqualTo(keyStrategy.hashCode());
+    assertThat(other).isEqualTo(keyStrategy);
+    assertThat(new QueryStringKeyStrategy(NAMESPACE, singletonList("q"), singletonList("utm_"))).isNotEqualTo(keyStrategy);
+  }
+
+  private HttpServletRequest forURI(final String uri, final String query) {
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    when(request.getRequestURI()).thenReturn(uri);
+    when(request.getQueryString()).thenReturn(query);
+    return request;
+  }
+}
@@ -2,6 +2,9 @@ package dynks.cache;
 
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
+import dynks.redis.InstrumentedJedisPool;
+import dynks.redis.NonBlockingRedisCacheRepository;
+import dynks.redis.PoolSizer;
 import dynks.redis.RedisCacheRepository;
 import dynks.redis.RedisCacheRepositoryConfigBuilder;
 import org.junit.Rule;
@@ -43,7 +46,59 @@ public class RedisCacheRepositoryConfigBuilderTest {
     assertThat(repo.getMaxEntriesDeletedInOneBatch()).isEqualTo(2000);
     assertThat(repo.getHost()).isEqualTo("192.168.0.21");
     assertThat(repo.getPort()).isEqualTo(222);
+    assertThat(repo.getChunking().getThreshold()).isEqualTo(1024 * 1024);
+    assertThat(repo.getChunking().getChunkSize()).isEqualTo(128 * 1024);
+    assertThat(repo.getChunking().getChunksPerRead()).isEqualTo(2);
+
+    PoolSizer sizer = ((InstrumentedJedisPool) repo.getPool()).getSizer();
+    assertThat(sizer.getMinTotal()).isEqualTo(4);
+    assertThat(sizer.getMaxTotal()).isEqualTo(32);
+    repo.dispose();
+  }
+
+  @Test
+  public void loadNonBlockingConfiguration() {
+
+    //  given
+    Config conf = ConfigFactory.load("dynks-test");
+
+    //  when
+    NonBlockingRedisCacheRepository repo = RedisCacheRepositoryConfigBuilder.buildNonBlocking(conf);
+
+    //  then
+    assertThat(repo.getHost()).isEqualTo("192.168.0.21");
+    assertThat(repo.getPort()).isEqualTo(222);
+    assertThat(repo.getConnections()).isEqualTo(3);
+    assertThat(repo.getTimeoutInMillis()).isEqualTo(500);
+    assertThat(repo.getMaxEntriesDeletedInOneBatch()).isEqualTo(2000);
+  }
+
+  @Test
+  public void limitTimeoutToCallTimeoutWhenCircuitBreakerIsEnabled() {
+
+    //  given
+    Config conf = ConfigFactory.parseString("dynks.circuitBreaker.enabled = true, dynks.circuitBreaker.callTimeout = 150ms")
+            .withFallback(ConfigFactory.load("dynks-test"));
+
+    //  when
+    NonBlockingRedisCacheRepository repo = RedisCacheRepositoryConfigBuilder.buildNonBlocking(conf);
 
+    //  then
+    assertThat(repo.getTimeoutInMillis()).isEqualTo(150);
+  }
+
+  @Test
+  public void keepLowerTimeoutWhenCircuitBreakerIsEnabled() {
+
+    //  given
+    Config conf = ConfigFactory.parseString("dynks.circuitBreaker.enabled = true, dynks.circuitBreaker.callTimeout = 1s")
+            .withFallback(ConfigFactory.load("dynks-test"));
+
+    //  when
+    NonBlockingRedisCacheRepository repo = RedisCacheRepositoryConfigBuilder.buildNonBlocking(conf);
+
+    //  then
+    assertThat(repo.getTimeoutInMillis()).isEqualTo(500);
   }
 
   @Test
@@ -69,6 +124,8 @@ public class RedisCacheRepositoryConfigBuilderTest {
 
     assertThat(repo.getHost()).isEqualTo("localhost");
     assertThat(repo.getPort()).isEqualTo(6379);
+    assertThat(repo.getChunking().isEnabled()).isFalse();
+    assertThat(((InstrumentedJedisPool) repo.getPool()).getSizer()).isNull();
   }
 
   @Test
@@ -85,6 +142,21 @@ public class RedisCacheRepositoryConfigBuilderTest {
     RedisCacheRepositoryConfigBuilder.build(conf);
   }
 
+  @Test
+  public void throwIAEOnRegionWithQuotaInClusterWithoutHashTags() {
+
+    //  given
+    Config conf = ConfigFactory.parseString("dynks{ storage = REDIS_CLUSTER, regions = [{ id = books, pattern = \"/books/{id}\", "
+            + "ttl = 1h, quota{ maxEntries = 100 } }] }").withFallback(ConfigFactory.load());
+
+    //  then
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Quota of region 'books' requires dynks.regionHashTags in redis cluster");
+
+    //  when
+    RedisCacheRepositoryConfigBuilder.buildCluster(conf);
+  }
+
   @Test
   public void loadDefaultMaxEntriesDeletedInOneBatchIfNotProvidedInConf() {
 
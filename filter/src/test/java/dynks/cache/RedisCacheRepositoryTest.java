@@ -12,6 +12,11 @@ import org.slf4j.Logger;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.exceptions.JedisConnectionException;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -20,7 +25,12 @@ import static dynks.cache.TestValues.UTF8;
 import static dynks.cache.TestValues.UTF8_JSON;
 import static dynks.cache.test.DynksAssertions.assertThat;
 import static dynks.http.ETag.SIZEOF_ETAG;
+import static dynks.cache.RegionQuota.OnExceeded.EVICT_OLDEST;
+import static dynks.cache.RegionQuota.OnExceeded.REJECT;
 import static dynks.http.ETag.of;
+import static dynks.redis.RegionAccounting.RECHECK_INTERVAL_IN_MILLIS;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
 import static java.util.concurrent.TimeUnit.HOURS;
 import static org.assertj.core.data.MapEntry.entry;
 import static org.assertj.core.util.Preconditions.checkNotNullOrEmpty;
@@ -143,6 +153,198 @@ public class RedisCacheRepositoryTest {
 
   }
 
+  @Test
+  public void nonUtf8UpsertShouldBeStoredInUtf8AndReturnedInOriginalEncoding() throws CacheRepositoryException, UnsupportedEncodingException {
+
+    //  given
+    String payload = "ąśćźżęłóĄŚĆŻŹĘŁÓ";
+    byte[] encoded = payload.getBytes("ISO-8859-2");
+
+    //  when
+    repo.upsert(KEY, encoded, "etag1", "text/plain; charset=ISO-8859-2", "ISO-8859-2", regionFor(999, HOURS), null);
+    CacheQueryResult result = repo.fetchIfChanged(KEY, null);
+
+    //  then
+    assertValueExist(KEY, "etag1", payload, "text/plain; charset=ISO-8859-2", "ISO-8859-2");
+    assertThat(result.getPayloadBytes()).isEqualTo(encoded);
+    assertThat(result.getPayload()).isEqualTo(payload);
+  }
+
+  @Test
+  public void largeEntryShouldBeStoredInChunksAndStreamedBackInOriginalEncoding() throws CacheRepositoryException, IOException {
+
+    //  given
+    RedisCacheRepository chunked = RedisCacheRepositoryConfigBuilder.build(ConfigFactory.parseString(
+            "dynks.redis{ chunkThreshold = 1K, chunkSize = 100, chunksPerRead = 2 }").withFallback(ConfigFactory.load()));
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < 70; i++) {
+      builder.append("ąśćźżęłóĄŚĆŻŹĘŁÓ");
+    }
+    String payload = builder.toString();
+    byte[] encoded = payload.getBytes("ISO-8859-2");
+    ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+
+    //  when
+    chunked.upsert(KEY, encoded, "etag1", "text/plain; charset=ISO-8859-2", "ISO-8859-2", regionFor(999, HOURS), null);
+    CacheQueryResult result = chunked.fetchIfChanged(KEY, null);
+    result.writeTo(streamed);
+
+    //  then
+    assertThat(getJedis().hget(KEY, CHUNKS)).isEqualTo("12");
+    assertThat(getJedis().hget(KEY, PAYLOAD)).isNull();
+    assertThat(result.getStoredEtag()).isEqualTo("etag1");
+    assertThat(result.getEncoding()).isEqualTo("ISO-8859-2");
+    assertThat(streamed.toByteArray()).isEqualTo(encoded);
+    assertThat(result.getPayload()).isEqualTo(payload);
+  }
+
+  @Test
+  public void largeEntryGivenInSegmentsShouldBeStoredInChunksWithoutJoiningSegments() throws CacheRepositoryException {
+
+    //  given
+    RedisCacheRepository chunked = RedisCacheRepositoryConfigBuilder.build(ConfigFactory.parseString(
+            "dynks.redis{ chunkThreshold = 10, chunkSize = 8 }").withFallback(ConfigFactory.load()));
+    byte[] content = JSON_SAVED.getBytes(UTF_8);
+    //  segments not aligned with chunks
+    List<ByteBuffer> segments = asList(ByteBuffer.wrap(content, 0, 5), ByteBuffer.wrap(content, 5, 7),
+            ByteBuffer.wrap(content, 12, content.length - 12));
+
+    //  when
+    chunked.upsert(KEY, segments, content.length, "etag1", UTF8_JSON, UTF8, regionFor(999, HOURS), null);
+    CacheQueryResult result = chunked.fetchIfChanged(KEY, null);
+
+    //  then
+    assertThat(getJedis().hget(KEY, CHUNKS)).isEqualTo(String.valueOf((content.length + 7) / 8));
+    assertThat(result.getPayload()).isEqualTo(JSON_SAVED);
+    assertThat(segments.get(1).position()).isEqualTo(5);
+  }
+
+  @Test
+  public void smallEntryShouldReplaceChunkedOne() throws CacheRepositoryException {
+
+    //  given
+    RedisCacheRepository chunked = RedisCacheRepositoryConfigBuilder.build(ConfigFactory.parseString(
+            "dynks.redis{ chunkThreshold = 10, chunkSize = 8 }").withFallback(ConfigFactory.load()));
+    chunked.upsert(KEY, JSON_SAVED, "etag1", UTF8_JSON, UTF8, regionFor(999, HOURS));
+
+    //  when
+    chunked.upsert(KEY, "{}", "etag2", UTF8_JSON, UTF8, regionFor(999, HOURS));
+    CacheQueryResult result = chunked.fetchIfChanged(KEY, null);
+
+    //  then
+    assertValueExist(KEY, "etag2", "{}", UTF8_JSON, UTF8);
+    assertThat(result.getPayload()).isEqualTo("{}");
+    //  previous version is not looked up by small entries, its chunks expire with ttl of region
+    assertThat(getJedis().ttl(KEY + ":#etag1:0")).isGreaterThan(30L);
+  }
+
+  @Test
+  public void chunkedEntryShouldExpireChunksOfPreviousVersion() throws CacheRepositoryException {
+
+    //  given
+    RedisCacheRepository chunked = RedisCacheRepositoryConfigBuilder.build(ConfigFactory.parseString(
+            "dynks.redis{ chunkThreshold = 10, chunkSize = 8 }").withFallback(ConfigFactory.load()));
+    chunked.upsert(KEY, JSON_SAVED, "etag1", UTF8_JSON, UTF8, regionFor(999, HOURS));
+
+    //  when
+    chunked.upsert(KEY, JSON_SAVED + " ", "etag2", UTF8_JSON, UTF8, regionFor(999, HOURS));
+    chunked.upsert(KEY, JSON_SAVED + " ", "etag2", UTF8_JSON, UTF8, regionFor(999, HOURS));
+
+    //  then
+    assertThat(chunked.fetchIfChanged(KEY, null).getPayload()).isEqualTo(JSON_SAVED + " ");
+    assertThat(getJedis().ttl(KEY + ":#etag1:0")).isBetween(1L, 30L);
+    assertThat(getJedis().ttl(KEY + ":#etag2:0")).isGreaterThan(30L);
+  }
+
+  @Test
+  public void chunkedEntryOfRegionWithoutTtlShouldExpireAfterChunkTtl() throws CacheRepositoryException {
+
+    //  given
+    RedisCacheRepository chunked = RedisCacheRepositoryConfigBuilder.build(ConfigFactory.parseString(
+            "dynks.redis{ chunkThreshold = 10, chunkSize = 8, chunkTtl = 1h }").withFallback(ConfigFactory.load()));
+
+    //  when
+    chunked.upsert(KEY, JSON_SAVED, "etag1", UTF8_JSON, UTF8, regionFor(0, HOURS));
+
+    //  then
+    assertThat(getJedis().ttl(KEY)).isBetween(3500L, 3600L);
+    assertThat(getJedis().ttl(KEY + ":#etag1:0")).isBetween(3500L, 3600L);
+  }
+
+  @Test
+  public void chunkedEntryShouldBeReadInPartsOfChunks() throws CacheRepositoryException, IOException {
+
+    //  given
+    RedisCacheRepository chunked = RedisCacheRepositoryConfigBuilder.build(ConfigFactory.parseString(
+            "dynks.redis{ chunkThreshold = 10, chunkSize = 8, chunksPerRead = 2 }").withFallback(ConfigFactory.load()));
+    chunked.upsert(KEY, JSON_SAVED, "etag1", UTF8_JSON, UTF8, regionFor(999, HOURS));
+    ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+    //  when
+    CacheQueryResult result = chunked.fetchIfChanged(KEY, null);
+    PayloadParts parts = result.openParts();
+    ByteBuffer part;
+    while ((part = parts.next()) != null) {
+      assertThat(part.remaining()).isLessThanOrEqualTo(8);
+      written.write(part.array(), part.arrayOffset() + part.position(), part.remaining());
+    }
+
+    //  then
+    assertThat(result.getKnownPayloadSize()).isEqualTo(-1);
+    assertThat(written.toString("UTF-8")).isEqualTo(JSON_SAVED);
+  }
+
+  @Test
+  public void binaryEntryShouldBeReturnedInOriginalEncoding() throws CacheRepositoryException, IOException {
+
+    //  given
+    RedisCacheRepository binary = RedisCacheRepositoryConfigBuilder.build(ConfigFactory.parseString(
+            "dynks.redis.entryFormat = BINARY").withFallback(ConfigFactory.load()));
+    String payload = "ąśćźżęłóĄŚĆŻŹĘŁÓ";
+    byte[] encoded = payload.getBytes("ISO-8859-2");
+    ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+    //  when
+    binary.upsert(KEY, encoded, "etag1", "text/plain; charset=ISO-8859-2", "ISO-8859-2", regionFor(999, HOURS), null);
+    CacheQueryResult result = binary.fetchIfChanged(KEY, null);
+    result.writeTo(written);
+
+    //  then
+    assertThat(getJedis().type(KEY)).isEqualTo("string");
+    assertThat(result.getStoredEtag()).isEqualTo("etag1");
+    assertThat(result.getContentType()).isEqualTo("text/plain; charset=ISO-8859-2");
+    assertThat(result.getEncoding()).isEqualTo("ISO-8859-2");
+    assertThat(result.getPayloadSize()).isEqualTo(encoded.length);
+    assertThat(written.toByteArray()).isEqualTo(encoded);
+    assertThat(binary.fetchIfChanged(KEY, "etag1").getStoredEtag()).isNull();
+    assertThat(binary.fetchIfChanged(KEY, "etag0").getPayload()).isEqualTo(payload);
+  }
+
+  @Test
+  public void entriesWrittenInOtherFormatShouldBeReadAndReplaced() throws CacheRepositoryException {
+
+    //  given
+    RedisCacheRepository binary = RedisCacheRepositoryConfigBuilder.build(ConfigFactory.parseString(
+            "dynks.redis.entryFormat = BINARY").withFallback(ConfigFactory.load()));
+    repo.upsert(KEY, JSON_SAVED, "etag1", UTF8_JSON, UTF8, regionFor(999, HOURS));
+
+    //  when
+    CacheQueryResult hashReadByBinary = binary.fetchIfChanged(KEY, null);
+    binary.upsert(KEY, "{}", "etag2", UTF8_JSON, UTF8, regionFor(999, HOURS));
+    CacheQueryResult binaryReadByHash = repo.fetchIfChanged(KEY, "etag1");
+    CacheQueryResult notChanged = repo.fetchIfChanged(KEY, "etag2");
+    repo.upsert(KEY, "[]", "etag3", UTF8_JSON, UTF8, regionFor(999, HOURS));
+
+    //  then
+    assertThat(hashReadByBinary.getPayload()).isEqualTo(JSON_SAVED);
+    assertThat(hashReadByBinary.getStoredEtag()).isEqualTo("etag1");
+    assertThat(binaryReadByHash.getPayload()).isEqualTo("{}");
+    assertThat(binaryReadByHash.getStoredEtag()).isEqualTo("etag2");
+    assertThat(notChanged.isUpsertNeeded()).isFalse();
+    assertThat(notChanged.getStoredEtag()).isNull();
+    assertValueExist(KEY, "etag3", "[]", UTF8_JSON, UTF8);
+  }
+
   @Test
   public void upsertValueEvenIfKeyExistsWithDifferentEtag() throws CacheRepositoryException {
 
@@ -346,6 +548,93 @@ public class RedisCacheRepositoryTest {
 
   }
 
+  @Test
+  public void evictRegionAfterWarmUp() throws CacheRepositoryException {
+
+    //  given
+    getJedis().scriptFlush();
+    havingEntryCached("tst:warm:1", JSON_SAVED, of(JSON_SAVED, etagBuilder), UTF8_JSON, UTF8);
+    repo.warmUp();
+
+    //  when
+    long removed = repo.evictRegion(forRegion("warm"));
+
+    //  then
+    assertThat(removed).isEqualTo(1);
+    assertValueNotExist("tst:warm:1");
+  }
+
+  @Test
+  public void evictOldestEntriesOfRegionExceedingQuota() throws CacheRepositoryException {
+
+    //  given
+    CacheRegion region = new CacheRegion("quota", 30, TimeUnit.MINUTES, new NamespacedURIKeyStrategy("tst"), 0, 1,
+            new RegionQuota(0, 2, EVICT_OLDEST));
+    repo.evictRegion(region);
+
+    //  when
+    repo.upsert("tst:quota:/1", JSON_SAVED, "e1", UTF8_JSON, UTF8, region);
+    repo.upsert("tst:quota:/2", JSON_SAVED, "e2", UTF8_JSON, UTF8, region);
+    repo.upsert("tst:quota:/3", JSON_SAVED, "e3", UTF8_JSON, UTF8, region);
+
+    //  then
+    assertValueNotExist("tst:quota:/1");
+    assertValueExist("tst:quota:/2");
+    assertValueExist("tst:quota:/3");
+    assertThat(repo.getAccounting().getEvicted()).isEqualTo(1);
+    try (Jedis jedis = getJedis()) {
+      assertThat(repo.getAccounting().usageOf(jedis, region)).containsExactly(2 * ("tst:quota:/1".length() + JSON_SAVED.length()), 2);
+    }
+  }
+
+  @Test
+  public void expireChunksOfEntriesEvictedToFitInQuota() throws CacheRepositoryException {
+
+    //  given
+    RedisCacheRepository chunked = RedisCacheRepositoryConfigBuilder.build(ConfigFactory.parseString(
+            "dynks.redis{ chunkThreshold = 10, chunkSize = 8 }").withFallback(ConfigFactory.load()));
+    CacheRegion region = new CacheRegion("chunkquota", 0, TimeUnit.MINUTES, new NamespacedURIKeyStrategy("tst"), 0, 1,
+            new RegionQuota(0, 1, EVICT_OLDEST));
+    chunked.evictRegion(region);
+
+    //  when
+    chunked.upsert("tst:chunkquota:/1", JSON_SAVED, "e1", UTF8_JSON, UTF8, region);
+    chunked.upsert("tst:chunkquota:/2", JSON_SAVED, "e2", UTF8_JSON, UTF8, region);
+
+    //  then
+    assertValueNotExist("tst:chunkquota:/1");
+    assertThat(getJedis().ttl("tst:chunkquota:/1:#e1:0")).isBetween(1L, 30L);
+    assertThat(chunked.fetchIfChanged("tst:chunkquota:/2", null).getPayload()).isEqualTo(JSON_SAVED);
+    assertThat(chunked.getAccounting().getEvicted()).isEqualTo(1);
+  }
+
+  @Test
+  public void rejectEntriesOfRegionExceedingQuota() throws CacheRepositoryException, InterruptedException {
+
+    //  given
+    CacheRegion region = new CacheRegion("rejecting", 30, TimeUnit.MINUTES, new NamespacedURIKeyStrategy("tst"), 0, 1,
+            new RegionQuota(0, 1, REJECT));
+    repo.evictRegion(region);
+    repo.upsert("tst:rejecting:/1", JSON_SAVED, "e1", UTF8_JSON, UTF8, region);
+    repo.upsert("tst:rejecting:/2", JSON_SAVED, "e2", UTF8_JSON, UTF8, region);
+
+    //  when
+    repo.upsert("tst:rejecting:/3", JSON_SAVED, "e3", UTF8_JSON, UTF8, region);
+
+    //  then
+    assertValueNotExist("tst:rejecting:/3");
+    assertThat(repo.getAccounting().getRejected()).isEqualTo(1);
+
+    //  when
+    repo.remove("tst:rejecting:/2");
+    Thread.sleep(RECHECK_INTERVAL_IN_MILLIS + 100);
+    repo.upsert("tst:rejecting:/3", JSON_SAVED, "e3", UTF8_JSON, UTF8, region);
+
+    //  then
+    assertValueExist("tst:rejecting:/3");
+    assertThat(repo.getAccounting().getRejected()).isEqualTo(1);
+  }
+
   //  test utils
 
   private Jedis getJedis() {
@@ -10,7 +10,12 @@ import javax.servlet.http.HttpServletRequest;
 import java.util.concurrent.TimeUnit;
 
 import static com.typesafe.config.ConfigFactory.load;
+import static dynks.cache.CacheRegion.ALWAYS_ADMITTED;
+import static dynks.cache.RegionQuota.OnExceeded.REJECT;
+import static dynks.cache.CacheRegion.UNLIMITED_ENTRY_SIZE;
 import static dynks.cache.test.DynksAssertions.assertThat;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
 import static org.junit.rules.ExpectedException.none;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -111,6 +116,32 @@ public class ResponseCacheByURIBuilderTest {
     assertThat(policy.getRegions().get(new URIMatcher("/api/v1/events/{D}"))).isEqualTo(new CacheRegion("events", 4, TimeUnit.MILLISECONDS, keyStrategy));
   }
 
+  @Test
+  public void loadQueryParametersWhitelistPerRegion() {
+
+    //  given
+    Config conf = load("dynks-test-query-parameters");
+
+    //  when
+    CacheByURIRegionRepository policy = ResponseCacheByURIBuilder.build(conf);
+
+    //  then
+    assertThat(policy.getRegions().get(new URIMatcher("/api/v1/bestsellers/{D}")).getKeyStrategy())
+            .isInstanceOf(NamespacedURIKeyStrategy.class);
+    assertThat(policy.getRegions().get(new URIMatcher("/api/v1/search")).getKeyStrategy())
+            .isEqualTo(new QueryStringKeyStrategy("rm-test", asList("q", "page"), singletonList("utm_")));
+    assertThat(policy.getRegions().get(new URIMatcher("/api/v1/listing")).getKeyStrategy())
+            .isEqualTo(new QueryStringKeyStrategy("rm-test", singletonList("*"), asList("utm_", "fbclid")));
+    assertThat(policy.getRegions().get(new URIMatcher("/api/v1/facets")).getKeyStrategy())
+            .isEqualTo(new HashedKeyStrategy(new QueryStringKeyStrategy("rm-test", singletonList("*"), singletonList("utm_"))));
+    assertThat(policy.getRegions().get(new URIMatcher("/api/v1/facets")).getMaxEntrySize()).isEqualTo(2 * 1024 * 1024);
+    assertThat(policy.getRegions().get(new URIMatcher("/api/v1/search")).getMaxEntrySize()).isEqualTo(UNLIMITED_ENTRY_SIZE);
+    assertThat(policy.getRegions().get(new URIMatcher("/api/v1/facets")).getAdmitAfter()).isEqualTo(3);
+    assertThat(policy.getRegions().get(new URIMatcher("/api/v1/search")).getAdmitAfter()).isEqualTo(ALWAYS_ADMITTED);
+    assertThat(policy.getRegions().get(new URIMatcher("/api/v1/listing")).getQuota()).isEqualTo(new RegionQuota(10 * 1024 * 1024, 0, REJECT));
+    assertThat(policy.getRegions().get(new URIMatcher("/api/v1/search")).getQuota()).isEqualTo(RegionQuota.UNLIMITED);
+  }
+
   private HttpServletRequest forURI(final String uri) {
     HttpServletRequest request = mock(HttpServletRequest.class);
     when(request.getRequestURI()).thenReturn(uri);
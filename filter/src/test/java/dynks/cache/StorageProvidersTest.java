@@ -0,0 +1,39 @@
+package dynks.cache;
+
+import com.typesafe.config.ConfigFactory;
+import dynks.local.HeapCacheRepository;
+import org.junit.Test;
+
+import java.util.Set;
+
+import static dynks.cache.test.DynksAssertions.assertThat;
+
+public class StorageProvidersTest {
+
+  @Test
+  public void findProvidersShippedWithDynks() {
+
+    //  when
+    Set<String> names = StorageProviders.available().keySet();
+
+    //  then
+    assertThat(names).contains("REDIS", "REDIS_NIO", "REDIS_CLUSTER", "REDIS_SHARDED", "HEAP", "OFF_HEAP", "MAPPED");
+  }
+
+  @Test
+  public void createRepositoryOfGivenStorage() {
+
+    //  when
+    CacheRepository repository = StorageProviders.repositoryFor("HEAP",
+            ConfigFactory.parseString("dynks.heap.capacity = 1M").withFallback(ConfigFactory.load()));
+
+    //  then
+    assertThat(repository).isInstanceOf(HeapCacheRepository.class);
+    assertThat(((HeapCacheRepository) repository).getCapacity()).isEqualTo(1 << 20);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void throwIAEOnUnknownStorage() {
+    StorageProviders.repositoryFor("MEMCACHED", ConfigFactory.load());
+  }
+}
@@ -0,0 +1,184 @@
+package dynks.cache;
+
+import dynks.local.MappedCacheRepository;
+import dynks.local.OffHeapCacheRepository;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static dynks.cache.test.DynksAssertions.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class TieredCacheRepositoryTest {
+
+  private static final CacheRegion REGION = new CacheRegion("books", 10, MINUTES, new NamespacedURIKeyStrategy("tst"));
+  private static final CacheQueryResult NOT_FOUND = new CacheQueryResult(true, (byte[]) null, null, null, null);
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private OffHeapCacheRepository local;
+  private CacheRepository shared;
+
+  @Before
+  public void setUp() throws CacheRepositoryException {
+    local = new OffHeapCacheRepository(1 << 20, 64 * 1024, 1);
+    shared = mock(CacheRepository.class);
+    when(shared.fetchIfChanged(anyString(), anyString())).thenReturn(NOT_FOUND);
+  }
+
+  @Test
+  public void serveUpsertedEntryLocally() throws CacheRepositoryException {
+
+    //  given
+    TieredCacheRepository repository = new TieredCacheRepository(local, shared, 30000);
+
+    //  when
+    repository.upsert("tst:books:/1", "{}".getBytes(UTF_8), "e1", "application/json", "UTF-8", REGION, null);
+    CacheQueryResult result = repository.fetchIfChanged("tst:books:/1", "e0");
+
+    //  then
+    assertThat(result.getPayload()).isEqualTo("{}");
+    verify(shared).upsert("tst:books:/1", "{}".getBytes(UTF_8), "e1", "application/json", "UTF-8", REGION, null);
+    verify(shared, never()).fetchIfChanged(anyString(), anyString());
+  }
+
+  @Test
+  public void copyEntryFoundInSharedTierOfRegisteredRegion() throws CacheRepositoryException {
+
+    //  given
+    TieredCacheRepository repository = new TieredCacheRepository(local, shared, 30000);
+    repository.register(singletonList(REGION));
+    when(shared.fetchIfChanged("tst:books:/1", null)).thenReturn(new CacheQueryResult(false, "{}", "e1", "application/json", "UTF-8"));
+
+    //  when
+    repository.fetchIfChanged("tst:books:/1", null);
+    CacheQueryResult second = repository.fetchIfChanged("tst:books:/1", null);
+
+    //  then
+    assertThat(second.getPayload()).isEqualTo("{}");
+    assertThat(second.getStoredEtag()).isEqualTo("e1");
+    verify(shared, times(1)).fetchIfChanged("tst:books:/1", null);
+  }
+
+  @Test
+  public void notCopyEntryOfUnknownRegion() throws CacheRepositoryException {
+
+    //  given
+    TieredCacheRepository repository = new TieredCacheRepository(local, shared, 30000);
+    when(shared.fetchIfChanged("tst:books:/1", null)).thenReturn(new CacheQueryResult(false, "{}", "e1", "application/json", "UTF-8"));
+
+    //  when
+    repository.fetchIfChanged("tst:books:/1", null);
+    repository.fetchIfChanged("tst:books:/1", null);
+
+    //  then
+    verify(shared, times(2)).fetchIfChanged("tst:books:/1", null);
+  }
+
+  @Test
+  public void keepEntriesLocallyAtMostMaxLocalTtl() throws CacheRepositoryException, InterruptedException {
+
+    //  given
+    TieredCacheRepository repository = new TieredCacheRepository(local, shared, 50);
+    repository.upsert("tst:books:/1", "{}".getBytes(UTF_8), "e1", "application/json", "UTF-8", REGION, null);
+
+    //  when
+    Thread.sleep(80);
+    CacheQueryResult result = repository.fetchIfChanged("tst:books:/1", "e0");
+
+    //  then
+    assertThat(result.isUpsertNeeded()).isTrue();
+    verify(shared).fetchIfChanged("tst:books:/1", "e0");
+  }
+
+  @Test
+  public void removeAndEvictFromBothTiers() throws CacheRepositoryException {
+
+    //  given
+    TieredCacheRepository repository = new TieredCacheRepository(local, shared, 30000);
+    repository.upsert("tst:books:/1", "{}".getBytes(UTF_8), "e1", "application/json", "UTF-8", REGION, null);
+    repository.upsert("tst:books:/2", "{}".getBytes(UTF_8), "e2", "application/json", "UTF-8", REGION, null);
+
+    //  when
+    repository.remove("tst:books:/1");
+    repository.evictRegion(REGION);
+
+    //  then
+    assertThat(local.getEntries()).isEqualTo(0);
+    verify(shared).remove("tst:books:/1");
+    verify(shared).evictRegion(REGION);
+  }
+
+  @Test
+  public void serveRecoveredEntryAfterSharedTierConfirmsIt() throws CacheRepositoryException, IOException {
+
+    //  given
+    MappedCacheRepository persistent = recoveredWith("tst:books:/1", "e1");
+    when(shared.fetchIfChanged("tst:books:/1", "e1")).thenReturn(new CacheQueryResult(false, (byte[]) null, null, null, null));
+    TieredCacheRepository repository = new TieredCacheRepository(persistent, shared, 30000);
+
+    //  when
+    CacheQueryResult first = repository.fetchIfChanged("tst:books:/1", null);
+    CacheQueryResult second = repository.fetchIfChanged("tst:books:/1", null);
+
+    //  then
+    assertThat(first.getPayload()).isEqualTo("{}");
+    assertThat(second.getPayload()).isEqualTo("{}");
+    assertThat(persistent.getUnconfirmed()).isEqualTo(0);
+    verify(shared, times(1)).fetchIfChanged(anyString(), anyString());
+    persistent.dispose();
+  }
+
+  @Test
+  public void replaceRecoveredEntryChangedInSharedTier() throws CacheRepositoryException, IOException {
+
+    //  given
+    MappedCacheRepository persistent = recoveredWith("tst:books:/1", "e1");
+    when(shared.fetchIfChanged("tst:books:/1", "e1")).thenReturn(
+            new CacheQueryResult(false, "[]".getBytes(UTF_8), "e2", "application/json", "UTF-8"));
+    TieredCacheRepository repository = new TieredCacheRepository(persistent, shared, 30000);
+    repository.register(singletonList(REGION));
+
+    //  when
+    CacheQueryResult result = repository.fetchIfChanged("tst:books:/1", null);
+
+    //  then
+    assertThat(result.getPayload()).isEqualTo("[]");
+    assertThat(persistent.fetchIfChanged("tst:books:/1", null).getStoredEtag()).isEqualTo("e2");
+    assertThat(persistent.getUnconfirmed()).isEqualTo(0);
+    persistent.dispose();
+  }
+
+  @Test
+  public void removeRecoveredEntryNotFoundInSharedTier() throws CacheRepositoryException, IOException {
+
+    //  given
+    MappedCacheRepository persistent = recoveredWith("tst:books:/1", "e1");
+    TieredCacheRepository repository = new TieredCacheRepository(persistent, shared, 30000);
+
+    //  when
+    CacheQueryResult result = repository.fetchIfChanged("tst:books:/1", null);
+
+    //  then
+    assertThat(result.isUpsertNeeded()).isTrue();
+    assertThat(persistent.getEntries()).isEqualTo(0);
+    persistent.dispose();
+  }
+
+  private MappedCacheRepository recoveredWith(String key, String etag) throws CacheRepositoryException, IOException {
+    final Path directory = folder.getRoot().toPath();
+    MappedCacheRepository previous = new MappedCacheRepository(directory, 1 << 20, 64 * 1024, 1, 0);
+    previous.upsert(key, "{}".getBytes(UTF_8), etag, "application/json", "UTF-8", REGION, null);
+    previous.dispose();
+    return new MappedCacheRepository(directory, 1 << 20, 64 * 1024, 1, 0);
+  }
+}
@@ -0,0 +1,169 @@
+package dynks.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static dynks.cache.WriteBehindCacheRepository.Overflow.CALLER_RUNS;
+import static dynks.cache.WriteBehindCacheRepository.Overflow.DROP;
+import static dynks.cache.test.DynksAssertions.assertThat;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class WriteBehindCacheRepositoryTest {
+
+  private static final CacheRegion REGION = new CacheRegion("books", 10, MINUTES, new NamespacedURIKeyStrategy("tst"));
+  private static final CacheRegion OTHER_REGION = new CacheRegion("users", 10, MINUTES, new NamespacedURIKeyStrategy("tst"));
+
+  private CacheRepository delegate;
+
+  @Before
+  public void setUp() {
+    delegate = mock(CacheRepository.class);
+  }
+
+  @Test
+  public void writeOnlyLatestVersionOfPendingKey() throws CacheRepositoryException {
+
+    //  given
+    WriteBehindCacheRepository repository = new WriteBehindCacheRepository(delegate, 10, 10, DROP);
+
+    //  when
+    repository.upsert("a", "v1".getBytes(), "e1", "text/plain", "UTF-8", REGION, null);
+    repository.upsert("b", "v1".getBytes(), "e2", "text/plain", "UTF-8", REGION, null);
+    repository.upsert("a", "v2".getBytes(), "e3", "text/plain", "UTF-8", REGION, null);
+    repository.flush();
+
+    //  then
+    List<Upsert> batch = writtenBatch();
+    assertThat(batch).hasSize(2);
+    assertThat(batch.get(0).getKey()).isEqualTo("a");
+    assertThat(batch.get(0).getEtag()).isEqualTo("e3");
+    assertThat(batch.get(1).getKey()).isEqualTo("b");
+    assertThat(repository.getEnqueued()).isEqualTo(2);
+    assertThat(repository.getCoalesced()).isEqualTo(1);
+    assertThat(repository.getWritten()).isEqualTo(2);
+    assertThat(repository.getPending()).isEqualTo(0);
+  }
+
+  @Test
+  public void dropUpsertWhenQueueIsFull() throws CacheRepositoryException {
+
+    //  given
+    WriteBehindCacheRepository repository = new WriteBehindCacheRepository(delegate, 1, 10, DROP);
+    repository.upsert("a", "v1".getBytes(), "e1", "text/plain", "UTF-8", REGION, null);
+
+    //  when
+    repository.upsert("b", "v1".getBytes(), "e2", "text/plain", "UTF-8", REGION, null);
+    repository.flush();
+
+    //  then
+    assertThat(writtenBatch()).hasSize(1);
+    assertThat(repository.getDropped()).isEqualTo(1);
+    verify(delegate, never()).upsert(anyString(), any(byte[].class), anyString(), anyString(), anyString(), any(CacheRegion.class), anyString());
+  }
+
+  @Test
+  public void writeUpsertByCallerWhenQueueIsFull() throws CacheRepositoryException {
+
+    //  given
+    WriteBehindCacheRepository repository = new WriteBehindCacheRepository(delegate, 1, 10, CALLER_RUNS);
+    repository.upsert("a", "v1".getBytes(), "e1", "text/plain", "UTF-8", REGION, null);
+    byte[] content = "v1".getBytes();
+
+    //  when
+    repository.upsert("b", content, "e2", "text/plain", "UTF-8", REGION, null);
+
+    //  then
+    verify(delegate).upsert("b", content, "e2", "text/plain", "UTF-8", REGION, null);
+    assertThat(repository.getWrittenByCaller()).isEqualTo(1);
+  }
+
+  @Test
+  public void discardPendingUpsertsOfEvictedRegion() throws CacheRepositoryException {
+
+    //  given
+    WriteBehindCacheRepository repository = new WriteBehindCacheRepository(delegate, 10, 10, DROP);
+    repository.upsert("a", "v1".getBytes(), "e1", "text/plain", "UTF-8", REGION, null);
+    repository.upsert("b", "v1".getBytes(), "e2", "text/plain", "UTF-8", OTHER_REGION, null);
+
+    //  when
+    repository.evictRegion(REGION);
+    repository.flush();
+
+    //  then
+    verify(delegate).evictRegion(REGION);
+    List<Upsert> batch = writtenBatch();
+    assertThat(batch).hasSize(1);
+    assertThat(batch.get(0).getKey()).isEqualTo("b");
+  }
+
+  @Test
+  public void evictRegionOnlyAfterBatchTakenByWriterWasWritten() throws Exception {
+
+    //  given
+    final CountDownLatch writing = new CountDownLatch(1);
+    final CountDownLatch written = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      writing.countDown();
+      written.await(5, SECONDS);
+      return null;
+    }).when(delegate).upsert(anyListOf(Upsert.class));
+    WriteBehindCacheRepository repository = new WriteBehindCacheRepository(delegate, 10, 10, DROP);
+    repository.upsert("a", "v1".getBytes(), "e1", "text/plain", "UTF-8", REGION, null);
+    Thread writer = new Thread(repository::flush);
+    writer.start();
+    writing.await(5, SECONDS);
+
+    //  when
+    Thread evicting = new Thread(() -> {
+      try {
+        repository.evictRegion(REGION);
+      } catch (CacheRepositoryException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    evicting.start();
+    evicting.join(200);
+    verify(delegate, never()).evictRegion(REGION);
+    written.countDown();
+    evicting.join(5000);
+    writer.join(5000);
+
+    //  then
+    InOrder order = inOrder(delegate);
+    order.verify(delegate).upsert(anyListOf(Upsert.class));
+    order.verify(delegate).evictRegion(REGION);
+  }
+
+  @Test
+  public void countFailedWritesWithoutThrowing() throws CacheRepositoryException {
+
+    //  given
+    doThrow(new CacheRepositoryException(new IllegalStateException("redis down"))).when(delegate).upsert(anyListOf(Upsert.class));
+    WriteBehindCacheRepository repository = new WriteBehindCacheRepository(delegate, 10, 10, DROP);
+    repository.upsert("a", "v1".getBytes(), "e1", "text/plain", "UTF-8", REGION, null);
+
+    //  when
+    repository.flush();
+
+    //  then
+    assertThat(repository.getFailed()).isEqualTo(1);
+    assertThat(repository.getWritten()).isEqualTo(0);
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<Upsert> writtenBatch() throws CacheRepositoryException {
+    ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+    verify(delegate).upsert(captor.capture());
+    return captor.getValue();
+  }
+}
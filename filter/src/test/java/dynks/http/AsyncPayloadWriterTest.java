@@ -0,0 +1,112 @@
+package dynks.http;
+
+import dynks.cache.PayloadParts;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+import static java.util.Arrays.asList;
+
+import static dynks.cache.test.DynksAssertions.assertThat;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class AsyncPayloadWriterTest {
+
+  private static final byte[] PAYLOAD = "0123456789".getBytes();
+
+  private ServletOutputStream output;
+  private AsyncContext context;
+
+  @Before
+  public void setUp() {
+    output = mock(ServletOutputStream.class);
+    context = mock(AsyncContext.class);
+  }
+
+  @Test
+  public void writeSlicesOnlyWhileSocketIsWritable() throws IOException {
+
+    //  given
+    when(output.isReady()).thenReturn(true, true, false);
+    AsyncPayloadWriter writer = new AsyncPayloadWriter(PayloadParts.of(PAYLOAD, 0, PAYLOAD.length), 4, output, context);
+
+    //  when
+    writer.onWritePossible();
+
+    //  then
+    verify(output).write(PAYLOAD, 0, 4);
+    verify(output).write(PAYLOAD, 4, 4);
+    verify(output, never()).write(eq(PAYLOAD), eq(8), anyInt());
+    verify(context, never()).complete();
+    assertThat(writer.getPosition()).isEqualTo(8);
+  }
+
+  @Test
+  public void completeWhenLastSliceWasAccepted() throws IOException {
+
+    //  given
+    when(output.isReady()).thenReturn(true, true, false, true, true);
+    AsyncPayloadWriter writer = new AsyncPayloadWriter(PayloadParts.of(PAYLOAD, 0, PAYLOAD.length), 4, output, context);
+
+    //  when
+    writer.onWritePossible();
+    writer.onWritePossible();
+
+    //  then
+    verify(output).write(PAYLOAD, 8, 2);
+    verify(context).complete();
+    assertThat(writer.getPosition()).isEqualTo(PAYLOAD.length);
+  }
+
+  @Test
+  public void completeOnError() {
+
+    //  given
+    AsyncPayloadWriter writer = new AsyncPayloadWriter(PayloadParts.of(PAYLOAD, 0, PAYLOAD.length), 4, output, context);
+
+    //  when
+    writer.onError(new IOException("Broken pipe"));
+
+    //  then
+    verify(context).complete();
+  }
+
+  @Test
+  public void readNextPartOnlyAfterPreviousOneWasWritten() throws IOException {
+
+    //  given
+    final byte[] first = "012345".getBytes();
+    final byte[] second = "6789".getBytes();
+    final Iterator<byte[]> parts = asList(first, second).iterator();
+    final int[] read = new int[1];
+    final PayloadParts payload = () -> {
+      if (!parts.hasNext()) {
+        return null;
+      }
+      read[0]++;
+      return ByteBuffer.wrap(parts.next());
+    };
+    when(output.isReady()).thenReturn(true, true, false, true, true, true);
+    AsyncPayloadWriter writer = new AsyncPayloadWriter(payload, 4, output, context);
+
+    //  when
+    writer.onWritePossible();
+    int readAfterFirstPart = read[0];
+    writer.onWritePossible();
+
+    //  then
+    assertThat(readAfterFirstPart).isEqualTo(1);
+    verify(output).write(first, 0, 4);
+    verify(output).write(first, 4, 2);
+    verify(output).write(second, 0, 4);
+    verify(context).complete();
+    assertThat(writer.getPosition()).isEqualTo(10);
+  }
+}
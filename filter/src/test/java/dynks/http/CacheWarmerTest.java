@@ -0,0 +1,147 @@
+package dynks.http;
+
+import com.typesafe.config.ConfigFactory;
+import dynks.cache.CacheByURIRegionRepository;
+import dynks.cache.ResponseCacheByURIBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static dynks.cache.test.DynksAssertions.assertThat;
+import static java.util.Arrays.asList;
+
+public class CacheWarmerTest {
+
+  private final CacheByURIRegionRepository policy = ResponseCacheByURIBuilder.build(ConfigFactory.load("dynks-test"));
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void readUrisSkippingCommentsAndEmptyLines() throws IOException {
+
+    //  when
+    List<String> uris = CacheWarmer.read("classpath:dynks-prewarm-uris.txt");
+
+    //  then
+    assertThat(uris).containsExactly("/api/v1/bestsellers/1", "/api/v1/users/alice?details=true", "/not/cached", "/api/v1/events/7");
+  }
+
+  @Test
+  public void writeUrisReadableByWarmer() throws IOException {
+
+    //  given
+    File file = new File(folder.getRoot(), "hot.txt");
+
+    //  when
+    CacheWarmer.write(file.toPath(), asList("/b", "/a?x=1"));
+
+    //  then
+    assertThat(CacheWarmer.read(file.getPath())).containsExactly("/b", "/a?x=1");
+  }
+
+  @Test(expected = FileNotFoundException.class)
+  public void throwFNFEOnMissingSource() throws IOException {
+    CacheWarmer.read("classpath:missing.txt");
+  }
+
+  @Test
+  public void requestOnlyUrisBelongingToRegions() throws Exception {
+
+    //  given
+    final Queue<String> requested = new ConcurrentLinkedQueue<>();
+    CacheWarmer warmer = new CacheWarmer("http://localhost:8080/", policy, 2, 0, 1000, false) {
+      @Override
+      protected int request(String uri) {
+        requested.add(uri);
+        return 200;
+      }
+    };
+
+    //  when
+    long warmed = warmer.warm(CacheWarmer.read("classpath:dynks-prewarm-uris.txt"));
+
+    //  then
+    assertThat(warmed).isEqualTo(3);
+    assertThat(requested).containsOnly("/api/v1/bestsellers/1", "/api/v1/users/alice?details=true", "/api/v1/events/7");
+  }
+
+  @Test
+  public void notCountFailedRequests() throws Exception {
+
+    //  given
+    CacheWarmer warmer = new CacheWarmer("http://localhost:8080", policy, 1, 0, 1000, false) {
+      @Override
+      protected int request(String uri) throws IOException {
+        if (uri.contains("users")) {
+          throw new IOException("connection refused");
+        }
+        return uri.contains("events") ? 500 : 200;
+      }
+    };
+
+    //  when
+    long warmed = warmer.warm(asList("/api/v1/bestsellers/1", "/api/v1/users/alice", "/api/v1/events/7"));
+
+    //  then
+    assertThat(warmed).isEqualTo(1);
+  }
+
+  @Test
+  public void notExceedConcurrency() throws Exception {
+
+    //  given
+    final AtomicInteger inFlight = new AtomicInteger();
+    final AtomicInteger maxInFlight = new AtomicInteger();
+    CacheWarmer warmer = new CacheWarmer("http://localhost:8080", policy, 3, 0, 1000, false) {
+      @Override
+      protected int request(String uri) {
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+          Thread.sleep(5);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        inFlight.decrementAndGet();
+        return 200;
+      }
+    };
+
+    //  when
+    long warmed = warmer.warm(asList("/api/v1/bestsellers/1", "/api/v1/bestsellers/2", "/api/v1/bestsellers/3",
+            "/api/v1/bestsellers/4", "/api/v1/bestsellers/5", "/api/v1/bestsellers/6", "/api/v1/bestsellers/7"));
+
+    //  then
+    assertThat(warmed).isEqualTo(7);
+    assertThat(maxInFlight.get()).isLessThanOrEqualTo(3);
+  }
+
+  @Test
+  public void limitRequestsPerSecond() throws Exception {
+
+    //  given
+    CacheWarmer warmer = new CacheWarmer("http://localhost:8080", policy, 4, 20, 1000, false) {
+      @Override
+      protected int request(String uri) {
+        return 200;
+      }
+    };
+    long start = System.nanoTime();
+
+    //  when
+    warmer.warm(asList("/api/v1/bestsellers/1", "/api/v1/bestsellers/2", "/api/v1/bestsellers/3",
+            "/api/v1/bestsellers/4", "/api/v1/bestsellers/5"));
+
+    //  then
+    //  first request starts immediately, every next one 50ms later
+    assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(200_000_000L);
+  }
+}
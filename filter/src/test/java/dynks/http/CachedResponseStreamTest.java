@@ -0,0 +1,58 @@
+package dynks.http;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static dynks.cache.test.DynksAssertions.assertThat;
+import static org.mockito.Mockito.*;
+
+public class CachedResponseStreamTest {
+
+  private HttpServletResponse response;
+  private ServletOutputStream output;
+
+  @Before
+  public void setUp() throws IOException {
+    response = mock(HttpServletResponse.class);
+    output = mock(ServletOutputStream.class);
+    when(response.getOutputStream()).thenReturn(output);
+  }
+
+  @Test
+  public void forwardBytesToClientWhileCopyingToCache() throws IOException {
+
+    //  given
+    ByteArrayOutputStream cache = new ByteArrayOutputStream();
+    CachedResponseStream stream = new CachedResponseStream(response, cache);
+    byte[] payload = "{\"a\":1}".getBytes("UTF-8");
+
+    //  when
+    stream.write(payload, 0, payload.length);
+    stream.write('!');
+
+    //  then
+    verify(output).write(payload, 0, payload.length);
+    verify(output).write('!');
+    assertThat(cache.toString("UTF-8")).isEqualTo("{\"a\":1}!");
+  }
+
+  @Test
+  public void flushClientStreamButDoNotCloseItOnClose() throws IOException {
+
+    //  given
+    CachedResponseStream stream = new CachedResponseStream(response, new ByteArrayOutputStream());
+
+    //  when
+    stream.close();
+
+    //  then
+    verify(output).flush();
+    verify(output, never()).close();
+    assertThat(stream.closed()).isTrue();
+  }
+}
@@ -0,0 +1,150 @@
+package dynks.http;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static dynks.cache.Segments.join;
+import static dynks.cache.test.DynksAssertions.assertThat;
+
+public class CaptureBufferTest {
+
+  private static final int SEGMENT_SIZE = 4;
+
+  @Test
+  public void captureContentSpanningMultipleSegments() throws IOException {
+
+    //  given
+    SegmentPool pool = new SegmentPool(SEGMENT_SIZE, 10, false);
+    CaptureBuffer buffer = new CaptureBuffer(pool);
+    byte[] content = "0123456789abc".getBytes("UTF-8");
+
+    //  when
+    buffer.write(content, 0, 5);
+    buffer.write(content[5]);
+    buffer.write(content, 6, content.length - 6);
+
+    //  then
+    assertThat(buffer.size()).isEqualTo(content.length);
+    assertThat(buffer.toByteArray()).isEqualTo(content);
+  }
+
+  @Test
+  public void exposeSegmentsWithCapturedContent() throws IOException {
+
+    //  given
+    CaptureBuffer buffer = new CaptureBuffer(new SegmentPool(SEGMENT_SIZE, 10, true));
+    byte[] content = "0123456789abc".getBytes("UTF-8");
+    buffer.write(content);
+
+    //  when
+    List<ByteBuffer> segments = buffer.segments();
+
+    //  then
+    assertThat(join(segments, buffer.size())).isEqualTo(content);
+    //  views do not move position of segments still being written
+    assertThat(join(buffer.segments(), buffer.size())).isEqualTo(content);
+  }
+
+  @Test
+  public void writeCapturedContentToStream() throws IOException {
+
+    //  given
+    CaptureBuffer buffer = new CaptureBuffer(new SegmentPool(SEGMENT_SIZE, 10, true));
+    byte[] content = "direct segments are copied through transfer buffer".getBytes("UTF-8");
+    buffer.write(content);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    //  when
+    buffer.writeTo(out);
+
+    //  then
+    assertThat(out.toByteArray()).isEqualTo(content);
+    assertThat(buffer.toByteArray()).isEqualTo(content);
+  }
+
+  @Test
+  public void returnSegmentsToPoolOnRelease() throws IOException {
+
+    //  given
+    SegmentPool pool = new SegmentPool(SEGMENT_SIZE, 2, false);
+    CaptureBuffer buffer = new CaptureBuffer(pool);
+    buffer.write(new byte[SEGMENT_SIZE * 3]);
+
+    //  when
+    buffer.release();
+
+    //  then
+    assertThat(pool.getPooledSegments()).isEqualTo(2);
+    assertThat(buffer.size()).isEqualTo(0);
+    assertThat(buffer.toByteArray()).isEmpty();
+  }
+
+  @Test
+  public void stopCapturingAndReleaseSegmentsWhenLimitExceeded() throws IOException {
+
+    //  given
+    SegmentPool pool = new SegmentPool(SEGMENT_SIZE, 10, false);
+    CaptureBuffer buffer = new CaptureBuffer(pool, 10);
+    buffer.write(new byte[8]);
+
+    //  when
+    buffer.write(new byte[3]);
+    buffer.write(1);
+
+    //  then
+    assertThat(buffer.isOverflowed()).isTrue();
+    assertThat(buffer.size()).isEqualTo(0);
+    assertThat(pool.getPooledSegments()).isEqualTo(2);
+  }
+
+  @Test
+  public void captureContentOfSizeEqualToLimit() throws IOException {
+
+    //  given
+    CaptureBuffer buffer = new CaptureBuffer(new SegmentPool(SEGMENT_SIZE, 10, false), 10);
+
+    //  when
+    buffer.write(new byte[10]);
+
+    //  then
+    assertThat(buffer.isOverflowed()).isFalse();
+    assertThat(buffer.size()).isEqualTo(10);
+  }
+
+  @Test
+  public void stopCapturingWhenExpectedSizeExceedsLimit() throws IOException {
+
+    //  given
+    CaptureBuffer buffer = new CaptureBuffer(new SegmentPool(SEGMENT_SIZE, 10, false), 10);
+
+    //  when
+    buffer.expectSize(11);
+    buffer.write(1);
+
+    //  then
+    assertThat(buffer.isOverflowed()).isTrue();
+    assertThat(buffer.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void reuseReleasedSegments() throws IOException {
+
+    //  given
+    SegmentPool pool = new SegmentPool(SEGMENT_SIZE, 2, false);
+    CaptureBuffer first = new CaptureBuffer(pool);
+    first.write("abcd".getBytes("UTF-8"));
+    first.release();
+
+    //  when
+    CaptureBuffer second = new CaptureBuffer(pool);
+    second.write("xy".getBytes("UTF-8"));
+
+    //  then
+    assertThat(pool.getPooledSegments()).isEqualTo(0);
+    assertThat(second.toByteArray()).isEqualTo("xy".getBytes("UTF-8"));
+  }
+}
@@ -0,0 +1,108 @@
+package dynks.http;
+
+import com.typesafe.config.ConfigFactory;
+import dynks.cache.CacheByURIRegionRepository;
+import dynks.cache.ResponseCacheByURIBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+import static dynks.cache.test.DynksAssertions.assertThat;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+public class PrewarmTest {
+
+  private final CacheByURIRegionRepository policy = ResponseCacheByURIBuilder.build(ConfigFactory.load("dynks-test"));
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void replayAllSourcesIncludingRecordedOne() throws Exception {
+
+    //  given
+    final Queue<String> requested = new ConcurrentLinkedQueue<>();
+    File recorded = new File(folder.getRoot(), "hot.txt");
+    CacheWarmer.write(recorded.toPath(), singletonList("/api/v1/bestsellers/2"));
+    Prewarm prewarm = new Prewarm(warmer(requested, null), asList("classpath:dynks-prewarm-uris.txt", "missing.txt",
+            CacheWarmer.RECORDED_SOURCE), recorded.getPath());
+
+    //  when
+    long warmed = prewarm.warm();
+
+    //  then
+    assertThat(warmed).isEqualTo(4);
+    assertThat(requested).contains("/api/v1/bestsellers/1", "/api/v1/bestsellers/2");
+  }
+
+  @Test
+  public void replayAgainOnlyAfterPreviousReplayFinished() throws Exception {
+
+    //  given
+    final Queue<String> requested = new ConcurrentLinkedQueue<>();
+    final CountDownLatch release = new CountDownLatch(1);
+    Prewarm prewarm = new Prewarm(warmer(requested, release), singletonList("classpath:dynks-prewarm-uris.txt"), null);
+
+    //  when
+    boolean first = prewarm.start();
+    boolean second = prewarm.start();
+    release.countDown();
+    waitUntilFinished(prewarm);
+    boolean third = prewarm.start();
+    waitUntilFinished(prewarm);
+
+    //  then
+    assertThat(first).isTrue();
+    assertThat(second).isFalse();
+    assertThat(third).isTrue();
+    assertThat(prewarm.getLastWarmed()).isEqualTo(3);
+    assertThat(requested).hasSize(6);
+  }
+
+  @Test
+  public void stopReplayInProgress() throws Exception {
+
+    //  given
+    Prewarm prewarm = new Prewarm(warmer(new ConcurrentLinkedQueue<>(), null), singletonList("classpath:dynks-prewarm-uris.txt"), null);
+    prewarm.start(SECONDS.toMillis(60));
+
+    //  when
+    prewarm.stop();
+    waitUntilFinished(prewarm);
+
+    //  then
+    assertThat(prewarm.isRunning()).isFalse();
+    assertThat(prewarm.getLastWarmed()).isEqualTo(0);
+  }
+
+  private CacheWarmer warmer(Queue<String> requested, CountDownLatch release) {
+    return new CacheWarmer("http://localhost:8080", policy, 1, 0, 1000, false) {
+      @Override
+      protected int request(String uri) throws IOException {
+        if (release != null) {
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            throw new IOException("interrupted");
+          }
+        }
+        requested.add(uri);
+        return 200;
+      }
+    };
+  }
+
+  private static void waitUntilFinished(Prewarm prewarm) throws InterruptedException {
+    for (int i = 0; i < 500 && prewarm.isRunning(); i++) {
+      Thread.sleep(10);
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package dynks.local;
+
+import dynks.cache.CacheQueryResult;
+import dynks.cache.CacheRegion;
+import dynks.cache.CacheRepositoryException;
+import dynks.cache.NamespacedURIKeyStrategy;
+import org.junit.Test;
+
+import static dynks.cache.test.DynksAssertions.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+public class HeapCacheRepositoryTest {
+
+  private static final CacheRegion USERS = new CacheRegion("users", 1, HOURS, new NamespacedURIKeyStrategy("tst"));
+  private static final CacheRegion BOOKS = new CacheRegion("books", 0, HOURS, new NamespacedURIKeyStrategy("tst"));
+
+  @Test
+  public void returnStoredEntry() throws CacheRepositoryException {
+
+    //  given
+    HeapCacheRepository repository = new HeapCacheRepository(1 << 20);
+    repository.upsert("tst:users:/1", "{\"a\":1}".getBytes(UTF_8), "e1", "application/json", "UTF-8", USERS, null);
+
+    //  when
+    CacheQueryResult result = repository.fetchIfChanged("tst:users:/1", null);
+
+    //  then
+    assertThat(result.isUpsertNeeded()).isFalse();
+    assertThat(result.getPayload()).isEqualTo("{\"a\":1}");
+    assertThat(result.getStoredEtag()).isEqualTo("e1");
+    assertThat(result.getContentType()).isEqualTo("application/json");
+    assertThat(result.getEncoding()).isEqualTo("UTF-8");
+    assertThat(repository.fetchIfChanged("tst:users:/1", "e1").getStoredEtag()).isNull();
+  }
+
+  @Test
+  public void evictEntriesInOrderOfWritingOverCapacity() throws CacheRepositoryException {
+
+    //  given characters of keys and etags take 28 bytes
+    HeapCacheRepository repository = new HeapCacheRepository(3 * 128);
+    for (int i = 0; i < 3; i++) {
+      repository.upsert("tst:users:/" + i, new byte[100], "e" + i, "text/plain", "UTF-8", USERS, null);
+    }
+    repository.upsert("tst:users:/0", new byte[100], "n0", "text/plain", "UTF-8", USERS, null);
+
+    //  when
+    repository.upsert("tst:users:/3", new byte[100], "e3", "text/plain", "UTF-8", USERS, null);
+
+    //  then
+    assertThat(repository.fetchIfChanged("tst:users:/1", null).isUpsertNeeded()).isTrue();
+    assertThat(repository.fetchIfChanged("tst:users:/0", null).getStoredEtag()).isEqualTo("n0");
+    assertThat(repository.getEntries()).isEqualTo(3);
+    assertThat(repository.getAllocatedBytes()).isEqualTo(3 * 128);
+    assertThat(repository.getEvicted()).isEqualTo(1);
+  }
+
+  @Test
+  public void notReturnExpiredEntry() throws CacheRepositoryException, InterruptedException {
+
+    //  given
+    HeapCacheRepository repository = new HeapCacheRepository(1 << 20);
+    CacheRegion region = new CacheRegion("short", 50, MILLISECONDS, new NamespacedURIKeyStrategy("tst"));
+    repository.upsert("tst:short:/1", "{}".getBytes(UTF_8), "e1", "application/json", "UTF-8", region, null);
+
+    //  when
+    Thread.sleep(80);
+
+    //  then
+    assertThat(repository.fetchIfChanged("tst:short:/1", null).isUpsertNeeded()).isTrue();
+  }
+
+  @Test
+  public void evictOnlyEntriesOfGivenRegion() throws CacheRepositoryException {
+
+    //  given
+    HeapCacheRepository repository = new HeapCacheRepository(1 << 20);
+    for (int i = 0; i < 10; i++) {
+      repository.upsert("tst:users:/" + i, "{}".getBytes(UTF_8), "e", "application/json", "UTF-8", USERS, null);
+      repository.upsert("tst:books:/" + i, "{}".getBytes(UTF_8), "e", "application/json", "UTF-8", BOOKS, null);
+    }
+
+    //  when
+    long removed = repository.evictRegion(USERS);
+
+    //  then
+    assertThat(removed).isEqualTo(10);
+    assertThat(repository.getEntries()).isEqualTo(10);
+    assertThat(repository.fetchIfChanged("tst:books:/5", null).isUpsertNeeded()).isFalse();
+  }
+}
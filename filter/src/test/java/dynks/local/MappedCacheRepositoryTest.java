@@ -0,0 +1,172 @@
+package dynks.local;
+
+import dynks.cache.CacheQueryResult;
+import dynks.cache.CacheRegion;
+import dynks.cache.CacheRepositoryException;
+import dynks.cache.NamespacedURIKeyStrategy;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static dynks.cache.test.DynksAssertions.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+public class MappedCacheRepositoryTest {
+
+  private static final CacheRegion USERS = new CacheRegion("users", 1, HOURS, new NamespacedURIKeyStrategy("tst"));
+  private static final CacheRegion BOOKS = new CacheRegion("books", 0, HOURS, new NamespacedURIKeyStrategy("tst"));
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void recoverEntriesAfterRestart() throws CacheRepositoryException, IOException {
+
+    //  given
+    Path directory = folder.getRoot().toPath();
+    MappedCacheRepository repository = new MappedCacheRepository(directory, 1 << 20, 64 * 1024, 4, 0.5);
+    for (int i = 0; i < 100; i++) {
+      repository.upsert("tst:books:/" + i, ("b" + i).getBytes(UTF_8), "e" + i, "text/plain", "ISO-8859-2", BOOKS, null);
+    }
+    repository.upsert("tst:books:/6", "new".getBytes(UTF_8), "n6", "application/json", "UTF-8", BOOKS, null);
+    repository.dispose();
+
+    //  when
+    repository = new MappedCacheRepository(directory, 1 << 20, 64 * 1024, 4, 0.5);
+    CacheQueryResult replaced = repository.fetchIfChanged("tst:books:/6", null);
+
+    //  then
+    assertThat(repository.getRecovered()).isEqualTo(100);
+    assertThat(repository.getUnconfirmed()).isEqualTo(100);
+    assertThat(repository.fetchIfChanged("tst:books:/7", null).getPayload()).isEqualTo("b7");
+    assertThat(replaced.getPayload()).isEqualTo("new");
+    assertThat(replaced.getStoredEtag()).isEqualTo("n6");
+    assertThat(replaced.getContentType()).isEqualTo("application/json");
+    repository.dispose();
+  }
+
+  @Test
+  public void notRecoverRemovedEvictedAndExpiredEntries() throws CacheRepositoryException, IOException, InterruptedException {
+
+    //  given
+    Path directory = folder.getRoot().toPath();
+    CacheRegion expiring = new CacheRegion("short", 50, MILLISECONDS, new NamespacedURIKeyStrategy("tst"));
+    MappedCacheRepository repository = new MappedCacheRepository(directory, 1 << 20, 64 * 1024, 4, 0.5);
+    for (int i = 0; i < 10; i++) {
+      repository.upsert("tst:users:/" + i, "{}".getBytes(UTF_8), "e", "application/json", "UTF-8", USERS, null);
+      repository.upsert("tst:books:/" + i, "{}".getBytes(UTF_8), "e", "application/json", "UTF-8", BOOKS, null);
+      repository.upsert("tst:short:/" + i, "{}".getBytes(UTF_8), "e", "application/json", "UTF-8", expiring, null);
+    }
+    repository.evictRegion(USERS);
+    repository.remove("tst:books:/3");
+    repository.dispose();
+    Thread.sleep(80);
+
+    //  when
+    repository = new MappedCacheRepository(directory, 1 << 20, 64 * 1024, 4, 0.5);
+
+    //  then
+    assertThat(repository.getRecovered()).isEqualTo(9);
+    assertThat(repository.fetchIfChanged("tst:users:/1", null).isUpsertNeeded()).isTrue();
+    assertThat(repository.fetchIfChanged("tst:books:/3", null).isUpsertNeeded()).isTrue();
+    assertThat(repository.fetchIfChanged("tst:short:/1", null).isUpsertNeeded()).isTrue();
+    repository.dispose();
+  }
+
+  @Test
+  public void stopReplayAtCorruptedRecord() throws CacheRepositoryException, IOException {
+
+    //  given
+    Path directory = folder.getRoot().toPath();
+    MappedCacheRepository repository = new MappedCacheRepository(directory, 4096, 1024, 1, 0);
+    for (int i = 0; i < 3; i++) {
+      repository.upsert("tst:users:/" + i, new byte[100], "e" + i, "text/plain", "UTF-8", USERS, null);
+    }
+    repository.dispose();
+
+    Path slab = directory.resolve("0-0.slab");
+    byte[] content = Files.readAllBytes(slab);
+    //  inside payload of the second record, every record takes header, 29 bytes of attributes and payload
+    content[OffHeapCacheRepository.SLAB_HEADER_SIZE + OffHeapCacheRepository.RECORD_HEADER_SIZE + 129 + 100] ^= 1;
+    Files.write(slab, content);
+
+    //  when
+    repository = new MappedCacheRepository(directory, 4096, 1024, 1, 0);
+
+    //  then
+    assertThat(repository.getRecovered()).isEqualTo(1);
+    assertThat(repository.fetchIfChanged("tst:users:/0", null).isUpsertNeeded()).isFalse();
+    assertThat(repository.fetchIfChanged("tst:users:/1", null).isUpsertNeeded()).isTrue();
+    repository.dispose();
+  }
+
+  @Test
+  public void discardSlabsOfOtherLayout() throws CacheRepositoryException, IOException {
+
+    //  given
+    Path directory = folder.getRoot().toPath();
+    MappedCacheRepository repository = new MappedCacheRepository(directory, 4096, 1024, 1, 0);
+    repository.upsert("tst:users:/1", new byte[100], "e1", "text/plain", "UTF-8", USERS, null);
+    repository.dispose();
+
+    //  when
+    repository = new MappedCacheRepository(directory, 8192, 2048, 1, 0);
+
+    //  then
+    assertThat(repository.getRecovered()).isEqualTo(0);
+    assertThat(Files.exists(directory.resolve("0-0.slab"))).isFalse();
+    repository.dispose();
+  }
+
+  @Test
+  public void confirmRecoveredEntry() throws CacheRepositoryException, IOException {
+
+    //  given
+    Path directory = folder.getRoot().toPath();
+    MappedCacheRepository repository = new MappedCacheRepository(directory, 4096, 1024, 1, 0);
+    repository.upsert("tst:users:/1", "{}".getBytes(UTF_8), "e1", "application/json", "UTF-8", USERS, null);
+    repository.dispose();
+    repository = new MappedCacheRepository(directory, 4096, 1024, 1, 0);
+
+    //  when
+    String etag = repository.getUnconfirmedEtag("tst:users:/1");
+    repository.confirm("tst:users:/1");
+
+    //  then
+    assertThat(etag).isEqualTo("e1");
+    assertThat(repository.getUnconfirmedEtag("tst:users:/1")).isNull();
+    assertThat(repository.getUnconfirmed()).isEqualTo(0);
+    repository.dispose();
+  }
+
+  @Test
+  public void compactSlabInsteadOfEvictingLongLivingEntries() throws CacheRepositoryException, IOException {
+
+    //  given
+    MappedCacheRepository repository = new MappedCacheRepository(folder.getRoot().toPath(), 4096, 1024, 1, 0.5);
+    repository.upsert("tst:users:/kept", new byte[50], "k", "text/plain", "UTF-8", USERS, null);
+
+    //  when all slabs are reused many times by entry replaced over and over
+    for (int i = 0; i < 200; i++) {
+      repository.upsert("tst:users:/hot", new byte[100], "h" + i, "text/plain", "UTF-8", USERS, null);
+    }
+
+    //  then
+    assertThat(repository.fetchIfChanged("tst:users:/kept", null).isUpsertNeeded()).isFalse();
+    assertThat(repository.fetchIfChanged("tst:users:/hot", null).getStoredEtag()).isEqualTo("h199");
+    assertThat(repository.getEvicted()).isEqualTo(0);
+    repository.dispose();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void throwISEWhenDirectoryIsAlreadyUsed() throws IOException {
+    new MappedCacheRepository(folder.getRoot().toPath(), 4096, 1024, 1, 0);
+    new MappedCacheRepository(folder.getRoot().toPath(), 4096, 1024, 1, 0);
+  }
+}
@@ -0,0 +1,242 @@
+package dynks.local;
+
+import dynks.cache.CacheQueryResult;
+import dynks.cache.CacheRegion;
+import dynks.cache.CacheRepositoryException;
+import dynks.cache.NamespacedURIKeyStrategy;
+import dynks.cache.PayloadParts;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static dynks.cache.test.DynksAssertions.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+public class OffHeapCacheRepositoryTest {
+
+  private static final CacheRegion USERS = new CacheRegion("users", 1, HOURS, new NamespacedURIKeyStrategy("tst"));
+  private static final CacheRegion BOOKS = new CacheRegion("books", 0, HOURS, new NamespacedURIKeyStrategy("tst"));
+
+  @Test
+  public void returnStoredEntry() throws CacheRepositoryException, IOException {
+
+    //  given
+    OffHeapCacheRepository repository = new OffHeapCacheRepository(4096, 1024, 1);
+    repository.upsert("tst:users:/1", "{\"a\":1}".getBytes(UTF_8), "e1", "application/json", "UTF-8", USERS, null);
+    ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+    //  when
+    CacheQueryResult result = repository.fetchIfChanged("tst:users:/1", null);
+    result.writeTo(written);
+
+    //  then
+    assertThat(result.isUpsertNeeded()).isFalse();
+    assertThat(result.getStoredEtag()).isEqualTo("e1");
+    assertThat(result.getContentType()).isEqualTo("application/json");
+    assertThat(result.getEncoding()).isEqualTo("UTF-8");
+    assertThat(result.getPayloadSize()).isEqualTo(7);
+    assertThat(result.isStreamed()).isTrue();
+    assertThat(written.toString("UTF-8")).isEqualTo("{\"a\":1}");
+    assertThat(repository.getHits()).isEqualTo(1);
+  }
+
+  @Test
+  public void readStoredEntryInParts() throws CacheRepositoryException, IOException {
+
+    //  given
+    OffHeapCacheRepository repository = new OffHeapCacheRepository(4096, 1024, 1);
+    repository.upsert("tst:users:/1", "{\"a\":1}".getBytes(UTF_8), "e1", "application/json", "UTF-8", USERS, null);
+    ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+    //  when
+    CacheQueryResult result = repository.fetchIfChanged("tst:users:/1", null);
+    PayloadParts parts = result.openParts();
+    ByteBuffer part;
+    while ((part = parts.next()) != null) {
+      written.write(part.array(), part.arrayOffset() + part.position(), part.remaining());
+    }
+
+    //  then
+    assertThat(result.getKnownPayloadSize()).isEqualTo(7);
+    assertThat(written.toString("UTF-8")).isEqualTo("{\"a\":1}");
+  }
+
+  @Test
+  public void returnNotChangedForTheSameEtag() throws CacheRepositoryException {
+
+    //  given
+    OffHeapCacheRepository repository = new OffHeapCacheRepository(4096, 1024, 1);
+    repository.upsert("tst:users:/1", "{}".getBytes(UTF_8), "e1", "application/json", "UTF-8", USERS, null);
+
+    //  when
+    CacheQueryResult result = repository.fetchIfChanged("tst:users:/1", "e1");
+
+    //  then
+    assertThat(result.isUpsertNeeded()).isFalse();
+    assertThat(result.getStoredEtag()).isNull();
+  }
+
+  @Test
+  public void writeLargePayloadInParts() throws CacheRepositoryException, IOException {
+
+    //  given
+    OffHeapCacheRepository repository = new OffHeapCacheRepository(1 << 20, 1 << 20, 1);
+    byte[] payload = new byte[100000];
+    new Random(1).nextBytes(payload);
+    repository.upsert("tst:users:/1", payload, "e1", "application/octet-stream", "ISO-8859-2", USERS, null);
+    ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+    //  when
+    repository.fetchIfChanged("tst:users:/1", "e0").writeTo(written);
+
+    //  then
+    assertThat(written.toByteArray()).isEqualTo(payload);
+  }
+
+  @Test
+  public void keepEntriesOfManyKeys() throws CacheRepositoryException {
+
+    //  given
+    OffHeapCacheRepository repository = new OffHeapCacheRepository(16 << 20, 1 << 20, 4);
+
+    //  when
+    for (int i = 0; i < 5000; i++) {
+      repository.upsert("tst:users:/" + i, ("v" + i).getBytes(UTF_8), "e" + i, "text/plain", "UTF-8", USERS, null);
+    }
+    for (int i = 0; i < 5000; i += 2) {
+      repository.remove("tst:users:/" + i);
+    }
+
+    //  then
+    assertThat(repository.getEntries()).isEqualTo(2500);
+    for (int i = 0; i < 5000; i++) {
+      CacheQueryResult result = repository.fetchIfChanged("tst:users:/" + i, null);
+      if (i % 2 == 0) {
+        assertThat(result.isUpsertNeeded()).isTrue();
+      } else {
+        assertThat(result.getPayload()).isEqualTo("v" + i);
+      }
+    }
+  }
+
+  @Test
+  public void replaceEntryOfTheSameKey() throws CacheRepositoryException {
+
+    //  given
+    OffHeapCacheRepository repository = new OffHeapCacheRepository(4096, 1024, 1);
+    repository.upsert("tst:users:/1", "{}".getBytes(UTF_8), "e1", "application/json", "UTF-8", USERS, null);
+
+    //  when
+    repository.upsert("tst:users:/1", "[]".getBytes(UTF_8), "e2", "application/json", "UTF-8", USERS, null);
+
+    //  then
+    assertThat(repository.getEntries()).isEqualTo(1);
+    assertThat(repository.fetchIfChanged("tst:users:/1", "e1").getPayload()).isEqualTo("[]");
+  }
+
+  @Test
+  public void reuseOldestSlabWhenAllAreUsed() throws CacheRepositoryException {
+
+    //  given two entries per slab
+    OffHeapCacheRepository repository = new OffHeapCacheRepository(4096, 1024, 1);
+    byte[] payload = new byte[400];
+    for (int i = 0; i < 8; i++) {
+      repository.upsert("tst:users:/" + i, payload, "e" + i, "text/plain", "UTF-8", USERS, null);
+    }
+    CacheQueryResult oldest = repository.fetchIfChanged("tst:users:/0", null);
+
+    //  when
+    repository.upsert("tst:users:/8", payload, "e8", "text/plain", "UTF-8", USERS, null);
+
+    //  then
+    assertThat(repository.fetchIfChanged("tst:users:/0", null).isUpsertNeeded()).isTrue();
+    assertThat(repository.fetchIfChanged("tst:users:/1", null).isUpsertNeeded()).isTrue();
+    assertThat(repository.fetchIfChanged("tst:users:/2", null).isUpsertNeeded()).isFalse();
+    assertThat(repository.getEvicted()).isEqualTo(2);
+    assertThat(repository.getAllocatedBytes()).isEqualTo(4096);
+    try {
+      oldest.writeTo(new ByteArrayOutputStream());
+      throw new AssertionError("Entry of reused slab should not be written");
+    } catch (IOException e) {
+      assertThat(e).hasMessageContaining("evicted");
+    }
+  }
+
+  @Test
+  public void keepEntriesOfOtherSlabsWhenSlabsAreReusedManyTimes() throws CacheRepositoryException {
+
+    //  given
+    OffHeapCacheRepository repository = new OffHeapCacheRepository(4096, 1024, 1);
+    byte[] payload = new byte[100];
+
+    //  when
+    for (int i = 0; i < 1000; i++) {
+      repository.upsert("tst:users:/" + i, payload, "e" + i, "text/plain", "UTF-8", USERS, null);
+    }
+
+    //  then entries of three most recent slabs are kept
+    for (int i = 1000 - 12; i < 1000; i++) {
+      assertThat(repository.fetchIfChanged("tst:users:/" + i, null).getStoredEtag()).isEqualTo("e" + i);
+    }
+    assertThat(repository.fetchIfChanged("tst:users:/0", null).isUpsertNeeded()).isTrue();
+  }
+
+  @Test
+  public void notStoreEntryLargerThanSlab() throws CacheRepositoryException {
+
+    //  given
+    OffHeapCacheRepository repository = new OffHeapCacheRepository(4096, 1024, 1);
+
+    //  when
+    repository.upsert("tst:users:/1", new byte[2000], "e1", "text/plain", "UTF-8", USERS, null);
+
+    //  then
+    assertThat(repository.fetchIfChanged("tst:users:/1", null).isUpsertNeeded()).isTrue();
+    assertThat(repository.getEntries()).isEqualTo(0);
+  }
+
+  @Test
+  public void notReturnExpiredEntry() throws CacheRepositoryException, InterruptedException {
+
+    //  given
+    OffHeapCacheRepository repository = new OffHeapCacheRepository(4096, 1024, 1);
+    CacheRegion region = new CacheRegion("short", 50, MILLISECONDS, new NamespacedURIKeyStrategy("tst"));
+    repository.upsert("tst:short:/1", "{}".getBytes(UTF_8), "e1", "application/json", "UTF-8", region, null);
+
+    //  when
+    Thread.sleep(80);
+
+    //  then
+    assertThat(repository.fetchIfChanged("tst:short:/1", null).isUpsertNeeded()).isTrue();
+    assertThat(repository.getMisses()).isEqualTo(1);
+  }
+
+  @Test
+  public void evictOnlyEntriesOfGivenRegion() throws CacheRepositoryException {
+
+    //  given
+    OffHeapCacheRepository repository = new OffHeapCacheRepository(1 << 20, 64 * 1024, 4);
+    for (int i = 0; i < 100; i++) {
+      repository.upsert("tst:users:/" + i, "{}".getBytes(UTF_8), "e", "application/json", "UTF-8", USERS, null);
+      repository.upsert("tst:books:/" + i, "{}".getBytes(UTF_8), "e", "application/json", "UTF-8", BOOKS, null);
+    }
+
+    //  when
+    long removed = repository.evictRegion(USERS);
+
+    //  then
+    assertThat(removed).isEqualTo(100);
+    assertThat(repository.getEntries()).isEqualTo(100);
+    assertThat(repository.fetchIfChanged("tst:books:/5", null).isUpsertNeeded()).isFalse();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void throwIAEOnCapacityBelowOneSlabPerSegment() {
+    new OffHeapCacheRepository(4096, 1024, 8);
+  }
+}
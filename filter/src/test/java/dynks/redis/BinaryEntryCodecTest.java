@@ -0,0 +1,109 @@
+package dynks.redis;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static dynks.cache.test.DynksAssertions.assertThat;
+import static dynks.redis.BinaryEntryCodec.HEADER_PROBE_SIZE;
+import static dynks.redis.BinaryEntryCodec.decode;
+import static dynks.redis.BinaryEntryCodec.encode;
+import static dynks.redis.BinaryEntryCodec.hasEtag;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.copyOf;
+import static java.util.Arrays.copyOfRange;
+
+public class BinaryEntryCodecTest {
+
+  private static final byte[] PAYLOAD = "{\"yourName\":\"alice\"}".getBytes(UTF_8);
+
+  @Test
+  public void decodeWhatWasEncoded() {
+
+    //  when
+    byte[] value = encode(PAYLOAD, "etag1", "application/json", "UTF-8", "/api/users/1", 0);
+    BinaryEntryCodec.Header header = decode(value);
+
+    //  then
+    assertThat(header.etag).isEqualTo("etag1");
+    assertThat(header.contentType).isEqualTo("application/json");
+    assertThat(header.encoding).isEqualTo("UTF-8");
+    assertThat(header.chunks).isEqualTo(0);
+    assertThat(copyOfRange(value, header.payloadOffset, value.length)).isEqualTo(PAYLOAD);
+  }
+
+  @Test
+  public void storeWellKnownContentTypeAndEncodingAsIds() {
+
+    //  when
+    byte[] value = encode(PAYLOAD, "etag1", "application/json", "UTF-8", null, 0);
+
+    //  then version, etag length + etag, chunks, content type id, encoding id, source length
+    assertThat(value.length).isEqualTo(1 + 1 + 5 + 1 + 1 + 1 + 1 + PAYLOAD.length);
+  }
+
+  @Test
+  public void storeOtherContentTypeAndEncodingInline() {
+
+    //  when
+    byte[] value = encode(new byte[0], "etag1", "text/plain; charset=ISO-8859-2", "Big5", null, 12);
+    BinaryEntryCodec.Header header = decode(value);
+
+    //  then
+    assertThat(header.contentType).isEqualTo("text/plain; charset=ISO-8859-2");
+    assertThat(header.encoding).isEqualTo("Big5");
+    assertThat(header.chunks).isEqualTo(12);
+    assertThat(header.payloadOffset).isEqualTo(value.length);
+  }
+
+  @Test
+  public void compareEtagUsingBeginningOfValue() {
+
+    //  given
+    byte[] large = new byte[HEADER_PROBE_SIZE * 4];
+    byte[] value = encode(large, "etag1", "application/json", "UTF-8", null, 0);
+    byte[] probe = copyOf(value, HEADER_PROBE_SIZE);
+
+    //  then
+    assertThat(hasEtag(probe, "etag1")).isTrue();
+    assertThat(hasEtag(probe, "etag2")).isFalse();
+    assertThat(hasEtag(probe, "etag")).isFalse();
+  }
+
+  @Test
+  public void notMatchEtagLongerThanProbe() {
+
+    //  given
+    char[] chars = new char[HEADER_PROBE_SIZE];
+    Arrays.fill(chars, 'e');
+    String etag = new String(chars);
+    byte[] value = encode(PAYLOAD, etag, "application/json", "UTF-8", null, 0);
+
+    //  then
+    assertThat(hasEtag(copyOf(value, HEADER_PROBE_SIZE), etag)).isFalse();
+    assertThat(hasEtag(value, etag)).isTrue();
+    assertThat(decode(value).etag).isEqualTo(etag);
+  }
+
+  @Test
+  public void treatUnknownVersionAsMissing() {
+
+    //  given
+    byte[] value = encode(PAYLOAD, "etag1", "application/json", "UTF-8", null, 0);
+    value[0] = 2;
+
+    //  then
+    assertThat(decode(value)).isNull();
+    assertThat(hasEtag(value, "etag1")).isFalse();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void throwIAEOnTruncatedHeader() {
+
+    //  given
+    byte[] value = encode(PAYLOAD, "etag1", "text/plain; charset=ISO-8859-2", "UTF-8", "/api/users/1", 0);
+
+    //  when
+    decode(copyOf(value, 10));
+  }
+}
@@ -0,0 +1,53 @@
+package dynks.redis;
+
+import dynks.redis.ClusterSlots.SlotRange;
+import org.junit.Test;
+
+import java.util.List;
+
+import static dynks.cache.test.DynksAssertions.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+
+public class ClusterSlotsTest {
+
+  @Test
+  public void parseRangesWithMastersAndReplicas() {
+
+    //  given
+    List<Object> reply = asList(
+            asList(0L, 8191L, node("10.0.0.1", 7000), node("10.0.0.2", 7001)),
+            asList(8192L, 16383L, node("10.0.0.3", 7000)));
+
+    //  when
+    List<SlotRange> ranges = ClusterSlots.parse(reply, "seed");
+
+    //  then
+    assertThat(ranges).hasSize(2);
+    assertThat(ranges.get(0).getStart()).isEqualTo(0);
+    assertThat(ranges.get(0).getEnd()).isEqualTo(8191);
+    assertThat(ClusterSlots.nameOf(ranges.get(0).getMaster())).isEqualTo("10.0.0.1:7000");
+    assertThat(ranges.get(0).getReplicas()).hasSize(1);
+    assertThat(ClusterSlots.nameOf(ranges.get(0).getReplicas().get(0))).isEqualTo("10.0.0.2:7001");
+    assertThat(ranges.get(1).getStart()).isEqualTo(8192);
+    assertThat(ranges.get(1).getEnd()).isEqualTo(16383);
+    assertThat(ranges.get(1).getReplicas()).isEmpty();
+  }
+
+  @Test
+  public void useQueriedHostForNodesWithoutHost() {
+
+    //  given
+    List<Object> reply = asList(asList(0L, 16383L, node("", 7000)));
+
+    //  when
+    List<SlotRange> ranges = ClusterSlots.parse(reply, "seed");
+
+    //  then
+    assertThat(ClusterSlots.nameOf(ranges.get(0).getMaster())).isEqualTo("seed:7000");
+  }
+
+  private static List<Object> node(String host, long port) {
+    return asList(host.getBytes(UTF_8), port, "id".getBytes(UTF_8));
+  }
+}
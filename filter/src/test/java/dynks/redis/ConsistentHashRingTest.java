@@ -0,0 +1,81 @@
+package dynks.redis;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static dynks.cache.test.DynksAssertions.assertThat;
+
+public class ConsistentHashRingTest {
+
+  private static final int KEYS = 30000;
+
+  @Test
+  public void spreadKeysEvenlyAcrossNodes() {
+
+    //  given
+    ConsistentHashRing<String> ring = new ConsistentHashRing<>(nodes("a:6379", "b:6379", "c:6379"), 160);
+    Map<String, Integer> counts = new HashMap<>();
+
+    //  when
+    for (int i = 0; i < KEYS; i++) {
+      counts.merge(ring.nodeFor("rm:search:/books/" + i), 1, Integer::sum);
+    }
+
+    //  then
+    assertThat(counts).hasSize(3);
+    for (int count : counts.values()) {
+      assertThat(count).isBetween(KEYS / 3 * 8 / 10, KEYS / 3 * 12 / 10);
+    }
+  }
+
+  @Test
+  public void moveOnlyKeysOfAddedNode() {
+
+    //  given
+    ConsistentHashRing<String> before = new ConsistentHashRing<>(nodes("a:6379", "b:6379", "c:6379"), 160);
+    ConsistentHashRing<String> after = new ConsistentHashRing<>(nodes("a:6379", "b:6379", "c:6379", "d:6379"), 160);
+    int moved = 0;
+
+    //  when
+    for (int i = 0; i < KEYS; i++) {
+      final String key = "rm:search:/books/" + i;
+      final String node = after.nodeFor(key);
+      if (!node.equals(before.nodeFor(key))) {
+        assertThat(node).isEqualTo("d:6379");
+        moved++;
+      }
+    }
+
+    //  then
+    assertThat(moved).isBetween(KEYS / 4 * 8 / 10, KEYS / 4 * 12 / 10);
+  }
+
+  @Test
+  public void placeNodesRegardlessOfTheirOrder() {
+
+    //  given
+    ConsistentHashRing<String> ring1 = new ConsistentHashRing<>(nodes("a:6379", "b:6379"), 16);
+    ConsistentHashRing<String> ring2 = new ConsistentHashRing<>(nodes("b:6379", "a:6379"), 16);
+
+    //  then
+    for (int i = 0; i < 1000; i++) {
+      assertThat(ring1.nodeFor("key" + i)).isEqualTo(ring2.nodeFor("key" + i));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void throwIAEOnNoNodes() {
+    new ConsistentHashRing<>(new HashMap<String, String>(), 160);
+  }
+
+  private static Map<String, String> nodes(String... names) {
+    Map<String, String> nodes = new LinkedHashMap<>();
+    for (String name : names) {
+      nodes.put(name, name);
+    }
+    return nodes;
+  }
+}
@@ -0,0 +1,128 @@
+package dynks.redis;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static dynks.redis.RespCodec.INCOMPLETE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Server on loopback speaking just enough of redis protocol to test clients: commands are decoded and passed to handler
+ * which decides what, when and in how many writes is replied.
+ */
+class FakeRedisServer implements Closeable {
+
+  interface Handler {
+
+    /**
+     * @param command arguments of command, the first one is its name
+     * @param out     stream of connection the command was received on
+     */
+    void handle(List<byte[]> command, OutputStream out) throws IOException;
+  }
+
+  private final ServerSocket server;
+  private final Handler handler;
+  private final List<Socket> clients = new CopyOnWriteArrayList<>();
+  private final AtomicInteger accepted = new AtomicInteger();
+
+  FakeRedisServer(Handler handler) throws IOException {
+    this.handler = handler;
+    this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+
+    final Thread acceptor = new Thread(this::accept, "fake-redis");
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  int getPort() {
+    return server.getLocalPort();
+  }
+
+  /**
+   * @return number of connections accepted since start
+   */
+  int getAccepted() {
+    return accepted.get();
+  }
+
+  /**
+   * Closes connections of all clients keeping server running.
+   */
+  void disconnectClients() throws IOException {
+    for (Socket client : clients) {
+      client.close();
+    }
+    clients.clear();
+  }
+
+  @Override
+  public void close() throws IOException {
+    server.close();
+    disconnectClients();
+  }
+
+  private void accept() {
+    try {
+      while (!server.isClosed()) {
+        final Socket client = server.accept();
+        client.setTcpNoDelay(true);
+        clients.add(client);
+        accepted.incrementAndGet();
+        final Thread thread = new Thread(() -> serve(client), "fake-redis-client");
+        thread.setDaemon(true);
+        thread.start();
+      }
+    } catch (IOException e) {
+      //  closed
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void serve(Socket client) {
+
+    ByteBuffer received = ByteBuffer.allocate(1024);
+    final byte[] chunk = new byte[1024];
+
+    try (InputStream in = client.getInputStream(); OutputStream out = client.getOutputStream()) {
+      int read;
+      while ((read = in.read(chunk)) >= 0) {
+
+        if (received.remaining() < read) {
+          final ByteBuffer larger = ByteBuffer.allocate((received.position() + read) * 2);
+          received.flip();
+          larger.put(received);
+          received = larger;
+        }
+        received.put(chunk, 0, read);
+
+        received.flip();
+        Object command;
+        while ((command = RespCodec.decode(received)) != INCOMPLETE) {
+          handler.handle((List<byte[]>) command, out);
+        }
+        received.compact();
+      }
+    } catch (IOException e) {
+      //  disconnected
+    }
+  }
+
+  static String nameOf(List<byte[]> command) {
+    return new String(command.get(0), UTF_8);
+  }
+
+  static void reply(OutputStream out, String reply) throws IOException {
+    out.write(reply.getBytes(UTF_8));
+    out.flush();
+  }
+}
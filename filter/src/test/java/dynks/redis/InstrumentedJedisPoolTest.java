@@ -0,0 +1,54 @@
+package dynks.redis;
+
+import org.junit.After;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.io.IOException;
+
+import static dynks.cache.test.DynksAssertions.assertThat;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Tests of pool instrumentation against {@link FakeRedisServer}, connections are only borrowed and returned.
+ */
+public class InstrumentedJedisPoolTest {
+
+  private FakeRedisServer server;
+  private InstrumentedJedisPool pool;
+
+  @After
+  public void tearDown() throws IOException {
+    if (pool != null) {
+      pool.destroy();
+    }
+    if (server != null) {
+      server.close();
+    }
+  }
+
+  @Test
+  public void measureConnectionBorrowedWhileHoldingOtherOneSeparately() throws Exception {
+
+    //  given
+    server = new FakeRedisServer((command, out) -> {
+      //  no commands sent
+    });
+    pool = new InstrumentedJedisPool(new JedisPoolConfig(), "localhost", server.getPort(), 1000);
+    final long start = System.nanoTime();
+
+    //  when
+    try (Jedis outer = pool.getResource()) {
+      Thread.sleep(50);
+      try (Jedis inner = pool.getResource()) {
+        assertThat(inner).isNotSameAs(outer);
+      }
+    }
+    final long elapsed = System.nanoTime() - start;
+
+    //  then
+    assertThat(pool.getReturned()).isEqualTo(2);
+    assertThat(pool.getHoldNanos()).isBetween(MILLISECONDS.toNanos(50), 2 * elapsed);
+  }
+}
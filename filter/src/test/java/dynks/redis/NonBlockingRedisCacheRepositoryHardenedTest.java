@@ -0,0 +1,224 @@
+package dynks.redis;
+
+import dynks.cache.CacheQueryResult;
+import dynks.cache.CacheRegion;
+import dynks.cache.CacheRepositoryException;
+import dynks.cache.NamespacedURIKeyStrategy;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import static dynks.cache.test.DynksAssertions.assertThat;
+import static dynks.redis.FakeRedisServer.nameOf;
+import static dynks.redis.FakeRedisServer.reply;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * Tests for NonBlockingRedisCacheRepository assuming errors are occurring in redis or on the connection, redis is
+ * replaced by {@link FakeRedisServer}.
+ */
+public class NonBlockingRedisCacheRepositoryHardenedTest {
+
+  private static final CacheRegion REGION = new CacheRegion("test", 1, HOURS, new NamespacedURIKeyStrategy("test"));
+
+  private FakeRedisServer server;
+  private NonBlockingRedisCacheRepository repo;
+
+  @After
+  public void tearDown() throws IOException {
+    if (repo != null) {
+      repo.dispose();
+    }
+    if (server != null) {
+      server.close();
+    }
+  }
+
+  @Test
+  public void throwCREWithTimeoutWhenRedisDoesNotReply() throws Exception {
+
+    //  given
+    server = new FakeRedisServer((command, out) -> {
+      //  never replying
+    });
+    repo = new NonBlockingRedisCacheRepository("localhost", server.getPort(), 1, 100, 1000);
+
+    //  when
+    try {
+      repo.fetchIfChanged("some", null);
+      fail("CacheRepositoryException expected");
+    } catch (CacheRepositoryException e) {
+
+      //  then
+      assertThat(e.getCause()).isInstanceOf(TimeoutException.class);
+    }
+  }
+
+  @Test
+  public void completeAsyncFetchWithCREOnErrorReply() throws Exception {
+
+    //  given
+    server = new FakeRedisServer((command, out) -> reply(out, "-ERR max number of clients reached\r\n"));
+    repo = new NonBlockingRedisCacheRepository("localhost", server.getPort(), 1, 1000, 1000);
+
+    //  when
+    Throwable error = causeOf(repo.fetchIfChangedAsync("some", "etag"));
+
+    //  then
+    assertThat(error).isInstanceOf(CacheRepositoryException.class);
+    assertThat(error.getCause()).isInstanceOf(RespException.class).hasMessage("ERR max number of clients reached");
+  }
+
+  @Test
+  public void throwCREOnErrorReplyToUpsert() throws Exception {
+
+    //  given
+    server = new FakeRedisServer((command, out) -> reply(out, "EXEC".equals(nameOf(command)) ? "-EXECABORT Transaction discarded\r\n"
+            : "HMSET".equals(nameOf(command)) ? "-OOM command not allowed\r\n" : "+OK\r\n"));
+    repo = new NonBlockingRedisCacheRepository("localhost", server.getPort(), 1, 1000, 1000);
+
+    //  when
+    try {
+      repo.upsert("some", "{}".getBytes(UTF_8), "etag", "application/json", "UTF-8", REGION, null);
+      fail("CacheRepositoryException expected");
+    } catch (CacheRepositoryException e) {
+
+      //  then
+      assertThat(e.getCause()).isInstanceOf(RespException.class).hasMessage("OOM command not allowed");
+    }
+  }
+
+  @Test
+  public void throwCREOnConnectionClosedByRedisAndReconnectOnNextUse() throws Exception {
+
+    //  given
+    server = new FakeRedisServer((command, out) -> {
+      if (server.getAccepted() == 1) {
+        server.disconnectClients();
+      } else {
+        reply(out, "$-1\r\n");
+      }
+    });
+    repo = new NonBlockingRedisCacheRepository("localhost", server.getPort(), 1, 1000, 1000);
+
+    //  when
+    try {
+      repo.fetchIfChanged("some", "etag");
+      fail("CacheRepositoryException expected");
+    } catch (CacheRepositoryException e) {
+      assertThat(e.getCause()).isInstanceOf(IOException.class);
+    }
+    CacheQueryResult result = repo.fetchIfChanged("some", "etag");
+
+    //  then
+    assertThat(result.isUpsertNeeded()).isTrue();
+    assertThat(server.getAccepted()).isEqualTo(2);
+  }
+
+  @Test
+  public void throwCREWhenRedisIsNotReachable() throws Exception {
+
+    //  given
+    server = new FakeRedisServer((command, out) -> reply(out, "+PONG\r\n"));
+    final int port = server.getPort();
+    server.close();
+    repo = new NonBlockingRedisCacheRepository("localhost", port, 1, 1000, 1000);
+
+    //  when
+    try {
+      repo.warmUp();
+      fail("CacheRepositoryException expected");
+    } catch (CacheRepositoryException e) {
+
+      //  then
+      assertThat(e.getCause()).isInstanceOf(IOException.class);
+    }
+  }
+
+  @Test
+  public void readEntryInBinaryFormatWhenHashCommandFailsWithWrongType() throws Exception {
+
+    //  given
+    final byte[] binary = BinaryEntryCodec.encode("{}".getBytes(UTF_8), "etag1", "application/json", "UTF-8", null, 0);
+    server = new FakeRedisServer((command, out) -> {
+      if ("GET".equals(nameOf(command))) {
+        bulk(out, binary);
+      } else {
+        reply(out, "-WRONGTYPE Operation against a key holding the wrong kind of value\r\n");
+      }
+    });
+    repo = new NonBlockingRedisCacheRepository("localhost", server.getPort(), 1, 1000, 1000);
+
+    //  when
+    CacheQueryResult changed = repo.fetchIfChanged("some", null);
+    CacheQueryResult notChanged = repo.fetchIfChanged("some", "etag1");
+
+    //  then
+    assertThat(changed.getPayload()).isEqualTo("{}");
+    assertThat(changed.getStoredEtag()).isEqualTo("etag1");
+    assertThat(notChanged.isUpsertNeeded()).isFalse();
+  }
+
+  @Test
+  public void failFastWhileConnectionIsBeingReconnected() throws Exception {
+
+    //  given
+    //  backlog is filled by connections never accepted so that connect of the repository is not completed
+    final List<SocketChannel> queued = new ArrayList<>();
+    try (ServerSocket notAccepting = new ServerSocket(0, 1)) {
+      for (int i = 0; i < 8; i++) {
+        final SocketChannel channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.connect(new InetSocketAddress("localhost", notAccepting.getLocalPort()));
+        queued.add(channel);
+      }
+      repo = new NonBlockingRedisCacheRepository("localhost", notAccepting.getLocalPort(), 1, 1000, 1000);
+      final CompletableFuture<CacheQueryResult> connecting = CompletableFuture.supplyAsync(() -> repo.fetchIfChangedAsync("some", null).join());
+      Thread.sleep(200);
+
+      //  when
+      final Throwable failedFast = causeOf(repo.fetchIfChangedAsync("some", null));
+
+      //  then
+      assertThat(failedFast).isInstanceOf(CacheRepositoryException.class);
+      assertThat(failedFast.getCause()).isInstanceOf(IOException.class).hasMessageContaining("is being reconnected");
+      assertThat(connecting.isDone()).isFalse();
+      assertThat(causeOf(connecting).getCause()).isInstanceOf(SocketTimeoutException.class);
+    } finally {
+      for (SocketChannel channel : queued) {
+        channel.close();
+      }
+    }
+  }
+
+  private static Throwable causeOf(CompletableFuture<?> future) throws Exception {
+    try {
+      future.get(5, SECONDS);
+    } catch (ExecutionException e) {
+      return e.getCause();
+    }
+    fail("Future should complete exceptionally");
+    return null;
+  }
+
+  private static void bulk(OutputStream out, byte[] value) throws IOException {
+    out.write(("$" + value.length + "\r\n").getBytes(UTF_8));
+    out.write(value);
+    out.write("\r\n".getBytes(UTF_8));
+    out.flush();
+  }
+}
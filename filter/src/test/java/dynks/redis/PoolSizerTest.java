@@ -0,0 +1,105 @@
+package dynks.redis;
+
+import org.junit.Test;
+
+import static dynks.cache.test.DynksAssertions.assertThat;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.mockito.Mockito.*;
+
+public class PoolSizerTest {
+
+  private final PoolSizer sizer = new PoolSizer(4, 20, SECONDS.toNanos(10), MILLISECONDS.toNanos(1), MILLISECONDS.toNanos(20));
+
+  @Test
+  public void growWhenBorrowersWaitAndRedisIsFast() {
+
+    //  given
+    InstrumentedJedisPool pool = pool(16, 100, 10, MILLISECONDS.toNanos(500), MILLISECONDS.toNanos(200), 16);
+
+    //  when
+    int maxTotal = sizer.adjust(pool);
+
+    //  then
+    assertThat(maxTotal).isEqualTo(20);
+    verify(pool).setMaxTotal(20);
+  }
+
+  @Test
+  public void notGrowWhenRedisIsSlow() {
+
+    //  given
+    InstrumentedJedisPool pool = pool(8, 100, 10, MILLISECONDS.toNanos(500), MILLISECONDS.toNanos(5000), 8);
+
+    //  when
+    int maxTotal = sizer.adjust(pool);
+
+    //  then
+    assertThat(maxTotal).isEqualTo(8);
+    verify(pool, never()).setMaxTotal(anyInt());
+  }
+
+  @Test
+  public void shrinkWhenConnectionsAreNotUsed() {
+
+    //  given
+    InstrumentedJedisPool pool = pool(16, 100, 0, 0, MILLISECONDS.toNanos(200), 3);
+
+    //  when
+    int maxTotal = sizer.adjust(pool);
+
+    //  then
+    assertThat(maxTotal).isEqualTo(14);
+    verify(pool).setMaxTotal(14);
+  }
+
+  @Test
+  public void notShrinkBelowMinimum() {
+
+    //  given
+    InstrumentedJedisPool pool = pool(4, 100, 0, 0, MILLISECONDS.toNanos(200), 0);
+
+    //  when
+    int maxTotal = sizer.adjust(pool);
+
+    //  then
+    assertThat(maxTotal).isEqualTo(4);
+    verify(pool, never()).setMaxTotal(anyInt());
+  }
+
+  @Test
+  public void takeIntoAccountOnlyLastInterval() {
+
+    //  given
+    InstrumentedJedisPool pool = pool(8, 100, 10, MILLISECONDS.toNanos(500), MILLISECONDS.toNanos(200), 8);
+    sizer.adjust(pool);
+    when(pool.getMaxTotal()).thenReturn(10);
+    when(pool.resetPeakActive()).thenReturn(10L);
+
+    //  when
+    //  counters did not change since previous adjustment
+    int maxTotal = sizer.adjust(pool);
+
+    //  then
+    assertThat(maxTotal).isEqualTo(10);
+    verify(pool).setMaxTotal(10);
+    verify(pool, times(1)).setMaxTotal(anyInt());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void throwIAEOnMaxTotalBelowMinTotal() {
+    new PoolSizer(8, 4, 1, 1, 1);
+  }
+
+  private static InstrumentedJedisPool pool(int maxTotal, long borrowed, long exhausted, long waitNanos, long holdNanos, long peakActive) {
+    InstrumentedJedisPool pool = mock(InstrumentedJedisPool.class);
+    when(pool.getMaxTotal()).thenReturn(maxTotal);
+    when(pool.getBorrowed()).thenReturn(borrowed);
+    when(pool.getExhausted()).thenReturn(exhausted);
+    when(pool.getWaitNanos()).thenReturn(waitNanos);
+    when(pool.getReturned()).thenReturn(borrowed);
+    when(pool.getHoldNanos()).thenReturn(holdNanos);
+    when(pool.resetPeakActive()).thenReturn(peakActive);
+    return pool;
+  }
+}
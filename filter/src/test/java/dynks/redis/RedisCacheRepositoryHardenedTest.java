@@ -2,7 +2,6 @@ package dynks.redis;
 
 import dynks.cache.CacheRegion;
 import dynks.cache.CacheRepositoryException;
-import dynks.cache.Entry;
 import dynks.cache.NamespacedURIKeyStrategy;
 import dynks.redis.RedisCacheRepositoryTestBuilder.Builder;
 import org.junit.Before;
@@ -44,7 +43,7 @@ public class RedisCacheRepositoryHardenedTest {
   public void throwCREonExceptionInFetchIfChangedDueToJedisHGetAll() throws CacheRepositoryException {
 
     //  given
-    when(jedis.hgetAll(anyString())).thenThrow(jedisException());
+    when(jedis.hgetAll(any(byte[].class))).thenThrow(jedisException());
     RedisCacheRepository repo = new Builder(jedis).build();
 
     //  when
@@ -77,7 +76,7 @@ public class RedisCacheRepositoryHardenedTest {
   public void throwCREOnExceptionInUpsertDueToJedisHmset() throws CacheRepositoryException {
 
     //  given
-    when(jedis.hmset(anyString(), any(Entry.class))).thenThrow(jedisException());
+    when(jedis.hmset(any(byte[].class), anyMap())).thenThrow(jedisException());
     RedisCacheRepository repo = new Builder(jedis).build();
 
     //  when
@@ -117,6 +116,17 @@ public class RedisCacheRepositoryHardenedTest {
     repo.evictRegion(regionFor(1, HOURS), 100);
   }
 
+  @Test
+  public void throwCREOnExceptionInWarmUpDueToJedisPing() throws CacheRepositoryException {
+
+    //  given
+    when(jedis.ping()).thenThrow(jedisException());
+    RedisCacheRepository repo = new Builder(jedis).build();
+
+    //  when
+    repo.warmUp();
+  }
+
   private Throwable jedisException() {
     return new RuntimeException("internal jedis exception");
   }
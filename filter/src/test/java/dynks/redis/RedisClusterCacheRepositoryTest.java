@@ -0,0 +1,295 @@
+package dynks.redis;
+
+import dynks.cache.CacheQueryResult;
+import dynks.cache.CacheRegion;
+import dynks.cache.CacheRepositoryException;
+import dynks.cache.HashTaggedKeyStrategy;
+import dynks.cache.NamespacedURIKeyStrategy;
+import dynks.cache.Upsert;
+import dynks.jmx.JmxServer;
+import org.junit.After;
+import org.junit.Test;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static dynks.cache.test.DynksAssertions.assertThat;
+import static dynks.redis.RedisCacheRepository.NO_RESULT_FOUND;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RedisClusterCacheRepositoryTest {
+
+  //  slots 3142, 7271 and 15397
+  private static final String KEY_OF_FIRST = "rm:books:/2";
+  private static final String OTHER_KEY_OF_FIRST = "rm:books:/3";
+  private static final String KEY_OF_SECOND = "rm:books:/1";
+  //  slot 15901
+  private static final CacheRegion TAGGED = new CacheRegion("books", 1, MINUTES,
+          new HashTaggedKeyStrategy(new NamespacedURIKeyStrategy("rm")));
+  private static final CacheRegion REGION = new CacheRegion("books", 1, MINUTES, new NamespacedURIKeyStrategy("rm"));
+  /**
+   * Slots are not read again more often.
+   */
+  private static final long REFRESH_INTERVAL_IN_MILLIS = 150;
+
+  private final Map<String, RedisCacheRepository> nodes = new HashMap<>();
+  private final Map<RedisCacheRepository, Jedis> connections = new HashMap<>();
+  private final RedisCacheRepository first = node("10.0.0.1", 7000);
+  private final RedisCacheRepository second = node("10.0.0.2", 7000);
+  private final RedisClusterCacheRepository repository = new RedisClusterCacheRepository(
+          singletonList(new HostAndPort("10.0.0.1", 7000)), node -> nodes.get(ClusterSlots.nameOf(node)), 100, 2);
+
+  @After
+  public void dispose() {
+    repository.dispose();
+  }
+
+  @Test
+  public void routeKeysToMastersServingTheirSlots() throws CacheRepositoryException {
+
+    //  given
+    when(jedisOf(first).clusterSlots()).thenReturn(halves());
+    when(first.fetchIfChanged(KEY_OF_FIRST, "e1")).thenReturn(NO_RESULT_FOUND);
+    when(second.fetchIfChanged(KEY_OF_SECOND, null)).thenReturn(NO_RESULT_FOUND);
+
+    //  when
+    repository.fetchIfChanged(KEY_OF_FIRST, "e1");
+    repository.fetchIfChanged(KEY_OF_SECOND, null);
+
+    //  then
+    verify(first).fetchIfChanged(KEY_OF_FIRST, "e1");
+    verify(second).fetchIfChanged(KEY_OF_SECOND, null);
+    verify(second, never()).fetchIfChanged(KEY_OF_FIRST, "e1");
+    verify(jedisOf(first)).clusterSlots();
+    assertThat(repository.masters()).containsExactly(first, second);
+  }
+
+  @Test
+  public void readSlotsAgainAndRepeatCommandWhenMasterRepliedMoved() throws Exception {
+
+    //  given
+    when(jedisOf(first).clusterSlots()).thenReturn(allTo("10.0.0.1"), halves());
+    repository.nodeFor(KEY_OF_SECOND);
+    Thread.sleep(REFRESH_INTERVAL_IN_MILLIS);
+    CacheQueryResult found = new CacheQueryResult(false, "{}".getBytes(UTF_8), "e1", "application/json", "UTF-8");
+    when(first.fetchIfChanged(KEY_OF_SECOND, null)).thenThrow(moved());
+    when(second.fetchIfChanged(KEY_OF_SECOND, null)).thenReturn(found);
+
+    //  when
+    CacheQueryResult result = repository.fetchIfChanged(KEY_OF_SECOND, null);
+
+    //  then
+    assertThat(result).isSameAs(found);
+    verify(jedisOf(first), times(2)).clusterSlots();
+    assertThat(repository.nodeFor(KEY_OF_SECOND)).isSameAs(second);
+  }
+
+  @Test
+  public void notReadSlotsAgainWhenCommandFailedForOtherReason() throws CacheRepositoryException {
+
+    //  given
+    when(jedisOf(first).clusterSlots()).thenReturn(halves());
+    when(first.fetchIfChanged(KEY_OF_FIRST, null)).thenThrow(new CacheRepositoryException(new IllegalStateException("down")));
+
+    //  when
+    try {
+      repository.fetchIfChanged(KEY_OF_FIRST, null);
+      throw new AssertionError("Failure should be propagated");
+    } catch (CacheRepositoryException e) {
+      //  then
+      assertThat(e.getCause()).isInstanceOf(IllegalStateException.class);
+    }
+    verify(first, times(1)).fetchIfChanged(KEY_OF_FIRST, null);
+  }
+
+  @Test
+  public void writeUpsertsOfEveryMasterInOneBatch() throws CacheRepositoryException {
+
+    //  given
+    when(jedisOf(first).clusterSlots()).thenReturn(halves());
+    Upsert ofFirst = upsert(KEY_OF_FIRST);
+    Upsert ofSecond = upsert(KEY_OF_SECOND);
+    Upsert otherOfFirst = upsert(OTHER_KEY_OF_FIRST);
+
+    //  when
+    repository.upsert(asList(ofFirst, ofSecond, otherOfFirst));
+
+    //  then
+    verify(first).upsert(asList(ofFirst, otherOfFirst));
+    verify(second).upsert(singletonList(ofSecond));
+  }
+
+  @Test
+  public void writeUpsertsOneByOneWhenMasterRepliedMoved() throws Exception {
+
+    //  given
+    when(jedisOf(first).clusterSlots()).thenReturn(allTo("10.0.0.1"), halves());
+    repository.nodeFor(KEY_OF_FIRST);
+    Thread.sleep(REFRESH_INTERVAL_IN_MILLIS);
+    doThrow(moved()).when(first).upsert(anyListOf(Upsert.class));
+    Upsert ofFirst = upsert(KEY_OF_FIRST);
+    Upsert ofSecond = upsert(KEY_OF_SECOND);
+
+    //  when
+    repository.upsert(asList(ofFirst, ofSecond));
+
+    //  then
+    verify(first).upsert(KEY_OF_FIRST, ofFirst.getContent(), "e1", "application/json", "UTF-8", REGION, null);
+    verify(second).upsert(KEY_OF_SECOND, ofSecond.getContent(), "e1", "application/json", "UTF-8", REGION, null);
+  }
+
+  @Test
+  public void evictHashTaggedRegionOnlyFromMasterOfItsSlot() throws CacheRepositoryException {
+
+    //  given
+    when(jedisOf(first).clusterSlots()).thenReturn(halves());
+    Pipeline pipeline = pipelineOf(second);
+    when(jedisOf(second).clusterGetKeysInSlot(15901, 100)).thenReturn(asList("rm:{books}:/1", "rm:{books}:/2"));
+
+    //  when
+    long removed = repository.evictRegion(TAGGED, 100);
+
+    //  then
+    assertThat(removed).isEqualTo(2);
+    verify(pipeline).del("rm:{books}:/1");
+    verify(pipeline).del("rm:{books}:/2");
+    verify(jedisOf(second), never()).scan(anyString(), any(ScanParams.class));
+    verify(jedisOf(first), never()).clusterGetKeysInSlot(anyInt(), anyInt());
+    verify(first.getAccounting()).evicted(TAGGED);
+    verify(second.getAccounting()).evicted(TAGGED);
+  }
+
+  @Test
+  public void removeRemainingKeysWithScanWhenSlotContainsKeysOfOtherRegions() throws CacheRepositoryException {
+
+    //  given
+    when(jedisOf(first).clusterSlots()).thenReturn(halves());
+    Pipeline pipeline = pipelineOf(second);
+    //  region of other namespace with the same id shares the slot
+    when(jedisOf(second).clusterGetKeysInSlot(15901, 100)).thenReturn(asList("rm:{books}:/1", "other:{books}:/1"));
+    when(jedisOf(second).scan(eq("0"), any(ScanParams.class))).thenReturn(new ScanResult<>("0", singletonList("rm:{books}:/2")));
+
+    //  when
+    long removed = repository.evictRegion(TAGGED, 100);
+
+    //  then
+    assertThat(removed).isEqualTo(2);
+    verify(pipeline).del("rm:{books}:/1");
+    verify(pipeline).del("rm:{books}:/2");
+    verify(pipeline, never()).del("other:{books}:/1");
+    verify(jedisOf(second), times(1)).clusterGetKeysInSlot(15901, 100);
+  }
+
+  @Test
+  public void evictRegionWithoutHashTagsFromEveryMaster() throws CacheRepositoryException {
+
+    //  given
+    when(jedisOf(first).clusterSlots()).thenReturn(halves());
+    pipelineOf(first);
+    pipelineOf(second);
+    when(jedisOf(first).scan(eq("0"), any(ScanParams.class))).thenReturn(new ScanResult<>("0", singletonList(KEY_OF_FIRST)));
+    when(jedisOf(second).scan(eq("0"), any(ScanParams.class))).thenReturn(new ScanResult<>("0", singletonList(KEY_OF_SECOND)));
+    repository.nodeFor(KEY_OF_FIRST);
+
+    //  when
+    long removed = repository.evictRegion(REGION, 100);
+
+    //  then
+    assertThat(removed).isEqualTo(2);
+    verify(jedisOf(first), never()).clusterGetKeysInSlot(anyInt(), anyInt());
+    verify(jedisOf(second), never()).clusterGetKeysInSlot(anyInt(), anyInt());
+  }
+
+  @Test
+  public void registerMBeansOfMasters() throws CacheRepositoryException {
+
+    //  given
+    when(jedisOf(first).clusterSlots()).thenReturn(halves());
+    repository.warmUp();
+    JmxServer jmx = mock(JmxServer.class);
+
+    //  when
+    repository.registerMBeans(jmx);
+
+    //  then
+    verify(first).registerNodeMBeans(jmx);
+    verify(second).registerNodeMBeans(jmx);
+  }
+
+  private RedisCacheRepository node(String host, int port) {
+
+    RedisCacheRepository node = mock(RedisCacheRepository.class);
+    JedisPool pool = mock(JedisPool.class);
+    Jedis jedis = mock(Jedis.class);
+    RegionAccounting accounting = mock(RegionAccounting.class);
+    when(node.getHost()).thenReturn(host);
+    when(node.getPort()).thenReturn(port);
+    when(node.getPool()).thenReturn(pool);
+    when(node.getAccounting()).thenReturn(accounting);
+    when(pool.getResource()).thenReturn(jedis);
+
+    nodes.put(host + ':' + port, node);
+    connections.put(node, jedis);
+    return node;
+  }
+
+  private Jedis jedisOf(RedisCacheRepository node) {
+    return connections.get(node);
+  }
+
+  @SuppressWarnings("unchecked")
+  private Pipeline pipelineOf(RedisCacheRepository node) {
+
+    Pipeline pipeline = mock(Pipeline.class);
+    Response<Long> deleted = mock(Response.class);
+    when(deleted.get()).thenReturn(1L);
+    when(pipeline.del(anyString())).thenReturn(deleted);
+    when(jedisOf(node).pipelined()).thenReturn(pipeline);
+    return pipeline;
+  }
+
+  private static Upsert upsert(String key) {
+    return new Upsert(key, "{}".getBytes(UTF_8), "e1", "application/json", "UTF-8", REGION, null);
+  }
+
+  private static CacheRepositoryException moved() {
+    return new CacheRepositoryException(new JedisDataException("MOVED 15397 10.0.0.2:7000"));
+  }
+
+  private static List<Object> halves() {
+    return asList(
+            asList(0L, 8191L, master("10.0.0.1")),
+            asList(8192L, 16383L, master("10.0.0.2")));
+  }
+
+  private static List<Object> allTo(String host) {
+    return singletonList(asList(0L, 16383L, master(host)));
+  }
+
+  private static List<Object> master(String host) {
+    return asList(host.getBytes(UTF_8), 7000L, "id".getBytes(UTF_8));
+  }
+}
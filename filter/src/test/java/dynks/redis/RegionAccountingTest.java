@@ -0,0 +1,101 @@
+package dynks.redis;
+
+import dynks.cache.CacheRegion;
+import dynks.cache.NamespacedURIKeyStrategy;
+import dynks.cache.RegionQuota;
+import dynks.redis.RegionAccounting.Pending;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+import java.util.List;
+
+import static dynks.cache.RegionQuota.OnExceeded.EVICT_OLDEST;
+import static dynks.cache.test.DynksAssertions.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static redis.clients.jedis.BuilderFactory.EVAL_BINARY_RESULT;
+
+public class RegionAccountingTest {
+
+  private static final CacheRegion UNLIMITED = new CacheRegion("free", 1, MINUTES, new NamespacedURIKeyStrategy("tst"));
+  private static final CacheRegion LIMITED = new CacheRegion("limited", 1, MINUTES, new NamespacedURIKeyStrategy("tst"), 0, 1,
+          new RegionQuota(1024, 0, EVICT_OLDEST));
+
+  @Test
+  public void recognizeRegionPrefixOfKey() {
+    assertThat(RegionAccounting.prefixOf("tst:users:/api/users/1?a=b:c")).isEqualTo("tst:users:");
+    assertThat(RegionAccounting.prefixOf(":users:/api/users/1")).isEqualTo(":users:");
+    assertThat(RegionAccounting.prefixOf("plain")).isNull();
+  }
+
+  @Test
+  public void accountOnlyRegionsWithQuotaByDefault() {
+
+    //  given
+    RegionAccounting accounting = new RegionAccounting(mock(JedisPool.class), false);
+
+    //  then
+    assertThat(accounting.isAccounted(UNLIMITED)).isFalse();
+    assertThat(accounting.isAccounted(LIMITED)).isTrue();
+  }
+
+  @Test
+  public void accountAllRegionsWhenRequested() {
+
+    //  given
+    RegionAccounting accounting = new RegionAccounting(mock(JedisPool.class), true);
+
+    //  then
+    assertThat(accounting.isAccounted(UNLIMITED)).isTrue();
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void readReplyOfAccountingQueuedInPipeline() {
+
+    //  given
+    RegionAccounting accounting = new RegionAccounting(mock(JedisPool.class), false);
+    Pipeline pipeline = mock(Pipeline.class);
+    //  raw reply of script as read from transaction, integers and bulk strings are not converted
+    Response<Object> reply = new Response<>(EVAL_BINARY_RESULT);
+    reply.set(asList(2048L, 2L, asList("tst:limited:/1".getBytes(UTF_8))));
+    when(pipeline.evalsha(any(byte[].class), anyListOf(byte[].class), anyListOf(byte[].class))).thenReturn(reply);
+
+    //  when
+    Pending pending = accounting.upserted(pipeline, LIMITED, "tst:limited:/2", 1024, 0);
+    List<String> evicted = accounting.apply(mock(Jedis.class), pending);
+
+    //  then
+    ArgumentCaptor<List> keys = ArgumentCaptor.forClass(List.class);
+    verify(pipeline).evalsha(any(byte[].class), keys.capture(), anyListOf(byte[].class));
+    assertThat(new String((byte[]) keys.getValue().get(0), UTF_8)).isEqualTo("tst:limited:#usage");
+    assertThat(evicted).containsExactly("tst:limited:/1");
+    assertThat(accounting.getEvicted()).isEqualTo(1);
+  }
+
+  @Test
+  public void sizeOfEntryIncludesKeyInBytes() {
+    assertThat(RegionAccounting.sizeOf("tst:users:/ą", 10)).isEqualTo(10 + 13);
+  }
+
+  @Test
+  public void neverRejectEntriesOfRegionEvictingOldest() {
+
+    //  given
+    RegionAccounting accounting = new RegionAccounting(mock(JedisPool.class), true);
+
+    //  then
+    assertThat(accounting.isRejected(LIMITED)).isFalse();
+    assertThat(accounting.getRejected()).isEqualTo(0);
+  }
+}
@@ -0,0 +1,153 @@
+package dynks.redis;
+
+import dynks.cache.CacheQueryResult;
+import dynks.cache.CacheRegion;
+import dynks.cache.CacheRepositoryException;
+import dynks.cache.NamespacedURIKeyStrategy;
+import org.junit.After;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import static dynks.cache.test.DynksAssertions.assertThat;
+import static dynks.redis.RedisCacheRepository.NO_RESULT_FOUND;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ReplicatedRedisCacheRepositoryTest {
+
+  private static final String KEY = "rm:search:/books";
+
+  private final RedisCacheRepository master = node("role:master\r\nconnected_slaves:2\r\nmaster_repl_offset:100\r\n");
+  private final RedisCacheRepository replica1 = node("role:slave\r\nmaster_link_status:up\r\nslave_repl_offset:100\r\n");
+  private final RedisCacheRepository replica2 = node("role:slave\r\nmaster_link_status:up\r\nslave_repl_offset:90\r\n");
+  private final ReplicatedRedisCacheRepository repository = new ReplicatedRedisCacheRepository(master, asList(replica1, replica2),
+          HOURS.toNanos(1), HOURS.toNanos(1));
+
+  @After
+  public void dispose() {
+    repository.dispose();
+  }
+
+  @Test
+  public void readFromMasterBeforeReplicasAreChecked() {
+    assertThat(repository.replicaFor(KEY)).isNull();
+  }
+
+  @Test
+  public void readOnlyFromReplicasInSync() {
+
+    //  when
+    repository.checkReplicas();
+
+    //  then
+    assertThat(repository.getReadableReplicas()).isEqualTo(1);
+    assertThat(repository.replicaFor(KEY)).isSameAs(replica1);
+    assertThat(repository.replicaFor(KEY)).isSameAs(replica1);
+  }
+
+  @Test
+  public void readFromMasterWhenReplicaLostLink() {
+
+    //  given
+    whenInfo(replica1, "role:slave\r\nmaster_link_status:down\r\nslave_repl_offset:100\r\n");
+
+    //  when
+    repository.checkReplicas();
+
+    //  then
+    assertThat(repository.replicaFor(KEY)).isNull();
+  }
+
+  @Test
+  public void readRecentlyWrittenKeyFromMaster() throws CacheRepositoryException {
+
+    //  given
+    repository.checkReplicas();
+
+    //  when
+    repository.remove(KEY);
+
+    //  then
+    assertThat(repository.replicaFor(KEY)).isNull();
+    assertThat(repository.replicaFor("rm:search:/authors")).isSameAs(replica1);
+  }
+
+  @Test
+  public void readKeysOfRecentlyEvictedRegionFromMaster() throws CacheRepositoryException {
+
+    //  given
+    repository.checkReplicas();
+
+    //  when
+    repository.evictRegion(new CacheRegion("search", 1, MINUTES, new NamespacedURIKeyStrategy("rm")));
+
+    //  then
+    assertThat(repository.replicaFor(KEY)).isNull();
+    assertThat(repository.replicaFor("rm:books:/1")).isSameAs(replica1);
+  }
+
+  @Test
+  public void readMissOfReplicaAgainFromMaster() throws CacheRepositoryException {
+
+    //  given
+    repository.checkReplicas();
+    CacheQueryResult written = new CacheQueryResult(false, "{}".getBytes(UTF_8), "e1", "application/json", "UTF-8");
+    when(replica1.fetchIfChanged(KEY, null)).thenReturn(NO_RESULT_FOUND);
+    when(master.fetchIfChanged(KEY, null)).thenReturn(written);
+
+    //  when
+    CacheQueryResult result = repository.fetchIfChanged(KEY, null);
+
+    //  then
+    assertThat(result).isSameAs(written);
+  }
+
+  @Test
+  public void doNotReadHitOfReplicaFromMaster() throws CacheRepositoryException {
+
+    //  given
+    repository.checkReplicas();
+    CacheQueryResult cached = new CacheQueryResult(false, "{}".getBytes(UTF_8), "e1", "application/json", "UTF-8");
+    when(replica1.fetchIfChanged(KEY, null)).thenReturn(cached);
+
+    //  when
+    CacheQueryResult result = repository.fetchIfChanged(KEY, null);
+
+    //  then
+    assertThat(result).isSameAs(cached);
+    verify(master, never()).fetchIfChanged(KEY, null);
+  }
+
+  @Test
+  public void readFieldOfInfo() {
+
+    //  given
+    String info = "# Replication\r\nrole:slave\r\nmaster_link_status:up\r\nslave_repl_offset:1234\r\n";
+
+    //  then
+    assertThat(ReplicatedRedisCacheRepository.fieldOf(info, "slave_repl_offset")).isEqualTo("1234");
+    assertThat(ReplicatedRedisCacheRepository.fieldOf(info, "master_link_status")).isEqualTo("up");
+    assertThat(ReplicatedRedisCacheRepository.fieldOf(info, "master_repl_offset")).isNull();
+  }
+
+  private static RedisCacheRepository node(String info) {
+    RedisCacheRepository node = mock(RedisCacheRepository.class);
+    whenInfo(node, info);
+    return node;
+  }
+
+  private static void whenInfo(RedisCacheRepository node, String info) {
+    JedisPool pool = mock(JedisPool.class);
+    Jedis jedis = mock(Jedis.class);
+    when(node.getPool()).thenReturn(pool);
+    when(pool.getResource()).thenReturn(jedis);
+    when(jedis.info("replication")).thenReturn(info);
+  }
+}
@@ -0,0 +1,75 @@
+package dynks.redis;
+
+import dynks.redis.RespCodec.ErrorReply;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static dynks.cache.test.DynksAssertions.assertThat;
+import static dynks.redis.RespCodec.INCOMPLETE;
+import static dynks.redis.RespCodec.bytes;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class RespCodecTest {
+
+  @Test
+  public void encodeCommandAsArrayOfBulkStrings() {
+
+    //  when
+    byte[] encoded = RespCodec.encode(bytes("HGET"), bytes("key"), bytes("e"));
+
+    //  then
+    assertThat(new String(encoded, UTF_8)).isEqualTo("*3\r\n$4\r\nHGET\r\n$3\r\nkey\r\n$1\r\ne\r\n");
+  }
+
+  @Test
+  public void decodeAllTypesOfReplies() {
+
+    //  given
+    ByteBuffer buffer = buffer("+OK\r\n-ERR wrong type\r\n:-12\r\n$3\r\nabc\r\n$-1\r\n*2\r\n$1\r\ne\r\n:7\r\n*-1\r\n");
+
+    //  when
+    Object ok = RespCodec.decode(buffer);
+    Object error = RespCodec.decode(buffer);
+    Object number = RespCodec.decode(buffer);
+    Object bulk = RespCodec.decode(buffer);
+    Object nil = RespCodec.decode(buffer);
+    Object array = RespCodec.decode(buffer);
+    Object nilArray = RespCodec.decode(buffer);
+
+    //  then
+    assertThat(ok).isEqualTo("OK");
+    assertThat(((ErrorReply) error).getMessage()).isEqualTo("ERR wrong type");
+    assertThat(number).isEqualTo(-12L);
+    assertThat((byte[]) bulk).isEqualTo(bytes("abc"));
+    assertThat(nil).isNull();
+    assertThat((List<?>) array).hasSize(2);
+    assertThat((byte[]) ((List<?>) array).get(0)).isEqualTo(bytes("e"));
+    assertThat(((List<?>) array).get(1)).isEqualTo(7L);
+    assertThat(nilArray).isNull();
+    assertThat(buffer.hasRemaining()).isFalse();
+  }
+
+  @Test
+  public void notConsumeIncompleteReply() {
+
+    //  given
+    String reply = "*2\r\n$1\r\nv\r\n$5\r\nhello\r\n";
+
+    for (int i = 0; i < reply.length(); i++) {
+      ByteBuffer buffer = buffer(reply.substring(0, i));
+
+      //  when
+      Object decoded = RespCodec.decode(buffer);
+
+      //  then
+      assertThat(decoded).isSameAs(INCOMPLETE);
+      assertThat(buffer.position()).isEqualTo(0);
+    }
+  }
+
+  private static ByteBuffer buffer(String value) {
+    return ByteBuffer.wrap(value.getBytes(UTF_8));
+  }
+}
@@ -0,0 +1,257 @@
+package dynks.redis;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static dynks.cache.test.DynksAssertions.assertThat;
+import static dynks.redis.FakeRedisServer.nameOf;
+import static dynks.redis.FakeRedisServer.reply;
+import static dynks.redis.RespCodec.bytes;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * Tests of connection against {@link FakeRedisServer} controlling how replies arrive.
+ */
+public class RespConnectionTest {
+
+  private FakeRedisServer server;
+  private RespConnection connection;
+
+  @After
+  public void tearDown() throws IOException {
+    if (connection != null) {
+      connection.close();
+    }
+    if (server != null) {
+      server.close();
+    }
+  }
+
+  @Test
+  public void completeRepliesInOrderOfPipelinedCommands() throws Exception {
+
+    //  given
+    //  replies are sent only after all commands were received so client must not wait for reply before next command
+    final int commands = 100;
+    final StringBuilder replies = new StringBuilder();
+    server = new FakeRedisServer((command, out) -> {
+      replies.append(':').append(new String(command.get(1), UTF_8)).append("\r\n");
+      if (Integer.parseInt(new String(command.get(1), UTF_8)) == commands - 1) {
+        reply(out, replies.toString());
+      }
+    });
+    connection = new RespConnection("localhost", server.getPort(), "test", 1000);
+
+    //  when
+    List<CompletableFuture<Object>> futures = new ArrayList<>();
+    for (int i = 0; i < commands; i++) {
+      futures.add(connection.send(bytes("ECHO"), bytes(String.valueOf(i))));
+    }
+
+    //  then
+    for (int i = 0; i < commands; i++) {
+      assertThat(futures.get(i).get(5, SECONDS)).isEqualTo((long) i);
+    }
+  }
+
+  @Test
+  public void decodeReplyArrivingInManyReads() throws Exception {
+
+    //  given
+    server = new FakeRedisServer((command, out) -> {
+      for (byte b : "*2\r\n$5\r\nhello\r\n:42\r\n".getBytes(UTF_8)) {
+        out.write(b);
+        out.flush();
+        pause();
+      }
+    });
+    connection = new RespConnection("localhost", server.getPort(), "test", 1000);
+
+    //  when
+    Object reply = connection.send(bytes("HGETALL"), bytes("key")).get(5, SECONDS);
+
+    //  then
+    List<?> fields = (List<?>) reply;
+    assertThat(fields).hasSize(2);
+    assertThat((byte[]) fields.get(0)).isEqualTo(bytes("hello"));
+    assertThat(fields.get(1)).isEqualTo(42L);
+  }
+
+  @Test
+  public void growReadBufferForReplyLargerThanBuffer() throws Exception {
+
+    //  given
+    final byte[] large = new byte[300 * 1024];
+    Arrays.fill(large, (byte) 'x');
+    server = new FakeRedisServer((command, out) -> {
+      if ("GET".equals(nameOf(command))) {
+        ByteArrayOutputStream bulk = new ByteArrayOutputStream();
+        bulk.write(("$" + large.length + "\r\n").getBytes(UTF_8));
+        bulk.write(large);
+        bulk.write("\r\n".getBytes(UTF_8));
+        out.write(bulk.toByteArray());
+        out.flush();
+      } else {
+        reply(out, "+PONG\r\n");
+      }
+    });
+    connection = new RespConnection("localhost", server.getPort(), "test", 1000);
+
+    //  when
+    CompletableFuture<Object> get = connection.send(bytes("GET"), bytes("key"));
+    CompletableFuture<Object> ping = connection.send(bytes("PING"));
+
+    //  then
+    assertThat((byte[]) get.get(5, SECONDS)).isEqualTo(large);
+    assertThat(ping.get(5, SECONDS)).isEqualTo("PONG");
+  }
+
+  @Test
+  public void failOnlyCommandWithErrorReply() throws Exception {
+
+    //  given
+    server = new FakeRedisServer((command, out) -> reply(out, "GET".equals(nameOf(command)) ? "-WRONGTYPE Operation against a key\r\n" : "+PONG\r\n"));
+    connection = new RespConnection("localhost", server.getPort(), "test", 1000);
+
+    //  when
+    CompletableFuture<Object> get = connection.send(bytes("GET"), bytes("key"));
+    CompletableFuture<Object> ping = connection.send(bytes("PING"));
+
+    //  then
+    assertThat(causeOf(get)).isInstanceOf(RespException.class).hasMessageStartingWith("WRONGTYPE");
+    assertThat(ping.get(5, SECONDS)).isEqualTo("PONG");
+    assertThat(connection.isOpen()).isTrue();
+  }
+
+  @Test
+  public void completeCommandsSentTogetherWithLastReplyOrFirstError() throws Exception {
+
+    //  given
+    server = new FakeRedisServer((command, out) -> {
+      switch (nameOf(command)) {
+        case "MULTI":
+          reply(out, "+OK\r\n");
+          break;
+        case "EXEC":
+          reply(out, "*1\r\n:1\r\n");
+          break;
+        case "BROKEN":
+          reply(out, "-ERR unknown command\r\n");
+          break;
+        default:
+          reply(out, "+QUEUED\r\n");
+      }
+    });
+    connection = new RespConnection("localhost", server.getPort(), "test", 1000);
+
+    //  when
+    CompletableFuture<Object> transaction = connection.sendAll(new byte[][]{bytes("MULTI")}, new byte[][]{bytes("DEL"), bytes("key")},
+            new byte[][]{bytes("EXEC")});
+    CompletableFuture<Object> failed = connection.sendAll(new byte[][]{bytes("MULTI")}, new byte[][]{bytes("BROKEN")},
+            new byte[][]{bytes("EXEC")});
+    CompletableFuture<Object> next = connection.send(bytes("DEL"), bytes("key"));
+
+    //  then
+    assertThat(transaction.get(5, SECONDS)).isEqualTo(singletonList(1L));
+    assertThat(causeOf(failed)).isInstanceOf(RespException.class).hasMessage("ERR unknown command");
+    assertThat(next.get(5, SECONDS)).isEqualTo("QUEUED");
+  }
+
+  @Test
+  public void failPendingCommandsWhenRedisClosedConnection() throws Exception {
+
+    //  given
+    server = new FakeRedisServer((command, out) -> server.disconnectClients());
+    connection = new RespConnection("localhost", server.getPort(), "test", 1000);
+
+    //  when
+    CompletableFuture<Object> pending = connection.send(bytes("PING"));
+
+    //  then
+    assertThat(causeOf(pending)).isInstanceOf(IOException.class);
+    assertThat(connection.isOpen()).isFalse();
+    assertThat(causeOf(connection.send(bytes("PING")))).isInstanceOf(IOException.class).hasMessage("Connection closed");
+  }
+
+  @Test
+  public void failPendingCommandsOnClose() throws Exception {
+
+    //  given
+    server = new FakeRedisServer((command, out) -> {
+      //  never replying
+    });
+    connection = new RespConnection("localhost", server.getPort(), "test", 1000);
+    CompletableFuture<Object> pending = connection.send(bytes("PING"));
+
+    //  when
+    connection.close();
+
+    //  then
+    assertThat(causeOf(pending)).isInstanceOf(IOException.class).hasMessage("Connection closed");
+    assertThat(connection.isOpen()).isFalse();
+  }
+
+  @Test
+  public void failConnectAfterTimeoutWhenRedisDoesNotAccept() throws Exception {
+
+    //  given
+    //  backlog is filled by connections never accepted so that further connect is not completed
+    final List<SocketChannel> queued = new ArrayList<>();
+    try (ServerSocket notAccepting = new ServerSocket(0, 1)) {
+      for (int i = 0; i < 8; i++) {
+        final SocketChannel channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.connect(new InetSocketAddress("localhost", notAccepting.getLocalPort()));
+        queued.add(channel);
+      }
+      final long start = System.nanoTime();
+
+      //  when
+      try {
+        connection = new RespConnection("localhost", notAccepting.getLocalPort(), "test", 100);
+        fail("SocketTimeoutException expected");
+      } catch (SocketTimeoutException e) {
+
+        //  then
+        assertThat(SECONDS.toNanos(1)).isGreaterThan(System.nanoTime() - start);
+      }
+    } finally {
+      for (SocketChannel channel : queued) {
+        channel.close();
+      }
+    }
+  }
+
+  private static Throwable causeOf(CompletableFuture<Object> future) throws Exception {
+    try {
+      future.get(5, SECONDS);
+    } catch (ExecutionException e) {
+      return e.getCause();
+    }
+    fail("Future should complete exceptionally");
+    return null;
+  }
+
+  private static void pause() {
+    try {
+      Thread.sleep(1);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package dynks.redis;
+
+import dynks.cache.CacheRegion;
+import dynks.cache.CacheRepositoryException;
+import dynks.cache.NamespacedURIKeyStrategy;
+import dynks.jmx.JmxServer;
+import org.junit.Test;
+
+import static dynks.cache.test.DynksAssertions.assertThat;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ShardedRedisCacheRepositoryTest {
+
+  private final RedisCacheRepository shard1 = shard("redis1", 6379);
+  private final RedisCacheRepository shard2 = shard("redis2", 6379);
+  private final ShardedRedisCacheRepository repository = new ShardedRedisCacheRepository(asList(shard1, shard2), 160, 100, 2);
+
+  @Test
+  public void routeKeyToSingleShard() throws CacheRepositoryException {
+
+    //  given
+    final String key = "rm:search:/books";
+    final RedisCacheRepository owner = repository.shardFor(key);
+    final RedisCacheRepository other = owner == shard1 ? shard2 : shard1;
+
+    //  when
+    repository.fetchIfChanged(key, "1");
+    repository.remove(key);
+
+    //  then
+    verify(owner).fetchIfChanged(key, "1");
+    verify(owner).remove(key);
+    verify(other, never()).fetchIfChanged(key, "1");
+    verify(other, never()).remove(key);
+  }
+
+  @Test
+  public void evictRegionOnAllShards() throws CacheRepositoryException {
+
+    //  given
+    final CacheRegion region = new CacheRegion("search", 1, MINUTES, new NamespacedURIKeyStrategy("rm"));
+    when(shard1.evictRegion(region, 100)).thenReturn(3L);
+    when(shard2.evictRegion(region, 100)).thenReturn(4L);
+
+    //  when
+    long removed = repository.evictRegion(region);
+
+    //  then
+    assertThat(removed).isEqualTo(7);
+  }
+
+  @Test
+  public void registerMBeansOfEveryShard() {
+
+    //  given
+    JmxServer jmx = mock(JmxServer.class);
+
+    //  when
+    repository.registerMBeans(jmx);
+
+    //  then
+    verify(shard1).registerNodeMBeans(jmx);
+    verify(shard2).registerNodeMBeans(jmx);
+  }
+
+  @Test(expected = CacheRepositoryException.class)
+  public void throwCacheRepositoryExceptionWhenAnyShardFailedToEvict() throws CacheRepositoryException {
+
+    //  given
+    final CacheRegion region = new CacheRegion("search", 1, MINUTES, new NamespacedURIKeyStrategy("rm"));
+    when(shard1.evictRegion(region, 100)).thenReturn(3L);
+    when(shard2.evictRegion(region, 100)).thenThrow(new CacheRepositoryException(new IllegalStateException("down")));
+
+    //  when
+    repository.evictRegion(region);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void throwIAEOnRepeatedShard() {
+    new ShardedRedisCacheRepository(asList(shard1, shard("redis1", 6379)), 160, 100, 2);
+  }
+
+  private static RedisCacheRepository shard(String host, int port) {
+    RedisCacheRepository shard = mock(RedisCacheRepository.class);
+    when(shard.getHost()).thenReturn(host);
+    when(shard.getPort()).thenReturn(port);
+    return shard;
+  }
+}